@@ -21,18 +21,25 @@
 package org.xwiki.blame.internal;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.xwiki.blame.AnnotatedContent;
 import org.xwiki.blame.AnnotatedElement;
-
-import difflib.Chunk;
-import difflib.Delta;
-import difflib.DiffUtils;
+import org.xwiki.diff.Chunk;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.DiffException;
+import org.xwiki.diff.DiffManager;
 
 /**
  * Hold content during blame analysis and provides actual results.
+ * <p>
+ * Only the elements whose source revision is still unknown are kept, in the order they have in the revision currently
+ * analysed, so that each older revision is only compared with them: the elements of the older revision which are not
+ * equal to one of them can't change the result and are skipped before comparing. Once all the elements are annotated
+ * the older revisions are not compared at all.
  *
  * @param <R> type of the revision object that old metadata about the revision.
  * @param <E> type of the element to annotate (ie: String holding a line).
@@ -41,27 +48,49 @@
  */
 public class DefaultAnnotatedContent<R, E> implements AnnotatedContent<R, E>
 {
-    private final List<R> sourceRevisions;
+    private final Object[] sourceRevisions;
+
     private final List<E> initialContent;
-    private final List<E> currentRevisionContent;
+
+    private final DiffManager diffManager;
+
+    /**
+     * The index in the initial content of the elements without source revision, in the order of the current revision.
+     */
+    private final int[] unresolvedIndexes;
+
+    /**
+     * The number of elements without source revision.
+     */
+    private int unresolvedCount;
+
+    /**
+     * The number of elements without source revision, for each distinct element.
+     */
+    private final Map<E, Integer> unresolvedElementCounts;
+
     private R currentRevision;
-    private final List<Integer> elementMap;
+
     private final int size;
 
-    DefaultAnnotatedContent(R revision, List<E> initialContent)
+    DefaultAnnotatedContent(R revision, List<E> initialContent, DiffManager diffManager)
     {
         this.size = initialContent.size();
-        this.sourceRevisions = new ArrayList<R>(this.size);
+        this.sourceRevisions = new Object[this.size];
         this.initialContent = initialContent;
-        this.currentRevisionContent = new ArrayList<E>(initialContent);
         this.currentRevision = revision;
-        this.elementMap = new ArrayList<>(this.size);
-        for (int i = 0; i < size; i++) {
-            this.sourceRevisions.add(null);
-            this.elementMap.add(i);
+        this.diffManager = diffManager;
+
+        this.unresolvedIndexes = new int[this.size];
+        this.unresolvedElementCounts = new HashMap<E, Integer>();
+        for (int i = 0; i < this.size; i++) {
+            this.unresolvedIndexes[i] = i;
+            E element = initialContent.get(i);
+            Integer count = this.unresolvedElementCounts.get(element);
+            this.unresolvedElementCounts.put(element, count != null ? count + 1 : 1);
         }
+        this.unresolvedCount = this.size;
     }
-
     private class AnnotatedContentIterator implements Iterator<AnnotatedElement<R, E>>
     {
         private int index = -1;
@@ -76,7 +105,7 @@ public boolean hasNext()
         public AnnotatedElement<R, E> next()
         {
             index += 1;
-            return new DefaultAnnotatedElement<R, E>(sourceRevisions.get(index), initialContent.get(index));
+            return new DefaultAnnotatedElement<R, E>(getSourceRevision(index), initialContent.get(index));
         }
 
         @Override
@@ -101,12 +130,13 @@ public R getOldestRevision()
     @Override
     public boolean isEntirelyAnnotated()
     {
-        for (int i = 0; i < this.size; i++) {
-            if (this.sourceRevisions.get(i) == null) {
-                return false;
-            }
-        }
-        return true;
+        return this.unresolvedCount == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private R getSourceRevision(int index)
+    {
+        return (R) this.sourceRevisions[index];
     }
 
     /**
@@ -114,18 +144,21 @@ public boolean isEntirelyAnnotated()
      *
      * @param revision the revision of the content provided.
      * @param previous the content in a previous revision.
+     * @throws DiffException if the comparison with the previous content fails
      */
-    void analyseRevision(R revision, List<E> previous)
+    void analyseRevision(R revision, List<E> previous) throws DiffException
     {
         if (currentRevision == null) {
             return;
         }
 
-        if (previous == null || previous.isEmpty()) {
-            resolveRemainingToCurrent();
-        } else {
-            resolveToCurrent(DiffUtils.diff(currentRevisionContent, previous).getDeltas());
-            assert currentRevisionContent.equals(previous) : "Patch application failed";
+        // Nothing left to compare when all the elements are annotated
+        if (this.unresolvedCount > 0) {
+            if (previous == null || previous.isEmpty()) {
+                resolveRemainingToCurrent();
+            } else {
+                resolveToCurrent(previous);
+            }
         }
 
         currentRevision = revision;
@@ -134,34 +167,57 @@ void analyseRevision(R revision, List<E> previous)
     /**
      * Resolve revision of line to current revision based on given previous content.
      *
-     * Thanks to Michael Schierl <schierlm%40gmx.de> for sharing this code on StackOverflow.
-     *
-     * @param deltas the delta to apply to current content to move to previous revision.
+     * @param previous the content in a previous revision.
+     * @throws DiffException if the comparison with the previous content fails
      */
-    private void resolveToCurrent(List<Delta<E>> deltas)
+    private void resolveToCurrent(List<E> previous) throws DiffException
     {
-        int lineOffset = 0;
-
-        for (Delta<E> d : deltas) {
-            Chunk<E> original = d.getOriginal();
-            Chunk<E> revised = d.getRevised();
-
-            int pos = original.getPosition() + lineOffset;
-            // delete lines
-            for (int i = 0; i < original.size(); i++) {
-                int origLine = elementMap.remove(pos);
-                currentRevisionContent.remove(pos);
-                if (origLine != -1) {
-                    sourceRevisions.set(origLine, currentRevision);
-                }
+        // Only keep the elements equal to an element without source revision, the others can't be matched anyway
+        List<E> candidates = new ArrayList<E>(previous.size());
+        for (E element : previous) {
+            if (this.unresolvedElementCounts.containsKey(element)) {
+                candidates.add(element);
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            resolveRemainingToCurrent();
+        } else {
+            List<E> unresolved = new ArrayList<E>(this.unresolvedCount);
+            for (int i = 0; i < this.unresolvedCount; i++) {
+                unresolved.add(this.initialContent.get(this.unresolvedIndexes[i]));
             }
 
-            for (int i = 0; i < revised.size(); i++) {
-                currentRevisionContent.add(pos + i, revised.getLines().get(i));
-                elementMap.add(pos + i, -1);
+            // The elements removed in the previous revision were introduced by the current one
+            int kept = 0;
+            int i = 0;
+            for (Delta<E> delta : this.diffManager.diff(unresolved, candidates, null).getPatch()) {
+                Chunk<E> removed = delta.getPrevious();
+                for (; i < removed.getIndex(); i++) {
+                    this.unresolvedIndexes[kept++] = this.unresolvedIndexes[i];
+                }
+                for (; i < removed.getIndex() + removed.size(); i++) {
+                    resolve(i);
+                }
             }
+            for (; i < this.unresolvedCount; i++) {
+                this.unresolvedIndexes[kept++] = this.unresolvedIndexes[i];
+            }
+            this.unresolvedCount = kept;
+        }
+    }
 
-            lineOffset += revised.size() - original.size();
+    private void resolve(int unresolvedIndex)
+    {
+        int index = this.unresolvedIndexes[unresolvedIndex];
+        this.sourceRevisions[index] = this.currentRevision;
+
+        E element = this.initialContent.get(index);
+        int count = this.unresolvedElementCounts.get(element);
+        if (count > 1) {
+            this.unresolvedElementCounts.put(element, count - 1);
+        } else {
+            this.unresolvedElementCounts.remove(element);
         }
     }
 
@@ -170,10 +226,10 @@ private void resolveToCurrent(List<Delta<E>> deltas)
      */
     private void resolveRemainingToCurrent()
     {
-        for (int i = 0; i < this.size; i++) {
-            if (sourceRevisions.get(i) == null) {
-                sourceRevisions.set(i, currentRevision);
-            }
+        for (int i = 0; i < this.unresolvedCount; i++) {
+            this.sourceRevisions[this.unresolvedIndexes[i]] = this.currentRevision;
         }
+        this.unresolvedElementCounts.clear();
+        this.unresolvedCount = 0;
     }
 }
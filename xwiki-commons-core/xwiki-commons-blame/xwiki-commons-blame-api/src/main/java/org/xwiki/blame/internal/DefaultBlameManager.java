@@ -22,11 +22,14 @@
 
 import java.util.List;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.xwiki.blame.AnnotatedContent;
 import org.xwiki.blame.BlameManager;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.diff.DiffException;
+import org.xwiki.diff.DiffManager;
 
 /**
  * Default implementation of {@link org.xwiki.blame.BlameManager}.
@@ -38,6 +41,9 @@
 @Singleton
 public class DefaultBlameManager implements BlameManager
 {
+    @Inject
+    private DiffManager diffManager;
+
     @Override
     public <R, E> AnnotatedContent<R, E> blame(AnnotatedContent<R, E> content, R revision, List<E> previous)
     {
@@ -45,14 +51,18 @@ public <R, E> AnnotatedContent<R, E> blame(AnnotatedContent<R, E> content, R rev
             if (previous == null || revision == null) {
                 return null;
             }
-            return new DefaultAnnotatedContent<R, E>(revision, previous);
+            return new DefaultAnnotatedContent<R, E>(revision, previous, this.diffManager);
         }
 
         if (!(content instanceof DefaultAnnotatedContent)) {
             throw new IllegalArgumentException("Incompatible annotated content type provided");
         }
 
-        ((DefaultAnnotatedContent<R, E>) content).analyseRevision(revision, previous);
+        try {
+            ((DefaultAnnotatedContent<R, E>) content).analyseRevision(revision, previous);
+        } catch (DiffException e) {
+            throw new IllegalStateException("Failed to compare the content of revision [" + revision + "]", e);
+        }
         return content;
     }
 }
@@ -0,0 +1,168 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.blame.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.blame.AnnotatedContent;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.diff.DiffException;
+import org.xwiki.diff.internal.DefaultDiffManager;
+
+/**
+ * Measure the time needed to blame long synthetic histories, compared to the time needed to diff each revision with
+ * the next one. Not executed with the other tests (the name does not end with "Test"), use
+ * {@code mvn test -Pbenchmark} to run it.
+ *
+ * @version $Id$
+ */
+public class BlameBenchmark
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlameBenchmark.class);
+
+    /**
+     * The number of executions not measured, to let the JIT compile the code.
+     */
+    private static final int WARMUP = 3;
+
+    private static final int ITERATIONS = 3;
+
+    private final DefaultBlameManager blameManager = new DefaultBlameManager();
+
+    private final DefaultDiffManager diffManager = new DefaultDiffManager();
+
+    /**
+     * Inject the diff manager in the blame manager.
+     */
+    public BlameBenchmark()
+    {
+        ReflectionUtils.setFieldValue(this.blameManager, "diffManager", this.diffManager);
+    }
+
+    /**
+     * @param size the number of lines of the most recent revision
+     * @param revisions the number of revisions
+     * @param changes the number of lines modified by each revision
+     * @return the content of each revision, starting with the most recent one
+     */
+    private List<List<String>> history(int size, int revisions, int changes)
+    {
+        Random random = new Random(size + revisions);
+
+        List<String> content = new ArrayList<String>(size);
+        for (int i = 0; i < size; ++i) {
+            // Make sure some lines are repeated, like in a real document
+            content.add("line " + random.nextInt(size / 4));
+        }
+
+        List<List<String>> history = new ArrayList<List<String>>(revisions);
+        history.add(content);
+        for (int revision = 1; revision < revisions; ++revision) {
+            content = new ArrayList<String>(content);
+            for (int i = 0; i < changes && !content.isEmpty(); ++i) {
+                int index = random.nextInt(content.size());
+                switch (random.nextInt(3)) {
+                    case 0:
+                        content.set(index, "changed line " + revision + ' ' + i);
+                        break;
+                    case 1:
+                        content.remove(index);
+                        break;
+                    default:
+                        content.add(index, "new line " + revision + ' ' + i);
+                        break;
+                }
+            }
+            history.add(content);
+        }
+
+        return history;
+    }
+
+    private void benchmark(int size, int revisions, int changes) throws DiffException
+    {
+        List<List<String>> history = history(size, revisions, changes);
+
+        long time = 0;
+        int analysed = 0;
+        for (int i = 0; i < WARMUP + ITERATIONS; ++i) {
+            long start = System.nanoTime();
+
+            AnnotatedContent<Integer, String> content = this.blameManager.blame(null, 0, history.get(0));
+            analysed = 1;
+            while (analysed < revisions && !content.isEntirelyAnnotated()) {
+                content = this.blameManager.blame(content, analysed, history.get(analysed));
+                ++analysed;
+            }
+            content = this.blameManager.blame(content, null, null);
+
+            if (i >= WARMUP) {
+                time += System.nanoTime() - start;
+            }
+
+            Assert.assertTrue(content.isEntirelyAnnotated());
+        }
+
+        print(size, revisions, changes, "blame", time, analysed);
+
+        time = 0;
+        for (int i = 0; i < WARMUP + ITERATIONS; ++i) {
+            long start = System.nanoTime();
+
+            for (int revision = 1; revision < revisions; ++revision) {
+                this.diffManager.diff(history.get(revision - 1), history.get(revision), null);
+            }
+
+            if (i >= WARMUP) {
+                time += System.nanoTime() - start;
+            }
+        }
+
+        print(size, revisions, changes, "full diffs", time, revisions);
+    }
+
+    private void print(int size, int revisions, int changes, String name, long time, int analysed)
+    {
+        LOGGER.info(String.format("%,8d lines %,6d revisions %,5d changes %-10s %,8d ms (%,d revisions read)",
+            size, revisions, changes, name, time / ITERATIONS / 1000000, analysed));
+    }
+
+    @Test
+    public void benchmark1K() throws DiffException
+    {
+        benchmark(1000, 1000, 1);
+        benchmark(1000, 1000, 10);
+        // Most of the lines are replaced long before the oldest revision
+        benchmark(1000, 5000, 50);
+    }
+
+    @Test
+    public void benchmark10K() throws DiffException
+    {
+        benchmark(10000, 1000, 10);
+        benchmark(10000, 5000, 10);
+    }
+}
@@ -20,9 +20,11 @@
 
 package org.xwiki.blame.internal;
 
+import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -30,6 +32,8 @@
 import org.xwiki.blame.AnnotatedContent;
 import org.xwiki.blame.AnnotatedElement;
 import org.xwiki.blame.BlameManager;
+import org.xwiki.diff.internal.DefaultDiffManager;
+import org.xwiki.test.annotation.ComponentList;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -37,6 +41,7 @@
 import static org.jmock.Expectations.same;
 import static org.junit.Assert.assertThat;
 
+@ComponentList(DefaultDiffManager.class)
 public class DefaultBlameManagerTest
 {
     /**
@@ -143,4 +148,74 @@ public void testBlame() throws Exception
         assertThat(annotatedElement.getRevision(), same(rev3));
     }
 
+    @Test
+    public void testBlameStopsWhenEntirelyAnnotated() throws Exception
+    {
+        Revision rev1 = new Revision("rev1");
+        Revision rev2 = new Revision("rev2");
+        Revision rev3 = new Revision("rev3");
+
+        AnnotatedContent<Revision, String> annotatedContent = blameManager.blame(null, rev3, Arrays.asList(
+            "a", "b", "c"));
+
+        annotatedContent = blameManager.blame(annotatedContent, rev2, Arrays.asList("x", "y"));
+
+        assertThat(annotatedContent.isEntirelyAnnotated(), is(true));
+
+        // The older revisions are not even read anymore
+        List<String> unreadable = new AbstractList<String>()
+        {
+            @Override
+            public String get(int index)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int size()
+            {
+                return 1;
+            }
+
+            @Override
+            public Iterator<String> iterator()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+        annotatedContent = blameManager.blame(annotatedContent, rev1, unreadable);
+
+        assertThat(annotatedContent.getOldestRevision(), same(rev1));
+        for (AnnotatedElement<Revision, String> annotatedElement : annotatedContent) {
+            assertThat(annotatedElement.getRevision(), same(rev3));
+        }
+    }
+
+    @Test
+    public void testBlameRepeatedElements() throws Exception
+    {
+        Revision rev1 = new Revision("rev1");
+        Revision rev2 = new Revision("rev2");
+        Revision rev3 = new Revision("rev3");
+
+        AnnotatedContent<Revision, String> annotatedContent = blameManager.blame(null, rev3, Arrays.asList(
+            "}", "a", "}", "b", "}"));
+
+        annotatedContent = blameManager.blame(annotatedContent, rev2, Arrays.asList("other", "a", "}", "}"));
+
+        assertThat(annotatedContent.isEntirelyAnnotated(), is(false));
+
+        annotatedContent = blameManager.blame(annotatedContent, rev1, Arrays.asList("a", "other"));
+        annotatedContent = blameManager.blame(annotatedContent, null, null);
+
+        assertThat(annotatedContent.isEntirelyAnnotated(), is(true));
+
+        Iterator<AnnotatedElement<Revision, String>> iter = annotatedContent.iterator();
+        assertThat(iter.next().getRevision(), same(rev3));
+        assertThat(iter.next().getRevision(), same(rev1));
+        assertThat(iter.next().getRevision(), same(rev2));
+        assertThat(iter.next().getRevision(), same(rev3));
+        assertThat(iter.next().getRevision(), same(rev2));
+        assertThat(iter.hasNext(), is(false));
+    }
 }
@@ -20,6 +20,7 @@
 
 package org.xwiki.blame.script;
 
+import java.util.Collections;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -107,6 +108,10 @@ public <R, E> AnnotatedContent<R, E> blame(AnnotatedContent<R, E> content, R rev
     public <R> AnnotatedContent<R, String> blame(AnnotatedContent<R, String> content, R revision, String previous) {
         setError(null);
         try {
+            // Don't split the previous content when there's nothing left to annotate
+            if (content != null && content.isEntirelyAnnotated()) {
+                return blameManager.blame(content, revision, Collections.<String>emptyList());
+            }
             return blameManager.blame(content, revision, lineSplitter.split(previous));
         } catch (Exception e) {
             setError(e);
@@ -0,0 +1,49 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * A conflict found during a 3 ways merge: the next and the current versions both modified the same part of the common
+ * ancestor in incompatible ways.
+ *
+ * @param <E> the type of compared elements
+ * @version $Id$
+ * @since 7.0M1
+ */
+@Unstable
+public interface Conflict<E>
+{
+    /**
+     * @return the index in the common ancestor where the conflict starts
+     */
+    int getIndex();
+
+    /**
+     * @return the modification made in the current version
+     */
+    Delta<E> getDeltaCurrent();
+
+    /**
+     * @return the modification made in the next version
+     */
+    Delta<E> getDeltaNext();
+}
@@ -21,6 +21,8 @@
 
 import java.util.HashMap;
 
+import org.xwiki.stability.Unstable;
+
 /**
  * Setup diff behavior.
  *
@@ -29,5 +31,118 @@
  */
 public class DiffConfiguration<E> extends HashMap<String, Object>
 {
+    /**
+     * The name of the key used to setup the algorithm used to compare the lists.
+     *
+     * @since 7.0M1
+     */
+    public static final String KEY_ALGORITHM = "algorithm";
+
+    /**
+     * The name of the key used to setup the maximum time the diff can take.
+     *
+     * @since 7.0M1
+     */
+    public static final String KEY_MAXTIME = "maxtime";
+
+    /**
+     * The name of the key used to setup the maximum number of differences the diff is searching for.
+     *
+     * @since 7.0M1
+     */
+    public static final String KEY_MAXEDITDISTANCE = "maxeditdistance";
+
     private static final long serialVersionUID = 1L;
+
+    /**
+     * The algorithms available to compare two lists.
+     *
+     * @version $Id$
+     * @since 7.0M1
+     */
+    @Unstable
+    public enum Algorithm
+    {
+        /**
+         * Myers algorithm, producing the smallest possible patch.
+         */
+        MYERS,
+
+        /**
+         * Patience algorithm: the elements appearing only once in both lists are matched first and the gaps between
+         * them are compared with {@link #MYERS}. The patch might be a bit bigger but it usually follows more closely
+         * the structure of the content (it does not align unrelated lines like blank lines or closing brackets).
+         */
+        PATIENCE
+    }
+
+    /**
+     * @param algorithm the algorithm to use to compare the lists. Default is {@link Algorithm#MYERS}.
+     * @since 7.0M1
+     */
+    @Unstable
+    public void setAlgorithm(Algorithm algorithm)
+    {
+        put(KEY_ALGORITHM, algorithm);
+    }
+
+    /**
+     * @return the algorithm to use to compare the lists. Default is {@link Algorithm#MYERS}.
+     * @since 7.0M1
+     */
+    @Unstable
+    public Algorithm getAlgorithm()
+    {
+        return containsKey(KEY_ALGORITHM) ? (Algorithm) get(KEY_ALGORITHM) : Algorithm.MYERS;
+    }
+
+    /**
+     * When the diff takes longer than this, the parts of the lists not yet compared are considered entirely replaced
+     * (which produces a bigger but still valid patch) and a warning is added to the log of the result.
+     *
+     * @param maxTime the maximum time the diff can take, in milliseconds. Default is 0 which means no limit.
+     * @since 7.0M1
+     */
+    @Unstable
+    public void setMaxTime(long maxTime)
+    {
+        put(KEY_MAXTIME, maxTime);
+    }
+
+    /**
+     * @return the maximum time the diff can take, in milliseconds. Default is 0 which means no limit.
+     * @since 7.0M1
+     */
+    @Unstable
+    public long getMaxTime()
+    {
+        return containsKey(KEY_MAXTIME) ? ((Number) get(KEY_MAXTIME)).longValue() : 0;
+    }
+
+    /**
+     * When the lists (or some independent parts of the lists) have more differences than this they are considered
+     * entirely replaced (which produces a bigger but still valid patch) and a warning is added to the log of the
+     * result. The cost of the diff is proportional to the number of differences so this bounds the time and memory
+     * needed for very different lists.
+     *
+     * @param maxEditDistance the maximum number of inserted and deleted elements the diff is searching for. Default
+     *            is 0 which means no limit.
+     * @since 7.0M1
+     */
+    @Unstable
+    public void setMaxEditDistance(int maxEditDistance)
+    {
+        put(KEY_MAXEDITDISTANCE, maxEditDistance);
+    }
+
+    /**
+     * @return the maximum number of inserted and deleted elements the diff is searching for. Default is 0 which means
+     *         no limit.
+     * @since 7.0M1
+     */
+    @Unstable
+    public int getMaxEditDistance()
+    {
+        return containsKey(KEY_MAXEDITDISTANCE) ? ((Number) get(KEY_MAXEDITDISTANCE)).intValue() : 0;
+    }
 }
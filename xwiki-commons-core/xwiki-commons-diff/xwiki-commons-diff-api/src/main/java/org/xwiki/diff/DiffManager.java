@@ -22,6 +22,7 @@
 import java.util.List;
 
 import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
 
 /**
  * Various diff/merge tools.
@@ -43,6 +44,23 @@
      */
     <E> DiffResult<E> diff(List<E> previous, List<E> next, DiffConfiguration<E> configuration) throws DiffException;
 
+    /**
+     * Produce a diff between two versions already converted to tokens, equal elements being represented by the same
+     * token. Cheaper than {@link #diff(List, List, DiffConfiguration)} when the caller already knows which elements
+     * are equal (for example the sub-elements of two versions of a composite element).
+     *
+     * @param previous the tokens of the previous version
+     * @param next the tokens of the next version
+     * @param tokenCount all the tokens are between 0 (inclusive) and this number (exclusive)
+     * @param configuration the configuration of the diff behavior
+     * @return the result of the diff, the compared elements being the tokens
+     * @throws DiffException error when executing the diff
+     * @since 7.0M1
+     */
+    @Unstable
+    DiffResult<Integer> diff(int[] previous, int[] next, int tokenCount, DiffConfiguration<?> configuration)
+        throws DiffException;
+
     /**
      * Execute a 3-way merge on provided versions.
      *
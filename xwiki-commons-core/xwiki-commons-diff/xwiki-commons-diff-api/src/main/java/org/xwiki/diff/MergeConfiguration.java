@@ -23,6 +23,9 @@
 
 /**
  * Setup merge behavior.
+ * <p>
+ * The options of {@link DiffConfiguration} (like {@link DiffConfiguration#KEY_MAXTIME}) can also be set here, they are
+ * used when comparing the versions to merge.
  *
  * @param <E> the type of compared elements
  * @version $Id$
@@ -22,6 +22,7 @@
 import java.util.List;
 
 import org.xwiki.logging.LogQueue;
+import org.xwiki.stability.Unstable;
 
 /**
  * @param <E> the type of compared elements
@@ -53,4 +54,11 @@
      * @return the result of the 3 ways merge
      */
     List<E> getMerged();
+
+    /**
+     * @return the conflicts found during the merge, in the order of the common ancestor, empty if there was none
+     * @since 7.0M1
+     */
+    @Unstable
+    List<Conflict<E>> getConflicts();
 }
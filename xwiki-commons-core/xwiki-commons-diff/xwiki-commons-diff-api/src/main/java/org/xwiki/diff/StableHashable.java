@@ -0,0 +1,40 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * Implemented by the elements which can provide a hash of their content that is stable across executions, unlike
+ * most {@link Object#hashCode()} implementations. Diffs between lists of such elements (or of {@link String}s) can be
+ * cached based on the content of the lists.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+@Unstable
+public interface StableHashable
+{
+    /**
+     * @return a hash of the content of the element, the same for equal elements and as long as the element is not
+     *         modified
+     */
+    String getStableHash();
+}
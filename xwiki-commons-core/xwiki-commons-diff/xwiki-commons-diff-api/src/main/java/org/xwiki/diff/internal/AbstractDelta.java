@@ -60,18 +60,6 @@ public AbstractDelta(Chunk<E> previous, Chunk<E> next, Type type)
         this.next = next;
     }
 
-    /**
-     * @param original the chunk before the modification
-     * @param revised the chunk after the modification
-     * @param type the type of modification applied to the list
-     */
-    public AbstractDelta(difflib.Chunk<E> original, difflib.Chunk<E> revised, Type type)
-    {
-        this.type = type;
-        this.previous = new DefaultChunk<E>(original);
-        this.next = new DefaultChunk<E>(revised);
-    }
-
     @Override
     public Type getType()
     {
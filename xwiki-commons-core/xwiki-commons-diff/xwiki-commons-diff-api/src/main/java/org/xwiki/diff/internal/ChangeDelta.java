@@ -42,15 +42,6 @@ public ChangeDelta(Chunk<E> previous, Chunk<E> next)
         super(previous, next, Type.CHANGE);
     }
 
-    /**
-     * @param original the chunk before the modification
-     * @param revised the chunk after the modification
-     */
-    public ChangeDelta(difflib.Chunk<E> original, difflib.Chunk<E> revised)
-    {
-        super(original, revised, Type.CHANGE);
-    }
-
     @Override
     public void apply(List<E> target) throws PatchException
     {
@@ -54,14 +54,6 @@ public DefaultChunk(int index, List<E> elements)
         this.elements = elements;
     }
 
-    /**
-     * @param chunk the chunk to convert
-     */
-    public DefaultChunk(difflib.Chunk<E> chunk)
-    {
-        this(chunk.getPosition(), chunk.getLines());
-    }
-
     @Override
     public void verify(List<E> target) throws PatchException
     {
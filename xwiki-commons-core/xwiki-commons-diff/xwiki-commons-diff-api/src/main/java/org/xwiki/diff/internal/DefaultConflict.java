@@ -0,0 +1,83 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.internal;
+
+import org.xwiki.diff.Conflict;
+import org.xwiki.diff.Delta;
+
+/**
+ * Default implementation of {@link Conflict}.
+ *
+ * @param <E> the type of compared elements
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class DefaultConflict<E> implements Conflict<E>
+{
+    /**
+     * @see #getIndex()
+     */
+    private final int index;
+
+    /**
+     * @see #getDeltaCurrent()
+     */
+    private final Delta<E> deltaCurrent;
+
+    /**
+     * @see #getDeltaNext()
+     */
+    private final Delta<E> deltaNext;
+
+    /**
+     * @param deltaCurrent the modification made in the current version
+     * @param deltaNext the modification made in the next version
+     */
+    public DefaultConflict(Delta<E> deltaCurrent, Delta<E> deltaNext)
+    {
+        this.index = Math.min(deltaCurrent.getPrevious().getIndex(), deltaNext.getPrevious().getIndex());
+        this.deltaCurrent = deltaCurrent;
+        this.deltaNext = deltaNext;
+    }
+
+    @Override
+    public int getIndex()
+    {
+        return this.index;
+    }
+
+    @Override
+    public Delta<E> getDeltaCurrent()
+    {
+        return this.deltaCurrent;
+    }
+
+    @Override
+    public Delta<E> getDeltaNext()
+    {
+        return this.deltaNext;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Conflict between [" + this.deltaCurrent + "] and [" + this.deltaNext + "]";
+    }
+}
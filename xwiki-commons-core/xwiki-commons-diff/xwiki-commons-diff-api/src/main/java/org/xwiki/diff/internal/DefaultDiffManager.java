@@ -22,57 +22,280 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Singleton;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.diff.Chunk;
+import org.xwiki.diff.Conflict;
 import org.xwiki.diff.Delta;
-import org.xwiki.diff.Delta.Type;
 import org.xwiki.diff.DiffConfiguration;
+import org.xwiki.diff.DiffConfiguration.Algorithm;
 import org.xwiki.diff.DiffException;
 import org.xwiki.diff.DiffManager;
 import org.xwiki.diff.DiffResult;
 import org.xwiki.diff.MergeConfiguration;
-import org.xwiki.diff.MergeConfiguration.Version;
 import org.xwiki.diff.MergeException;
 import org.xwiki.diff.MergeResult;
 import org.xwiki.diff.Patch;
-
-import difflib.DiffUtils;
+import org.xwiki.logging.LogQueue;
 
 /**
  * Default implementation of {@link DiffManager}.
+ * <p>
+ * The common prefix and suffix of the compared lists are skipped and the remaining elements are converted to int tokens
+ * (see {@link ElementTokenizer}) before being compared with the algorithm indicated in the {@link DiffConfiguration}
+ * (see {@link MyersDiff} and {@link PatienceDiff}).
+ * <p>
+ * A 3 ways merge splits the common ancestor at the elements left unchanged by both versions and merges the regions in
+ * between independently (see {@link MergeRegion}). For big contents the two diffs and the regions are computed in
+ * parallel.
  *
  * @version $Id$
  */
 @Component
 @Singleton
-public class DefaultDiffManager implements DiffManager
+public class DefaultDiffManager implements DiffManager, Disposable
 {
+    /**
+     * The minimum size of the common ancestor for the diffs and the regions of a merge to be computed in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 10000;
+
+    /**
+     * The maximum number of threads used to run the big diffs and merges in parallel, whatever the number of
+     * concurrent merges (the pool is shared by all of them).
+     */
+    private static final int MAX_PARALLELISM = 4;
+
+    /**
+     * Merges a range of regions, splitting it in two when it covers a big part of the common ancestor.
+     *
+     * @param <E> the type of compared elements
+     */
+    private static class MergeTask<E> extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final transient DiffManager diffManager;
+
+        private final transient List<MergeRegion<E>> regions;
+
+        private final int from;
+
+        private final int to;
+
+        private final transient MergeConfiguration<E> configuration;
+
+        MergeTask(DiffManager diffManager, List<MergeRegion<E>> regions, int from, int to,
+            MergeConfiguration<E> configuration)
+        {
+            this.diffManager = diffManager;
+            this.regions = regions;
+            this.from = from;
+            this.to = to;
+            this.configuration = configuration;
+        }
+
+        @Override
+        protected void compute()
+        {
+            int size = this.regions.get(this.to - 1).getEnd() - this.regions.get(this.from).getStart();
+
+            if (this.to - this.from > 1 && size >= PARALLEL_THRESHOLD) {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new MergeTask<E>(this.diffManager, this.regions, this.from, middle, this.configuration),
+                    new MergeTask<E>(this.diffManager, this.regions, middle, this.to, this.configuration));
+            } else {
+                try {
+                    for (int i = this.from; i < this.to; ++i) {
+                        this.regions.get(i).merge(this.diffManager, this.configuration);
+                    }
+                } catch (MergeException e) {
+                    completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Used to run the big diffs and merges in parallel, created the first time it's needed and shared by all the
+     * merges.
+     */
+    private ForkJoinPool pool;
+
     @Override
-    public <E> DiffResult<E> diff(List<E> previous, List<E> next, DiffConfiguration<E> diff) throws DiffException
+    public <E> DiffResult<E> diff(List<E> previous, List<E> next, DiffConfiguration<E> configuration)
+        throws DiffException
     {
+        long startTime = System.nanoTime();
+
         DefaultDiffResult<E> result = new DefaultDiffResult<E>(previous, next);
 
-        // DiffUtils#diff does not support null
-        Patch<E> patch;
-        if (previous == null || previous.isEmpty()) {
-            patch = new DefaultPatch<E>();
-            if (next != null && !next.isEmpty()) {
-                patch.add(new InsertDelta<E>(new DefaultChunk<E>(0, Collections.<E>emptyList()), new DefaultChunk<E>(
-                    0, next)));
+        DiffConfiguration<E> diffConfiguration = configuration != null ? configuration : new DiffConfiguration<E>();
+
+        result.setPatch(createPatch(toRandomAccess(previous), toRandomAccess(next), diffConfiguration, startTime,
+            result.getLog()));
+
+        return result;
+    }
+
+    @Override
+    public DiffResult<Integer> diff(int[] previous, int[] next, int tokenCount, DiffConfiguration<?> configuration)
+        throws DiffException
+    {
+        long startTime = System.nanoTime();
+
+        List<Integer> previousTokens = new TokenList(previous);
+        List<Integer> nextTokens = new TokenList(next);
+
+        DefaultDiffResult<Integer> result = new DefaultDiffResult<Integer>(previousTokens, nextTokens);
+
+        MyersDiff engine = diff(previous, next, tokenCount,
+            configuration != null ? configuration : new DiffConfiguration<Integer>(), startTime, result.getLog());
+
+        DefaultPatch<Integer> patch = new DefaultPatch<Integer>();
+        addDeltas(patch, engine, previousTokens, nextTokens, 0, previous.length, next.length);
+        result.setPatch(patch);
+
+        return result;
+    }
+
+    private <E> List<E> toRandomAccess(List<E> list)
+    {
+        if (list == null) {
+            return Collections.emptyList();
+        }
+
+        return list instanceof RandomAccess ? list : new ArrayList<E>(list);
+    }
+
+    private <E> Patch<E> createPatch(List<E> previous, List<E> next, DiffConfiguration<E> configuration,
+        long startTime, LogQueue log)
+    {
+        DefaultPatch<E> patch = new DefaultPatch<E>();
+
+        // Skip the common prefix and suffix before converting anything
+        int start = 0;
+        int previousEnd = previous.size();
+        int nextEnd = next.size();
+        while (start < previousEnd && start < nextEnd && Objects.equals(previous.get(start), next.get(start))) {
+            ++start;
+        }
+        while (previousEnd > start && nextEnd > start
+            && Objects.equals(previous.get(previousEnd - 1), next.get(nextEnd - 1))) {
+            --previousEnd;
+            --nextEnd;
+        }
+
+        if (start == previousEnd || start == nextEnd) {
+            if (start < previousEnd || start < nextEnd) {
+                patch.add(createDelta(previous, start, previousEnd, next, start, nextEnd));
             }
-        } else if (next == null || next.isEmpty()) {
-            patch = new DefaultPatch<E>();
-            patch.add(new DeleteDelta<E>(new DefaultChunk<E>(0, previous), new DefaultChunk<E>(0, Collections
-                .<E>emptyList())));
         } else {
-            patch = new DefaultPatch<E>(DiffUtils.diff(previous, next));
+            ElementTokenizer<E> tokenizer = new ElementTokenizer<E>();
+            int[] previousTokens = tokenizer.tokenize(previous, start, previousEnd);
+            int[] nextTokens = tokenizer.tokenize(next, start, nextEnd);
+
+            MyersDiff engine =
+                diff(previousTokens, nextTokens, tokenizer.getTokenCount(), configuration, startTime, log);
+
+            addDeltas(patch, engine, previous, next, start, previousTokens.length, nextTokens.length);
         }
 
-        result.setPatch(patch);
+        return patch;
+    }
 
-        return result;
+    private MyersDiff diff(int[] previousTokens, int[] nextTokens, int tokenCount, DiffConfiguration<?> configuration,
+        long startTime, LogQueue log)
+    {
+        MyersDiff engine;
+        if (configuration.getAlgorithm() == Algorithm.PATIENCE) {
+            engine = new PatienceDiff(previousTokens, nextTokens, tokenCount);
+        } else {
+            engine = new MyersDiff(previousTokens, nextTokens);
+        }
+        engine.setMaxEditDistance(configuration.getMaxEditDistance());
+        if (configuration.getMaxTime() > 0) {
+            engine.setDeadline(startTime + TimeUnit.MILLISECONDS.toNanos(configuration.getMaxTime()));
+        }
+
+        engine.diff();
+
+        logBudget(engine, configuration, log);
+
+        return engine;
+    }
+
+    private void logBudget(MyersDiff engine, DiffConfiguration<?> configuration, LogQueue log)
+    {
+        if (engine.isDeadlineExceeded()) {
+            log.warn("The diff took more than [{}] ms: [{}] previous elements and [{}] next elements"
+                + " have been considered entirely replaced without being compared", configuration.getMaxTime(),
+                engine.getApproximatedPreviousCount(), engine.getApproximatedNextCount());
+        } else if (engine.isEditDistanceExceeded()) {
+            log.warn("More than [{}] differences were found: [{}] previous elements and [{}] next elements"
+                + " have been considered entirely replaced without being compared",
+                configuration.getMaxEditDistance(), engine.getApproximatedPreviousCount(),
+                engine.getApproximatedNextCount());
+        }
+    }
+
+    private <E> void addDeltas(DefaultPatch<E> patch, MyersDiff engine, List<E> previous, List<E> next, int offset,
+        int previousSize, int nextSize)
+    {
+        int x = 0;
+        int y = 0;
+        while (x < previousSize || y < nextSize) {
+            if (x < previousSize && y < nextSize && !engine.isPreviousChanged(x) && !engine.isNextChanged(y)) {
+                ++x;
+                ++y;
+            } else {
+                int xstart = x;
+                int ystart = y;
+                while (x < previousSize && engine.isPreviousChanged(x)) {
+                    ++x;
+                }
+                while (y < nextSize && engine.isNextChanged(y)) {
+                    ++y;
+                }
+
+                patch.add(createDelta(previous, offset + xstart, offset + x, next, offset + ystart, offset + y));
+            }
+        }
+    }
+
+    private <E> Delta<E> createDelta(List<E> previous, int previousStart, int previousEnd, List<E> next,
+        int nextStart, int nextEnd)
+    {
+        Chunk<E> previousChunk = new DefaultChunk<E>(previousStart, copy(previous, previousStart, previousEnd));
+        Chunk<E> nextChunk = new DefaultChunk<E>(nextStart, copy(next, nextStart, nextEnd));
+
+        Delta<E> delta;
+        if (previousStart == previousEnd) {
+            delta = new InsertDelta<E>(previousChunk, nextChunk);
+        } else if (nextStart == nextEnd) {
+            delta = new DeleteDelta<E>(previousChunk, nextChunk);
+        } else {
+            delta = new ChangeDelta<E>(previousChunk, nextChunk);
+        }
+
+        return delta;
+    }
+
+    private <E> List<E> copy(List<E> list, int fromIndex, int toIndex)
+    {
+        return fromIndex < toIndex ? new ArrayList<E>(list.subList(fromIndex, toIndex)) : Collections.<E>emptyList();
     }
 
     @Override
@@ -81,12 +304,21 @@ public <E> MergeResult<E> merge(List<E> commonAncestor, List<E> next, List<E> cu
     {
         DefaultMergeResult<E> mergeResult = new DefaultMergeResult<E>(commonAncestor, next, current);
 
+        DiffConfiguration<E> diffConfiguration = toDiffConfiguration(configuration);
+
+        // The two diffs are independent so the second one is computed in parallel for big contents
+        ForkJoinTask<DiffResult<E>> diffCurrentTask = null;
+        if (!current.isEmpty() && isParallel(commonAncestor)) {
+            diffCurrentTask = getPool().submit(createDiffTask(commonAncestor, current, diffConfiguration));
+        }
+
         // Get diff between common ancestor and next version
 
         DiffResult<E> diffNextResult;
         try {
-            diffNextResult = diff(commonAncestor, next, null);
+            diffNextResult = diff(commonAncestor, next, diffConfiguration);
         } catch (DiffException e) {
+            cancel(diffCurrentTask);
             throw new MergeException("Faile to diff between common ancestor and next version", e);
         }
         mergeResult.getLog().addAll(diffNextResult.getLog());
@@ -97,6 +329,7 @@ public <E> MergeResult<E> merge(List<E> commonAncestor, List<E> next, List<E> cu
 
         if (patchNext.isEmpty()) {
             // No change so nothing to do
+            cancel(diffCurrentTask);
             return mergeResult;
         }
 
@@ -110,14 +343,20 @@ public <E> MergeResult<E> merge(List<E> commonAncestor, List<E> next, List<E> cu
                 // The new modification was already applied
                 mergeResult.getLog().warn("The modification was already applied");
             } else {
-                // The current version has been replaced by an empty string
-                mergeResult.getLog().error("The current value is empty");
+                // The current version has been replaced by an empty string (the conflict is logged as an error)
+                mergeResult.addConflict(
+                    new DefaultConflict<E>(createDelta(commonAncestor, 0, commonAncestor.size(), current, 0, 0),
+                        createDelta(commonAncestor, 0, commonAncestor.size(), next, 0, next.size())));
             }
         } else {
             // Get diff between common ancestor and current version
             DiffResult<E> diffCurrentResult;
             try {
-                diffCurrentResult = diff(commonAncestor, current, null);
+                if (diffCurrentTask != null) {
+                    diffCurrentResult = getDiffResult(diffCurrentTask);
+                } else {
+                    diffCurrentResult = diff(commonAncestor, current, diffConfiguration);
+                }
             } catch (DiffException e) {
                 throw new MergeException("Faile to diff between common ancestor and current version", e);
             }
@@ -128,47 +367,87 @@ public <E> MergeResult<E> merge(List<E> commonAncestor, List<E> next, List<E> cu
             if (patchCurrent.isEmpty()) {
                 mergeResult.setMerged(next);
             } else {
-                merge(mergeResult, commonAncestor, patchNext, patchCurrent, configuration);
+                merge(mergeResult, toRandomAccess(commonAncestor), patchNext, patchCurrent, configuration);
             }
         }
 
         return mergeResult;
     }
 
-    private <E> int fallback(List<E> commonAncestor, Delta<E> deltaNext, Delta<E> deltaCurrent, List<E> merged,
-        int currentIndex, MergeConfiguration<E> configuration)
+    private <E> Callable<DiffResult<E>> createDiffTask(final List<E> previous, final List<E> next,
+        final DiffConfiguration<E> configuration)
+    {
+        return new Callable<DiffResult<E>>()
+        {
+            @Override
+            public DiffResult<E> call() throws DiffException
+            {
+                return diff(previous, next, configuration);
+            }
+        };
+    }
+
+    private <E> DiffResult<E> getDiffResult(ForkJoinTask<DiffResult<E>> task) throws DiffException
+    {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DiffException) {
+                throw (DiffException) e.getCause();
+            }
+            throw new DiffException("Failed to diff", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DiffException("Interrupted while waiting for the diff", e);
+        }
+    }
+
+    private void cancel(ForkJoinTask< ? > task)
     {
-        int newIndex = currentIndex;
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    private <E> DiffConfiguration<E> toDiffConfiguration(MergeConfiguration<E> configuration)
+    {
+        DiffConfiguration<E> diffConfiguration = new DiffConfiguration<E>();
 
-        Version fallbackVersion;
+        // The merge configuration can contain diff options
         if (configuration != null) {
-            fallbackVersion = configuration.getFallbackOnConflict();
-        } else {
-            fallbackVersion = Version.CURRENT;
+            diffConfiguration.putAll(configuration);
         }
 
-        switch (fallbackVersion) {
-            case NEXT:
-                newIndex = apply(deltaNext, merged, currentIndex);
-                break;
-            case PREVIOUS:
-                for (; newIndex < deltaNext.getPrevious().getIndex(); ++newIndex) {
-                    merged.add(commonAncestor.get(newIndex));
-                }
-                for (; newIndex < deltaCurrent.getPrevious().getIndex(); ++newIndex) {
-                    merged.add(commonAncestor.get(newIndex));
-                }
-                break;
-            default:
-                // CURRENT is the default
-                newIndex = apply(deltaCurrent, merged, currentIndex);
-                break;
+        return diffConfiguration;
+    }
+
+    private boolean isParallel(List< ? > commonAncestor)
+    {
+        return commonAncestor.size() >= PARALLEL_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    private synchronized ForkJoinPool getPool()
+    {
+        if (this.pool == null) {
+            this.pool = new ForkJoinPool(Math.min(Runtime.getRuntime().availableProcessors(), MAX_PARALLELISM));
         }
 
-        return newIndex;
+        return this.pool;
+    }
+
+    @Override
+    public synchronized void dispose() throws ComponentLifecycleException
+    {
+        if (this.pool != null) {
+            this.pool.shutdownNow();
+            this.pool = null;
+        }
     }
 
     /**
+     * Split the common ancestor in regions which can be merged independently (see {@link MergeRegion}), merge them (in
+     * parallel for big contents) and concatenate the result with the elements left unchanged between them.
+     *
      * @param <E> the type of compared elements
      * @param mergeResult the result of the merge
      * @param commonAncestor the common ancestor of the two versions of the content to compare
@@ -180,178 +459,40 @@ private <E> int fallback(List<E> commonAncestor, Delta<E> deltaNext, Delta<E> de
     private <E> void merge(DefaultMergeResult<E> mergeResult, List<E> commonAncestor, Patch<E> patchNext,
         Patch<E> patchCurrent, MergeConfiguration<E> configuration) throws MergeException
     {
-        // Merge the two diffs
-        List<E> merged = new ArrayList<E>();
-
-        mergeResult.setMerged(merged);
-
-        Delta<E> deltaNext = nextElement(patchNext);
-        Delta<E> deltaCurrent = nextElement(patchCurrent);
-
-        // Before common ancestor
-        if (deltaCurrent.getType() == Type.INSERT && deltaCurrent.getPrevious().getIndex() == 0
-            && deltaNext.getType() == Type.INSERT && deltaNext.getPrevious().getIndex() == 0) {
-            merged.addAll(or(deltaCurrent.getNext().getElements(), deltaNext.getNext().getElements()));
-            deltaCurrent = nextElement(patchCurrent);
-            deltaNext = nextElement(patchNext);
-        } else {
-            if (deltaCurrent.getType() == Type.INSERT && deltaCurrent.getPrevious().getIndex() == 0) {
-                merged.addAll(deltaCurrent.getNext().getElements());
-                deltaCurrent = nextElement(patchCurrent);
-            }
-
-            if (deltaNext.getType() == Type.INSERT && deltaNext.getPrevious().getIndex() == 0) {
-                merged.addAll(deltaNext.getNext().getElements());
-                deltaNext = nextElement(patchNext);
-            }
-        }
-
-        // In common ancestor
-        int index = 0;
-        for (; index < commonAncestor.size(); ++index) {
-            if (isPreviousIndex(deltaCurrent, index)) {
-                // Modification in current
-                if (isPreviousIndex(deltaNext, index)) {
-                    // Modifications in both current and next at the same index
-                    if (deltaNext.equals(deltaCurrent)) {
-                        // Choose current
-                        index = apply(deltaCurrent, merged, index);
-                        if (deltaCurrent.getType() == Type.INSERT) {
-                            merged.add(commonAncestor.get(index));
-                        }
-                    } else if (deltaCurrent.getType() == Type.INSERT) {
-                        if (deltaNext.getType() == Type.INSERT) {
-                            merged.addAll(or(deltaNext.getNext().getElements(), deltaCurrent.getNext().getElements()));
-                            merged.add(commonAncestor.get(index));
-                        } else {
-                            index = apply(deltaCurrent, merged, index);
-                            index = apply(deltaNext, merged, index);
-                        }
-                    } else if (deltaNext.getType() == Type.INSERT) {
-                        index = apply(deltaNext, merged, index);
-                        index = apply(deltaCurrent, merged, index);
-                    } else {
-                        // Conflict
-                        logConflict(mergeResult, deltaCurrent, deltaNext);
-
-                        index = fallback(commonAncestor, deltaNext, deltaCurrent, merged, index, configuration);
-                    }
-
-                    deltaNext = nextElement(patchNext);
-                } else {
-                    index = apply(deltaCurrent, merged, index);
-                    if (deltaCurrent.getType() == Type.INSERT) {
-                        merged.add(commonAncestor.get(index));
-                    }
+        List<MergeRegion<E>> regions = MergeRegion.split(commonAncestor, patchNext, patchCurrent);
 
-                    if (deltaNext != null
-                        && deltaNext.getPrevious().getIndex() <= deltaCurrent.getPrevious().getLastIndex()) {
-                        // Conflict
-                        logConflict(mergeResult, deltaCurrent, deltaNext);
-                        deltaNext = nextElement(patchNext);
-                    }
-                }
-
-                deltaCurrent = nextElement(patchCurrent);
-            } else if (isPreviousIndex(deltaNext, index)) {
-                // Modification in next
-                index = apply(deltaNext, merged, index);
-                if (deltaNext.getType() == Type.INSERT) {
-                    merged.add(commonAncestor.get(index));
-                }
-
-                if (deltaCurrent != null
-                    && deltaCurrent.getPrevious().getIndex() <= deltaNext.getPrevious().getLastIndex()) {
-                    // Conflict
-                    logConflict(mergeResult, deltaCurrent, deltaNext);
-                    deltaCurrent = nextElement(patchCurrent);
+        if (regions.size() > 1 && isParallel(commonAncestor)) {
+            try {
+                getPool().submit(new MergeTask<E>(this, regions, 0, regions.size(), configuration)).get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof MergeException) {
+                    throw (MergeException) e.getCause();
                 }
-
-                deltaNext = nextElement(patchNext);
-            } else {
-                merged.add(commonAncestor.get(index));
+                throw new MergeException("Failed to merge", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MergeException("Interrupted while merging", e);
             }
-        }
-
-        // After common ancestor
-        if (deltaCurrent != null) {
-            merged.addAll(deltaCurrent.getNext().getElements());
-
-            if (deltaNext != null && !deltaCurrent.equals(deltaNext)) {
-                merged.addAll(deltaNext.getNext().getElements());
+        } else {
+            for (MergeRegion<E> region : regions) {
+                region.merge(this, configuration);
             }
-        } else if (deltaNext != null) {
-            merged.addAll(deltaNext.getNext().getElements());
-        }
-    }
-
-    private <E> List<E> or(List<E> previous, List<E> next) throws MergeException
-    {
-        DiffResult<E> diffCurrentResult;
-        try {
-            diffCurrentResult = diff(previous, next, null);
-        } catch (DiffException e) {
-            throw new MergeException("Faile to diff between two versions", e);
         }
 
-        List<E> result = new ArrayList<E>(previous.size() + next.size());
+        // Assemble the merged regions and the elements left unchanged by both versions between them
+        List<E> merged = new ArrayList<E>(commonAncestor.size());
         int index = 0;
-        for (Delta<E> delta : diffCurrentResult.getPatch()) {
-            if (delta.getPrevious().getIndex() > index) {
-                result.addAll(previous.subList(index, delta.getPrevious().getIndex()));
-            }
-
-            if (delta.getType() != Type.INSERT) {
-                result.addAll(delta.getPrevious().getElements());
+        for (MergeRegion<E> region : regions) {
+            merged.addAll(commonAncestor.subList(index, region.getStart()));
+            merged.addAll(region.getMerged());
+            for (Conflict<E> conflict : region.getConflicts()) {
+                mergeResult.addConflict(conflict);
             }
-            if (delta.getType() != Type.DELETE) {
-                result.addAll(delta.getNext().getElements());
-            }
-
-            index = delta.getPrevious().getLastIndex() + 1;
-        }
-
-        if (previous.size() > index) {
-            result.addAll(previous.subList(index, previous.size()));
-        }
-
-        return result;
-    }
 
-    private <E> void logConflict(DefaultMergeResult<E> mergeResult, Delta<E> deltaCurrent, Delta<E> deltaNext)
-    {
-        mergeResult.getLog().error("Conflict between [{}] and [{}]", deltaCurrent, deltaNext);
-    }
-
-    private <E> int apply(Delta<E> delta, List<E> merged, int currentIndex)
-    {
-        int index = currentIndex;
-
-        switch (delta.getType()) {
-            case DELETE:
-                index = delta.getPrevious().getLastIndex();
-                break;
-            case INSERT:
-                merged.addAll(delta.getNext().getElements());
-                break;
-            case CHANGE:
-                merged.addAll(delta.getNext().getElements());
-                index = delta.getPrevious().getLastIndex();
-                break;
-            default:
-                break;
+            index = region.getEnd();
         }
+        merged.addAll(commonAncestor.subList(index, commonAncestor.size()));
 
-        return index;
-    }
-
-    private <E> E nextElement(List<E> list)
-    {
-        return list != null && !list.isEmpty() ? list.remove(0) : null;
-    }
-
-    private <E> boolean isPreviousIndex(Delta<E> delta, int index)
-    {
-        return delta != null && delta.getPrevious().getIndex() == index;
+        mergeResult.setMerged(merged);
     }
 }
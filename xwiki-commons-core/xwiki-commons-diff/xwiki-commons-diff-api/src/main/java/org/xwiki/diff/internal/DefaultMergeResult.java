@@ -19,8 +19,11 @@
  */
 package org.xwiki.diff.internal;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import org.xwiki.diff.Conflict;
 import org.xwiki.diff.MergeResult;
 import org.xwiki.logging.LogQueue;
 
@@ -57,6 +60,11 @@
      */
     private LogQueue log = new LogQueue();
 
+    /**
+     * @see #getConflicts()
+     */
+    private List<Conflict<E>> conflicts = new ArrayList<Conflict<E>>();
+
     /**
      * @param commonAncestor the common ancestor
      * @param next the new version
@@ -109,4 +117,27 @@ public void setMerged(List<E> merged)
     {
         this.merged = merged;
     }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned list can't be modified, use {@link #addConflict(Conflict)} instead.
+     */
+    @Override
+    public List<Conflict<E>> getConflicts()
+    {
+        return Collections.unmodifiableList(this.conflicts);
+    }
+
+    /**
+     * Logs and remembers a conflict.
+     *
+     * @param conflict the conflict found during the merge
+     * @since 7.0M1
+     */
+    public void addConflict(Conflict<E> conflict)
+    {
+        this.log.error("Conflict between [{}] and [{}]", conflict.getDeltaCurrent(), conflict.getDeltaNext());
+        this.conflicts.add(conflict);
+    }
 }
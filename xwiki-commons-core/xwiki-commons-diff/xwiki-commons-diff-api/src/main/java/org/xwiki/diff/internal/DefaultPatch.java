@@ -24,7 +24,6 @@
 import java.util.ListIterator;
 
 import org.xwiki.diff.Delta;
-import org.xwiki.diff.DiffException;
 import org.xwiki.diff.Patch;
 import org.xwiki.diff.PatchException;
 
@@ -48,48 +47,6 @@ public DefaultPatch()
     {
     }
 
-    /**
-     * Convert {@link difflib.Patch} into {@link Patch}.
-     *
-     * @param patch the {@link difflib.Patch} to convert
-     * @throws DiffException error when converting the patch
-     */
-    public DefaultPatch(difflib.Patch<E> patch) throws DiffException
-    {
-        for (difflib.Delta<E> delta : patch.getDeltas()) {
-            add(toDelta(delta));
-        }
-    }
-
-    /**
-     * Convert {@link difflib.Delta} into {@link Delta}.
-     *
-     * @param delta the {@link difflib.Delta} to convert
-     * @return the {@link Delta}
-     * @throws DiffException error when converting the delta
-     */
-    private Delta<E> toDelta(difflib.Delta<E> delta) throws DiffException
-    {
-        Delta<E> newDelta;
-
-        switch (delta.getType()) {
-            case CHANGE:
-                newDelta = new ChangeDelta<E>(delta.getOriginal(), delta.getRevised());
-                break;
-            case DELETE:
-                newDelta = new DeleteDelta<E>(delta.getOriginal(), delta.getRevised());
-                break;
-            case INSERT:
-                newDelta = new InsertDelta<E>(delta.getOriginal(), delta.getRevised());
-                break;
-            default:
-                throw new DiffException(String.format("Failed to convert [%s] info [%s]. Unknown type [%s]", delta
-                    .getClass().getName(), Delta.class.getName(), delta.getType().toString()));
-        }
-
-        return newDelta;
-    }
-
     @Override
     public List<E> apply(List<E> target) throws PatchException
     {
@@ -41,15 +41,6 @@ public DeleteDelta(Chunk<E> previous, Chunk<E> next)
         super(previous, next, Type.DELETE);
     }
 
-    /**
-     * @param original the chunk before the modification
-     * @param revised the chunk after the modification
-     */
-    public DeleteDelta(difflib.Chunk<E> original, difflib.Chunk<E> revised)
-    {
-        super(original, revised, Type.DELETE);
-    }
-
     @Override
     public void apply(List<E> target) throws PatchException
     {
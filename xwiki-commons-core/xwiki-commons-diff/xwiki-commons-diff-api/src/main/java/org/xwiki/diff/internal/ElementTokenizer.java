@@ -0,0 +1,143 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.internal;
+
+import java.util.List;
+
+/**
+ * Associate each distinct element with an int token so that the diff algorithms only have to compare ints. Equal
+ * elements (according to {@link Object#equals(Object)}) get the same token.
+ * <p>
+ * The elements are indexed in an open addressing hash table to avoid allocating an entry and a boxed token for each
+ * distinct element.
+ *
+ * @param <E> the type of compared elements
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class ElementTokenizer<E>
+{
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Used as key for the null elements since null indicates a free slot.
+     */
+    private static final Object NULL = new Object();
+
+    private Object[] keys = new Object[INITIAL_CAPACITY];
+
+    private int[] hashes = new int[INITIAL_CAPACITY];
+
+    private int[] tokens = new int[INITIAL_CAPACITY];
+
+    private int size;
+
+    /**
+     * @param elements the list of elements
+     * @param fromIndex the index of the first element to convert (inclusive)
+     * @param toIndex the index of the last element to convert (exclusive)
+     * @return the tokens associated with the elements
+     */
+    public int[] tokenize(List<E> elements, int fromIndex, int toIndex)
+    {
+        int[] result = new int[toIndex - fromIndex];
+
+        for (int i = fromIndex; i < toIndex; ++i) {
+            result[i - fromIndex] = tokenize(elements.get(i));
+        }
+
+        return result;
+    }
+
+    /**
+     * @param element the element
+     * @return the token associated with the element
+     */
+    public int tokenize(E element)
+    {
+        Object key = element != null ? element : NULL;
+        int hash = hash(key);
+
+        int mask = this.keys.length - 1;
+        int index = hash & mask;
+        for (Object current = this.keys[index]; current != null; current = this.keys[index]) {
+            if (this.hashes[index] == hash && current.equals(key)) {
+                return this.tokens[index];
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        int token = this.size++;
+
+        this.keys[index] = key;
+        this.hashes[index] = hash;
+        this.tokens[index] = token;
+
+        // Keep the table at most half full
+        if (this.size * 2 > this.keys.length) {
+            resize();
+        }
+
+        return token;
+    }
+
+    private int hash(Object key)
+    {
+        int hash = key.hashCode();
+
+        // Spread the high bits since only the low bits are used as index
+        return hash ^ (hash >>> 16);
+    }
+
+    private void resize()
+    {
+        Object[] oldKeys = this.keys;
+        int[] oldHashes = this.hashes;
+        int[] oldTokens = this.tokens;
+
+        this.keys = new Object[oldKeys.length * 2];
+        this.hashes = new int[this.keys.length];
+        this.tokens = new int[this.keys.length];
+
+        int mask = this.keys.length - 1;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] != null) {
+                int index = oldHashes[i] & mask;
+                while (this.keys[index] != null) {
+                    index = (index + 1) & mask;
+                }
+
+                this.keys[index] = oldKeys[i];
+                this.hashes[index] = oldHashes[i];
+                this.tokens[index] = oldTokens[i];
+            }
+        }
+    }
+
+    /**
+     * @return the number of distinct elements found so far, all the tokens are between 0 (inclusive) and this number
+     *         (exclusive)
+     */
+    public int getTokenCount()
+    {
+        return this.size;
+    }
+}
@@ -41,15 +41,6 @@ public InsertDelta(Chunk<E> previous, Chunk<E> next)
         super(previous, next, Type.INSERT);
     }
 
-    /**
-     * @param original the chunk before the modification
-     * @param revised the chunk after the modification
-     */
-    public InsertDelta(difflib.Chunk<E> original, difflib.Chunk<E> revised)
-    {
-        super(original, revised, Type.INSERT);
-    }
-
     @Override
     public void apply(List<E> target) throws PatchException
     {
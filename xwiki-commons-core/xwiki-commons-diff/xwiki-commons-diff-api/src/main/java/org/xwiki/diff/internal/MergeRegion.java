@@ -0,0 +1,479 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.internal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.xwiki.diff.Conflict;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.Delta.Type;
+import org.xwiki.diff.DiffException;
+import org.xwiki.diff.DiffManager;
+import org.xwiki.diff.DiffResult;
+import org.xwiki.diff.MergeConfiguration;
+import org.xwiki.diff.MergeConfiguration.Version;
+import org.xwiki.diff.MergeException;
+
+/**
+ * A part of the common ancestor modified by the next and/or the current version and which can be merged independently
+ * of the rest of the common ancestor.
+ * <p>
+ * The common ancestor is split at the elements left unchanged by both versions (see
+ * {@link #split(List, List, List)}): the modifications of a region never touch the modifications of another region so
+ * the regions can be merged in any order, or in parallel, and then concatenated with the unchanged elements between
+ * them.
+ *
+ * @param <E> the type of compared elements
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class MergeRegion<E>
+{
+    private final List<E> commonAncestor;
+
+    /**
+     * The index of the first element of the region in the common ancestor.
+     */
+    private final int start;
+
+    /**
+     * The index following the last element of the region in the common ancestor.
+     */
+    private int end;
+
+    private final List<Delta<E>> deltasNext = new ArrayList<Delta<E>>();
+
+    private final List<Delta<E>> deltasCurrent = new ArrayList<Delta<E>>();
+
+    private final List<E> merged = new ArrayList<E>();
+
+    private final List<Conflict<E>> conflicts = new ArrayList<Conflict<E>>();
+
+    // Merge state
+
+    private int deltaNextIndex;
+
+    private int deltaCurrentIndex;
+
+    private Delta<E> deltaNext;
+
+    private Delta<E> deltaCurrent;
+
+    private Delta<E> lastDeltaNext;
+
+    private Delta<E> lastDeltaCurrent;
+
+    /**
+     * @param commonAncestor the common ancestor
+     * @param start the index of the first element of the region in the common ancestor
+     */
+    public MergeRegion(List<E> commonAncestor, int start)
+    {
+        this.commonAncestor = commonAncestor;
+        this.start = start;
+        this.end = start;
+    }
+
+    /**
+     * Group the modifications of the two versions in independent regions, separated by at least one element left
+     * unchanged by both versions.
+     *
+     * @param <E> the type of compared elements
+     * @param commonAncestor the common ancestor
+     * @param patchNext the modifications made by the next version
+     * @param patchCurrent the modifications made by the current version
+     * @return the regions, in the order of the common ancestor
+     */
+    public static <E> List<MergeRegion<E>> split(List<E> commonAncestor, List<Delta<E>> patchNext,
+        List<Delta<E>> patchCurrent)
+    {
+        List<MergeRegion<E>> regions = new ArrayList<MergeRegion<E>>();
+
+        Iterator<Delta<E>> nextIterator = patchNext.iterator();
+        Iterator<Delta<E>> currentIterator = patchCurrent.iterator();
+        Delta<E> next = nextOrNull(nextIterator);
+        Delta<E> current = nextOrNull(currentIterator);
+
+        MergeRegion<E> region = null;
+        while (next != null || current != null) {
+            boolean isNext =
+                current == null || (next != null && next.getPrevious().getIndex() <= current.getPrevious().getIndex());
+            Delta<E> delta = isNext ? next : current;
+
+            // A delta touching the last element of the region or the element just after belongs to the region
+            if (region == null || delta.getPrevious().getIndex() > region.end) {
+                region = new MergeRegion<E>(commonAncestor, delta.getPrevious().getIndex());
+                regions.add(region);
+            }
+            region.add(delta, isNext);
+
+            if (isNext) {
+                next = nextOrNull(nextIterator);
+            } else {
+                current = nextOrNull(currentIterator);
+            }
+        }
+
+        return regions;
+    }
+
+    private static <E> Delta<E> nextOrNull(Iterator<Delta<E>> iterator)
+    {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    private void add(Delta<E> delta, boolean isNext)
+    {
+        if (isNext) {
+            this.deltasNext.add(delta);
+        } else {
+            this.deltasCurrent.add(delta);
+        }
+
+        // An insertion is applied before the element at its index, which is thus part of the region
+        int deltaEnd = delta.getPrevious().getIndex() + Math.max(delta.getPrevious().size(), 1);
+        this.end = Math.max(this.end, Math.min(deltaEnd, this.commonAncestor.size()));
+    }
+
+    /**
+     * @return the index of the first element of the region in the common ancestor
+     */
+    public int getStart()
+    {
+        return this.start;
+    }
+
+    /**
+     * @return the index following the last element of the region in the common ancestor
+     */
+    public int getEnd()
+    {
+        return this.end;
+    }
+
+    /**
+     * @return the result of the merge of the region
+     */
+    public List<E> getMerged()
+    {
+        return this.merged;
+    }
+
+    /**
+     * @return the conflicts found in the region
+     */
+    public List<Conflict<E>> getConflicts()
+    {
+        return this.conflicts;
+    }
+
+    /**
+     * Merge the modifications of the region.
+     *
+     * @param diffManager used to combine insertions made at the same place
+     * @param configuration the configuration of the merge behavior
+     * @throws MergeException failed to merge
+     */
+    public void merge(DiffManager diffManager, MergeConfiguration<E> configuration) throws MergeException
+    {
+        nextDelta();
+        currentDelta();
+
+        // Before common ancestor
+        if (this.start == 0) {
+            mergeBefore(diffManager);
+        }
+
+        // In common ancestor
+        int index = this.start;
+        while (index < this.end) {
+            skipOvertaken(index);
+
+            if (isPreviousIndex(this.deltaCurrent, index)) {
+                index = mergeCurrent(index, diffManager, configuration);
+            } else if (isPreviousIndex(this.deltaNext, index)) {
+                index = mergeNext(index);
+            } else {
+                this.merged.add(this.commonAncestor.get(index));
+            }
+
+            ++index;
+        }
+
+        skipOvertaken(this.end);
+
+        // After common ancestor
+        if (this.end == this.commonAncestor.size()) {
+            mergeAfter();
+        }
+    }
+
+    private void mergeBefore(DiffManager diffManager) throws MergeException
+    {
+        if (isPreviousIndex(this.deltaCurrent, 0) && this.deltaCurrent.getType() == Type.INSERT
+            && isPreviousIndex(this.deltaNext, 0) && this.deltaNext.getType() == Type.INSERT) {
+            this.merged.addAll(or(this.deltaCurrent.getNext().getElements(), this.deltaNext.getNext().getElements(),
+                diffManager));
+            currentDelta();
+            nextDelta();
+        } else {
+            if (isPreviousIndex(this.deltaCurrent, 0) && this.deltaCurrent.getType() == Type.INSERT) {
+                this.merged.addAll(this.deltaCurrent.getNext().getElements());
+                currentDelta();
+            }
+
+            if (isPreviousIndex(this.deltaNext, 0) && this.deltaNext.getType() == Type.INSERT) {
+                this.merged.addAll(this.deltaNext.getNext().getElements());
+                nextDelta();
+            }
+        }
+    }
+
+    private int mergeCurrent(int currentIndex, DiffManager diffManager, MergeConfiguration<E> configuration)
+        throws MergeException
+    {
+        int index = currentIndex;
+
+        // Modification in current
+        if (isPreviousIndex(this.deltaNext, index)) {
+            // Modifications in both current and next at the same index
+            index = mergeSameIndex(index, diffManager, configuration);
+
+            nextDelta();
+        } else {
+            index = apply(this.deltaCurrent, index);
+            if (this.deltaCurrent.getType() == Type.INSERT) {
+                this.merged.add(this.commonAncestor.get(index));
+            }
+
+            if (this.deltaNext != null
+                && this.deltaNext.getPrevious().getIndex() <= this.deltaCurrent.getPrevious().getLastIndex()) {
+                // Conflict
+                addConflict(this.deltaCurrent, this.deltaNext);
+                nextDelta();
+            }
+        }
+
+        currentDelta();
+
+        return index;
+    }
+
+    private int mergeNext(int currentIndex)
+    {
+        // Modification in next
+        int index = apply(this.deltaNext, currentIndex);
+        if (this.deltaNext.getType() == Type.INSERT) {
+            this.merged.add(this.commonAncestor.get(index));
+        }
+
+        if (this.deltaCurrent != null
+            && this.deltaCurrent.getPrevious().getIndex() <= this.deltaNext.getPrevious().getLastIndex()) {
+            // Conflict
+            addConflict(this.deltaCurrent, this.deltaNext);
+            currentDelta();
+        }
+
+        nextDelta();
+
+        return index;
+    }
+
+    private int mergeSameIndex(int currentIndex, DiffManager diffManager, MergeConfiguration<E> configuration)
+        throws MergeException
+    {
+        int index = currentIndex;
+
+        if (this.deltaNext.equals(this.deltaCurrent)) {
+            // Choose current
+            index = apply(this.deltaCurrent, index);
+            if (this.deltaCurrent.getType() == Type.INSERT) {
+                this.merged.add(this.commonAncestor.get(index));
+            }
+        } else if (this.deltaCurrent.getType() == Type.INSERT) {
+            if (this.deltaNext.getType() == Type.INSERT) {
+                this.merged.addAll(or(this.deltaNext.getNext().getElements(), this.deltaCurrent.getNext()
+                    .getElements(), diffManager));
+                this.merged.add(this.commonAncestor.get(index));
+            } else {
+                index = apply(this.deltaCurrent, index);
+                index = apply(this.deltaNext, index);
+            }
+        } else if (this.deltaNext.getType() == Type.INSERT) {
+            index = apply(this.deltaNext, index);
+            index = apply(this.deltaCurrent, index);
+        } else {
+            // Conflict
+            addConflict(this.deltaCurrent, this.deltaNext);
+
+            index = fallback(index, configuration);
+        }
+
+        return index;
+    }
+
+    private void mergeAfter()
+    {
+        if (this.deltaCurrent != null) {
+            this.merged.addAll(this.deltaCurrent.getNext().getElements());
+
+            if (this.deltaNext != null && !this.deltaCurrent.equals(this.deltaNext)) {
+                this.merged.addAll(this.deltaNext.getNext().getElements());
+            }
+        } else if (this.deltaNext != null) {
+            this.merged.addAll(this.deltaNext.getNext().getElements());
+        }
+    }
+
+    /**
+     * A modification can start before the current index when a conflicting modification of the other version covering
+     * it has been applied: it's a conflict too.
+     */
+    private void skipOvertaken(int index)
+    {
+        while (this.deltaNext != null && this.deltaNext.getPrevious().getIndex() < index) {
+            if (this.lastDeltaCurrent != null) {
+                addConflict(this.lastDeltaCurrent, this.deltaNext);
+            }
+            nextDelta();
+        }
+
+        while (this.deltaCurrent != null && this.deltaCurrent.getPrevious().getIndex() < index) {
+            if (this.lastDeltaNext != null) {
+                addConflict(this.deltaCurrent, this.lastDeltaNext);
+            }
+            currentDelta();
+        }
+    }
+
+    private int fallback(int currentIndex, MergeConfiguration<E> configuration)
+    {
+        int newIndex = currentIndex;
+
+        Version fallbackVersion;
+        if (configuration != null) {
+            fallbackVersion = configuration.getFallbackOnConflict();
+        } else {
+            fallbackVersion = Version.CURRENT;
+        }
+
+        switch (fallbackVersion) {
+            case NEXT:
+                newIndex = apply(this.deltaNext, currentIndex);
+                break;
+            case PREVIOUS:
+                for (; newIndex < this.deltaNext.getPrevious().getIndex(); ++newIndex) {
+                    this.merged.add(this.commonAncestor.get(newIndex));
+                }
+                for (; newIndex < this.deltaCurrent.getPrevious().getIndex(); ++newIndex) {
+                    this.merged.add(this.commonAncestor.get(newIndex));
+                }
+                break;
+            default:
+                // CURRENT is the default
+                newIndex = apply(this.deltaCurrent, currentIndex);
+                break;
+        }
+
+        return newIndex;
+    }
+
+    private List<E> or(List<E> previous, List<E> next, DiffManager diffManager) throws MergeException
+    {
+        DiffResult<E> diffCurrentResult;
+        try {
+            diffCurrentResult = diffManager.diff(previous, next, null);
+        } catch (DiffException e) {
+            throw new MergeException("Faile to diff between two versions", e);
+        }
+
+        List<E> result = new ArrayList<E>(previous.size() + next.size());
+        int index = 0;
+        for (Delta<E> delta : diffCurrentResult.getPatch()) {
+            if (delta.getPrevious().getIndex() > index) {
+                result.addAll(previous.subList(index, delta.getPrevious().getIndex()));
+            }
+
+            if (delta.getType() != Type.INSERT) {
+                result.addAll(delta.getPrevious().getElements());
+            }
+            if (delta.getType() != Type.DELETE) {
+                result.addAll(delta.getNext().getElements());
+            }
+
+            index = delta.getPrevious().getLastIndex() + 1;
+        }
+
+        if (previous.size() > index) {
+            result.addAll(previous.subList(index, previous.size()));
+        }
+
+        return result;
+    }
+
+    private void addConflict(Delta<E> conflictCurrent, Delta<E> conflictNext)
+    {
+        this.conflicts.add(new DefaultConflict<E>(conflictCurrent, conflictNext));
+    }
+
+    private int apply(Delta<E> delta, int currentIndex)
+    {
+        int index = currentIndex;
+
+        switch (delta.getType()) {
+            case DELETE:
+                index = delta.getPrevious().getLastIndex();
+                break;
+            case INSERT:
+                this.merged.addAll(delta.getNext().getElements());
+                break;
+            case CHANGE:
+                this.merged.addAll(delta.getNext().getElements());
+                index = delta.getPrevious().getLastIndex();
+                break;
+            default:
+                break;
+        }
+
+        return index;
+    }
+
+    private void nextDelta()
+    {
+        this.lastDeltaNext = this.deltaNext;
+        this.deltaNext =
+            this.deltaNextIndex < this.deltasNext.size() ? this.deltasNext.get(this.deltaNextIndex++) : null;
+    }
+
+    private void currentDelta()
+    {
+        this.lastDeltaCurrent = this.deltaCurrent;
+        this.deltaCurrent =
+            this.deltaCurrentIndex < this.deltasCurrent.size() ? this.deltasCurrent.get(this.deltaCurrentIndex++)
+                : null;
+    }
+
+    private boolean isPreviousIndex(Delta<E> delta, int index)
+    {
+        return delta != null && delta.getPrevious().getIndex() == index;
+    }
+}
@@ -0,0 +1,471 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.internal;
+
+/**
+ * Linear space implementation of the Myers diff algorithm working on int tokens (see {@link ElementTokenizer}).
+ * <p>
+ * Based on "An O(ND) Difference Algorithm and Its Variations" by Eugene W. Myers: the middle snake of the shortest
+ * edit script is searched from both ends at the same time and the two halves are compared recursively. Only two
+ * arrays of diagonals are needed, whatever the number of differences.
+ * <p>
+ * The result is expressed as a flag for each element of both lists indicating if it's been deleted (previous list) or
+ * inserted (next list), see {@link #isPreviousChanged(int)} and {@link #isNextChanged(int)}.
+ * <p>
+ * The search can be bounded in time (see {@link #setDeadline(long)}) and in number of differences (see
+ * {@link #setMaxEditDistance(int)}). When a limit is reached the ranges still to compare are considered entirely
+ * replaced: the result is not minimal anymore but still valid.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class MyersDiff
+{
+    /**
+     * The number of diagonals to extend between two checks of the deadline.
+     */
+    private static final int DEADLINE_CHECK_INTERVAL = 1 << 16;
+
+    /**
+     * The tokens of the previous version.
+     */
+    protected final int[] previous;
+
+    /**
+     * The tokens of the next version.
+     */
+    protected final int[] next;
+
+    private final boolean[] previousChanged;
+
+    private final boolean[] nextChanged;
+
+    /**
+     * The furthest reaching x on each diagonal for the forward search.
+     */
+    private int[] forward;
+
+    /**
+     * The furthest reaching x on each diagonal for the backward search.
+     */
+    private int[] backward;
+
+    /**
+     * The index of the diagonal 0 in {@link #forward} and {@link #backward}.
+     */
+    private int diagonalOffset;
+
+    // State of the current middle snake search
+
+    private int minDiagonal;
+
+    private int maxDiagonal;
+
+    private int forwardMin;
+
+    private int forwardMax;
+
+    private int backwardMin;
+
+    private int backwardMax;
+
+    private int middlePrevious;
+
+    private int middleNext;
+
+    // Budget
+
+    private int maxEditDistance;
+
+    private boolean deadlineEnabled;
+
+    private long deadline;
+
+    private long work;
+
+    private long nextDeadlineCheck = DEADLINE_CHECK_INTERVAL;
+
+    private boolean editDistanceExceeded;
+
+    private boolean deadlineExceeded;
+
+    private int approximatedPreviousCount;
+
+    private int approximatedNextCount;
+
+    /**
+     * @param previous the tokens of the previous version
+     * @param next the tokens of the next version
+     */
+    public MyersDiff(int[] previous, int[] next)
+    {
+        this.previous = previous;
+        this.next = next;
+
+        this.previousChanged = new boolean[previous.length];
+        this.nextChanged = new boolean[next.length];
+    }
+
+    /**
+     * @param maxEditDistance the maximum number of differences to search for in a given range, 0 or less for no limit
+     */
+    public void setMaxEditDistance(int maxEditDistance)
+    {
+        this.maxEditDistance = maxEditDistance;
+    }
+
+    /**
+     * @param deadline the value of {@link System#nanoTime()} after which the remaining ranges should not be compared
+     */
+    public void setDeadline(long deadline)
+    {
+        this.deadline = deadline;
+        this.deadlineEnabled = true;
+    }
+
+    /**
+     * Compare the two lists.
+     */
+    public void diff()
+    {
+        diff(0, this.previous.length, 0, this.next.length);
+    }
+
+    /**
+     * Compare the provided ranges of the two lists.
+     *
+     * @param previousOffset the index of the first element to compare in the previous version
+     * @param previousLimit the index after the last element to compare in the previous version
+     * @param nextOffset the index of the first element to compare in the next version
+     * @param nextLimit the index after the last element to compare in the next version
+     */
+    protected void diff(int previousOffset, int previousLimit, int nextOffset, int nextLimit)
+    {
+        if (this.forward == null) {
+            int size = this.previous.length + this.next.length + 3;
+            this.forward = new int[size];
+            this.backward = new int[size];
+            this.diagonalOffset = this.next.length + 1;
+        }
+
+        compare(previousOffset, previousLimit, nextOffset, nextLimit);
+    }
+
+    private void compare(int previousOffset, int previousLimit, int nextOffset, int nextLimit)
+    {
+        int xoff = previousOffset;
+        int xlim = previousLimit;
+        int yoff = nextOffset;
+        int ylim = nextLimit;
+
+        // The second half is handled by the loop to limit the depth of the recursion
+        while (true) {
+            int prefix = commonPrefix(xoff, xlim, yoff, ylim);
+            xoff += prefix;
+            yoff += prefix;
+            int suffix = commonSuffix(xoff, xlim, yoff, ylim);
+            xlim -= suffix;
+            ylim -= suffix;
+
+            if (xoff == xlim) {
+                markNext(yoff, ylim);
+                break;
+            } else if (yoff == ylim) {
+                markPrevious(xoff, xlim);
+                break;
+            } else if (this.deadlineExceeded || !findMiddle(xoff, xlim, yoff, ylim)) {
+                approximate(xoff, xlim, yoff, ylim);
+                break;
+            }
+
+            int xmid = this.middlePrevious;
+            int ymid = this.middleNext;
+
+            compare(xoff, xmid, yoff, ymid);
+
+            xoff = xmid;
+            yoff = ymid;
+        }
+    }
+
+    /**
+     * @param previousOffset the index of the first element to compare in the previous version
+     * @param previousLimit the index after the last element to compare in the previous version
+     * @param nextOffset the index of the first element to compare in the next version
+     * @param nextLimit the index after the last element to compare in the next version
+     * @return the number of equal elements at the beginning of the two ranges
+     */
+    protected int commonPrefix(int previousOffset, int previousLimit, int nextOffset, int nextLimit)
+    {
+        int x = previousOffset;
+        int y = nextOffset;
+        while (x < previousLimit && y < nextLimit && this.previous[x] == this.next[y]) {
+            ++x;
+            ++y;
+        }
+
+        return x - previousOffset;
+    }
+
+    /**
+     * @param previousOffset the index of the first element to compare in the previous version
+     * @param previousLimit the index after the last element to compare in the previous version
+     * @param nextOffset the index of the first element to compare in the next version
+     * @param nextLimit the index after the last element to compare in the next version
+     * @return the number of equal elements at the end of the two ranges
+     */
+    protected int commonSuffix(int previousOffset, int previousLimit, int nextOffset, int nextLimit)
+    {
+        int x = previousLimit;
+        int y = nextLimit;
+        while (x > previousOffset && y > nextOffset && this.previous[x - 1] == this.next[y - 1]) {
+            --x;
+            --y;
+        }
+
+        return previousLimit - x;
+    }
+
+    /**
+     * Find the middle snake of the shortest edit script between the provided ranges and store its position in
+     * {@link #middlePrevious} and {@link #middleNext}.
+     *
+     * @return false if the budget was exceeded before finding the middle snake
+     */
+    private boolean findMiddle(int xoff, int xlim, int yoff, int ylim)
+    {
+        this.minDiagonal = xoff - ylim;
+        this.maxDiagonal = xlim - yoff;
+
+        int fmid = xoff - yoff;
+        int bmid = xlim - ylim;
+        this.forwardMin = fmid;
+        this.forwardMax = fmid;
+        this.backwardMin = bmid;
+        this.backwardMax = bmid;
+        this.forward[this.diagonalOffset + fmid] = xoff;
+        this.backward[this.diagonalOffset + bmid] = xlim;
+
+        // When the delta between the two ranges is odd the paths can only overlap during a forward step
+        boolean odd = ((fmid - bmid) & 1) != 0;
+
+        for (int edits = 2;; edits += 2) {
+            // The number of differences is known as soon as the forward and backward paths overlap
+            if (extendForward(xlim, ylim, odd)) {
+                return !isEditDistanceExceeded(edits - 1);
+            }
+            if (extendBackward(xoff, yoff, !odd)) {
+                return !isEditDistanceExceeded(edits);
+            }
+
+            // There are more than "edits" differences between the two ranges
+            if (isEditDistanceExceeded(edits + 1) || isDeadlineExceeded(edits)) {
+                return false;
+            }
+        }
+    }
+
+    private boolean isEditDistanceExceeded(int edits)
+    {
+        if (this.maxEditDistance > 0 && edits > this.maxEditDistance) {
+            this.editDistanceExceeded = true;
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private boolean isDeadlineExceeded(int edits)
+    {
+        if (this.deadlineEnabled) {
+            this.work += edits;
+
+            if (this.work >= this.nextDeadlineCheck) {
+                this.nextDeadlineCheck = this.work + DEADLINE_CHECK_INTERVAL;
+                this.deadlineExceeded = System.nanoTime() - this.deadline > 0;
+            }
+        }
+
+        return this.deadlineExceeded;
+    }
+
+    /**
+     * Consider the provided ranges entirely replaced.
+     */
+    private void approximate(int previousOffset, int previousLimit, int nextOffset, int nextLimit)
+    {
+        markPrevious(previousOffset, previousLimit);
+        markNext(nextOffset, nextLimit);
+
+        this.approximatedPreviousCount += previousLimit - previousOffset;
+        this.approximatedNextCount += nextLimit - nextOffset;
+    }
+
+    /**
+     * Extend the forward search by one edit on each diagonal.
+     *
+     * @return true if the middle snake has been found
+     */
+    private boolean extendForward(int xlim, int ylim, boolean checkOverlap)
+    {
+        int[] fd = this.forward;
+        int o = this.diagonalOffset;
+
+        if (this.forwardMin > this.minDiagonal) {
+            fd[o + --this.forwardMin - 1] = -1;
+        } else {
+            ++this.forwardMin;
+        }
+        if (this.forwardMax < this.maxDiagonal) {
+            fd[o + ++this.forwardMax + 1] = -1;
+        } else {
+            --this.forwardMax;
+        }
+
+        for (int d = this.forwardMax; d >= this.forwardMin; d -= 2) {
+            int tlo = fd[o + d - 1];
+            int thi = fd[o + d + 1];
+            int x = tlo >= thi ? tlo + 1 : thi;
+            x += commonPrefix(x, xlim, x - d, ylim);
+            fd[o + d] = x;
+
+            if (checkOverlap && d >= this.backwardMin && d <= this.backwardMax && this.backward[o + d] <= x) {
+                this.middlePrevious = x;
+                this.middleNext = x - d;
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Extend the backward search by one edit on each diagonal.
+     *
+     * @return true if the middle snake has been found
+     */
+    private boolean extendBackward(int xoff, int yoff, boolean checkOverlap)
+    {
+        int[] bd = this.backward;
+        int o = this.diagonalOffset;
+
+        if (this.backwardMin > this.minDiagonal) {
+            bd[o + --this.backwardMin - 1] = Integer.MAX_VALUE;
+        } else {
+            ++this.backwardMin;
+        }
+        if (this.backwardMax < this.maxDiagonal) {
+            bd[o + ++this.backwardMax + 1] = Integer.MAX_VALUE;
+        } else {
+            --this.backwardMax;
+        }
+
+        for (int d = this.backwardMax; d >= this.backwardMin; d -= 2) {
+            int tlo = bd[o + d - 1];
+            int thi = bd[o + d + 1];
+            int x = tlo < thi ? tlo : thi - 1;
+            x -= commonSuffix(xoff, x, yoff, x - d);
+            bd[o + d] = x;
+
+            if (checkOverlap && d >= this.forwardMin && d <= this.forwardMax && x <= this.forward[o + d]) {
+                this.middlePrevious = x;
+                this.middleNext = x - d;
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param fromIndex the index of the first deleted element (inclusive)
+     * @param toIndex the index of the last deleted element (exclusive)
+     */
+    protected void markPrevious(int fromIndex, int toIndex)
+    {
+        for (int i = fromIndex; i < toIndex; ++i) {
+            this.previousChanged[i] = true;
+        }
+    }
+
+    /**
+     * @param fromIndex the index of the first inserted element (inclusive)
+     * @param toIndex the index of the last inserted element (exclusive)
+     */
+    protected void markNext(int fromIndex, int toIndex)
+    {
+        for (int i = fromIndex; i < toIndex; ++i) {
+            this.nextChanged[i] = true;
+        }
+    }
+
+    /**
+     * @param index the index of the element in the previous version
+     * @return true if the element has been deleted
+     */
+    public boolean isPreviousChanged(int index)
+    {
+        return this.previousChanged[index];
+    }
+
+    /**
+     * @param index the index of the element in the next version
+     * @return true if the element has been inserted
+     */
+    public boolean isNextChanged(int index)
+    {
+        return this.nextChanged[index];
+    }
+
+    /**
+     * @return true if some ranges have not been compared because they had more differences than allowed
+     */
+    public boolean isEditDistanceExceeded()
+    {
+        return this.editDistanceExceeded;
+    }
+
+    /**
+     * @return true if some ranges have not been compared because the deadline was reached
+     */
+    public boolean isDeadlineExceeded()
+    {
+        return this.deadlineExceeded;
+    }
+
+    /**
+     * @return the number of elements of the previous version considered deleted without being compared
+     */
+    public int getApproximatedPreviousCount()
+    {
+        return this.approximatedPreviousCount;
+    }
+
+    /**
+     * @return the number of elements of the next version considered inserted without being compared
+     */
+    public int getApproximatedNextCount()
+    {
+        return this.approximatedNextCount;
+    }
+}
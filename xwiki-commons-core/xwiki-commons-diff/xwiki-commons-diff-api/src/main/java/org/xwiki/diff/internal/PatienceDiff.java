@@ -0,0 +1,175 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.internal;
+
+/**
+ * Implementation of the patience diff algorithm working on int tokens (see {@link ElementTokenizer}).
+ * <p>
+ * The elements appearing exactly once in both ranges are used as anchors: the longest sequence of such elements
+ * appearing in the same order in both versions is considered unchanged and the gaps between them are compared
+ * recursively. Ranges without any unique common element are compared with {@link MyersDiff}.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class PatienceDiff extends MyersDiff
+{
+    private static final int[] NO_ANCHORS = new int[0];
+
+    private final int[] previousCount;
+
+    private final int[] nextCount;
+
+    private final int[] nextIndex;
+
+    /**
+     * @param previous the tokens of the previous version
+     * @param next the tokens of the next version
+     * @param tokenCount the number of distinct tokens, all the tokens are between 0 (inclusive) and this number
+     *            (exclusive)
+     */
+    public PatienceDiff(int[] previous, int[] next, int tokenCount)
+    {
+        super(previous, next);
+
+        this.previousCount = new int[tokenCount];
+        this.nextCount = new int[tokenCount];
+        this.nextIndex = new int[tokenCount];
+    }
+
+    @Override
+    protected void diff(int previousOffset, int previousLimit, int nextOffset, int nextLimit)
+    {
+        int prefix = commonPrefix(previousOffset, previousLimit, nextOffset, nextLimit);
+        int xoff = previousOffset + prefix;
+        int yoff = nextOffset + prefix;
+        int suffix = commonSuffix(xoff, previousLimit, yoff, nextLimit);
+        int xlim = previousLimit - suffix;
+        int ylim = nextLimit - suffix;
+
+        if (xoff == xlim) {
+            markNext(yoff, ylim);
+        } else if (yoff == ylim) {
+            markPrevious(xoff, xlim);
+        } else {
+            diffAnchors(xoff, xlim, yoff, ylim);
+        }
+    }
+
+    private void diffAnchors(int xoff, int xlim, int yoff, int ylim)
+    {
+        // Don't waste time searching anchors when the remaining ranges won't be compared anyway
+        int[] anchors = isDeadlineExceeded() ? NO_ANCHORS : findAnchors(xoff, xlim, yoff, ylim);
+
+        if (anchors.length == 0) {
+            super.diff(xoff, xlim, yoff, ylim);
+        } else {
+            int x = xoff;
+            int y = yoff;
+            for (int i = 0; i < anchors.length; i += 2) {
+                diff(x, anchors[i], y, anchors[i + 1]);
+
+                x = anchors[i] + 1;
+                y = anchors[i + 1] + 1;
+            }
+            diff(x, xlim, y, ylim);
+        }
+    }
+
+    /**
+     * @return the longest increasing sequence of elements appearing once in both ranges, as a flat list of (previous
+     *         index, next index) pairs
+     */
+    private int[] findAnchors(int xoff, int xlim, int yoff, int ylim)
+    {
+        for (int x = xoff; x < xlim; ++x) {
+            ++this.previousCount[this.previous[x]];
+        }
+        for (int y = yoff; y < ylim; ++y) {
+            int token = this.next[y];
+            ++this.nextCount[token];
+            this.nextIndex[token] = y;
+        }
+
+        // Unique common elements, in the previous version order
+        int[] candidatePrevious = new int[Math.min(xlim - xoff, ylim - yoff)];
+        int[] candidateNext = new int[candidatePrevious.length];
+        int candidates = 0;
+        for (int x = xoff; x < xlim && candidates < candidatePrevious.length; ++x) {
+            int token = this.previous[x];
+            if (this.previousCount[token] == 1 && this.nextCount[token] == 1) {
+                candidatePrevious[candidates] = x;
+                candidateNext[candidates] = this.nextIndex[token];
+                ++candidates;
+            }
+        }
+
+        // Reset the counters for the next call
+        for (int x = xoff; x < xlim; ++x) {
+            this.previousCount[this.previous[x]] = 0;
+        }
+        for (int y = yoff; y < ylim; ++y) {
+            this.nextCount[this.next[y]] = 0;
+        }
+
+        return longestIncreasingSequence(candidatePrevious, candidateNext, candidates);
+    }
+
+    /**
+     * Patience sorting of the next indexes.
+     */
+    private int[] longestIncreasingSequence(int[] candidatePrevious, int[] candidateNext, int candidates)
+    {
+        int[] tails = new int[candidates];
+        int[] predecessors = new int[candidates];
+        int length = 0;
+
+        for (int i = 0; i < candidates; ++i) {
+            int value = candidateNext[i];
+
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (candidateNext[tails[middle]] < value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            predecessors[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                ++length;
+            }
+        }
+
+        int[] anchors = new int[length * 2];
+        int candidate = length > 0 ? tails[length - 1] : -1;
+        for (int i = length - 1; i >= 0; --i) {
+            anchors[i * 2] = candidatePrevious[candidate];
+            anchors[i * 2 + 1] = candidateNext[candidate];
+            candidate = predecessors[candidate];
+        }
+
+        return anchors;
+    }
+}
@@ -22,13 +22,18 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
+import org.xwiki.diff.Conflict;
 import org.xwiki.diff.Delta.Type;
+import org.xwiki.diff.DiffConfiguration;
+import org.xwiki.diff.DiffConfiguration.Algorithm;
 import org.xwiki.diff.DiffManager;
 import org.xwiki.diff.DiffResult;
 import org.xwiki.diff.MergeResult;
@@ -129,6 +134,159 @@ public void testDiffCharList() throws Exception
         Assert.assertEquals(Type.CHANGE, result.getPatch().get(0).getType());
     }
 
+    @Test
+    public void testDiffKeepCommonPrefixAndSuffix() throws Exception
+    {
+        DiffResult<Character> result =
+            this.mocker.getComponentUnderTest().diff(toCharacters("abcdef"), toCharacters("abXYZef"), null);
+
+        Assert.assertEquals(1, result.getPatch().size());
+        Assert.assertEquals(Type.CHANGE, result.getPatch().get(0).getType());
+        Assert.assertEquals(2, result.getPatch().get(0).getPrevious().getIndex());
+        Assert.assertEquals(toCharacters("cd"), result.getPatch().get(0).getPrevious().getElements());
+        Assert.assertEquals(2, result.getPatch().get(0).getNext().getIndex());
+        Assert.assertEquals(toCharacters("XYZ"), result.getPatch().get(0).getNext().getElements());
+    }
+
+    @Test
+    public void testDiffLinkedList() throws Exception
+    {
+        List<String> previous = new LinkedList<String>(Arrays.asList("one", "two", "three", "four"));
+        List<String> next = new LinkedList<String>(Arrays.asList("zero", "one", "three", "four", "five"));
+
+        DiffResult<String> result = this.mocker.getComponentUnderTest().diff(previous, next, null);
+
+        Assert.assertEquals(3, result.getPatch().size());
+        Assert.assertEquals(Type.INSERT, result.getPatch().get(0).getType());
+        Assert.assertEquals(Type.DELETE, result.getPatch().get(1).getType());
+        Assert.assertEquals(Arrays.asList("two"), result.getPatch().get(1).getPrevious().getElements());
+        Assert.assertEquals(Type.INSERT, result.getPatch().get(2).getType());
+        Assert.assertEquals(next, result.getPatch().apply(previous));
+    }
+
+    @Test
+    public void testDiffPatience() throws Exception
+    {
+        List<String> previous = Arrays.asList("end", "same", "same");
+        List<String> next = Arrays.asList("same", "end");
+
+        DiffConfiguration<String> configuration = new DiffConfiguration<String>();
+
+        // Myers keeps the longest common sequence
+        DiffResult<String> result = this.mocker.getComponentUnderTest().diff(previous, next, configuration);
+
+        Assert.assertEquals(2, result.getPatch().size());
+        Assert.assertEquals(Type.DELETE, result.getPatch().get(0).getType());
+        Assert.assertEquals(Arrays.asList("end", "same"), result.getPatch().get(0).getPrevious().getElements());
+        Assert.assertEquals(next, result.getPatch().apply(previous));
+
+        // Patience keeps the unique elements
+        configuration.setAlgorithm(Algorithm.PATIENCE);
+        result = this.mocker.getComponentUnderTest().diff(previous, next, configuration);
+
+        Assert.assertEquals(2, result.getPatch().size());
+        Assert.assertEquals(Type.INSERT, result.getPatch().get(0).getType());
+        Assert.assertEquals(Arrays.asList("same"), result.getPatch().get(0).getNext().getElements());
+        Assert.assertEquals(Type.DELETE, result.getPatch().get(1).getType());
+        Assert.assertEquals(Arrays.asList("same", "same"), result.getPatch().get(1).getPrevious().getElements());
+        Assert.assertEquals(next, result.getPatch().apply(previous));
+    }
+
+    @Test
+    public void testDiffWithMaxEditDistance() throws Exception
+    {
+        DiffConfiguration<Character> configuration = new DiffConfiguration<Character>();
+
+        // 8 differences
+        configuration.setMaxEditDistance(8);
+        DiffResult<Character> result =
+            this.mocker.getComponentUnderTest().diff(toCharacters("abcdefgh"), toCharacters("aXcXeXgX"), configuration);
+
+        Assert.assertEquals(4, result.getPatch().size());
+        Assert.assertTrue(result.getLog().isEmpty());
+
+        configuration.setMaxEditDistance(7);
+        result =
+            this.mocker.getComponentUnderTest().diff(toCharacters("abcdefgh"), toCharacters("aXcXeXgX"), configuration);
+
+        Assert.assertEquals(1, result.getPatch().size());
+        Assert.assertEquals(Type.CHANGE, result.getPatch().get(0).getType());
+        Assert.assertEquals(toCharacters("bcdefgh"), result.getPatch().get(0).getPrevious().getElements());
+        Assert.assertEquals(toCharacters("XcXeXgX"), result.getPatch().get(0).getNext().getElements());
+        Assert.assertEquals(1, result.getLog().getLogs(LogLevel.WARN).size());
+    }
+
+    @Test
+    public void testDiffWithMaxTime() throws Exception
+    {
+        Random random = new Random(42);
+        List<Integer> previous = new ArrayList<Integer>();
+        List<Integer> next = new ArrayList<Integer>();
+        for (int i = 0; i < 20000; ++i) {
+            previous.add(random.nextInt(1000));
+            next.add(random.nextInt(1000));
+        }
+
+        DiffConfiguration<Integer> configuration = new DiffConfiguration<Integer>();
+        configuration.setMaxTime(1);
+
+        DiffResult<Integer> result = this.mocker.getComponentUnderTest().diff(previous, next, configuration);
+
+        Assert.assertEquals(1, result.getLog().getLogs(LogLevel.WARN).size());
+        Assert.assertEquals(next, result.getPatch().apply(previous));
+    }
+
+    @Test
+    public void testDiffTokens() throws Exception
+    {
+        int[] previous = new int[] {0, 1, 2, 3};
+        int[] next = new int[] {0, 4, 2, 3, 5};
+
+        DiffResult<Integer> result = this.mocker.getComponentUnderTest().diff(previous, next, 6, null);
+
+        Assert.assertEquals(2, result.getPatch().size());
+        Assert.assertEquals(Type.CHANGE, result.getPatch().get(0).getType());
+        Assert.assertEquals(1, result.getPatch().get(0).getPrevious().getIndex());
+        Assert.assertEquals(Arrays.asList(4), result.getPatch().get(0).getNext().getElements());
+        Assert.assertEquals(Type.INSERT, result.getPatch().get(1).getType());
+        Assert.assertEquals(result.getNext(), result.getPatch().apply(result.getPrevious()));
+
+        // The budget degradation is reported in the log
+        DiffConfiguration<Integer> configuration = new DiffConfiguration<Integer>();
+        configuration.setMaxEditDistance(1);
+        result = this.mocker.getComponentUnderTest().diff(previous, next, 6, configuration);
+
+        Assert.assertEquals(1, result.getLog().getLogs(LogLevel.WARN).size());
+        Assert.assertEquals(result.getNext(), result.getPatch().apply(result.getPrevious()));
+    }
+
+    @Test
+    public void testDiffRandomLists() throws Exception
+    {
+        Random random = new Random(42);
+        DiffConfiguration<Integer> configuration = new DiffConfiguration<Integer>();
+
+        for (int i = 0; i < 1000; ++i) {
+            List<Integer> previous = new ArrayList<Integer>();
+            List<Integer> next = new ArrayList<Integer>();
+            for (int j = random.nextInt(50); j > 0; --j) {
+                previous.add(random.nextInt(5));
+            }
+            for (int j = random.nextInt(50); j > 0; --j) {
+                next.add(random.nextInt(5));
+            }
+
+            for (Algorithm algorithm : Algorithm.values()) {
+                configuration.setAlgorithm(algorithm);
+
+                DiffResult<Integer> result = this.mocker.getComponentUnderTest().diff(previous, next, configuration);
+
+                Assert.assertEquals(next, result.getPatch().apply(previous));
+                Assert.assertEquals(previous, result.getPatch().restore(next));
+            }
+        }
+    }
+
     @Test
     public void testMergeStringList() throws Exception
     {
@@ -342,6 +500,72 @@ public void testMergeCharOnConflicts() throws Exception
         Assert.assertEquals("ddddcc", toString(result.getMerged()));
     }
 
+    @Test
+    public void testMergeConflicts() throws Exception
+    {
+        MergeResult<Character> result =
+            this.mocker.getComponentUnderTest().merge(toCharacters("a"), toCharacters("b"), toCharacters("c"), null);
+
+        Assert.assertEquals(1, result.getConflicts().size());
+        Conflict<Character> conflict = result.getConflicts().get(0);
+        Assert.assertEquals(0, conflict.getIndex());
+        Assert.assertEquals(toCharacters("c"), conflict.getDeltaCurrent().getNext().getElements());
+        Assert.assertEquals(toCharacters("b"), conflict.getDeltaNext().getNext().getElements());
+
+        // No conflict
+        result = this.mocker.getComponentUnderTest()
+            .merge(toCharacters("abc"), toCharacters("aibc"), toCharacters("abcj"), null);
+
+        Assert.assertEquals(0, result.getConflicts().size());
+    }
+
+    @Test
+    public void testMergeSeveralDeltasInConflictWithOneDelta() throws Exception
+    {
+        MergeResult<Character> result = this.mocker.getComponentUnderTest()
+            .merge(toCharacters("abcdef"), toCharacters("acefZ"), toCharacters("aXf"), null);
+
+        // Both deletions of the next version are in conflict with the current modification, the insertion at the end is
+        // independent
+        Assert.assertEquals(2, result.getConflicts().size());
+        Assert.assertEquals(1, result.getConflicts().get(0).getIndex());
+        Assert.assertEquals(1, result.getConflicts().get(1).getIndex());
+        Assert.assertEquals(3, result.getConflicts().get(1).getDeltaNext().getPrevious().getIndex());
+        Assert.assertEquals(2, result.getLog().getLogs(LogLevel.ERROR).size());
+        Assert.assertEquals("aXfZ", toString(result.getMerged()));
+    }
+
+    @Test
+    public void testMergeBigContent() throws Exception
+    {
+        Random random = new Random(42);
+        List<Integer> commonAncestor = new ArrayList<Integer>();
+        for (int i = 0; i < 100000; ++i) {
+            commonAncestor.add(random.nextInt());
+        }
+
+        // Independent modifications everywhere and a conflict in the middle
+        List<Integer> next = new ArrayList<Integer>(commonAncestor);
+        List<Integer> current = new ArrayList<Integer>(commonAncestor);
+        List<Integer> expected = new ArrayList<Integer>(commonAncestor);
+        for (int i = 0; i < commonAncestor.size(); i += 100) {
+            next.set(i, -1);
+            current.set(i + 50, -2);
+            expected.set(i, -1);
+            expected.set(i + 50, -2);
+        }
+        next.set(50025, -1);
+        current.set(50025, -2);
+        expected.set(50025, -2);
+
+        MergeResult<Integer> result =
+            this.mocker.getComponentUnderTest().merge(commonAncestor, next, current, null);
+
+        Assert.assertEquals(1, result.getConflicts().size());
+        Assert.assertEquals(50025, result.getConflicts().get(0).getIndex());
+        Assert.assertEquals(expected, result.getMerged());
+    }
+
     @Test
     public void testMergeWithEmptyNew() throws Exception
     {
@@ -353,4 +577,22 @@ public void testMergeWithEmptyNew() throws Exception
         Assert.assertEquals(1, result.getLog().getLogs(LogLevel.ERROR).size());
         Assert.assertEquals(toCharacters("b"), result.getMerged());
     }
+
+    @Test
+    public void testMergeWithEmptyCurrent() throws Exception
+    {
+        MergeResult<Character> result =
+            this.mocker.getComponentUnderTest().merge(toCharacters("a"), toCharacters("b"), toCharacters(""), null);
+
+        Assert.assertEquals(1, result.getConflicts().size());
+        Assert.assertEquals(1, result.getLog().getLogs(LogLevel.ERROR).size());
+        Assert.assertEquals(toCharacters(""), result.getMerged());
+
+        try {
+            result.getConflicts().clear();
+            Assert.fail("The conflicts should not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+    }
 }
@@ -0,0 +1,164 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.diff.DiffConfiguration;
+import org.xwiki.diff.DiffConfiguration.Algorithm;
+import org.xwiki.diff.DiffException;
+import org.xwiki.diff.DiffResult;
+
+import difflib.DiffUtils;
+
+/**
+ * Measure the time needed to diff big lists with the various algorithms. Not executed with the other tests (the name
+ * does not end with "Test"), use {@code mvn test -Pbenchmark} to run it.
+ *
+ * @version $Id$
+ */
+public class DiffBenchmark
+{
+    /**
+     * The number of executions not measured, to let the JIT compile the code.
+     */
+    private static final int WARMUP = 5;
+
+    private static final int ITERATIONS = 5;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiffBenchmark.class);
+
+    /**
+     * The size above which the external library is not measured anymore (it needs too much memory).
+     */
+    private static final int EXTERNAL_MAX_SIZE = 100000;
+
+    private final DefaultDiffManager diffManager = new DefaultDiffManager();
+
+    /**
+     * @param size the number of lines
+     * @param changes the number of modified lines
+     * @return a previous and a next version of a document
+     */
+    private List<List<String>> document(int size, int changes)
+    {
+        Random random = new Random(size);
+
+        List<String> previous = new ArrayList<String>(size);
+        for (int i = 0; i < size; ++i) {
+            // Make sure some lines are repeated, like in a real document
+            previous.add("line " + random.nextInt(size / 4));
+        }
+
+        List<String> next = new ArrayList<String>(previous);
+        for (int i = 0; i < changes; ++i) {
+            int index = random.nextInt(next.size());
+            switch (random.nextInt(3)) {
+                case 0:
+                    next.set(index, "changed line " + i);
+                    break;
+                case 1:
+                    next.remove(index);
+                    break;
+                default:
+                    next.add(index, "new line " + i);
+                    break;
+            }
+        }
+
+        List<List<String>> versions = new ArrayList<List<String>>();
+        versions.add(previous);
+        versions.add(next);
+
+        return versions;
+    }
+
+    private void benchmark(int size, int changes) throws DiffException
+    {
+        List<List<String>> versions = document(size, changes);
+        List<String> previous = versions.get(0);
+        List<String> next = versions.get(1);
+
+        for (Algorithm algorithm : Algorithm.values()) {
+            DiffConfiguration<String> configuration = new DiffConfiguration<String>();
+            configuration.setAlgorithm(algorithm);
+
+            long time = 0;
+            for (int i = 0; i < WARMUP + ITERATIONS; ++i) {
+                long start = System.nanoTime();
+                DiffResult<String> result = this.diffManager.diff(previous, next, configuration);
+                if (i >= WARMUP) {
+                    time += System.nanoTime() - start;
+                }
+
+                Assert.assertFalse(result.getPatch().isEmpty());
+            }
+
+            print(size, changes, algorithm.name(), time);
+        }
+
+        if (size <= EXTERNAL_MAX_SIZE) {
+            long time = 0;
+            for (int i = 0; i < WARMUP + ITERATIONS; ++i) {
+                long start = System.nanoTime();
+                DiffUtils.diff(previous, next);
+                if (i >= WARMUP) {
+                    time += System.nanoTime() - start;
+                }
+            }
+
+            print(size, changes, "difflib", time);
+        }
+    }
+
+    private void print(int size, int changes, String algorithm, long time)
+    {
+        LOGGER.info(String.format("%,10d elements %,7d changes %-10s %,8d ms", size, changes, algorithm,
+            time / ITERATIONS / 1000000));
+    }
+
+    @Test
+    public void benchmark10K() throws DiffException
+    {
+        benchmark(10000, 10);
+        benchmark(10000, 100);
+        benchmark(10000, 1000);
+    }
+
+    @Test
+    public void benchmark100K() throws DiffException
+    {
+        benchmark(100000, 100);
+        benchmark(100000, 1000);
+    }
+
+    @Test
+    public void benchmark1M() throws DiffException
+    {
+        benchmark(1000000, 1000);
+        benchmark(1000000, 10000);
+    }
+}
@@ -22,7 +22,10 @@
 import java.util.List;
 
 import org.xwiki.component.annotation.Role;
+import org.xwiki.diff.DiffConfiguration;
+import org.xwiki.diff.DiffException;
 import org.xwiki.diff.DiffResult;
+import org.xwiki.stability.Unstable;
 
 /**
  * Displays a {@link DiffResult} as an in-line diff. An in-line diff is made of a list of chunks, each marked as added,
@@ -79,4 +82,24 @@
      * @return the list of chunks that form the in-line diff
      */
     <E> List<InlineDiffChunk<E>> display(DiffResult<E> diffResult);
+
+    /**
+     * Compares the sub-elements of two versions of a composite element and displays the result as an in-line diff.
+     * This is the same as splitting the two versions, comparing them and calling {@link #display(DiffResult)} but it
+     * can be a lot faster, mostly when the splitter is able to compare the sub-elements without creating them (like
+     * the character and word splitters).
+     *
+     * @param <E> the type of composite elements
+     * @param <F> the type of sub-elements that are compared to produce the in-line diff
+     * @param previous the previous version of the composite element
+     * @param next the next version of the composite element
+     * @param splitter the component used to split the composite element into sub-elements
+     * @param configuration the configuration of the diff, can be null
+     * @return the list of chunks that form the in-line diff
+     * @throws DiffException when failing to compare the two versions
+     * @since 7.0M1
+     */
+    @Unstable
+    <E, F> List<InlineDiffChunk<F>> display(E previous, E next, Splitter<E, F> splitter,
+        DiffConfiguration<F> configuration) throws DiffException;
 }
@@ -19,10 +19,12 @@
  */
 package org.xwiki.diff.display;
 
+import java.util.Iterator;
 import java.util.List;
 
 import org.xwiki.component.annotation.Role;
 import org.xwiki.diff.DiffResult;
+import org.xwiki.stability.Unstable;
 
 /**
  * Displays a {@link DiffResult} as a <a href="http://en.wikipedia.org/wiki/Diff#Unified_format">unified diff</a>. The
@@ -83,4 +85,20 @@
      * @return the list of blocks that form the unified diff
      */
     <E, F> List<UnifiedDiffBlock<E, F>> display(DiffResult<E> diffResult, UnifiedDiffConfiguration<E, F> config);
+
+    /**
+     * Same as {@link #display(DiffResult, UnifiedDiffConfiguration)} but the blocks are produced one by one, while
+     * iterating: a block is built only when requested and is not retained afterwards, so displaying a very large diff
+     * does not require keeping all its blocks in memory. The in-line diff of a modified element is computed only the
+     * first time its chunks are requested.
+     *
+     * @param <E> the type of elements that were compared to produce the diff
+     * @param <F> the type of sub-elements that can be compared to produce an in-line diff when an element is modified
+     * @param diffResult the diff result
+     * @param config the configuration
+     * @return the blocks that form the unified diff, in order
+     * @since 7.0M1
+     */
+    @Unstable
+    <E, F> Iterator<UnifiedDiffBlock<E, F>> iterate(DiffResult<E> diffResult, UnifiedDiffConfiguration<E, F> config);
 }
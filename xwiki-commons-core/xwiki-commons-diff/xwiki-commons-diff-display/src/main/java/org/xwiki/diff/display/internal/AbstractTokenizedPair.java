@@ -0,0 +1,66 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.display.internal;
+
+/**
+ * Base class for {@link TokenizedPair} implementations, holding the tokens.
+ *
+ * @param <F> the type of sub-elements
+ * @version $Id$
+ * @since 7.0M1
+ */
+public abstract class AbstractTokenizedPair<F> implements TokenizedPair<F>
+{
+    private final int[] previous;
+
+    private final int[] next;
+
+    private final int tokenCount;
+
+    /**
+     * @param previous the tokens of the previous version
+     * @param next the tokens of the next version
+     * @param tokenCount all the tokens are between 0 (inclusive) and this number (exclusive)
+     */
+    protected AbstractTokenizedPair(int[] previous, int[] next, int tokenCount)
+    {
+        this.previous = previous;
+        this.next = next;
+        this.tokenCount = tokenCount;
+    }
+
+    @Override
+    public int[] getPrevious()
+    {
+        return this.previous;
+    }
+
+    @Override
+    public int[] getNext()
+    {
+        return this.next;
+    }
+
+    @Override
+    public int getTokenCount()
+    {
+        return this.tokenCount;
+    }
+}
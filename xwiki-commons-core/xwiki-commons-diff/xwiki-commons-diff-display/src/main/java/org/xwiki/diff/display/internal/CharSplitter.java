@@ -19,28 +19,80 @@
  */
 package org.xwiki.diff.display.internal;
 
-import java.util.Arrays;
 import java.util.List;
 
 import javax.inject.Singleton;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.xwiki.component.annotation.Component;
-import org.xwiki.diff.display.Splitter;
 
 /**
  * Splits a string into its characters.
+ * <p>
+ * The characters are not copied: the returned list is a view of the string (see {@link CharacterList}) and the tokens
+ * used to compare two strings are the characters themselves.
  *
  * @version $Id$
  * @since 4.1RC1
  */
 @Component
 @Singleton
-public class CharSplitter implements Splitter<String, Character>
+public class CharSplitter implements TokenSplitter<String, Character>
 {
+    /**
+     * The characters of two strings.
+     *
+     * @version $Id$
+     */
+    private static class CharacterPair extends AbstractTokenizedPair<Character>
+    {
+        private final String previousText;
+
+        private final String nextText;
+
+        CharacterPair(String previousText, String nextText, int[] previous, int[] next, int tokenCount)
+        {
+            super(previous, next, tokenCount);
+
+            this.previousText = previousText;
+            this.nextText = nextText;
+        }
+
+        @Override
+        public List<Character> getPreviousElements(int fromIndex, int toIndex)
+        {
+            return new CharacterList(this.previousText, fromIndex, toIndex);
+        }
+
+        @Override
+        public List<Character> getNextElements(int fromIndex, int toIndex)
+        {
+            return new CharacterList(this.nextText, fromIndex, toIndex);
+        }
+    }
+
     @Override
     public List<Character> split(String composite)
     {
-        return Arrays.asList(ArrayUtils.toObject(composite.toCharArray()));
+        return new CharacterList(composite);
+    }
+
+    @Override
+    public TokenizedPair<Character> tokenize(String previous, String next)
+    {
+        int[] previousTokens = new int[previous.length()];
+        int[] nextTokens = new int[next.length()];
+
+        // The tokens are the characters, the highest one is used to limit the size of the token tables of the diff
+        int max = -1;
+        for (int i = 0; i < previousTokens.length; ++i) {
+            previousTokens[i] = previous.charAt(i);
+            max = Math.max(max, previousTokens[i]);
+        }
+        for (int i = 0; i < nextTokens.length; ++i) {
+            nextTokens[i] = next.charAt(i);
+            max = Math.max(max, nextTokens[i]);
+        }
+
+        return new CharacterPair(previous, next, previousTokens, nextTokens, max + 1);
     }
 }
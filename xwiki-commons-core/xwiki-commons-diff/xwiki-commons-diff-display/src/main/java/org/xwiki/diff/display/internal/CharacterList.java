@@ -0,0 +1,93 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.display.internal;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * An unmodifiable list of the characters of a part of a {@link CharSequence}. The characters are boxed only when they
+ * are accessed, and the ones below 128 are taken from the {@link Character} cache.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class CharacterList extends AbstractList<Character> implements RandomAccess
+{
+    private static final String SIZE = ", Size: ";
+
+    private final CharSequence text;
+
+    private final int start;
+
+    private final int end;
+
+    /**
+     * @param text the text
+     */
+    public CharacterList(CharSequence text)
+    {
+        this(text, 0, text.length());
+    }
+
+    /**
+     * @param text the text
+     * @param start the index of the first character of the list in the text (inclusive)
+     * @param end the index of the last character of the list in the text (exclusive)
+     */
+    public CharacterList(CharSequence text, int start, int end)
+    {
+        this.text = text;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public Character get(int index)
+    {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + SIZE + size());
+        }
+
+        return this.text.charAt(this.start + index);
+    }
+
+    @Override
+    public int size()
+    {
+        return this.end - this.start;
+    }
+
+    @Override
+    public CharacterList subList(int fromIndex, int toIndex)
+    {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + SIZE + size());
+        }
+
+        return new CharacterList(this.text, this.start + fromIndex, this.start + toIndex);
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.text.subSequence(this.start, this.end).toString();
+    }
+}
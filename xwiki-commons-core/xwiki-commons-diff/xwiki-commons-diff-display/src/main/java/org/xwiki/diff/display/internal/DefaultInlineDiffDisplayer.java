@@ -22,14 +22,21 @@
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.diff.Chunk;
 import org.xwiki.diff.Delta;
+import org.xwiki.diff.DiffConfiguration;
+import org.xwiki.diff.DiffException;
+import org.xwiki.diff.DiffManager;
 import org.xwiki.diff.DiffResult;
 import org.xwiki.diff.display.InlineDiffChunk;
 import org.xwiki.diff.display.InlineDiffChunk.Type;
 import org.xwiki.diff.display.InlineDiffDisplayer;
+import org.xwiki.diff.display.Splitter;
 
 /**
  * Default {@link InlineDiffDisplayer} implementation.
@@ -41,6 +48,18 @@
 @Singleton
 public class DefaultInlineDiffDisplayer implements InlineDiffDisplayer
 {
+    /**
+     * The component used to compare the sub-elements when the splitter can't produce tokens.
+     */
+    @Inject
+    private DiffManager diffManager;
+
+    /**
+     * Used to report the sub-elements which could not be compared in the time or edit distance budget.
+     */
+    @Inject
+    private Logger logger;
+
     @Override
     public <E> List<InlineDiffChunk<E>> display(DiffResult<E> diffResult)
     {
@@ -83,4 +102,65 @@ public <E> List<InlineDiffChunk<E>> display(DiffResult<E> diffResult)
 
         return chunks;
     }
+
+    @Override
+    public <E, F> List<InlineDiffChunk<F>> display(E previous, E next, Splitter<E, F> splitter,
+        DiffConfiguration<F> configuration) throws DiffException
+    {
+        if (splitter instanceof TokenSplitter) {
+            TokenizedPair<F> pair = ((TokenSplitter<E, F>) splitter).tokenize(previous, next);
+
+            DiffResult<Integer> result =
+                this.diffManager.diff(pair.getPrevious(), pair.getNext(), pair.getTokenCount(), configuration);
+            result.getLog().log(this.logger);
+
+            return display(pair, result);
+        }
+
+        DiffResult<F> result = this.diffManager.diff(splitter.split(previous), splitter.split(next), configuration);
+        result.getLog().log(this.logger);
+
+        return display(result);
+    }
+
+    /**
+     * Produces the same chunks as {@link #display(DiffResult)} from the diff of the tokens, the chunks being views of
+     * the compared sub-elements.
+     */
+    private <F> List<InlineDiffChunk<F>> display(TokenizedPair<F> pair, DiffResult<Integer> result)
+    {
+        List<InlineDiffChunk<F>> chunks = new ArrayList<InlineDiffChunk<F>>();
+
+        int contextStart = 0;
+        for (Delta<Integer> delta : result.getPatch()) {
+            Chunk<Integer> previousChunk = delta.getPrevious();
+            Chunk<Integer> nextChunk = delta.getNext();
+
+            // Add a chunk with the unmodified elements between the last delta and the current one.
+            if (contextStart < previousChunk.getIndex()) {
+                chunks.add(new InlineDiffChunk<F>(Type.UNMODIFIED,
+                    pair.getPreviousElements(contextStart, previousChunk.getIndex())));
+            }
+
+            // Add changed chunks.
+            if (previousChunk.size() > 0) {
+                chunks.add(new InlineDiffChunk<F>(Type.DELETED,
+                    pair.getPreviousElements(previousChunk.getIndex(), previousChunk.getLastIndex() + 1)));
+            }
+            if (nextChunk.size() > 0) {
+                chunks.add(new InlineDiffChunk<F>(Type.ADDED,
+                    pair.getNextElements(nextChunk.getIndex(), nextChunk.getLastIndex() + 1)));
+            }
+
+            contextStart = previousChunk.getLastIndex() + 1;
+        }
+
+        // Add the final chunk with the unmodified elements after the last delta.
+        if (contextStart < pair.getPrevious().length) {
+            chunks.add(new InlineDiffChunk<F>(Type.UNMODIFIED,
+                pair.getPreviousElements(contextStart, pair.getPrevious().length)));
+        }
+
+        return chunks;
+    }
 }
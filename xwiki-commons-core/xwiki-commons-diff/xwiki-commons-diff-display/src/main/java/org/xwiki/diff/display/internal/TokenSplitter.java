@@ -0,0 +1,42 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.display.internal;
+
+import org.xwiki.diff.display.Splitter;
+
+/**
+ * A {@link Splitter} which can also split two versions of a composite element directly into int tokens, so that the
+ * in-line diff does not have to create and compare the sub-elements (see
+ * {@link DefaultInlineDiffDisplayer#display(Object, Object, Splitter, org.xwiki.diff.DiffConfiguration)}).
+ *
+ * @param <E> the type of composite elements
+ * @param <F> the type of sub-elements
+ * @version $Id$
+ * @since 7.0M1
+ */
+public interface TokenSplitter<E, F> extends Splitter<E, F>
+{
+    /**
+     * @param previous the previous version of the composite element
+     * @param next the next version of the composite element
+     * @return the tokens of the two versions, equal sub-elements getting the same token
+     */
+    TokenizedPair<F> tokenize(E previous, E next);
+}
@@ -0,0 +1,62 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.display.internal;
+
+import java.util.List;
+
+/**
+ * Two versions of a composite element split in sub-elements represented by int tokens: equal sub-elements have the
+ * same token. This allows comparing the sub-elements without creating them.
+ *
+ * @param <F> the type of sub-elements
+ * @version $Id$
+ * @since 7.0M1
+ */
+public interface TokenizedPair<F>
+{
+    /**
+     * @return the tokens of the previous version
+     */
+    int[] getPrevious();
+
+    /**
+     * @return the tokens of the next version
+     */
+    int[] getNext();
+
+    /**
+     * @return all the tokens are between 0 (inclusive) and this number (exclusive)
+     */
+    int getTokenCount();
+
+    /**
+     * @param fromIndex the index of the first token (inclusive)
+     * @param toIndex the index of the last token (exclusive)
+     * @return the sub-elements of the previous version corresponding to the given tokens
+     */
+    List<F> getPreviousElements(int fromIndex, int toIndex);
+
+    /**
+     * @param fromIndex the index of the first token (inclusive)
+     * @param toIndex the index of the last token (exclusive)
+     * @return the sub-elements of the next version corresponding to the given tokens
+     */
+    List<F> getNextElements(int fromIndex, int toIndex);
+}
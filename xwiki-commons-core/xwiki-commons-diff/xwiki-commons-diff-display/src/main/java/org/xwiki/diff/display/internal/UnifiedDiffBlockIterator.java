@@ -0,0 +1,337 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.display.internal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.xwiki.diff.Chunk;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.DiffException;
+import org.xwiki.diff.DiffResult;
+import org.xwiki.diff.display.InlineDiffChunk;
+import org.xwiki.diff.display.InlineDiffDisplayer;
+import org.xwiki.diff.display.UnifiedDiffBlock;
+import org.xwiki.diff.display.UnifiedDiffConfiguration;
+import org.xwiki.diff.display.UnifiedDiffElement;
+import org.xwiki.diff.display.UnifiedDiffElement.Type;
+
+/**
+ * Produces the blocks of a unified diff one by one, while walking the changes of a {@link DiffResult}. A block is
+ * returned as soon as the next change is far enough from it to start a new block, so only the block being built is
+ * kept in memory. The in-line diff of a modified element is computed only when its chunks are requested.
+ *
+ * @param <E> the type of composite elements that are compared to produce the first level diff
+ * @param <F> the type of sub-elements that are compared to produce the second-level diff
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class UnifiedDiffBlockIterator<E, F> implements Iterator<UnifiedDiffBlock<E, F>>
+{
+    /**
+     * The in-line diff between a removed element and the element that replaced it, computed the first time the chunks
+     * of one of them are requested.
+     *
+     * @param <E> the type of composite elements that are compared to produce the first level diff
+     * @param <F> the type of sub-elements that are compared to produce the second-level diff
+     */
+    private static class InlineDiff<E, F>
+    {
+        private final ModifiedElement<E, F> previous;
+
+        private final ModifiedElement<E, F> next;
+
+        private final UnifiedDiffConfiguration<E, F> config;
+
+        private final InlineDiffDisplayer inlineDisplayer;
+
+        InlineDiff(ModifiedElement<E, F> previous, ModifiedElement<E, F> next, UnifiedDiffConfiguration<E, F> config,
+            InlineDiffDisplayer inlineDisplayer)
+        {
+            this.previous = previous;
+            this.next = next;
+            this.config = config;
+            this.inlineDisplayer = inlineDisplayer;
+        }
+
+        /**
+         * Computes the changes between the two versions of the element by splitting them into sub-elements and sets
+         * the resulting in-line diff chunks on both elements.
+         */
+        void compute()
+        {
+            List<InlineDiffChunk<F>> previousChunks = null;
+            List<InlineDiffChunk<F>> nextChunks = null;
+
+            try {
+                List<InlineDiffChunk<F>> chunks = this.inlineDisplayer.display(this.previous.getValue(),
+                    this.next.getValue(), this.config.getSplitter(), this.config);
+
+                previousChunks = new ArrayList<InlineDiffChunk<F>>();
+                nextChunks = new ArrayList<InlineDiffChunk<F>>();
+                for (InlineDiffChunk<F> chunk : chunks) {
+                    if (!chunk.isAdded()) {
+                        previousChunks.add(chunk);
+                    }
+                    if (!chunk.isDeleted()) {
+                        nextChunks.add(chunk);
+                    }
+                }
+            } catch (DiffException e) {
+                // Keep the elements without in-line diff.
+                previousChunks = null;
+                nextChunks = null;
+            }
+
+            this.previous.setChunks(previousChunks);
+            this.next.setChunks(nextChunks);
+        }
+    }
+
+    /**
+     * A removed or added element whose in-line diff is computed on demand.
+     *
+     * @param <E> the type of composite elements that are compared to produce the first level diff
+     * @param <F> the type of sub-elements that are compared to produce the second-level diff
+     */
+    private static class ModifiedElement<E, F> extends UnifiedDiffElement<E, F>
+    {
+        /**
+         * The in-line diff still to compute, {@code null} once the chunks are known.
+         */
+        private InlineDiff<E, F> inlineDiff;
+
+        ModifiedElement(int index, Type type, E value)
+        {
+            super(index, type, value);
+        }
+
+        @Override
+        public List<InlineDiffChunk<F>> getChunks()
+        {
+            if (this.inlineDiff != null) {
+                this.inlineDiff.compute();
+            }
+
+            return super.getChunks();
+        }
+
+        @Override
+        public void setChunks(List<InlineDiffChunk<F>> chunks)
+        {
+            this.inlineDiff = null;
+
+            super.setChunks(chunks);
+        }
+    }
+
+    /**
+     * The previous version, used to take the unmodified elements from.
+     */
+    private final List<E> previous;
+
+    /**
+     * The changes left to display.
+     */
+    private final Iterator<Delta<E>> deltas;
+
+    /**
+     * The configuration of the unified diff.
+     */
+    private final UnifiedDiffConfiguration<E, F> config;
+
+    /**
+     * The component used to display the second level of changes, between modified elements.
+     */
+    private final InlineDiffDisplayer inlineDisplayer;
+
+    /**
+     * The last change added to a block.
+     */
+    private Delta<E> lastDelta;
+
+    /**
+     * The next change to add to a block, {@code null} when all the changes have been displayed.
+     */
+    private Delta<E> nextDelta;
+
+    /**
+     * @param diffResult the diff result to display
+     * @param config the configuration of the unified diff
+     * @param inlineDisplayer the component used to display the second level of changes, between modified elements
+     */
+    public UnifiedDiffBlockIterator(DiffResult<E> diffResult, UnifiedDiffConfiguration<E, F> config,
+        InlineDiffDisplayer inlineDisplayer)
+    {
+        this.previous = diffResult.getPrevious();
+        this.deltas = diffResult.getPatch().iterator();
+        this.config = config;
+        this.inlineDisplayer = inlineDisplayer;
+
+        this.nextDelta = this.deltas.hasNext() ? this.deltas.next() : null;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        return this.nextDelta != null;
+    }
+
+    @Override
+    public UnifiedDiffBlock<E, F> next()
+    {
+        if (this.nextDelta == null) {
+            throw new NoSuchElementException();
+        }
+
+        UnifiedDiffBlock<E, F> block = new UnifiedDiffBlock<E, F>();
+
+        // Add all the changes that are in the same context. The distance between two changes inside the same block is
+        // less than 2 * context size.
+        do {
+            addDelta(block, this.nextDelta);
+
+            this.lastDelta = this.nextDelta;
+            this.nextDelta = this.deltas.hasNext() ? this.deltas.next() : null;
+        } while (this.nextDelta != null && !startsNewBlock(this.nextDelta));
+
+        // Add unmodified elements after the last delta.
+        int start = this.lastDelta.getPrevious().getLastIndex() + 1;
+        int end = Math.min(start + this.config.getContextSize(), this.previous.size());
+        addUnmodifiedElements(block, start, end);
+
+        return block;
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException("Unified diff blocks can't be removed");
+    }
+
+    /**
+     * @param delta a change
+     * @return {@code true} if the given change is too far from the last one to be in the same block
+     */
+    private boolean startsNewBlock(Delta<E> delta)
+    {
+        return this.lastDelta.getPrevious().getLastIndex() < delta.getPrevious().getIndex()
+            - this.config.getContextSize() * 2;
+    }
+
+    /**
+     * Adds a change to the given block, preceded by the unmodified elements that put it in context.
+     *
+     * @param block the block being built
+     * @param delta the change
+     */
+    private void addDelta(UnifiedDiffBlock<E, F> block, Delta<E> delta)
+    {
+        // Add the unmodified elements before the given delta.
+        int count = block.isEmpty() ? this.config.getContextSize() : this.config.getContextSize() * 2;
+        int lastChangeIndex = this.lastDelta == null ? -1 : this.lastDelta.getPrevious().getLastIndex();
+        int end = delta.getPrevious().getIndex();
+        int start = Math.max(end - count, lastChangeIndex + 1);
+        addUnmodifiedElements(block, start, end);
+
+        // Add changed elements.
+        switch (delta.getType()) {
+            case CHANGE:
+                addModifiedElements(block, delta);
+                break;
+            case DELETE:
+                addElements(block, delta.getPrevious(), Type.DELETED);
+                break;
+            case INSERT:
+                addElements(block, delta.getNext(), Type.ADDED);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Processes a change. In a unified diff the modified elements are either added or removed so we model a change by
+     * listing the removed elements (from the previous version) followed by the added elements (from the next version).
+     * If a splitter is provided through the configuration object and the number of removed elements equals the number
+     * of added elements then the modified elements are split in sub-elements, the first time their chunks are
+     * requested, to produce an in-line diff of the changes inside the modified elements.
+     *
+     * @param block the block being built
+     * @param delta the change
+     */
+    private void addModifiedElements(UnifiedDiffBlock<E, F> block, Delta<E> delta)
+    {
+        Chunk<E> previousChunk = delta.getPrevious();
+        Chunk<E> nextChunk = delta.getNext();
+
+        if (this.config.getSplitter() != null && previousChunk.size() == nextChunk.size()) {
+            List<ModifiedElement<E, F>> removed = new ArrayList<ModifiedElement<E, F>>(previousChunk.size());
+            int index = previousChunk.getIndex();
+            for (E element : previousChunk.getElements()) {
+                ModifiedElement<E, F> removedElement = new ModifiedElement<E, F>(index++, Type.DELETED, element);
+                removed.add(removedElement);
+                block.add(removedElement);
+            }
+
+            Iterator<ModifiedElement<E, F>> removedElements = removed.iterator();
+            index = nextChunk.getIndex();
+            for (E element : nextChunk.getElements()) {
+                ModifiedElement<E, F> removedElement = removedElements.next();
+                ModifiedElement<E, F> addedElement = new ModifiedElement<E, F>(index++, Type.ADDED, element);
+                InlineDiff<E, F> inlineDiff = new InlineDiff<E, F>(removedElement, addedElement, this.config,
+                    this.inlineDisplayer);
+                removedElement.inlineDiff = inlineDiff;
+                addedElement.inlineDiff = inlineDiff;
+                block.add(addedElement);
+            }
+        } else {
+            addElements(block, previousChunk, Type.DELETED);
+            addElements(block, nextChunk, Type.ADDED);
+        }
+    }
+
+    /**
+     * @param block the block being built
+     * @param chunk the modified elements (both added and deleted)
+     * @param changeType the change type
+     */
+    private void addElements(UnifiedDiffBlock<E, F> block, Chunk<E> chunk, Type changeType)
+    {
+        int index = chunk.getIndex();
+        for (E element : chunk.getElements()) {
+            block.add(new UnifiedDiffElement<E, F>(index++, changeType, element));
+        }
+    }
+
+    /**
+     * @param block the block being built
+     * @param start the index of the first unmodified element to add
+     * @param end the index to stop at
+     */
+    private void addUnmodifiedElements(UnifiedDiffBlock<E, F> block, int start, int end)
+    {
+        for (int i = start; i < end; i++) {
+            block.add(new UnifiedDiffElement<E, F>(i, Type.CONTEXT, this.previous.get(i)));
+        }
+    }
+}
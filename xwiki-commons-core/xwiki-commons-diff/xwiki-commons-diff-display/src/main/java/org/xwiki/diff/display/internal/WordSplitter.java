@@ -0,0 +1,331 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.display.internal;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+
+/**
+ * Splits a text into words, white spaces and punctuation: a word is a sequence of letters and digits, consecutive
+ * white spaces are kept together and any other character is alone.
+ * <p>
+ * The words are not copied: they are extracted from the text only when accessed. To compare two texts each distinct
+ * word is associated with an int token without creating it.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+@Component
+@Named("word")
+@Singleton
+public class WordSplitter implements TokenSplitter<String, String>
+{
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The words of a part of a text.
+     *
+     * @version $Id$
+     */
+    private static class WordList extends AbstractList<String> implements RandomAccess
+    {
+        private final String text;
+
+        /**
+         * The index in the text of the first character of each word, followed by the index after the last word.
+         */
+        private final int[] bounds;
+
+        private final int fromIndex;
+
+        private final int toIndex;
+
+        WordList(String text, int[] bounds, int fromIndex, int toIndex)
+        {
+            this.text = text;
+            this.bounds = bounds;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+        }
+
+        @Override
+        public String get(int index)
+        {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+
+            int word = this.fromIndex + index;
+
+            return this.text.substring(this.bounds[word], this.bounds[word + 1]);
+        }
+
+        @Override
+        public int size()
+        {
+            return this.toIndex - this.fromIndex;
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.text.substring(this.bounds[this.fromIndex], this.bounds[this.toIndex]);
+        }
+    }
+
+    /**
+     * The words of two texts.
+     *
+     * @version $Id$
+     */
+    private static class WordPair extends AbstractTokenizedPair<String>
+    {
+        private final String previousText;
+
+        private final int[] previousBounds;
+
+        private final String nextText;
+
+        private final int[] nextBounds;
+
+        WordPair(String previousText, int[] previousBounds, String nextText, int[] nextBounds, int[] previous,
+            int[] next, int tokenCount)
+        {
+            super(previous, next, tokenCount);
+
+            this.previousText = previousText;
+            this.previousBounds = previousBounds;
+            this.nextText = nextText;
+            this.nextBounds = nextBounds;
+        }
+
+        @Override
+        public List<String> getPreviousElements(int fromIndex, int toIndex)
+        {
+            return new WordList(this.previousText, this.previousBounds, fromIndex, toIndex);
+        }
+
+        @Override
+        public List<String> getNextElements(int fromIndex, int toIndex)
+        {
+            return new WordList(this.nextText, this.nextBounds, fromIndex, toIndex);
+        }
+    }
+
+    /**
+     * Associate each distinct word with an int token. The words are indexed in an open addressing hash table which
+     * only stores where the first occurrence of each word is.
+     *
+     * @version $Id$
+     */
+    private static class WordTokenizer
+    {
+        /**
+         * The token of each slot plus one, 0 indicating a free slot.
+         */
+        private int[] slots = new int[INITIAL_CAPACITY];
+
+        private int[] hashes = new int[INITIAL_CAPACITY];
+
+        private String[] tokenTexts = new String[INITIAL_CAPACITY];
+
+        private int[] tokenStarts = new int[INITIAL_CAPACITY];
+
+        private int[] tokenEnds = new int[INITIAL_CAPACITY];
+
+        private int size;
+
+        int[] tokenize(String text, int[] bounds)
+        {
+            int[] tokens = new int[bounds.length - 1];
+
+            for (int i = 0; i < tokens.length; ++i) {
+                tokens[i] = tokenize(text, bounds[i], bounds[i + 1]);
+            }
+
+            return tokens;
+        }
+
+        private int tokenize(String text, int start, int end)
+        {
+            int hash = hash(text, start, end);
+
+            int mask = this.slots.length - 1;
+            int index = hash & mask;
+            for (int slot = this.slots[index]; slot != 0; slot = this.slots[index]) {
+                if (this.hashes[index] == hash && equals(slot - 1, text, start, end)) {
+                    return slot - 1;
+                }
+
+                index = (index + 1) & mask;
+            }
+
+            int token = this.size++;
+            if (token == this.tokenTexts.length) {
+                this.tokenTexts = Arrays.copyOf(this.tokenTexts, token * 2);
+                this.tokenStarts = Arrays.copyOf(this.tokenStarts, token * 2);
+                this.tokenEnds = Arrays.copyOf(this.tokenEnds, token * 2);
+            }
+            this.tokenTexts[token] = text;
+            this.tokenStarts[token] = start;
+            this.tokenEnds[token] = end;
+
+            this.slots[index] = token + 1;
+            this.hashes[index] = hash;
+
+            // Keep the table at most half full
+            if (this.size * 2 > this.slots.length) {
+                resize();
+            }
+
+            return token;
+        }
+
+        private boolean equals(int token, String text, int start, int end)
+        {
+            int length = end - start;
+
+            return this.tokenEnds[token] - this.tokenStarts[token] == length
+                && this.tokenTexts[token].regionMatches(this.tokenStarts[token], text, start, length);
+        }
+
+        private int hash(String text, int start, int end)
+        {
+            int hash = 0;
+            for (int i = start; i < end; ++i) {
+                hash = 31 * hash + text.charAt(i);
+            }
+
+            // Spread the high bits since only the low bits are used as index
+            return hash ^ (hash >>> 16);
+        }
+
+        private void resize()
+        {
+            int[] oldSlots = this.slots;
+            int[] oldHashes = this.hashes;
+
+            this.slots = new int[oldSlots.length * 2];
+            this.hashes = new int[this.slots.length];
+
+            int mask = this.slots.length - 1;
+            for (int i = 0; i < oldSlots.length; ++i) {
+                if (oldSlots[i] != 0) {
+                    int index = oldHashes[i] & mask;
+                    while (this.slots[index] != 0) {
+                        index = (index + 1) & mask;
+                    }
+
+                    this.slots[index] = oldSlots[i];
+                    this.hashes[index] = oldHashes[i];
+                }
+            }
+        }
+
+        int getTokenCount()
+        {
+            return this.size;
+        }
+    }
+
+    @Override
+    public List<String> split(String composite)
+    {
+        int[] bounds = getBounds(composite);
+
+        return new WordList(composite, bounds, 0, bounds.length - 1);
+    }
+
+    @Override
+    public TokenizedPair<String> tokenize(String previous, String next)
+    {
+        int[] previousBounds = getBounds(previous);
+        int[] nextBounds = getBounds(next);
+
+        WordTokenizer tokenizer = new WordTokenizer();
+        int[] previousTokens = tokenizer.tokenize(previous, previousBounds);
+        int[] nextTokens = tokenizer.tokenize(next, nextBounds);
+
+        return new WordPair(previous, previousBounds, next, nextBounds, previousTokens, nextTokens,
+            tokenizer.getTokenCount());
+    }
+
+    /**
+     * @param text the text to split
+     * @return the index in the text of the first character of each word, followed by the length of the text
+     */
+    private int[] getBounds(String text)
+    {
+        int[] bounds = new int[text.length() + 1];
+        int count = 0;
+
+        int index = 0;
+        while (index < text.length()) {
+            bounds[count++] = index;
+
+            int codePoint = text.codePointAt(index);
+            index += Character.charCount(codePoint);
+
+            if (Character.isLetterOrDigit(codePoint)) {
+                index = skipLettersOrDigits(text, index);
+            } else if (Character.isWhitespace(codePoint)) {
+                index = skipWhitespaces(text, index);
+            }
+        }
+        bounds[count++] = text.length();
+
+        return count < bounds.length ? Arrays.copyOf(bounds, count) : bounds;
+    }
+
+    private int skipLettersOrDigits(String text, int start)
+    {
+        int index = start;
+        while (index < text.length()) {
+            int codePoint = text.codePointAt(index);
+            if (!Character.isLetterOrDigit(codePoint)) {
+                break;
+            }
+            index += Character.charCount(codePoint);
+        }
+
+        return index;
+    }
+
+    private int skipWhitespaces(String text, int start)
+    {
+        int index = start;
+        while (index < text.length()) {
+            int codePoint = text.codePointAt(index);
+            if (!Character.isWhitespace(codePoint)) {
+                break;
+            }
+            index += Character.charCount(codePoint);
+        }
+
+        return index;
+    }
+}
@@ -28,11 +28,15 @@
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.diff.DiffConfiguration;
+import org.xwiki.diff.DiffConfiguration.Algorithm;
 import org.xwiki.diff.DiffManager;
 import org.xwiki.diff.DiffResult;
 import org.xwiki.diff.display.InlineDiffChunk;
 import org.xwiki.diff.display.InlineDiffChunk.Type;
 import org.xwiki.diff.display.InlineDiffDisplayer;
+import org.xwiki.diff.display.Splitter;
 import org.xwiki.diff.internal.DefaultDiffManager;
 import org.xwiki.test.ComponentManagerRule;
 import org.xwiki.test.annotation.ComponentList;
@@ -45,7 +49,9 @@
  */
 @ComponentList({
     DefaultDiffManager.class,
-    DefaultInlineDiffDisplayer.class
+    DefaultInlineDiffDisplayer.class,
+    CharSplitter.class,
+    WordSplitter.class
 })
 public class DefaultInlineDiffDisplayerTest
 {
@@ -124,6 +130,63 @@ public void testChangeWords() throws Exception
         execute("123 456 789", "abc 456 xyz", "-123-+abc+ 456 -789-+xyz+");
     }
 
+    @Test
+    public void testChangeWordsWithWordSplitter() throws Exception
+    {
+        executeWords("the quick  brown fox.", "the sick brown fox!", null, "the -quick  -+sick +brown fox-.-+!+");
+    }
+
+    @Test
+    public void testMoveWordWithWordSplitter() throws Exception
+    {
+        DiffConfiguration<String> configuration = new DiffConfiguration<String>();
+        configuration.setAlgorithm(Algorithm.PATIENCE);
+
+        executeWords("one two three", "two three one", configuration, "-one -two three+ one+");
+    }
+
+    @Test
+    public void testWordSplitterSameAsGenericDiff() throws Exception
+    {
+        String previous = "Lorem ipsum dolor sit amet, consectetur adipiscing elit.\nSed do eiusmod tempor.";
+        String next = "Lorem dolor sit amet, adipiscing consectetur elit!\nSed do eiusmod tempor, incididunt.";
+
+        InlineDiffDisplayer inlineDiffDisplayer = this.componentManager.getInstance(InlineDiffDisplayer.class);
+        DiffManager diffManager = this.componentManager.getInstance(DiffManager.class);
+        Splitter<String, String> splitter = this.componentManager.getInstance(
+            new DefaultParameterizedType(null, Splitter.class, String.class, String.class), "word");
+
+        for (Algorithm algorithm : Algorithm.values()) {
+            DiffConfiguration<String> configuration = new DiffConfiguration<String>();
+            configuration.setAlgorithm(algorithm);
+
+            DiffResult<String> diffResult =
+                diffManager.diff(splitter.split(previous), splitter.split(next), configuration);
+
+            Assert.assertEquals(toString(inlineDiffDisplayer.display(diffResult)),
+                toString(inlineDiffDisplayer.display(previous, next, splitter, configuration)));
+        }
+    }
+
+    /**
+     * Builds the in-line diff between the words of the given versions and asserts if the result meets the expectation.
+     *
+     * @param previous the previous version
+     * @param next the next version
+     * @param configuration the diff configuration
+     * @param expected the expected in-line diff
+     * @throws Exception if creating the diff fails
+     */
+    private void executeWords(String previous, String next, DiffConfiguration<String> configuration, String expected)
+        throws Exception
+    {
+        InlineDiffDisplayer inlineDiffDisplayer = this.componentManager.getInstance(InlineDiffDisplayer.class);
+        Splitter<String, String> splitter = this.componentManager.getInstance(
+            new DefaultParameterizedType(null, Splitter.class, String.class, String.class), "word");
+
+        Assert.assertEquals(expected, toString(inlineDiffDisplayer.display(previous, next, splitter, configuration)));
+    }
+
     /**
      * Builds the in-line diff between the given versions and asserts if the result meets the expectation.
      *
@@ -140,18 +203,28 @@ private void execute(String previous, String next, String expected) throws Excep
         DiffManager diffManager = this.componentManager.getInstance(DiffManager.class);
         DiffResult<Character> diffResult = diffManager.diff(previousChars, nextChars, null);
 
+        InlineDiffDisplayer inlineDiffDisplayer = this.componentManager.getInstance(InlineDiffDisplayer.class);
+        Assert.assertEquals(expected, toString(inlineDiffDisplayer.display(diffResult)));
+
+        // Comparing the characters directly should give the same result
+        Splitter<String, Character> splitter = this.componentManager.getInstance(
+            new DefaultParameterizedType(null, Splitter.class, String.class, Character.class));
+        Assert.assertEquals(expected, toString(inlineDiffDisplayer.display(previous, next, splitter, null)));
+    }
+
+    private <E> String toString(List<InlineDiffChunk<E>> chunks)
+    {
         Map<Type, String> separators = new HashMap<Type, String>();
         separators.put(Type.ADDED, "+");
         separators.put(Type.DELETED, "-");
         separators.put(Type.UNMODIFIED, "");
 
         StringBuilder actual = new StringBuilder();
-        InlineDiffDisplayer inlineDiffDisplayer = this.componentManager.getInstance(InlineDiffDisplayer.class);
-        for (InlineDiffChunk<Character> chunk : inlineDiffDisplayer.display(diffResult)) {
+        for (InlineDiffChunk<E> chunk : chunks) {
             String separator = separators.get(chunk.getType());
             actual.append(separator).append(chunk).append(separator);
         }
 
-        Assert.assertEquals(expected, actual.toString());
+        return actual.toString();
     }
 }
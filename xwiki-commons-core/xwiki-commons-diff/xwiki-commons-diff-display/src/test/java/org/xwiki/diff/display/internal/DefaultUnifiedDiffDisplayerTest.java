@@ -27,6 +27,7 @@
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.commons.io.IOUtils;
@@ -105,6 +106,16 @@ public void execute() throws Exception
             actual.append(block);
         }
         Assert.assertEquals(this.expected, actual.toString());
+
+        // The blocks produced while iterating are the same.
+        actual.setLength(0);
+        Iterator<UnifiedDiffBlock<String, Object>> it =
+            unifiedDiffDisplayer.iterate(diffManager.diff(this.previous, this.next, null),
+                unifiedDiffDisplayer.<String, Object>getDefaultConfiguration());
+        while (it.hasNext()) {
+            actual.append(it.next());
+        }
+        Assert.assertEquals(this.expected, actual.toString());
     }
 
     /**
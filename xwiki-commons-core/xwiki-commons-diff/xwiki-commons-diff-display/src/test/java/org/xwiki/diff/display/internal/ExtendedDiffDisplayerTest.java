@@ -20,7 +20,10 @@
 package org.xwiki.diff.display.internal;
 
 import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -93,6 +96,50 @@ public void testLinesChanges() throws Exception
             "@@ -1,4 +1,4 @@\n one\n-two-o-\n-thre\n+two\n+thre+e+\n four\n");
     }
 
+    @Test
+    public void testIterateComputesInlineDiffOnDemand() throws Exception
+    {
+        final List<String> splitted = new ArrayList<String>();
+        final Splitter<String, Character> charSplitter =
+            this.componentManager.getInstance(new DefaultParameterizedType(null, Splitter.class, String.class,
+                Character.class));
+        UnifiedDiffDisplayer unifiedDiffDisplayer = this.componentManager.getInstance(UnifiedDiffDisplayer.class);
+        UnifiedDiffConfiguration<String, Character> config = unifiedDiffDisplayer.getDefaultConfiguration();
+        config.setContextSize(1);
+        config.setSplitter(new Splitter<String, Character>()
+        {
+            @Override
+            public List<Character> split(String composite)
+            {
+                splitted.add(composite);
+                return charSplitter.split(composite);
+            }
+        });
+
+        DiffManager diffManager = this.componentManager.getInstance(DiffManager.class);
+        DiffResult<String> diffResult =
+            diffManager.diff(Arrays.asList("one", "two", "three", "four", "five", "six"),
+                Arrays.asList("one", "tWo", "three", "four", "fIve", "six"), null);
+
+        Iterator<UnifiedDiffBlock<String, Character>> it = unifiedDiffDisplayer.iterate(diffResult, config);
+
+        UnifiedDiffBlock<String, Character> block = it.next();
+        Assert.assertEquals("@@ -1,3 +1,3 @@\n one\n-two\n+tWo\n three\n", block.toString());
+        Assert.assertTrue(it.hasNext());
+        Assert.assertTrue(splitted.isEmpty());
+
+        // Getting the chunks of the added line computes the chunks of the removed line too.
+        Assert.assertEquals(3, block.get(2).getChunks().size());
+        Assert.assertEquals(3, block.get(1).getChunks().size());
+        Assert.assertEquals(Arrays.asList("two", "tWo"), splitted);
+
+        block = it.next();
+        Assert.assertEquals("@@ -4,3 +4,3 @@\n four\n-five\n+fIve\n six\n", block.toString());
+        Assert.assertFalse(it.hasNext());
+        Assert.assertEquals(2, splitted.size());
+        Assert.assertNull(block.get(0).getChunks());
+    }
+
     /**
      * Generates the extended diff between the given versions and asserts if it meets the expectation.
      *
@@ -0,0 +1,71 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.display.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link WordSplitter}.
+ *
+ * @version $Id$
+ */
+public class WordSplitterTest
+{
+    private final WordSplitter splitter = new WordSplitter();
+
+    @Test
+    public void testSplit()
+    {
+        Assert.assertEquals(Arrays.asList("Hello", ",", " \t ", "XWiki", " ", "7", ".", "0M1", "!", "!"),
+            this.splitter.split("Hello, \t XWiki 7.0M1!!"));
+        // Letters outside of the Basic Multilingual Plane are kept in the word
+        Assert.assertEquals(Arrays.asList("\u00e9t\u00e9", " ", "\ud835\udc00b"),
+            this.splitter.split("\u00e9t\u00e9 \ud835\udc00b"));
+        Assert.assertEquals(Collections.emptyList(), this.splitter.split(""));
+    }
+
+    @Test
+    public void testTokenize()
+    {
+        StringBuilder previous = new StringBuilder();
+        StringBuilder next = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            previous.append("word").append(i).append(' ');
+            next.append("word").append(i * 2).append(' ');
+        }
+
+        TokenizedPair<String> pair = this.splitter.tokenize(previous.toString(), next.toString());
+
+        // 100 words in previous, 50 new words in next and the space
+        Assert.assertEquals(151, pair.getTokenCount());
+        Assert.assertEquals(200, pair.getPrevious().length);
+        Assert.assertEquals(200, pair.getNext().length);
+
+        // "word2" is the third word of previous and the second word of next
+        Assert.assertEquals(pair.getPrevious()[4], pair.getNext()[2]);
+        Assert.assertEquals(pair.getPrevious()[1], pair.getNext()[1]);
+        Assert.assertEquals(Arrays.asList("word2", " "), pair.getNextElements(2, 4));
+        Assert.assertEquals(Arrays.asList("word2", " "), pair.getPreviousElements(4, 6));
+    }
+}
@@ -36,6 +36,7 @@
 import org.xwiki.diff.display.UnifiedDiffBlock;
 import org.xwiki.diff.display.UnifiedDiffConfiguration;
 import org.xwiki.diff.display.UnifiedDiffDisplayer;
+import org.xwiki.diff.script.internal.DiffResultCache;
 import org.xwiki.script.service.ScriptService;
 
 /**
@@ -68,6 +69,13 @@ public class DiffDisplayerScriptService implements ScriptService
     @Inject
     private Splitter<String, Character> charSplitter;
 
+    /**
+     * The component used to split a text into words, white spaces and punctuation.
+     */
+    @Inject
+    @Named("word")
+    private Splitter<String, String> wordSplitter;
+
     /**
      * The component used to create the diff.
      */
@@ -86,6 +94,12 @@ public class DiffDisplayerScriptService implements ScriptService
     @Inject
     private UnifiedDiffDisplayer unifiedDiffDisplayer;
 
+    /**
+     * Used to not compute again the same diffs.
+     */
+    @Inject
+    private DiffResultCache cache;
+
     /**
      * Builds an in-line diff between two versions of a list of elements.
      *
@@ -114,16 +128,45 @@ public <E> List<InlineDiffChunk<E>> inline(List<E> previous, List<E> next)
      * @return the list of in-line diff chunks
      */
     public List<InlineDiffChunk<Character>> inline(String previous, String next)
+    {
+        return inline(previous, next, this.charSplitter, "inline");
+    }
+
+    /**
+     * Builds an in-line diff between the words of two versions of a text. White spaces and punctuation are compared
+     * too.
+     *
+     * @param previous the previous version
+     * @param next the next version
+     * @return the list of in-line diff chunks
+     * @since 7.0M1
+     */
+    public List<InlineDiffChunk<String>> inlineWords(String previous, String next)
+    {
+        return inline(previous, next, this.wordSplitter, "inlineWords");
+    }
+
+    private <F> List<InlineDiffChunk<F>> inline(String previous, String next, Splitter<String, F> splitter,
+        String type)
     {
         setError(null);
 
-        try {
-            return this.inlineDiffDisplayer
-                .display(this.diffManager.diff(this.charSplitter.split(previous), this.charSplitter.split(next), null));
-        } catch (DiffException e) {
-            setError(e);
-            return null;
+        String key = this.cache.getKey(type, previous, next);
+        List<InlineDiffChunk<F>> chunks = key != null ? this.cache.<F>getInline(key) : null;
+
+        if (chunks == null) {
+            try {
+                chunks = this.inlineDiffDisplayer.display(previous, next, splitter, null);
+
+                if (key != null) {
+                    chunks = this.cache.putInline(key, chunks);
+                }
+            } catch (DiffException e) {
+                setError(e);
+            }
         }
+
+        return chunks;
     }
 
     /**
@@ -138,16 +181,28 @@ public List<UnifiedDiffBlock<String, Character>> unified(String previous, String
     {
         setError(null);
 
-        try {
-            DiffResult<String> diffResult =
-                this.diffManager.diff(this.lineSplitter.split(previous), this.lineSplitter.split(next), null);
-            UnifiedDiffConfiguration<String, Character> config = this.unifiedDiffDisplayer.getDefaultConfiguration();
-            config.setSplitter(this.charSplitter);
-            return this.unifiedDiffDisplayer.display(diffResult, config);
-        } catch (DiffException e) {
-            setError(e);
-            return null;
+        String key = this.cache.getKey("unified", previous, next);
+        List<UnifiedDiffBlock<String, Character>> blocks =
+            key != null ? this.cache.<String, Character>getUnified(key) : null;
+
+        if (blocks == null) {
+            try {
+                DiffResult<String> diffResult =
+                    this.diffManager.diff(this.lineSplitter.split(previous), this.lineSplitter.split(next), null);
+                UnifiedDiffConfiguration<String, Character> config =
+                    this.unifiedDiffDisplayer.getDefaultConfiguration();
+                config.setSplitter(this.charSplitter);
+                blocks = this.unifiedDiffDisplayer.display(diffResult, config);
+
+                if (key != null) {
+                    blocks = this.cache.putUnified(key, blocks);
+                }
+            } catch (DiffException e) {
+                setError(e);
+            }
         }
+
+        return blocks;
     }
 
     /**
@@ -19,6 +19,7 @@
  */
 package org.xwiki.diff.script;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -36,6 +37,7 @@
 import org.xwiki.diff.MergeResult;
 import org.xwiki.diff.internal.DefaultDiffResult;
 import org.xwiki.diff.internal.DefaultMergeResult;
+import org.xwiki.diff.script.internal.DiffResultCache;
 import org.xwiki.script.service.ScriptService;
 
 /**
@@ -73,6 +75,12 @@ public class DiffScriptService implements ScriptService
     @Named("diff.display")
     private ScriptService diffDisplayScriptService;
 
+    /**
+     * Used to not compute again the same diffs.
+     */
+    @Inject
+    private DiffResultCache cache;
+
     /**
      * @return the display oriented API
      */
@@ -91,10 +99,31 @@ public ScriptService getDisplay()
      * @return the result of the diff
      */
     public <E> DiffResult<E> diff(List<E> previous, List<E> next, DiffConfiguration<E> configuration)
+    {
+        String key = this.cache.getKey("diff", previous, next, configuration);
+        if (key != null) {
+            DiffResult<E> result = this.cache.getDiff(key);
+            if (result != null) {
+                return result;
+            }
+
+            // The cached result should not be impacted by later modifications of the provided lists
+            return diff(previous != null ? new ArrayList<E>(previous) : null,
+                next != null ? new ArrayList<E>(next) : null, configuration, key);
+        }
+
+        return diff(previous, next, configuration, null);
+    }
+
+    private <E> DiffResult<E> diff(List<E> previous, List<E> next, DiffConfiguration<E> configuration, String key)
     {
         DiffResult<E> result;
         try {
             result = this.diffManager.diff(previous, next, configuration);
+
+            if (key != null) {
+                result = this.cache.putDiff(key, result);
+            }
         } catch (DiffException e) {
             result = new DefaultDiffResult<E>(previous, next);
             result.getLog().error("Failed to execute diff", e);
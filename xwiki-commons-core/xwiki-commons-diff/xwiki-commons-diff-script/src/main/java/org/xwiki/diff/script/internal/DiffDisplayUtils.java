@@ -0,0 +1,149 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.script.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.xwiki.diff.display.InlineDiffChunk;
+import org.xwiki.diff.display.UnifiedDiffBlock;
+import org.xwiki.diff.display.UnifiedDiffElement;
+
+/**
+ * Provide various tools to share diff display results between several callers.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public final class DiffDisplayUtils
+{
+    private DiffDisplayUtils()
+    {
+        // Utility class
+    }
+
+    /**
+     * @param <F> the type of compared elements
+     * @param chunks the in-line chunks
+     * @return a read only copy of the chunks, sharing the elements
+     */
+    public static <F> List<InlineDiffChunk<F>> toUnmodifiable(List<InlineDiffChunk<F>> chunks)
+    {
+        List<InlineDiffChunk<F>> unmodifiableChunks = new ArrayList<InlineDiffChunk<F>>(chunks.size());
+        for (InlineDiffChunk<F> chunk : chunks) {
+            unmodifiableChunks.add(new InlineDiffChunk<F>(chunk.getType(),
+                Collections.unmodifiableList(chunk.getElements())));
+        }
+
+        return Collections.unmodifiableList(unmodifiableChunks);
+    }
+
+    /**
+     * @param <E> the type of composite elements
+     * @param <F> the type of sub-elements
+     * @param blocks the unified blocks
+     * @param unmodifiableChunks true if the in-line chunks of the elements should be made read only, false if they are
+     *            already read only and can be shared
+     * @return a copy of the blocks and of their elements
+     */
+    public static <E, F> List<UnifiedDiffBlock<E, F>> copy(List<UnifiedDiffBlock<E, F>> blocks,
+        boolean unmodifiableChunks)
+    {
+        List<UnifiedDiffBlock<E, F>> copy = new ArrayList<UnifiedDiffBlock<E, F>>(blocks.size());
+        for (UnifiedDiffBlock<E, F> block : blocks) {
+            UnifiedDiffBlock<E, F> blockCopy = new UnifiedDiffBlock<E, F>();
+            for (UnifiedDiffElement<E, F> element : block) {
+                UnifiedDiffElement<E, F> elementCopy =
+                    new UnifiedDiffElement<E, F>(element.getIndex(), element.getType(), element.getValue());
+                if (unmodifiableChunks && element.getChunks() != null) {
+                    elementCopy.setChunks(toUnmodifiable(element.getChunks()));
+                } else {
+                    elementCopy.setChunks(element.getChunks());
+                }
+                blockCopy.add(elementCopy);
+            }
+            copy.add(blockCopy);
+        }
+
+        return copy;
+    }
+
+    /**
+     * @param element the element
+     * @return the number of characters of the element if it's a {@link CharSequence} (but at least 1), 1 otherwise
+     */
+    public static long weigh(Object element)
+    {
+        return element instanceof CharSequence ? Math.max(1, ((CharSequence) element).length()) : 1;
+    }
+
+    /**
+     * @param elements the elements
+     * @return the sum of the weights of the elements (see {@link #weigh(Object)})
+     */
+    public static long weighElements(List<?> elements)
+    {
+        long weight = 0;
+        if (elements != null) {
+            for (Object element : elements) {
+                weight += weigh(element);
+            }
+        }
+
+        return weight;
+    }
+
+    /**
+     * @param chunks the in-line chunks
+     * @return the number of elements referenced by the chunks
+     */
+    public static long weigh(List<? extends InlineDiffChunk<?>> chunks)
+    {
+        long weight = 0;
+        for (InlineDiffChunk<?> chunk : chunks) {
+            weight += chunk.getElements().size();
+        }
+
+        return weight;
+    }
+
+    /**
+     * @param <E> the type of composite elements
+     * @param <F> the type of sub-elements
+     * @param blocks the unified blocks
+     * @return the weight of the elements referenced by the blocks (see {@link #weigh(Object)}) plus the number of
+     *         elements of their in-line chunks
+     */
+    public static <E, F> long weighBlocks(List<UnifiedDiffBlock<E, F>> blocks)
+    {
+        long weight = 0;
+        for (UnifiedDiffBlock<E, F> block : blocks) {
+            for (UnifiedDiffElement<E, F> element : block) {
+                weight += weigh(element.getValue());
+                if (element.getChunks() != null) {
+                    weight += weigh(element.getChunks());
+                }
+            }
+        }
+
+        return weight;
+    }
+}
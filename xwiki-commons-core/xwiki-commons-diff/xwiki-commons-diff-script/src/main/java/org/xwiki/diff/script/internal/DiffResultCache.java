@@ -0,0 +1,441 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.script.internal;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.diff.DiffResult;
+import org.xwiki.diff.StableHashable;
+import org.xwiki.diff.display.InlineDiffChunk;
+import org.xwiki.diff.display.UnifiedDiffBlock;
+import org.xwiki.management.JMXBeanRegistration;
+
+/**
+ * Keep the results of the diffs requested by scripts so that the same diff (like the changes of the last version of a
+ * document) is not computed again for each viewer.
+ * <p>
+ * The results are associated with a SHA-256 hash of the compared versions and of the configuration. Only the versions
+ * made of {@link String}s, {@link Character}s or {@link StableHashable}s are cached since the hash of other elements
+ * could not be trusted.
+ * <p>
+ * The cache is bounded by the total weight of the results and evicts the least recently used results first. The
+ * weight of a result is the number of elements it references: the compared elements of a {@link DiffResult}, the
+ * elements of the in-line chunks and the elements of the unified blocks (plus the elements of their in-line chunks).
+ * A {@link CharSequence} element (like a line of text) weighs its number of characters so that the weight roughly
+ * follows the memory used by the results, whether lines or characters are compared.
+ * <p>
+ * The same result is returned to all the callers so it's cached read only: {@link DiffResult}s and in-line chunks are
+ * wrapped in unmodifiable views while unified blocks (which can't be made read only) are copied for each caller.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+@Component(roles = { DiffResultCache.class })
+@Singleton
+public class DiffResultCache implements Initializable, Disposable
+{
+    /**
+     * The default maximum total weight of the cached results (roughly the number of cached characters), 0 to disable
+     * the cache.
+     */
+    public static final long DEFAULT_MAX_WEIGHT = 1000000;
+
+    /**
+     * The name under which the cache MBean is registered.
+     */
+    private static final String MBEANNAME = "type=Diff,name=DiffResultCache";
+
+    private static final String ALGORITHM = "SHA-256";
+
+    // Markers separating the various kinds of hashed values
+    private static final byte NULL = 0;
+
+    private static final byte STRING = 1;
+
+    private static final byte CHARACTER = 2;
+
+    private static final byte STABLEHASH = 3;
+
+    @Inject
+    private Provider<ConfigurationSource> configuration;
+
+    @Inject
+    private JMXBeanRegistration jmxRegistration;
+
+    @Inject
+    private Logger logger;
+
+    private WeightedLRUCache<String, Object> cache;
+
+    // Metrics
+
+    private final AtomicLong uncacheableCount = new AtomicLong();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.cache = new WeightedLRUCache<String, Object>(
+            this.configuration.get().getProperty("diff.cache.maxWeight", DEFAULT_MAX_WEIGHT));
+
+        this.jmxRegistration.registerMBean(new JMXDiffResultCache(this), MBEANNAME);
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.jmxRegistration.unregisterMBean(MBEANNAME);
+    }
+
+    /**
+     * @return true if the results should be cached
+     */
+    public boolean isEnabled()
+    {
+        return this.cache.isEnabled();
+    }
+
+    /**
+     * @param type the kind of result (the same versions can produce several kinds of results)
+     * @param previous the previous version
+     * @param next the next version
+     * @param diffConfiguration the configuration used to compare the versions, can be null
+     * @return the key associated with the result or null if it should not be cached
+     */
+    public String getKey(String type, List<?> previous, List<?> next, Map<String, ?> diffConfiguration)
+    {
+        MessageDigest digest = createDigest();
+
+        if (digest != null) {
+            update(digest, type);
+
+            if (update(digest, previous) && update(digest, next) && update(digest, diffConfiguration)) {
+                return toKey(digest);
+            }
+
+            this.uncacheableCount.incrementAndGet();
+        }
+
+        return null;
+    }
+
+    /**
+     * @param type the kind of result (the same versions can produce several kinds of results)
+     * @param previous the previous version
+     * @param next the next version
+     * @return the key associated with the result or null if it should not be cached
+     */
+    public String getKey(String type, String previous, String next)
+    {
+        MessageDigest digest = createDigest();
+
+        if (digest != null) {
+            update(digest, type);
+            update(digest, previous);
+            update(digest, next);
+
+            return toKey(digest);
+        }
+
+        return null;
+    }
+
+    private MessageDigest createDigest()
+    {
+        if (isEnabled()) {
+            try {
+                return MessageDigest.getInstance(ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                this.logger.warn("Failed to hash the diff versions: {}", e.getMessage());
+            }
+        }
+
+        return null;
+    }
+
+    private String toKey(MessageDigest digest)
+    {
+        return new BigInteger(1, digest.digest()).toString(Character.MAX_RADIX);
+    }
+
+    private boolean update(MessageDigest digest, List<?> elements)
+    {
+        if (elements == null) {
+            digest.update(NULL);
+        } else {
+            updateInt(digest, elements.size());
+
+            for (Object element : elements) {
+                if (!updateElement(digest, element)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private boolean updateElement(MessageDigest digest, Object element)
+    {
+        if (element == null) {
+            digest.update(NULL);
+        } else if (element instanceof String) {
+            update(digest, (String) element);
+        } else if (element instanceof Character) {
+            digest.update(CHARACTER);
+            updateInt(digest, (Character) element);
+        } else if (element instanceof StableHashable) {
+            digest.update(STABLEHASH);
+            update(digest, ((StableHashable) element).getStableHash());
+        } else {
+            return false;
+        }
+
+        return true;
+    }
+
+    private boolean update(MessageDigest digest, Map<String, ?> diffConfiguration)
+    {
+        if (diffConfiguration == null) {
+            digest.update(NULL);
+        } else {
+            // Sort the entries to not depend on the order of the map
+            for (Map.Entry<String, ?> entry : new TreeMap<String, Object>(diffConfiguration).entrySet()) {
+                Object value = entry.getValue();
+                if (!isStable(value)) {
+                    return false;
+                }
+
+                update(digest, entry.getKey());
+                update(digest, value != null ? value.getClass().getName() + ':' + value : null);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if the string representation of the configuration value is enough to identify it
+     */
+    private boolean isStable(Object value)
+    {
+        if (value == null || value instanceof Enum) {
+            return true;
+        }
+
+        return value instanceof String || value instanceof Number || value instanceof Boolean;
+    }
+
+    private void update(MessageDigest digest, String value)
+    {
+        if (value == null) {
+            digest.update(NULL);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+            digest.update(STRING);
+            updateInt(digest, bytes.length);
+            digest.update(bytes);
+        }
+    }
+
+    private void updateInt(MessageDigest digest, int value)
+    {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+    }
+
+    /**
+     * @param <E> the type of compared elements
+     * @param key the key associated with the result
+     * @return the cached result or null if none could be found
+     */
+    @SuppressWarnings("unchecked")
+    public <E> DiffResult<E> getDiff(String key)
+    {
+        return (DiffResult<E>) this.cache.get(key);
+    }
+
+    /**
+     * @param <E> the type of compared elements
+     * @param key the key associated with the result
+     * @param result the result to cache, it should not be modified anymore
+     * @return the read only result to use instead of the passed one
+     */
+    public <E> DiffResult<E> putDiff(String key, DiffResult<E> result)
+    {
+        DiffResult<E> cachedResult = new UnmodifiableDiffResult<E>(result);
+
+        this.cache.put(key, cachedResult,
+            DiffDisplayUtils.weighElements(result.getPrevious()) + DiffDisplayUtils.weighElements(result.getNext()));
+
+        return cachedResult;
+    }
+
+    /**
+     * @param <F> the type of compared elements
+     * @param key the key associated with the chunks
+     * @return the cached in-line chunks or null if none could be found
+     */
+    @SuppressWarnings("unchecked")
+    public <F> List<InlineDiffChunk<F>> getInline(String key)
+    {
+        return (List<InlineDiffChunk<F>>) this.cache.get(key);
+    }
+
+    /**
+     * @param <F> the type of compared elements
+     * @param key the key associated with the chunks
+     * @param chunks the in-line chunks to cache, they should not be modified anymore
+     * @return the read only chunks to use instead of the passed ones
+     */
+    public <F> List<InlineDiffChunk<F>> putInline(String key, List<InlineDiffChunk<F>> chunks)
+    {
+        List<InlineDiffChunk<F>> cachedChunks = DiffDisplayUtils.toUnmodifiable(chunks);
+
+        this.cache.put(key, cachedChunks, DiffDisplayUtils.weigh(chunks));
+
+        return cachedChunks;
+    }
+
+    /**
+     * @param <E> the type of composite elements
+     * @param <F> the type of sub-elements
+     * @param key the key associated with the blocks
+     * @return a copy of the cached unified blocks or null if none could be found
+     */
+    @SuppressWarnings("unchecked")
+    public <E, F> List<UnifiedDiffBlock<E, F>> getUnified(String key)
+    {
+        List<UnifiedDiffBlock<E, F>> blocks = (List<UnifiedDiffBlock<E, F>>) this.cache.get(key);
+
+        return blocks != null ? DiffDisplayUtils.copy(blocks, false) : null;
+    }
+
+    /**
+     * @param <E> the type of composite elements
+     * @param <F> the type of sub-elements
+     * @param key the key associated with the blocks
+     * @param blocks the unified blocks to cache, they should not be modified anymore
+     * @return the blocks to use instead of the passed ones
+     */
+    public <E, F> List<UnifiedDiffBlock<E, F>> putUnified(String key, List<UnifiedDiffBlock<E, F>> blocks)
+    {
+        List<UnifiedDiffBlock<E, F>> cachedBlocks = DiffDisplayUtils.copy(blocks, true);
+
+        this.cache.put(key, cachedBlocks, DiffDisplayUtils.weighBlocks(blocks));
+
+        return DiffDisplayUtils.copy(cachedBlocks, false);
+    }
+
+    /**
+     * Remove all the cached results.
+     */
+    public void clear()
+    {
+        this.cache.clear();
+    }
+
+    // Metrics
+
+    /**
+     * @return the number of cached results
+     */
+    public int getSize()
+    {
+        return this.cache.getCount();
+    }
+
+    /**
+     * @return the total weight of the cached results
+     */
+    public long getWeight()
+    {
+        return this.cache.getWeight();
+    }
+
+    /**
+     * @return the maximum total weight of the cached results
+     */
+    public long getMaxWeight()
+    {
+        return this.cache.getMaxWeight();
+    }
+
+    /**
+     * @return the number of lookups which found the result in the cache
+     */
+    public long getHitCount()
+    {
+        return this.cache.getHitCount();
+    }
+
+    /**
+     * @return the number of lookups which did not find the result in the cache
+     */
+    public long getMissCount()
+    {
+        return this.cache.getMissCount();
+    }
+
+    /**
+     * @return the proportion of lookups which found the result in the cache, between 0 and 1
+     */
+    public double getHitRate()
+    {
+        return this.cache.getHitRate();
+    }
+
+    /**
+     * @return the number of results removed to make room for others
+     */
+    public long getEvictionCount()
+    {
+        return this.cache.getEvictionCount();
+    }
+
+    /**
+     * @return the number of diffs which could not be cached because of the type of the compared elements or of the
+     *         configuration
+     */
+    public long getUncacheableCount()
+    {
+        return this.uncacheableCount.get();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.script.internal;
+
+/**
+ * Expose the metrics of the cache of the diffs requested by scripts.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class JMXDiffResultCache implements JMXDiffResultCacheMBean
+{
+    private final DiffResultCache cache;
+
+    /**
+     * @param cache the cache of the diffs requested by scripts
+     */
+    public JMXDiffResultCache(DiffResultCache cache)
+    {
+        this.cache = cache;
+    }
+
+    @Override
+    public int getSize()
+    {
+        return this.cache.getSize();
+    }
+
+    @Override
+    public long getWeight()
+    {
+        return this.cache.getWeight();
+    }
+
+    @Override
+    public long getMaxWeight()
+    {
+        return this.cache.getMaxWeight();
+    }
+
+    @Override
+    public long getHitCount()
+    {
+        return this.cache.getHitCount();
+    }
+
+    @Override
+    public long getMissCount()
+    {
+        return this.cache.getMissCount();
+    }
+
+    @Override
+    public double getHitRate()
+    {
+        return this.cache.getHitRate();
+    }
+
+    @Override
+    public long getEvictionCount()
+    {
+        return this.cache.getEvictionCount();
+    }
+
+    @Override
+    public long getUncacheableCount()
+    {
+        return this.cache.getUncacheableCount();
+    }
+
+    @Override
+    public void clear()
+    {
+        this.cache.clear();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.script.internal;
+
+/**
+ * MBean API related to the cache of the diffs requested by scripts.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public interface JMXDiffResultCacheMBean
+{
+    /**
+     * @return the number of cached diff results
+     */
+    int getSize();
+
+    /**
+     * @return the total weight of the cached diff results
+     */
+    long getWeight();
+
+    /**
+     * @return the maximum total weight of the cached diff results
+     */
+    long getMaxWeight();
+
+    /**
+     * @return the number of lookups which found the diff result in the cache
+     */
+    long getHitCount();
+
+    /**
+     * @return the number of lookups which had to compute the diff
+     */
+    long getMissCount();
+
+    /**
+     * @return the proportion of lookups which found the diff result in the cache, between 0 and 1
+     */
+    double getHitRate();
+
+    /**
+     * @return the number of diff results removed to make room for others
+     */
+    long getEvictionCount();
+
+    /**
+     * @return the number of diffs which could not be cached because of the type of the compared elements
+     */
+    long getUncacheableCount();
+
+    /**
+     * Remove all the cached diff results.
+     */
+    void clear();
+}
@@ -0,0 +1,250 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.script.internal;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.xwiki.diff.Chunk;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.DiffResult;
+import org.xwiki.diff.Patch;
+import org.xwiki.diff.PatchException;
+import org.xwiki.logging.LogQueue;
+
+/**
+ * A read only view of a {@link DiffResult} which can be shared between several callers.
+ * <p>
+ * The compared versions, the patch and its chunks can't be modified. The log is copied each time it's requested.
+ *
+ * @param <E> the type of compared elements
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class UnmodifiableDiffResult<E> implements DiffResult<E>
+{
+    private static final class UnmodifiableChunk<E> implements Chunk<E>
+    {
+        private final Chunk<E> chunk;
+
+        UnmodifiableChunk(Chunk<E> chunk)
+        {
+            this.chunk = chunk;
+        }
+
+        @Override
+        public void verify(List<E> target) throws PatchException
+        {
+            this.chunk.verify(target);
+        }
+
+        @Override
+        public List<E> getElements()
+        {
+            return Collections.unmodifiableList(this.chunk.getElements());
+        }
+
+        @Override
+        public void setElements(List<E> elements)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int size()
+        {
+            return this.chunk.size();
+        }
+
+        @Override
+        public int getIndex()
+        {
+            return this.chunk.getIndex();
+        }
+
+        @Override
+        public int getLastIndex()
+        {
+            return this.chunk.getLastIndex();
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.chunk.toString();
+        }
+    }
+
+    private static final class UnmodifiableDelta<E> implements Delta<E>
+    {
+        private final Delta<E> delta;
+
+        private final Chunk<E> previous;
+
+        private final Chunk<E> next;
+
+        UnmodifiableDelta(Delta<E> delta)
+        {
+            this.delta = delta;
+            this.previous = delta.getPrevious() != null ? new UnmodifiableChunk<E>(delta.getPrevious()) : null;
+            this.next = delta.getNext() != null ? new UnmodifiableChunk<E>(delta.getNext()) : null;
+        }
+
+        @Override
+        public void verify(List<E> target) throws PatchException
+        {
+            this.delta.verify(target);
+        }
+
+        @Override
+        public void apply(List<E> target) throws PatchException
+        {
+            this.delta.apply(target);
+        }
+
+        @Override
+        public void restore(List<E> target) throws PatchException
+        {
+            this.delta.restore(target);
+        }
+
+        @Override
+        public Type getType()
+        {
+            return this.delta.getType();
+        }
+
+        @Override
+        public Chunk<E> getPrevious()
+        {
+            return this.previous;
+        }
+
+        @Override
+        public Chunk<E> getNext()
+        {
+            return this.next;
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.delta.toString();
+        }
+    }
+
+    private static final class UnmodifiablePatch<E> extends AbstractList<Delta<E>> implements Patch<E>
+    {
+        private final Patch<E> patch;
+
+        private final List<Delta<E>> deltas;
+
+        UnmodifiablePatch(Patch<E> patch)
+        {
+            this.patch = patch;
+
+            this.deltas = new ArrayList<Delta<E>>(patch.size());
+            for (Delta<E> delta : patch) {
+                this.deltas.add(new UnmodifiableDelta<E>(delta));
+            }
+        }
+
+        @Override
+        public Delta<E> get(int index)
+        {
+            return this.deltas.get(index);
+        }
+
+        @Override
+        public int size()
+        {
+            return this.deltas.size();
+        }
+
+        @Override
+        public List<E> apply(List<E> target) throws PatchException
+        {
+            return this.patch.apply(target);
+        }
+
+        @Override
+        public List<E> restore(List<E> target) throws PatchException
+        {
+            return this.patch.restore(target);
+        }
+    }
+
+    private final DiffResult<E> result;
+
+    private final List<E> previous;
+
+    private final List<E> next;
+
+    private final Patch<E> patch;
+
+    /**
+     * @param result the result to expose, it should not be modified anymore
+     */
+    public UnmodifiableDiffResult(DiffResult<E> result)
+    {
+        this.result = result;
+
+        this.previous = result.getPrevious() != null ? Collections.unmodifiableList(result.getPrevious()) : null;
+        this.next = result.getNext() != null ? Collections.unmodifiableList(result.getNext()) : null;
+        this.patch = result.getPatch() != null ? new UnmodifiablePatch<E>(result.getPatch()) : null;
+    }
+
+    @Override
+    public List<E> getPrevious()
+    {
+        return this.previous;
+    }
+
+    @Override
+    public List<E> getNext()
+    {
+        return this.next;
+    }
+
+    @Override
+    public LogQueue getLog()
+    {
+        LogQueue log = new LogQueue();
+        if (this.result.getLog() != null) {
+            log.addAll(this.result.getLog());
+        }
+
+        return log;
+    }
+
+    @Override
+    public Patch<E> getPatch()
+    {
+        return this.patch;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.result.toString();
+    }
+}
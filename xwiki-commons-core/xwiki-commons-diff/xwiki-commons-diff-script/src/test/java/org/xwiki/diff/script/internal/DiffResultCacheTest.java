@@ -0,0 +1,377 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.script.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.xwiki.configuration.internal.MemoryConfigurationSource;
+import org.xwiki.diff.DiffResult;
+import org.xwiki.diff.StableHashable;
+import org.xwiki.diff.display.InlineDiffChunk;
+import org.xwiki.diff.display.UnifiedDiffBlock;
+import org.xwiki.diff.display.UnifiedDiffElement;
+import org.xwiki.diff.internal.DefaultChunk;
+import org.xwiki.diff.internal.DefaultDiffResult;
+import org.xwiki.diff.internal.DefaultPatch;
+import org.xwiki.diff.internal.InsertDelta;
+import org.xwiki.management.JMXBeanRegistration;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.annotation.ComponentList;
+import org.xwiki.test.mockito.MockitoComponentManagerRule;
+
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Validate {@link DiffResultCache}.
+ *
+ * @version $Id$
+ */
+@ComponentList({ DiffResultCache.class })
+public class DiffResultCacheTest
+{
+    @Rule
+    public final MockitoComponentManagerRule componentManager = new MockitoComponentManagerRule();
+
+    private MemoryConfigurationSource source;
+
+    private static class Element implements StableHashable
+    {
+        private final String hash;
+
+        Element(String hash)
+        {
+            this.hash = hash;
+        }
+
+        @Override
+        public String getStableHash()
+        {
+            return this.hash;
+        }
+    }
+
+    @BeforeComponent
+    public void registerComponents() throws Exception
+    {
+        this.componentManager.registerMockComponent(JMXBeanRegistration.class);
+
+        this.source = this.componentManager.registerMemoryConfigurationSource();
+    }
+
+    private DiffResultCache getCache(long maxWeight) throws Exception
+    {
+        this.source.setProperty("diff.cache.maxWeight", maxWeight);
+
+        return this.componentManager.getInstance(DiffResultCache.class);
+    }
+
+    private DiffResult<String> result(List<String> previous, List<String> next)
+    {
+        DefaultDiffResult<String> result = new DefaultDiffResult<String>(previous, next);
+
+        DefaultPatch<String> patch = new DefaultPatch<String>();
+        patch.add(new InsertDelta<String>(new DefaultChunk<String>(0, Collections.<String>emptyList()),
+            new DefaultChunk<String>(0, next)));
+        result.setPatch(patch);
+
+        return result;
+    }
+
+    private DiffResult<String> result(int size)
+    {
+        return result(Collections.<String>emptyList(), Collections.nCopies(size, "a"));
+    }
+
+    // Tests
+
+    @Test
+    public void testKeyStability() throws Exception
+    {
+        DiffResultCache cache = getCache(DiffResultCache.DEFAULT_MAX_WEIGHT);
+
+        String key = cache.getKey("diff", Arrays.asList("a", "b"), Arrays.asList("c"), null);
+
+        Assert.assertNotNull(key);
+        Assert.assertEquals(key, cache.getKey("diff", Arrays.asList("a", "b"), Arrays.asList("c"), null));
+
+        // The elements are not just concatenated
+        Assert.assertNotEquals(key, cache.getKey("diff", Arrays.asList("ab"), Arrays.asList("c"), null));
+        Assert.assertNotEquals(key, cache.getKey("diff", Arrays.asList("a"), Arrays.asList("b", "c"), null));
+        Assert.assertNotEquals(key, cache.getKey("other", Arrays.asList("a", "b"), Arrays.asList("c"), null));
+        Assert.assertNotEquals(cache.getKey("diff", Arrays.asList("a"), null, null),
+            cache.getKey("diff", Arrays.asList('a'), null, null));
+
+        // The configuration order does not matter
+        Map<String, Object> configuration1 = new LinkedHashMap<String, Object>();
+        configuration1.put("key1", "value1");
+        configuration1.put("key2", 2);
+        Map<String, Object> configuration2 = new LinkedHashMap<String, Object>();
+        configuration2.put("key2", 2);
+        configuration2.put("key1", "value1");
+
+        Assert.assertEquals(cache.getKey("diff", null, null, configuration1),
+            cache.getKey("diff", null, null, configuration2));
+        Assert.assertNotEquals(cache.getKey("diff", null, null, configuration1),
+            cache.getKey("diff", null, null, null));
+
+        Assert.assertEquals(cache.getKey("inline", "previous", "next"), cache.getKey("inline", "previous", "next"));
+        Assert.assertNotEquals(cache.getKey("inline", "previous", "next"),
+            cache.getKey("inline", "previousn", "ext"));
+    }
+
+    @Test
+    public void testStableHashableElements() throws Exception
+    {
+        DiffResultCache cache = getCache(DiffResultCache.DEFAULT_MAX_WEIGHT);
+
+        Assert.assertEquals(cache.getKey("diff", Arrays.asList(new Element("hash")), null, null),
+            cache.getKey("diff", Arrays.asList(new Element("hash")), null, null));
+        Assert.assertNotEquals(cache.getKey("diff", Arrays.asList(new Element("hash")), null, null),
+            cache.getKey("diff", Arrays.asList(new Element("other")), null, null));
+        Assert.assertNotEquals(cache.getKey("diff", Arrays.asList(new Element("hash")), null, null),
+            cache.getKey("diff", Arrays.asList("hash"), null, null));
+    }
+
+    @Test
+    public void testUncacheable() throws Exception
+    {
+        DiffResultCache cache = getCache(DiffResultCache.DEFAULT_MAX_WEIGHT);
+
+        Assert.assertNull(cache.getKey("diff", Arrays.asList(1, 2), null, null));
+        Assert.assertNull(cache.getKey("diff", Arrays.asList("a"), Arrays.asList(new Object()), null));
+        Assert.assertNull(cache.getKey("diff", null, null,
+            Collections.singletonMap("key", new HashMap<String, String>())));
+
+        Assert.assertEquals(3, cache.getUncacheableCount());
+    }
+
+    @Test
+    public void testDisabled() throws Exception
+    {
+        DiffResultCache cache = getCache(0);
+
+        Assert.assertFalse(cache.isEnabled());
+        Assert.assertNull(cache.getKey("diff", Arrays.asList("a"), null, null));
+        Assert.assertNull(cache.getKey("inline", "previous", "next"));
+
+        cache.putDiff("key", result(1));
+
+        Assert.assertNull(cache.getDiff("key"));
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testEvictByWeight() throws Exception
+    {
+        DiffResultCache cache = getCache(10);
+
+        cache.putDiff("key1", result(4));
+        cache.putDiff("key2", result(4));
+
+        Assert.assertEquals(8, cache.getWeight());
+
+        // Make key2 the least recently used
+        Assert.assertNotNull(cache.getDiff("key1"));
+
+        cache.putDiff("key3", result(4));
+
+        Assert.assertNotNull(cache.getDiff("key1"));
+        Assert.assertNull(cache.getDiff("key2"));
+        Assert.assertNotNull(cache.getDiff("key3"));
+        Assert.assertEquals(1, cache.getEvictionCount());
+
+        // A result heavier than the whole cache is not cached and does not evict anything
+        cache.putDiff("key4", result(11));
+
+        Assert.assertNull(cache.getDiff("key4"));
+        Assert.assertEquals(2, cache.getSize());
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testWeighByLength() throws Exception
+    {
+        DiffResultCache cache = getCache(10);
+
+        // The lines weigh their number of characters
+        cache.putDiff("key1", result(Arrays.asList("abc"), Arrays.asList("abcd", "")));
+
+        Assert.assertEquals(8, cache.getWeight());
+
+        // Too heavy even if there's only 2 lines
+        cache.putDiff("key2", result(Arrays.asList("abcdef"), Arrays.asList("ghijkl")));
+
+        Assert.assertNull(cache.getDiff("key2"));
+        Assert.assertEquals(8, cache.getWeight());
+    }
+
+    @Test
+    public void testMetrics() throws Exception
+    {
+        DiffResultCache cache = getCache(10);
+
+        cache.putDiff("key", result(1));
+
+        cache.getDiff("key");
+        cache.getDiff("key");
+        cache.getDiff("key");
+        cache.getDiff("other");
+
+        Assert.assertEquals(3, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(0.75, cache.getHitRate(), 0);
+        Assert.assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testUnmodifiableDiff() throws Exception
+    {
+        DiffResultCache cache = getCache(10);
+
+        DiffResult<String> result = cache.putDiff("key", result(Arrays.asList("a"), Arrays.asList("b")));
+
+        Assert.assertSame(result, cache.getDiff("key"));
+        Assert.assertEquals(Arrays.asList("b"), result.getNext());
+        Assert.assertEquals(1, result.getPatch().size());
+        Assert.assertEquals(Arrays.asList("b"), result.getPatch().get(0).getNext().getElements());
+
+        try {
+            result.getNext().add("c");
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+
+        try {
+            result.getPatch().clear();
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+
+        try {
+            result.getPatch().get(0).getNext().setElements(Arrays.asList("c"));
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+
+        // The log is copied for each caller
+        result.getLog().error("error");
+        Assert.assertTrue(cache.<String>getDiff("key").getLog().isEmpty());
+
+        // Same weight unit as the other results: the number of elements
+        Assert.assertEquals(2, cache.getWeight());
+    }
+
+    @Test
+    public void testUnmodifiableInline() throws Exception
+    {
+        DiffResultCache cache = getCache(10);
+
+        List<InlineDiffChunk<Character>> chunks = cache.putInline("key",
+            Arrays.asList(new InlineDiffChunk<Character>(InlineDiffChunk.Type.UNMODIFIED, Arrays.asList('a', 'b')),
+                new InlineDiffChunk<Character>(InlineDiffChunk.Type.ADDED, Arrays.asList('c'))));
+
+        Assert.assertSame(chunks, cache.<Character>getInline("key"));
+        Assert.assertEquals(3, cache.getWeight());
+
+        try {
+            chunks.remove(0);
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+
+        try {
+            chunks.get(0).getElements().set(0, 'z');
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testCopyUnified() throws Exception
+    {
+        DiffResultCache cache = getCache(10);
+
+        UnifiedDiffBlock<String, Character> block = new UnifiedDiffBlock<String, Character>();
+        block.add(new UnifiedDiffElement<String, Character>(0, UnifiedDiffElement.Type.CONTEXT, "a"));
+        UnifiedDiffElement<String, Character> element =
+            new UnifiedDiffElement<String, Character>(1, UnifiedDiffElement.Type.ADDED, "bc");
+        element.setChunks(Arrays.asList(
+            new InlineDiffChunk<Character>(InlineDiffChunk.Type.ADDED, Arrays.asList('b', 'c'))));
+        block.add(element);
+
+        List<UnifiedDiffBlock<String, Character>> blocks = cache.putUnified("key", Arrays.asList(block));
+
+        // 3 characters and 2 sub-elements
+        Assert.assertEquals(5, cache.getWeight());
+
+        // Modifying the returned blocks does not impact the cached ones
+        blocks.get(0).remove(0);
+        blocks.get(0).get(0).setChunks(null);
+
+        List<UnifiedDiffBlock<String, Character>> cachedBlocks = cache.getUnified("key");
+
+        Assert.assertEquals(2, cachedBlocks.get(0).size());
+        Assert.assertEquals("bc", cachedBlocks.get(0).get(1).getValue());
+        Assert.assertEquals(Arrays.asList('b', 'c'), cachedBlocks.get(0).get(1).getChunks().get(0).getElements());
+        Assert.assertNotSame(cachedBlocks, cache.getUnified("key"));
+    }
+
+    @Test
+    public void testJMX() throws Exception
+    {
+        DiffResultCache cache = getCache(10);
+
+        ArgumentCaptor<Object> mbean = ArgumentCaptor.forClass(Object.class);
+        verify(this.componentManager.<JMXBeanRegistration>getInstance(JMXBeanRegistration.class))
+            .registerMBean(mbean.capture(), eq("type=Diff,name=DiffResultCache"));
+        JMXDiffResultCache jmx = (JMXDiffResultCache) mbean.getValue();
+
+        cache.putDiff("key", result(4));
+        cache.getDiff("key");
+        cache.getKey("diff", Arrays.asList(1), null, null);
+
+        Assert.assertEquals(1, jmx.getSize());
+        Assert.assertEquals(4, jmx.getWeight());
+        Assert.assertEquals(10, jmx.getMaxWeight());
+        Assert.assertEquals(1, jmx.getHitCount());
+        Assert.assertEquals(0, jmx.getMissCount());
+        Assert.assertEquals(1, jmx.getUncacheableCount());
+
+        jmx.clear();
+
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertNull(cache.getDiff("key"));
+    }
+}
@@ -107,6 +107,27 @@ public Collection<ExtensionPlanAction> getActions()
         }
     }
 
+    @Override
+    protected long getWeight()
+    {
+        return this.tree != null ? weigh(this.tree) : 0;
+    }
+
+    /**
+     * @param nodes a branch of the tree representation of the plan
+     * @return the number of nodes in the branch
+     */
+    private long weigh(Collection<ExtensionPlanNode> nodes)
+    {
+        long weight = nodes.size();
+
+        for (ExtensionPlanNode node : nodes) {
+            weight += weigh(node.getChildren());
+        }
+
+        return weight;
+    }
+
     @Override
     public String toString()
     {
@@ -126,6 +126,29 @@ public void setInteractive(boolean interactive)
         setProperty(PROPERTY_INTERACTIVE, interactive);
     }
 
+    /**
+     * The requests not extending {@link AbstractRequest} are executed with the {@link #DEFAULT_PRIORITY default
+     * priority}.
+     *
+     * @return the priority of the job: jobs with a higher priority are executed first when they are waiting for a free
+     *         thread
+     * @since 7.0M1
+     */
+    public int getPriority()
+    {
+        return this.<Integer>getProperty(PROPERTY_PRIORITY, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * @param priority the priority of the job: jobs with a higher priority are executed first when they are waiting
+     *            for a free thread
+     * @since 7.0M1
+     */
+    public void setPriority(int priority)
+    {
+        setProperty(PROPERTY_PRIORITY, priority);
+    }
+
     /**
      * @param key the name of the property
      * @param value the value of the property
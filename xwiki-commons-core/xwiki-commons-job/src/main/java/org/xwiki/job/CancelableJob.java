@@ -0,0 +1,41 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * A Job which can be asked to stop before the end of its execution.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+@Unstable
+public interface CancelableJob extends Job
+{
+    /**
+     * Ask the job to stop as soon as possible.
+     * <p>
+     * The cancellation is cooperative: the job stops at its next checkpoint (for example the next progress step) and
+     * ends with the {@link org.xwiki.job.event.status.JobStatus.State#CANCELED} state. The jobs started by this job
+     * are canceled too. A job canceled before being started is not executed at all.
+     */
+    void cancel();
+}
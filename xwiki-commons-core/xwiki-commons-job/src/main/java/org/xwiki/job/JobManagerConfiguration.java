@@ -22,6 +22,7 @@
 import java.io.File;
 
 import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
 
 /**
  * Some job manager related configuration.
@@ -36,4 +37,80 @@
      * @return the folder containing job executing status
      */
     File getStorage();
+
+    /**
+     * @return the format used to store job statuses on the file system: {@code binary} (the default) or {@code xml}
+     * @since 7.0M1
+     */
+    @Unstable
+    String getStatusFormat();
+
+    /**
+     * @return the maximum number of step progress events sent per second for a job, 0 to not send any progress event
+     *         (the progress of the job is still updated) and a negative value to send all of them
+     * @since 7.0M1
+     */
+    @Unstable
+    int getProgressEventRate();
+
+    /**
+     * The jobs started by a job which is not part of a group are not limited by this number since the starting job
+     * might be waiting for them.
+     *
+     * @return the maximum number of threads executing the jobs which are not part of a group, the other jobs waiting
+     *         for a free thread
+     * @since 7.0M1
+     */
+    @Unstable
+    int getMaxThreads();
+
+    /**
+     * @param groupPath the path of the job group
+     * @return the maximum number of jobs of the passed group executed at the same time (the jobs of the parent and
+     *         children groups are never executed at the same time than the jobs of the passed group)
+     * @since 7.0M1
+     */
+    @Unstable
+    int getGroupConcurrency(JobGroupPath groupPath);
+
+    /**
+     * @return the number of days after which the status of a finished job is archived or deleted (see
+     *         {@link #isStatusArchiveEnabled()}), 0 to keep them forever
+     * @since 7.0M1
+     */
+    @Unstable
+    int getStatusMaxAge();
+
+    /**
+     * @return the maximum number of finished job statuses kept for each job type (the first element of the job id),
+     *         the oldest ones being archived or deleted (see {@link #isStatusArchiveEnabled()}), 0 for no limit
+     * @since 7.0M1
+     */
+    @Unstable
+    int getStatusMaxCount();
+
+    /**
+     * @return the maximum total size of the stored job statuses in megabytes, the oldest ones being archived or
+     *         deleted (see {@link #isStatusArchiveEnabled()}), 0 for no limit
+     * @since 7.0M1
+     */
+    @Unstable
+    int getStatusMaxSize();
+
+    /**
+     * @return true if the job statuses exceeding the retention limits should be moved to a compressed archive (from
+     *         which they can still be read) instead of being deleted
+     * @since 7.0M1
+     */
+    @Unstable
+    boolean isStatusArchiveEnabled();
+
+    /**
+     * @return the maximum estimated weight of the job statuses kept in memory (roughly the total number of log events
+     *         they contain), the least recently used ones being only softly referenced beyond it, 0 to not keep any
+     *         status strongly referenced
+     * @since 7.0M1
+     */
+    @Unstable
+    long getStatusCacheMaxWeight();
 }
@@ -41,6 +41,19 @@ public interface Request extends Serializable
      */
     String PROPERTY_INTERACTIVE = "interactive";
 
+    /**
+     * @see AbstractRequest#getPriority()
+     * @since 7.0M1
+     */
+    String PROPERTY_PRIORITY = "priority";
+
+    /**
+     * The priority of the jobs for which no priority is specified.
+     *
+     * @since 7.0M1
+     */
+    int DEFAULT_PRIORITY = 0;
+
     /**
      * @return list based identifier used to access the job. If none is provided the job will not be accessible by id
      *         and the status of the job will not be stored.
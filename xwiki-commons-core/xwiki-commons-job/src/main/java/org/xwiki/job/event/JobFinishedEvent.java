@@ -25,6 +25,7 @@
 
 import org.xwiki.job.Request;
 import org.xwiki.observation.event.EndEvent;
+import org.xwiki.stability.Unstable;
 
 /**
  * Job finished event launched when a job is finished. Additional data may contains an exception if the job has not been
@@ -36,6 +37,10 @@
  * <li>source: the related {@link org.xwiki.job.Job} instance</li>
  * <li>data: an {@link Throwable} if the job execution failed or null otherwise</li>
  * </ul>
+ * <p>
+ * The event also indicate how long the job waited to be executed and how long it ran (see {@link #getQueueTime()} and
+ * {@link #getRunTime()}) so that listeners can gather some metrics about jobs execution.
+ * </p>
  *
  * @version $Id$
  * @since 4.0M1
@@ -47,6 +52,16 @@ public class JobFinishedEvent extends AbstractJobEvent implements EndEvent
      */
     private static final long serialVersionUID = 1L;
 
+    /**
+     * @see #getQueueTime()
+     */
+    private long queueTime = -1;
+
+    /**
+     * @see #getRunTime()
+     */
+    private long runTime = -1;
+
     /**
      * Default constructor.
      */
@@ -84,4 +99,40 @@ public JobFinishedEvent(List<String> jobId, String jobType, Request request)
         super(jobId, jobType, request);
     }
 
+    /**
+     * @param jobId the event related job id
+     * @param jobType the event related job type
+     * @param request the event related job request
+     * @param queueTime the time the job waited before being executed, in milliseconds, -1 if unknown
+     * @param runTime the time the job took to execute, in milliseconds, -1 if unknown
+     * @since 7.0M1
+     */
+    public JobFinishedEvent(List<String> jobId, String jobType, Request request, long queueTime, long runTime)
+    {
+        super(jobId, jobType, request);
+
+        this.queueTime = queueTime;
+        this.runTime = runTime;
+    }
+
+    /**
+     * @return the time the job waited in an executor queue before being executed, in milliseconds, -1 if unknown (for
+     *         example when the job was directly executed by the caller thread)
+     * @since 7.0M1
+     */
+    @Unstable
+    public long getQueueTime()
+    {
+        return this.queueTime;
+    }
+
+    /**
+     * @return the time the job took to execute, in milliseconds, -1 if unknown
+     * @since 7.0M1
+     */
+    @Unstable
+    public long getRunTime()
+    {
+        return this.runTime;
+    }
 }
@@ -23,6 +23,9 @@
 
 /**
  * Helper to manipulate current progress.
+ * <p>
+ * The progress of the current job is updated directly, the corresponding progress events being sent only to the
+ * listeners which still need them (see {@link org.xwiki.job.JobManagerConfiguration#getProgressEventRate()}).
  *
  * @version $Id$
  * @since 6.1M1
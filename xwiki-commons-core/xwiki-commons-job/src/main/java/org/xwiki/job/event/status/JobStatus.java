@@ -60,7 +60,14 @@
         /**
          * The job is done.
          */
-        FINISHED
+        FINISHED,
+
+        /**
+         * The job has been canceled before being done.
+         *
+         * @since 7.0M1
+         */
+        CANCELED
     }
 
     /**
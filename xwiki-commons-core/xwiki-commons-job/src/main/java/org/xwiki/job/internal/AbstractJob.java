@@ -19,7 +19,11 @@
  */
 package org.xwiki.job.internal;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
@@ -35,12 +39,14 @@
 import org.xwiki.context.ExecutionContext;
 import org.xwiki.context.ExecutionContextException;
 import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.job.CancelableJob;
 import org.xwiki.job.Job;
 import org.xwiki.job.JobContext;
 import org.xwiki.job.JobStatusStore;
 import org.xwiki.job.Request;
 import org.xwiki.job.event.JobFinishedEvent;
 import org.xwiki.job.event.JobStartedEvent;
+import org.xwiki.job.event.status.JobProgress;
 import org.xwiki.job.event.status.JobProgressManager;
 import org.xwiki.job.event.status.JobStatus;
 import org.xwiki.job.event.status.JobStatus.State;
@@ -58,7 +64,8 @@
  * @since 5.0M1
  */
 @InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
-public abstract class AbstractJob<R extends Request, S extends AbstractJobStatus<? super R>> implements Job
+public abstract class AbstractJob<R extends Request, S extends AbstractJobStatus<? super R>> implements
+    CancelableJob
 {
     private static final BeginTranslationMarker LOG_BEGIN = new BeginTranslationMarker("job.log.begin");
 
@@ -70,6 +77,8 @@
 
     private static final TranslationMarker LOG_EXCEPTION = new TranslationMarker("job.log.exception");
 
+    private static final TranslationMarker LOG_CANCELED = new TranslationMarker("job.log.canceled");
+
     private static final TranslationMarker LOG_STATUS_STORE_FAILED = new TranslationMarker(
         "job.log.status.store.failed");
 
@@ -146,6 +155,37 @@
 
     protected boolean initExecutionContext = true;
 
+    /**
+     * The {@link System#nanoTime()} at which the job was put in an executor queue, -1 if it was not queued.
+     */
+    private volatile long queuedTime = -1;
+
+    /**
+     * The {@link System#nanoTime()} at which the job started.
+     */
+    private long startTime;
+
+    /**
+     * @see #isCanceled()
+     */
+    private volatile boolean canceled;
+
+    /**
+     * The job which started this job in the same thread, if any.
+     */
+    private volatile AbstractJob<?, ?> parentJob;
+
+    /**
+     * The running jobs started by this job.
+     */
+    private final Set<AbstractJob<?, ?>> subJobs = Collections
+        .newSetFromMap(new ConcurrentHashMap<AbstractJob<?, ?>, Boolean>());
+
+    /**
+     * The thread executing the job, guarded by {@link #lock}.
+     */
+    private Thread thread;
+
     @Override
     public R getRequest()
     {
@@ -206,15 +246,85 @@ protected void runInContext()
         try {
             jobStarting();
 
+            // Canceled before being started
+            checkCanceled();
+
             runInternal();
         } catch (Throwable t) {
-            this.logger.error(LOG_EXCEPTION, "Exception thrown during job execution", t);
+            if (isCanceled() && (t instanceof CancellationException || t instanceof InterruptedException)) {
+                this.logger.info(LOG_CANCELED, "Canceled job of type [{}]", getType());
+            } else {
+                this.logger.error(LOG_EXCEPTION, "Exception thrown during job execution", t);
+            }
             error = t;
         } finally {
+            if (isCanceled()) {
+                try {
+                    jobCanceled();
+                } catch (Throwable t) {
+                    this.logger.error(LOG_EXCEPTION, "Exception thrown while cleaning canceled job", t);
+                }
+            }
+
             jobFinished(error);
         }
     }
 
+    @Override
+    public void cancel()
+    {
+        this.canceled = true;
+
+        for (AbstractJob<?, ?> subJob : this.subJobs) {
+            subJob.cancel();
+        }
+
+        this.lock.lock();
+
+        try {
+            // A job waiting for an answer would never reach any checkpoint
+            if (this.thread != null && this.status != null && this.status.getState() == State.WAITING) {
+                this.thread.interrupt();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the job has been asked to stop (see {@link #cancel()})
+     * @since 7.0M1
+     */
+    public boolean isCanceled()
+    {
+        return this.canceled;
+    }
+
+    /**
+     * A cooperative cancellation checkpoint: stop the job if it has been canceled. It's automatically called at each
+     * progress step of the job but long operations can call it more often.
+     *
+     * @throws CancellationException when the job has been canceled
+     * @since 7.0M1
+     */
+    protected void checkCanceled()
+    {
+        if (isCanceled()) {
+            throw new CancellationException("Job of type [" + getType() + "] has been canceled");
+        }
+    }
+
+    /**
+     * Called in the job thread when the job has been canceled, just before it finishes. Should be overridden to clean
+     * what the job left behind (temporary files, partially applied modifications, etc.).
+     *
+     * @since 7.0M1
+     */
+    protected void jobCanceled()
+    {
+        // Nothing to clean by default
+    }
+
     @Override
     @Deprecated
     public void start(Request request)
@@ -223,11 +333,42 @@ public void start(Request request)
         run();
     }
 
+    /**
+     * Called when the job is put in an executor queue to indicate in {@link JobFinishedEvent} how long the job waited
+     * before being executed.
+     *
+     * @since 7.0M1
+     */
+    protected void jobQueued()
+    {
+        this.queuedTime = System.nanoTime();
+    }
+
     /**
      * Called when the job is starting.
      */
     protected void jobStarting()
     {
+        this.startTime = System.nanoTime();
+
+        this.lock.lock();
+        try {
+            this.thread = Thread.currentThread();
+        } finally {
+            this.lock.unlock();
+        }
+
+        Job parentJob = this.jobContext.getCurrentJob();
+
+        // Make sure the job is canceled with the job which started it
+        if (parentJob instanceof AbstractJob) {
+            this.parentJob = (AbstractJob<?, ?>) parentJob;
+            this.parentJob.subJobs.add(this);
+            if (this.parentJob.isCanceled()) {
+                this.canceled = true;
+            }
+        }
+
         this.jobContext.pushCurrentJob(this);
 
         this.observationManager.notify(new JobStartedEvent(getRequest().getId(), getType(), this.request), this);
@@ -237,6 +378,15 @@ protected void jobStarting()
 
         this.status.startListening();
 
+        // The progress of a job started in the same thread is part of the progress of the job which started it
+        if (parentJob != null && parentJob.getStatus() != null) {
+            JobProgress parentProgress = parentJob.getStatus().getProgress();
+            JobProgress progress = this.status.getProgress();
+            if (parentProgress instanceof DefaultJobProgress && progress instanceof DefaultJobProgress) {
+                ((DefaultJobProgress) progress).setParent((DefaultJobProgress) parentProgress);
+            }
+        }
+
         if (getStatus().getRequest().getId() != null) {
             this.logger.info(LOG_BEGIN_ID, "Starting job of type [{}] with identifier [{}]", getType(), getStatus()
                 .getRequest().getId());
@@ -257,8 +407,11 @@ protected void jobFinished(Throwable exception)
         try {
             // Give a chance to any listener to do custom action associated to the job
             // TODO: use a JobFinishingEvent instead ?
-            this.observationManager.notify(new JobFinishedEvent(getRequest().getId(), getType(), this.request), this,
-                exception);
+            long queueTime = this.queuedTime >= 0 ? toMillis(this.startTime - this.queuedTime) : -1;
+            long runTime = toMillis(System.nanoTime() - this.startTime);
+            this.queuedTime = -1;
+            this.observationManager.notify(new JobFinishedEvent(getRequest().getId(), getType(), this.request,
+                queueTime, runTime), this, exception);
 
             // Indicate when the job ended
             this.status.setEndDate(new Date());
@@ -274,7 +427,14 @@ protected void jobFinished(Throwable exception)
             this.status.stopListening();
 
             // Update job state
-            this.status.setState(JobStatus.State.FINISHED);
+            this.status.setState(isCanceled() ? JobStatus.State.CANCELED : JobStatus.State.FINISHED);
+
+            this.thread = null;
+
+            if (this.parentJob != null) {
+                this.parentJob.subJobs.remove(this);
+                this.parentJob = null;
+            }
 
             // Release threads waiting for job being done
             this.finishedCondition.signalAll();
@@ -295,6 +455,11 @@ protected void jobFinished(Throwable exception)
         }
     }
 
+    private long toMillis(long nanos)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
     /**
      * Should be overridden if R is not Request.
      *
@@ -356,7 +521,7 @@ public void join() throws InterruptedException
         this.lock.lockInterruptibly();
 
         try {
-            if (getStatus() == null || getStatus().getState() != State.FINISHED) {
+            if (getStatus() == null || !isDone()) {
                 this.finishedCondition.await();
             }
         } finally {
@@ -370,7 +535,7 @@ public boolean join(long time, TimeUnit unit) throws InterruptedException
         this.lock.lockInterruptibly();
 
         try {
-            if (getStatus().getState() != State.FINISHED) {
+            if (!isDone()) {
                 return this.finishedCondition.await(time, unit);
             }
         } finally {
@@ -379,4 +544,11 @@ public boolean join(long time, TimeUnit unit) throws InterruptedException
 
         return true;
     }
+
+    private boolean isDone()
+    {
+        State state = getStatus().getState();
+
+        return state == State.FINISHED || state == State.CANCELED;
+    }
 }
@@ -160,6 +160,9 @@ public void stopListening()
             this.observationManager.removeListener(this.logListener.getName());
         }
         this.observationManager.removeListener(this.progress.getName());
+
+        // The progress of the parent job is not updated through this progress anymore
+        this.progress.setParent(null);
     }
 
     // JobStatus
@@ -293,6 +296,16 @@ public void setIsolated(boolean isolated)
         this.isolated = isolated;
     }
 
+    /**
+     * @return the estimated weight of what the status holds in memory besides its log, in number of log events, used
+     *         to decide how many statuses can be kept in memory
+     * @since 7.0M1
+     */
+    protected long getWeight()
+    {
+        return 0;
+    }
+
     // Deprecated
 
     @Override
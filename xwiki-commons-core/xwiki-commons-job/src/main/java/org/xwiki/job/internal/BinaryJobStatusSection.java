@@ -0,0 +1,129 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+
+/**
+ * A section of a binary job status (see {@link BinaryJobStatusSerializer}), written with XStream binary driver and
+ * optionally compressed.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class BinaryJobStatusSection
+{
+    /**
+     * Used to serialize and unserialize the content of the section.
+     */
+    private final XStream xstream;
+
+    /**
+     * @param xstream used to serialize and unserialize the content of the section
+     */
+    public BinaryJobStatusSection(XStream xstream)
+    {
+        this.xstream = xstream;
+    }
+
+    /**
+     * Write a section going until the end of the stream.
+     *
+     * @param obj the content of the section
+     * @param stream the stream where to write the section
+     * @param compressed true if the section should be compressed
+     * @throws IOException when failing to write the section
+     */
+    public void write(Object obj, OutputStream stream, boolean compressed) throws IOException
+    {
+        if (compressed) {
+            DeflaterOutputStream deflaterStream = new DeflaterOutputStream(stream);
+            marshal(obj, deflaterStream);
+            deflaterStream.finish();
+        } else {
+            marshal(obj, stream);
+        }
+    }
+
+    /**
+     * Write a length prefixed section so that what follows it can still be read.
+     *
+     * @param obj the content of the section
+     * @param stream the stream where to write the section
+     * @param compressed true if the section should be compressed
+     * @throws IOException when failing to write the section
+     */
+    public void writeSized(Object obj, DataOutputStream stream, boolean compressed) throws IOException
+    {
+        ByteArrayOutputStream section = new ByteArrayOutputStream();
+        write(obj, section, compressed);
+        stream.writeInt(section.size());
+        section.writeTo(stream);
+    }
+
+    private void marshal(Object obj, OutputStream stream)
+    {
+        BinaryStreamWriter writer = new BinaryStreamWriter(stream);
+        this.xstream.marshal(obj, writer);
+        writer.flush();
+    }
+
+    /**
+     * Read a section going until the end of the stream.
+     *
+     * @param stream the stream from where to read the section
+     * @param compressed true if the section is compressed
+     * @return the content of the section
+     */
+    public Object read(InputStream stream, boolean compressed)
+    {
+        InputStream actualStream = compressed ? new InflaterInputStream(stream) : stream;
+
+        return this.xstream.unmarshal(new BinaryStreamReader(actualStream));
+    }
+
+    /**
+     * Read a length prefixed section.
+     *
+     * @param stream the stream from where to read the section
+     * @param compressed true if the section is compressed
+     * @return the content of the section
+     * @throws IOException when failing to read the section
+     */
+    public Object readSized(DataInputStream stream, boolean compressed) throws IOException
+    {
+        byte[] section = new byte[stream.readInt()];
+        stream.readFully(section);
+
+        return read(new ByteArrayInputStream(section), compressed);
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.io.IOUtils;
+import org.xwiki.job.event.status.JobStatus;
+import org.xwiki.job.internal.xstream.SafeXStream;
+import org.xwiki.logging.LogQueue;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.XStreamException;
+
+/**
+ * Serialize/unserialize job statuses in a compact binary format.
+ * <p>
+ * The file is made of:
+ * <ul>
+ * <li>a magic number and a format version</li>
+ * <li>some flags (compression, presence of a separated log section)</li>
+ * <li>a length prefixed header section containing the status without its log (request, state, dates, etc.)</li>
+ * <li>the log section which goes until the end of the file</li>
+ * </ul>
+ * This makes possible to load only the header of a status without touching its (potentially huge) log. Both sections
+ * are written with XStream binary driver so the same safety rules as for the XML format apply.
+ * <p>
+ * Statuses stored in the old XML format are still readable.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class BinaryJobStatusSerializer extends JobStatusSerializer
+{
+    /**
+     * Identify a binary job status.
+     */
+    private static final byte[] MAGIC = new byte[] {'X', 'J', 'S', 'B'};
+
+    /**
+     * The current version of the format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The sections are compressed.
+     */
+    private static final int FLAG_COMPRESSED = 1;
+
+    /**
+     * The log is stored in its own section.
+     */
+    private static final int FLAG_LOG = 2;
+
+    /**
+     * The status without its log.
+     */
+    private final BinaryJobStatusSection headerSection;
+
+    /**
+     * The log of the status.
+     */
+    private final BinaryJobStatusSection logSection;
+
+    /**
+     * Indicate if the sections should be compressed.
+     */
+    private final boolean compressed;
+
+    /**
+     * Default constructor (compressed).
+     *
+     * @throws ParserConfigurationException when failing to initialize
+     */
+    public BinaryJobStatusSerializer() throws ParserConfigurationException
+    {
+        this(true);
+    }
+
+    /**
+     * @param compressed true if the sections should be compressed
+     * @throws ParserConfigurationException when failing to initialize
+     */
+    public BinaryJobStatusSerializer(boolean compressed) throws ParserConfigurationException
+    {
+        this.compressed = compressed;
+
+        XStream headerXStream = new SafeXStream();
+        headerXStream.omitField(AbstractJobStatus.class, "logs");
+        this.headerSection = new BinaryJobStatusSection(headerXStream);
+        this.logSection = new BinaryJobStatusSection(getXStream());
+    }
+
+    /**
+     * @param file the file to check
+     * @return true if the file contains a binary job status
+     * @throws IOException when failing to read the file
+     */
+    public static boolean isBinary(File file) throws IOException
+    {
+        InputStream stream = new FileInputStream(file);
+
+        try {
+            return isBinary(stream);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    private static boolean isBinary(InputStream stream) throws IOException
+    {
+        byte[] magic = new byte[MAGIC.length];
+
+        return IOUtils.read(stream, magic) == MAGIC.length && Arrays.equals(magic, MAGIC);
+    }
+
+    @Override
+    public void write(JobStatus status, OutputStream stream) throws IOException
+    {
+        DataOutputStream dataStream = new DataOutputStream(stream);
+
+        boolean separatedLog = status instanceof AbstractJobStatus;
+
+        dataStream.write(MAGIC);
+        dataStream.writeByte(VERSION);
+        dataStream.writeByte((this.compressed ? FLAG_COMPRESSED : 0) | (separatedLog ? FLAG_LOG : 0));
+
+        // Header
+        this.headerSection.writeSized(status, dataStream, this.compressed);
+
+        // Log
+        if (separatedLog) {
+            this.logSection.write(status.getLog(), dataStream, this.compressed);
+        }
+
+        dataStream.flush();
+    }
+
+    @Override
+    public JobStatus read(File file)
+    {
+        return read(file, false);
+    }
+
+    @Override
+    public JobStatus read(InputStream stream)
+    {
+        try {
+            return read(stream, false);
+        } catch (IOException e) {
+            throw new XStreamException("Failed to read job status", e);
+        }
+    }
+
+    /**
+     * Read the status without its log.
+     * <p>
+     * Statuses stored in XML format don't have any separated header and are loaded entirely.
+     *
+     * @param file the file to read
+     * @return the status without its log
+     */
+    public JobStatus readHeader(File file)
+    {
+        return read(file, true);
+    }
+
+    private JobStatus read(File file, boolean headerOnly)
+    {
+        InputStream stream = null;
+
+        try {
+            stream = new FileInputStream(file);
+
+            return read(stream, headerOnly);
+        } catch (IOException e) {
+            throw new XStreamException("Failed to read job status file [" + file + "]", e);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    private JobStatus read(InputStream stream, boolean headerOnly) throws IOException
+    {
+        InputStream bufferedStream = new BufferedInputStream(stream);
+
+        // Old XML format
+        bufferedStream.mark(MAGIC.length);
+        if (!isBinary(bufferedStream)) {
+            bufferedStream.reset();
+
+            return super.read(bufferedStream);
+        }
+
+        DataInputStream dataStream = new DataInputStream(bufferedStream);
+
+        int version = dataStream.readUnsignedByte();
+        if (version > VERSION) {
+            throw new IOException("Unsupported job status format version [" + version + "]");
+        }
+
+        int flags = dataStream.readUnsignedByte();
+        boolean compressedSections = (flags & FLAG_COMPRESSED) != 0;
+
+        // Header
+        JobStatus status = (JobStatus) this.headerSection.readSized(dataStream, compressedSections);
+
+        // Log
+        if (!headerOnly && (flags & FLAG_LOG) != 0) {
+            LogQueue log = (LogQueue) this.logSection.read(dataStream, compressedSections);
+            if (log != null) {
+                status.getLog().addAll(log);
+            }
+        }
+
+        return status;
+    }
+}
@@ -19,6 +19,9 @@
  */
 package org.xwiki.job.internal;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
@@ -27,6 +30,7 @@
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
@@ -45,15 +49,31 @@
 import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.job.AbstractRequest;
+import org.xwiki.job.CancelableJob;
 import org.xwiki.job.GroupedJob;
 import org.xwiki.job.Job;
 import org.xwiki.job.JobException;
 import org.xwiki.job.JobExecutor;
 import org.xwiki.job.JobGroupPath;
+import org.xwiki.job.JobManagerConfiguration;
 import org.xwiki.job.Request;
+import org.xwiki.job.internal.jmx.JMXJobExecutor;
+import org.xwiki.management.JMXBeanRegistration;
 
 /**
  * Default implementation of {@link JobExecutor}.
+ * <p>
+ * The jobs which are not part of a group are executed by a limited number of threads (see
+ * {@link JobManagerConfiguration#getMaxThreads()}). When all of them are busy the jobs wait in a queue ordered by
+ * {@link AbstractRequest#getPriority() priority} and, for a same priority, alternating between the job types so that a burst of
+ * jobs of one type does not delay the jobs of the other types until it's done. A job started by one of these threads is
+ * executed right away by an extra thread instead of being queued, since the starting job might be waiting for it (and
+ * if all the threads were doing the same, nothing would ever run again).
+ * <p>
+ * The jobs of a group are executed one at a time unless configured otherwise (see
+ * {@link JobManagerConfiguration#getGroupConcurrency(JobGroupPath)}). In any case the jobs of a group are never executed
+ * at the same time than the jobs of its parent or children groups.
  *
  * @version $Id$
  * @since 6.1M2
@@ -68,13 +88,20 @@ private class JobGroupExecutor extends JobThreadExecutor implements ThreadFactor
 
         private final JobGroupPath path;
 
-        private Job currentJob;
+        /**
+         * The jobs currently running in the group, in the order they started.
+         */
+        private final Queue<Job> currentJobs = new ConcurrentLinkedQueue<Job>();
 
         private String groupThreadName;
 
-        public JobGroupExecutor(JobGroupPath path)
+        public JobGroupExecutor(JobGroupPath path, int concurrency)
         {
-            super(1, 36000L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+            super(concurrency, 36000L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+
+            // Jobs are queued as soon as all the threads are busy so make sure all of them can be created
+            setCorePoolSize(concurrency);
+            allowCoreThreadTimeOut(true);
 
             setThreadFactory(this);
 
@@ -85,11 +112,16 @@ public JobGroupExecutor(JobGroupPath path)
         @Override
         protected void beforeExecute(Thread t, Runnable r)
         {
-            DefaultJobExecutor.this.lockTree.lock(this.path);
+            Job job = (Job) r;
+
+            // A job canceled while waiting in the queue is not going to do anything so don't block the other jobs
+            if (!isCanceled(job)) {
+                DefaultJobExecutor.this.lockTree.lock(this.path);
 
-            this.currentJob = (Job) r;
+                this.currentJobs.add(job);
+            }
 
-            Thread.currentThread().setName(this.groupThreadName + " - " + this.currentJob);
+            Thread.currentThread().setName(this.groupThreadName + " - " + job);
 
             super.beforeExecute(t, r);
         }
@@ -99,22 +131,21 @@ protected void afterExecute(Runnable r, Throwable t)
         {
             Thread.currentThread().setName(this.groupThreadName);
 
-            DefaultJobExecutor.this.lockTree.unlock(this.path);
+            Job job = (Job) r;
 
-            this.currentJob = null;
+            if (this.currentJobs.remove(job)) {
+                DefaultJobExecutor.this.lockTree.unlock(this.path);
+            }
 
             super.afterExecute(r, t);
 
-            Job job = (Job) r;
-
             List<String> jobId = job.getRequest().getId();
             if (jobId != null) {
                 synchronized (DefaultJobExecutor.this.groupedJobs) {
                     Queue<Job> jobQueue = DefaultJobExecutor.this.groupedJobs.get(jobId);
                     if (jobQueue != null) {
-                        if (jobQueue.peek() == job) {
-                            jobQueue.poll();
-                        }
+                        // Jobs of the same group don't necessarily finish in the order they started
+                        jobQueue.remove(job);
                     }
                 }
             }
@@ -132,31 +163,144 @@ public Thread newThread(Runnable r)
         }
     }
 
+    /**
+     * A job waiting in the queue of the jobs which are not part of a group.
+     *
+     * @version $Id$
+     */
+    private static final class ScheduledJob implements Runnable, Comparable<ScheduledJob>
+    {
+        private final Job job;
+
+        private final int priority;
+
+        /**
+         * The virtual time at which the job should start to be fair with the jobs of other types.
+         */
+        private final long tag;
+
+        /**
+         * Keep the submission order for jobs with the same priority and tag.
+         */
+        private final long sequence;
+
+        ScheduledJob(Job job, int priority, long tag, long sequence)
+        {
+            this.job = job;
+            this.priority = priority;
+            this.tag = tag;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run()
+        {
+            this.job.run();
+        }
+
+        @Override
+        public int compareTo(ScheduledJob other)
+        {
+            if (this.priority != other.priority) {
+                return this.priority > other.priority ? -1 : 1;
+            }
+
+            if (this.tag != other.tag) {
+                return this.tag < other.tag ? -1 : 1;
+            }
+
+            return this.sequence < other.sequence ? -1 : (this.sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * Execute the jobs which are not part of a group with a limited number of threads.
+     *
+     * @version $Id$
+     */
+    private class JobSchedulerExecutor extends ThreadPoolExecutor
+    {
+        public JobSchedulerExecutor(int threads)
+        {
+            super(threads, threads, 60L, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>());
+
+            allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        protected void beforeExecute(Thread t, Runnable r)
+        {
+            super.beforeExecute(t, r);
+
+            DefaultJobExecutor.this.standaloneJobThreads.put(t, Boolean.TRUE);
+
+            // Move the virtual time forward
+            synchronized (DefaultJobExecutor.this.typeTags) {
+                ScheduledJob scheduledJob = (ScheduledJob) r;
+                if (scheduledJob.tag > DefaultJobExecutor.this.virtualTime) {
+                    DefaultJobExecutor.this.virtualTime = scheduledJob.tag;
+                }
+            }
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t)
+        {
+            super.afterExecute(r, t);
+
+            DefaultJobExecutor.this.standaloneJobThreads.remove(Thread.currentThread());
+
+            removeJob(((ScheduledJob) r).job);
+        }
+    }
+
     private class JobThreadExecutor extends ThreadPoolExecutor
     {
+        /**
+         * True if the executed jobs are not part of a group.
+         */
+        private final boolean standalone;
+
         public JobThreadExecutor(int maximumPoolSize, long keepAliveTime, TimeUnit unit,
             BlockingQueue<Runnable> workQueue)
+        {
+            this(maximumPoolSize, keepAliveTime, unit, workQueue, false);
+        }
+
+        public JobThreadExecutor(int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+            BlockingQueue<Runnable> workQueue, boolean standalone)
         {
             super(0, maximumPoolSize, keepAliveTime, unit, workQueue);
+
+            this.standalone = standalone;
         }
 
         @Override
-        protected void afterExecute(Runnable r, Throwable t)
+        protected void beforeExecute(Thread t, Runnable r)
         {
-            Job job = (Job) r;
+            super.beforeExecute(t, r);
 
-            List<String> jobId = job.getRequest().getId();
-            if (jobId != null) {
-                synchronized (DefaultJobExecutor.this.jobs) {
-                    Job storedJob = DefaultJobExecutor.this.jobs.get(jobId);
-                    if (storedJob == job) {
-                        DefaultJobExecutor.this.jobs.remove(jobId);
-                    }
-                }
+            if (this.standalone) {
+                DefaultJobExecutor.this.standaloneJobThreads.put(t, Boolean.TRUE);
+            }
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t)
+        {
+            if (this.standalone) {
+                DefaultJobExecutor.this.standaloneJobThreads.remove(Thread.currentThread());
             }
+
+            removeJob((Job) r);
         }
     }
 
+    /**
+     * The name under which the executor MBean is registered.
+     */
+    private static final String MBEANNAME = "type=Job,name=JobExecutor";
+
     /**
      * Used to lookup {@link Job} implementations.
      */
@@ -164,6 +308,18 @@ protected void afterExecute(Runnable r, Throwable t)
     @Named("context")
     private Provider<ComponentManager> componentManager;
 
+    /**
+     * Used to get the maximum number of threads and the concurrency of the job groups.
+     */
+    @Inject
+    private JobManagerConfiguration configuration;
+
+    /**
+     * Used to register the executor MBean.
+     */
+    @Inject
+    private JMXBeanRegistration jmxRegistration;
+
     private final Map<List<String>, Queue<Job>> groupedJobs = new ConcurrentHashMap<List<String>, Queue<Job>>();
 
     private final Map<List<String>, Job> jobs = new ConcurrentHashMap<List<String>, Job>();
@@ -182,30 +338,194 @@ protected void afterExecute(Runnable r, Throwable t)
     /**
      * Execute non grouped jobs.
      */
-    private JobThreadExecutor jobExecutor;
+    private JobSchedulerExecutor jobExecutor;
+
+    /**
+     * Execute right away the non grouped jobs started by non grouped jobs.
+     */
+    private JobThreadExecutor nestedJobExecutor;
+
+    /**
+     * The threads currently executing a non grouped job.
+     */
+    private final Map<Thread, Boolean> standaloneJobThreads = new ConcurrentHashMap<Thread, Boolean>();
+
+    /**
+     * The tag of the last job queued for each job type.
+     */
+    private final Map<String, Long> typeTags = new HashMap<String, Long>();
+
+    /**
+     * The tag of the last job started.
+     */
+    private long virtualTime;
+
+    /**
+     * The number of jobs queued so far.
+     */
+    private long sequence;
 
     private volatile boolean disposed;
 
     @Override
     public void initialize() throws InitializationException
     {
-        this.jobExecutor =
-            new JobThreadExecutor(Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+        int maxThreads = this.configuration.getMaxThreads();
+        if (maxThreads <= 0) {
+            maxThreads = DefaultJobManagerConfiguration.DEFAULT_MAX_THREADS;
+        }
+
+        this.jobExecutor = new JobSchedulerExecutor(maxThreads);
+        this.nestedJobExecutor =
+            new JobThreadExecutor(Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), true);
+
+        this.jmxRegistration.registerMBean(new JMXJobExecutor(this), MBEANNAME);
     }
 
     @Override
     public void dispose() throws ComponentLifecycleException
     {
+        this.jmxRegistration.unregisterMBean(MBEANNAME);
+
         synchronized (this) {
             this.disposed = true;
 
+            // Give the running jobs a chance to stop properly
+            for (Job job : this.jobs.values()) {
+                cancel(job);
+            }
+            for (Queue<Job> jobQueue : this.groupedJobs.values()) {
+                for (Job job : jobQueue) {
+                    cancel(job);
+                }
+            }
+
             this.jobExecutor.shutdownNow();
+            this.nestedJobExecutor.shutdownNow();
             for (JobGroupExecutor executor : this.groupExecutors.values()) {
                 executor.shutdownNow();
             }
         }
     }
 
+    private void cancel(Job job)
+    {
+        if (job instanceof CancelableJob) {
+            ((CancelableJob) job).cancel();
+        }
+    }
+
+    private boolean isCanceled(Job job)
+    {
+        return job instanceof AbstractJob && ((AbstractJob<?, ?>) job).isCanceled();
+    }
+
+    private void removeJob(Job job)
+    {
+        List<String> jobId = job.getRequest().getId();
+        if (jobId != null) {
+            synchronized (this.jobs) {
+                Job storedJob = this.jobs.get(jobId);
+                if (storedJob == job) {
+                    this.jobs.remove(jobId);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the maximum number of threads executing the jobs which are not part of a group
+     * @since 7.0M1
+     */
+    public int getMaxThreads()
+    {
+        return this.jobExecutor.getMaximumPoolSize();
+    }
+
+    /**
+     * @return the number of jobs waiting to be executed
+     * @since 7.0M1
+     */
+    public int getQueuedJobCount()
+    {
+        int count = this.jobExecutor.getQueue().size();
+
+        for (JobGroupExecutor executor : this.groupExecutors.values()) {
+            count += executor.getQueue().size();
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the number of jobs currently running
+     * @since 7.0M1
+     */
+    public int getRunningJobCount()
+    {
+        int count = this.jobExecutor.getActiveCount() + this.nestedJobExecutor.getActiveCount();
+
+        for (JobGroupExecutor executor : this.groupExecutors.values()) {
+            count += executor.getActiveCount();
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the paths of the job groups in which jobs have been executed
+     * @since 7.0M1
+     */
+    public Collection<JobGroupPath> getGroupPaths()
+    {
+        return Collections.unmodifiableCollection(this.groupExecutors.keySet());
+    }
+
+    /**
+     * @param path the path of the job group
+     * @return the maximum number of jobs of the group executed at the same time
+     * @since 7.0M1
+     */
+    public int getGroupConcurrency(JobGroupPath path)
+    {
+        JobGroupExecutor executor = this.groupExecutors.get(path);
+
+        return executor != null ? executor.getMaximumPoolSize() : 0;
+    }
+
+    /**
+     * @param path the path of the job group
+     * @return the number of jobs of the group waiting to be executed
+     * @since 7.0M1
+     */
+    public int getQueuedJobCount(JobGroupPath path)
+    {
+        JobGroupExecutor executor = this.groupExecutors.get(path);
+
+        return executor != null ? executor.getQueue().size() : 0;
+    }
+
+    /**
+     * @param path the path of the job group
+     * @return the number of jobs of the group currently running
+     * @since 7.0M1
+     */
+    public int getRunningJobCount(JobGroupPath path)
+    {
+        JobGroupExecutor executor = this.groupExecutors.get(path);
+
+        return executor != null ? executor.currentJobs.size() : 0;
+    }
+
+    /**
+     * @return the locks used to make sure jobs of parent and children groups are not executed at the same time
+     * @since 7.0M1
+     */
+    public JobGroupPathLockTree getLockTree()
+    {
+        return this.lockTree;
+    }
+
     // JobManager
 
     @Override
@@ -213,7 +533,7 @@ public Job getCurrentJob(JobGroupPath path)
     {
         JobGroupExecutor executor = this.groupExecutors.get(path);
 
-        return executor != null ? executor.currentJob : null;
+        return executor != null ? executor.currentJobs.peek() : null;
     }
 
     @Override
@@ -271,10 +591,19 @@ public Job execute(String jobType, Request request) throws JobException
     public void execute(Job job)
     {
         if (!this.disposed) {
+            if (job instanceof AbstractJob) {
+                ((AbstractJob<?, ?>) job).jobQueued();
+            }
+
             if (job instanceof GroupedJob) {
                 execute((GroupedJob) job);
             } else {
-                this.jobExecutor.execute(job);
+                if (this.standaloneJobThreads.containsKey(Thread.currentThread())) {
+                    // The current job might wait for this one: don't queue it behind other jobs
+                    this.nestedJobExecutor.execute(job);
+                } else {
+                    this.jobExecutor.execute(schedule(job));
+                }
 
                 List<String> jobId = job.getRequest().getId();
                 if (jobId != null) {
@@ -288,6 +617,30 @@ public void execute(Job job)
         }
     }
 
+    /**
+     * Give the job a place in the queue according to its priority and the jobs of the same type already queued.
+     *
+     * @param job the job to queue
+     * @return the job to put in the queue
+     */
+    private ScheduledJob schedule(Job job)
+    {
+        Request request = job.getRequest();
+        int priority =
+            request instanceof AbstractRequest ? ((AbstractRequest) request).getPriority() : Request.DEFAULT_PRIORITY;
+        String type = job.getType();
+
+        synchronized (this.typeTags) {
+            // Start-time fair queueing: a job starts one step after the previous job of the same type, but never
+            // before the current virtual time so that types that were idle don't get an unfair advantage
+            Long typeTag = this.typeTags.get(type);
+            long tag = Math.max(typeTag != null ? typeTag : 0L, this.virtualTime) + 1;
+            this.typeTags.put(type, tag);
+
+            return new ScheduledJob(job, priority, tag, this.sequence++);
+        }
+    }
+
     private void execute(GroupedJob job)
     {
         synchronized (this.groupExecutors) {
@@ -296,7 +649,8 @@ private void execute(GroupedJob job)
             JobGroupExecutor groupExecutor = this.groupExecutors.get(path);
 
             if (groupExecutor == null) {
-                groupExecutor = new JobGroupExecutor(path);
+                int concurrency = this.configuration.getGroupConcurrency(path);
+                groupExecutor = new JobGroupExecutor(path, concurrency > 0 ? concurrency : 1);
                 this.groupExecutors.put(path, groupExecutor);
             }
 
@@ -193,7 +193,7 @@ public Job addJob(String jobType, Request request) throws JobException
 
         job.initialize(request);
 
-        this.jobQueue.offer(job);
+        addJob(job);
 
         return job;
     }
@@ -201,6 +201,10 @@ public Job addJob(String jobType, Request request) throws JobException
     @Override
     public void addJob(Job job)
     {
+        if (job instanceof AbstractJob) {
+            ((AbstractJob<?, ?>) job).jobQueued();
+        }
+
         this.jobQueue.offer(job);
     }
 
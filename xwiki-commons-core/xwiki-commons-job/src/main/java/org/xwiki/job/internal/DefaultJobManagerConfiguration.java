@@ -28,6 +28,7 @@
 import org.xwiki.component.annotation.Component;
 import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.environment.Environment;
+import org.xwiki.job.JobGroupPath;
 import org.xwiki.job.JobManagerConfiguration;
 
 /**
@@ -40,6 +41,51 @@
 @Singleton
 public class DefaultJobManagerConfiguration implements JobManagerConfiguration
 {
+    /**
+     * The default format used to store job statuses.
+     */
+    public static final String DEFAULT_STATUS_FORMAT = "binary";
+
+    /**
+     * The default maximum number of step progress events sent per second for a job.
+     */
+    public static final int DEFAULT_PROGRESS_EVENT_RATE = 10;
+
+    /**
+     * The default maximum number of threads executing the jobs which are not part of a group.
+     */
+    public static final int DEFAULT_MAX_THREADS = 10;
+
+    /**
+     * The default maximum number of jobs of a group executed at the same time.
+     */
+    public static final int DEFAULT_GROUP_CONCURRENCY = 1;
+
+    /**
+     * The default number of days after which the status of a finished job is archived or deleted.
+     */
+    public static final int DEFAULT_STATUS_MAX_AGE = 0;
+
+    /**
+     * The default maximum number of finished job statuses kept for each job type.
+     */
+    public static final int DEFAULT_STATUS_MAX_COUNT = 0;
+
+    /**
+     * The default maximum total size of the stored job statuses in megabytes.
+     */
+    public static final int DEFAULT_STATUS_MAX_SIZE = 0;
+
+    /**
+     * The default maximum estimated weight of the job statuses kept in memory.
+     */
+    public static final long DEFAULT_STATUS_CACHE_MAX_WEIGHT = 100000L;
+
+    /**
+     * The prefix of the properties containing the concurrency of a job group.
+     */
+    private static final String PREFIX_GROUP_CONCURRENCY = "job.groupConcurrency.";
+
     /**
      * Used to get permanent directory.
      */
@@ -82,4 +128,60 @@ public File getStorage()
 
         return this.store;
     }
+
+    @Override
+    public String getStatusFormat()
+    {
+        return this.configuration.get().getProperty("job.statusFormat", DEFAULT_STATUS_FORMAT);
+    }
+
+    @Override
+    public int getProgressEventRate()
+    {
+        return this.configuration.get().getProperty("job.progress.eventRate", DEFAULT_PROGRESS_EVENT_RATE);
+    }
+
+    @Override
+    public int getMaxThreads()
+    {
+        return this.configuration.get().getProperty("job.maxThreads", DEFAULT_MAX_THREADS);
+    }
+
+    @Override
+    public int getGroupConcurrency(JobGroupPath groupPath)
+    {
+        // The concurrency is configured with a property like job.groupConcurrency.filter/converter
+        return this.configuration.get().getProperty(PREFIX_GROUP_CONCURRENCY + groupPath,
+            DEFAULT_GROUP_CONCURRENCY);
+    }
+
+    @Override
+    public int getStatusMaxAge()
+    {
+        return this.configuration.get().getProperty("job.statusMaxAge", DEFAULT_STATUS_MAX_AGE);
+    }
+
+    @Override
+    public int getStatusMaxCount()
+    {
+        return this.configuration.get().getProperty("job.statusMaxCount", DEFAULT_STATUS_MAX_COUNT);
+    }
+
+    @Override
+    public int getStatusMaxSize()
+    {
+        return this.configuration.get().getProperty("job.statusMaxSize", DEFAULT_STATUS_MAX_SIZE);
+    }
+
+    @Override
+    public boolean isStatusArchiveEnabled()
+    {
+        return this.configuration.get().getProperty("job.statusArchive", true);
+    }
+
+    @Override
+    public long getStatusCacheMaxWeight()
+    {
+        return this.configuration.get().getProperty("job.statusCacheMaxWeight", DEFAULT_STATUS_CACHE_MAX_WEIGHT);
+    }
 }
@@ -21,7 +21,6 @@
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Stack;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +32,10 @@
 import org.xwiki.observation.event.Event;
 
 /**
+ * The progress is updated by a single thread (the thread running the job), either directly (see
+ * {@link #pushLevel(int)}, {@link #stepLevel()} and {@link #popLevel()}) or through progress events, and can be read
+ * from any thread without locking.
+ *
  * @version $Id$
  * @since 4.0M1
  */
@@ -55,9 +58,9 @@ public class DefaultJobProgress implements EventListener, JobProgress
     private final String name;
 
     /**
-     * The progress stack.
+     * The current level of the progress stack.
      */
-    private final Stack<Level> progress = new Stack<Level>();
+    private volatile Level current;
 
     /**
      * Flag indicating that the next {@link StepProgressEvent} should be ignored (probably because its progress was
@@ -65,6 +68,16 @@ public class DefaultJobProgress implements EventListener, JobProgress
      */
     private boolean ignoreNextStepProgressEvent;
 
+    /**
+     * The progress of the job running in the same thread when this progress started, which should also be updated.
+     */
+    private volatile DefaultJobProgress parent;
+
+    /**
+     * The last time a {@link StepProgressEvent} was sent for this progress, in nanoseconds.
+     */
+    private long lastStepEventTime;
+
     /**
      * A step.
      *
@@ -72,25 +85,30 @@ public class DefaultJobProgress implements EventListener, JobProgress
      */
     static class Level
     {
+        /**
+         * The parent level in the progress stack.
+         */
+        public final Level parent;
+
         /**
          * Global progress between 0 and 1.
          */
-        public double globalOffset;
+        public volatile double globalOffset;
 
         /**
          * Current level progress between 0 and 1.
          */
-        public double levelOffset;
+        public volatile double levelOffset;
 
         /**
          * Size of the step between 0 and 1.
          */
-        public double globalStepSize;
+        public final double globalStepSize;
 
         /**
          * Size of the step between 0 and 1.
          */
-        public double localStepSize;
+        public final double localStepSize;
 
         /**
          * The current step.
@@ -100,14 +118,15 @@ public class DefaultJobProgress implements EventListener, JobProgress
         /**
          * The number of steps.
          */
-        public int steps;
+        public final int steps;
 
         /**
          * @param steps number of steps
          * @param offset the current offset
          * @param parentSize the size of the parent step
+         * @param parent the parent level
          */
-        public Level(int steps, double offset, double parentSize)
+        public Level(int steps, double offset, double parentSize, Level parent)
         {
             this.steps = steps;
 
@@ -115,6 +134,8 @@ public Level(int steps, double offset, double parentSize)
             this.globalStepSize = parentSize / steps;
 
             this.localStepSize = 1.0D / steps;
+
+            this.parent = parent;
         }
     }
 
@@ -127,7 +148,45 @@ public DefaultJobProgress()
 
         // Push the root level to be able to distinguish between the case when the progress hasn't started yet and the
         // case when the progress is over. Otherwise we would have an empty progress stack for both cases.
-        this.progress.push(new Level(1, 0, 1));
+        this.current = new Level(1, 0, 1, null);
+    }
+
+    /**
+     * @return the progress of the job running in the same thread when this progress started, which should also be
+     *         updated
+     * @since 7.0M1
+     */
+    public DefaultJobProgress getParent()
+    {
+        return this.parent;
+    }
+
+    /**
+     * @param parent the progress of the job running in the same thread when this progress started, which should also
+     *            be updated
+     * @since 7.0M1
+     */
+    public void setParent(DefaultJobProgress parent)
+    {
+        this.parent = parent;
+    }
+
+    /**
+     * @param interval the minimum interval between two {@link StepProgressEvent}s, in nanoseconds
+     * @return true if enough time passed since the last {@link StepProgressEvent} sent for this progress
+     * @since 7.0M1
+     */
+    boolean shouldSendStepEvent(long interval)
+    {
+        long now = System.nanoTime();
+
+        if (now - this.lastStepEventTime >= interval) {
+            this.lastStepEventTime = now;
+
+            return true;
+        }
+
+        return false;
     }
 
     // EventListener
@@ -145,35 +204,63 @@ public List<Event> getEvents()
     }
 
     @Override
-    public void onEvent(Event event, Object arg1, Object arg2)
+    public void onEvent(Event event, Object source, Object data)
     {
-        boolean ignoreNextStep = this.ignoreNextStepProgressEvent;
-        this.ignoreNextStepProgressEvent = false;
+        // The event has been sent after directly updating this progress
+        if (data instanceof DefaultJobProgress && isUpdatedBy((DefaultJobProgress) data)) {
+            return;
+        }
+
         if (event instanceof PushLevelProgressEvent) {
-            onPushLevelProgress((PushLevelProgressEvent) event);
+            pushLevel(((PushLevelProgressEvent) event).getSteps());
         } else if (event instanceof PopLevelProgressEvent) {
-            onPopLevelProgress();
-        } else if (event instanceof StepProgressEvent && !ignoreNextStep) {
-            onStepProgress();
+            popLevel();
+        } else if (event instanceof StepProgressEvent) {
+            stepLevel();
+        }
+    }
+
+    private boolean isUpdatedBy(DefaultJobProgress progress)
+    {
+        for (DefaultJobProgress updated = progress; updated != null; updated = updated.parent) {
+            if (updated == this) {
+                return true;
+            }
         }
+
+        return false;
     }
 
     /**
      * Adds a new level to the progress stack.
      *
-     * @param event the event that was fired
+     * @param steps the number of steps of the new level
+     * @since 7.0M1
      */
-    private void onPushLevelProgress(PushLevelProgressEvent event)
+    public void pushLevel(int steps)
     {
-        this.progress.push(new Level(event.getSteps(), getOffset(), this.progress.peek().globalStepSize));
+        this.ignoreNextStepProgressEvent = false;
+
+        Level level = this.current;
+        this.current = new Level(steps, level.globalOffset, level.globalStepSize, level);
     }
 
     /**
      * Move progress to next step.
+     *
+     * @since 7.0M1
      */
-    private void onStepProgress()
+    public void stepLevel()
+    {
+        if (this.ignoreNextStepProgressEvent) {
+            this.ignoreNextStepProgressEvent = false;
+        } else {
+            step(this.current);
+        }
+    }
+
+    private void step(Level level)
     {
-        Level level = this.progress.peek();
         if (level.currentStep++ < level.steps) {
             level.globalOffset += level.globalStepSize;
             level.levelOffset += level.localStepSize;
@@ -185,14 +272,20 @@ private void onStepProgress()
     }
 
     /**
-     * Called when a {@link PopLevelProgressEvent} is fired.
+     * Remove the current level from the progress stack and move the parent level to its next step.
+     *
+     * @since 7.0M1
      */
-    private void onPopLevelProgress()
+    public void popLevel()
     {
+        this.ignoreNextStepProgressEvent = false;
+
+        Level level = this.current;
+
         // The progress stack must have at least one element: the root level.
-        if (this.progress.size() > 1) {
-            this.progress.pop();
-            onStepProgress();
+        if (level.parent != null) {
+            step(level.parent);
+            this.current = level.parent;
             // Ignore the next StepProgressEvent because we already updated the progress.
             this.ignoreNextStepProgressEvent = true;
         } else {
@@ -206,12 +299,12 @@ private void onPopLevelProgress()
     @Override
     public double getOffset()
     {
-        return this.progress.peek().globalOffset;
+        return this.current.globalOffset;
     }
 
     @Override
     public double getCurrentLevelOffset()
     {
-        return this.progress.peek().levelOffset;
+        return this.current.levelOffset;
     }
 }
@@ -19,11 +19,20 @@
  */
 package org.xwiki.job.internal;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.job.Job;
+import org.xwiki.job.JobContext;
+import org.xwiki.job.JobManagerConfiguration;
+import org.xwiki.job.event.status.JobProgress;
 import org.xwiki.job.event.status.JobProgressManager;
+import org.xwiki.job.event.status.JobStatus;
 import org.xwiki.job.event.status.PopLevelProgressEvent;
 import org.xwiki.job.event.status.PushLevelProgressEvent;
 import org.xwiki.job.event.status.StepProgressEvent;
@@ -31,33 +40,141 @@
 
 /**
  * Default implementation of {@link JobProgressManager}.
+ * <p>
+ * The progress of the current job is updated directly and the progress events are only sent according to
+ * {@link JobManagerConfiguration#getProgressEventRate()}. When there is no current job (or its progress can't be
+ * updated directly) all the progress events are sent as before.
+ * <p>
+ * Pushing a new level and moving to the next step are also cancellation checkpoints: a
+ * {@link java.util.concurrent.CancellationException} is thrown if the current job has been canceled (see
+ * {@link org.xwiki.job.CancelableJob#cancel()}).
  *
  * @version $Id$
  * @since 6.1M1
  */
 @Component
 @Singleton
-public class DefaultJobProgressManager implements JobProgressManager
+public class DefaultJobProgressManager implements JobProgressManager, Initializable
 {
     @Inject
     private ObservationManager observationManager;
 
+    @Inject
+    private JobContext jobContext;
+
+    @Inject
+    private JobManagerConfiguration configuration;
+
+    /**
+     * True if progress events should be sent at all.
+     */
+    private boolean events;
+
+    /**
+     * The minimum interval between two {@link StepProgressEvent}s sent for the same job, in nanoseconds.
+     */
+    private long stepEventInterval;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        int rate = this.configuration.getProgressEventRate();
+
+        this.events = rate != 0;
+        this.stepEventInterval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+    }
+
+    /**
+     * @return the progress of the current job or null if it can't be updated directly
+     */
+    private DefaultJobProgress getCurrentProgress()
+    {
+        Job job = this.jobContext.getCurrentJob();
+
+        if (job != null) {
+            JobStatus status = job.getStatus();
+
+            if (status != null) {
+                JobProgress progress = status.getProgress();
+
+                if (progress instanceof DefaultJobProgress) {
+                    return (DefaultJobProgress) progress;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Stop the current job if it has been canceled.
+     *
+     * @throws java.util.concurrent.CancellationException when the current job has been canceled
+     */
+    private void checkCanceled()
+    {
+        Job job = this.jobContext.getCurrentJob();
+
+        if (job instanceof AbstractJob) {
+            ((AbstractJob<?, ?>) job).checkCanceled();
+        }
+    }
+
     @Override
     public void pushLevelProgress(int steps, Object source)
     {
-        this.observationManager.notify(new PushLevelProgressEvent(steps), source);
+        checkCanceled();
+
+        DefaultJobProgress progress = getCurrentProgress();
+
+        if (progress != null) {
+            for (DefaultJobProgress updated = progress; updated != null; updated = updated.getParent()) {
+                updated.pushLevel(steps);
+            }
+
+            if (this.events) {
+                this.observationManager.notify(new PushLevelProgressEvent(steps), source, progress);
+            }
+        } else {
+            this.observationManager.notify(new PushLevelProgressEvent(steps), source);
+        }
     }
 
     @Override
     public void stepPropress(Object source)
     {
-        this.observationManager.notify(new StepProgressEvent(), source);
+        checkCanceled();
+
+        DefaultJobProgress progress = getCurrentProgress();
+
+        if (progress != null) {
+            for (DefaultJobProgress updated = progress; updated != null; updated = updated.getParent()) {
+                updated.stepLevel();
+            }
+
+            if (this.events && progress.shouldSendStepEvent(this.stepEventInterval)) {
+                this.observationManager.notify(new StepProgressEvent(), source, progress);
+            }
+        } else {
+            this.observationManager.notify(new StepProgressEvent(), source);
+        }
     }
 
     @Override
     public void popLevelProgress(Object source)
     {
-        this.observationManager.notify(new PopLevelProgressEvent(), source);
-    }
+        DefaultJobProgress progress = getCurrentProgress();
 
+        if (progress != null) {
+            for (DefaultJobProgress updated = progress; updated != null; updated = updated.getParent()) {
+                updated.popLevel();
+            }
+
+            if (this.events) {
+                this.observationManager.notify(new PopLevelProgressEvent(), source, progress);
+            }
+        } else {
+            this.observationManager.notify(new PopLevelProgressEvent(), source);
+        }
+    }
 }
@@ -21,173 +21,75 @@
 
 import java.io.File;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Callable;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
-import org.apache.commons.collections4.map.LRUMap;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
 import org.xwiki.job.JobManagerConfiguration;
 import org.xwiki.job.JobStatusStore;
-import org.xwiki.job.Request;
 import org.xwiki.job.annotation.Serializable;
 import org.xwiki.job.event.status.JobStatus;
+import org.xwiki.job.internal.jmx.JMXJobStatusStore;
+import org.xwiki.management.JMXBeanRegistration;
 
 /**
  * Default implementation of {@link JobStatusStorage}.
+ * <p>
+ * The statuses of finished jobs exceeding the configured retention limits (see
+ * {@link JobManagerConfiguration#getStatusMaxAge()}, {@link JobManagerConfiguration#getStatusMaxCount()} and
+ * {@link JobManagerConfiguration#getStatusMaxSize()}) are regularly moved by a low priority background thread to a
+ * compressed archive from which they can still be loaded, or deleted if the archive is disabled (see
+ * {@link JobStatusRetentionExecutor}).
  *
  * @version $Id$
  * @since 6.1M2
  */
 @Component
 @Singleton
-public class DefaultJobStatusStore implements JobStatusStore, Initializable
+public class DefaultJobStatusStore implements JobStatusStore, Initializable, Disposable
 {
-    private static class Cache implements Map<List<String>, JobStatus>
-    {
-        // TODO: probably use JCache instead
-        private final Map<List<String>, JobStatus> cache;
-
-        private final Set<List<String>> noStatusCache;
-
-        public Cache(int size)
-        {
-            this.cache = new LRUMap<>(size);
-            this.noStatusCache = new HashSet<List<String>>();
-        }
-
-        @Override
-        public int size()
-        {
-            return this.cache.size() + this.noStatusCache.size();
-        }
-
-        @Override
-        public boolean isEmpty()
-        {
-            return this.cache.isEmpty() && this.noStatusCache.isEmpty();
-        }
-
-        @Override
-        public boolean containsKey(Object key)
-        {
-            return this.cache.containsKey(key) || this.noStatusCache.contains(key);
-        }
-
-        @Override
-        public boolean containsValue(Object value)
-        {
-            // not used
-            return false;
-        }
-
-        @Override
-        public JobStatus get(Object key)
-        {
-            if (!this.noStatusCache.contains(key)) {
-                return this.cache.get(key);
-            }
-
-            return NOSTATUS;
-        }
-
-        @Override
-        public JobStatus put(List<String> key, JobStatus value)
-        {
-            JobStatus status = get(key);
-
-            if (value == null) {
-                this.cache.remove(key);
-                this.noStatusCache.add(key);
-            } else {
-                this.cache.put(key, value);
-                this.noStatusCache.remove(key);
-            }
-
-            return status;
-        }
-
-        @Override
-        public JobStatus remove(Object key)
-        {
-            JobStatus status = get(key);
-
-            this.cache.remove(key);
-            this.noStatusCache.remove(key);
-
-            return status;
-        }
-
-        @Override
-        public void putAll(Map<? extends List<String>, ? extends JobStatus> m)
-        {
-            for (Map.Entry<? extends List<String>, ? extends JobStatus> entry : m.entrySet()) {
-                put(entry.getKey(), entry.getValue());
-            }
-        }
-
-        @Override
-        public void clear()
-        {
-            this.cache.clear();
-            this.noStatusCache.clear();
-        }
-
-        @Override
-        public Set<List<String>> keySet()
-        {
-            // not used
-            return null;
-        }
+    /**
+     * The name of the file where the job statuses index is stored.
+     */
+    private static final String FILENAME_INDEX = "index";
 
-        @Override
-        public Collection<JobStatus> values()
-        {
-            // not used
-            return null;
-        }
+    /**
+     * The name of the file where the old job statuses are archived.
+     */
+    private static final String FILENAME_ARCHIVE = "archive";
 
-        @Override
-        public Set<java.util.Map.Entry<List<String>, JobStatus>> entrySet()
-        {
-            // not used
-            return null;
-        }
-    }
+    /**
+     * The message logged when the index can't be updated.
+     */
+    private static final String INDEX_UPDATE_FAILED = "Failed to update the index for job status [{}]";
 
     /**
-     * The name of the file where the job status is stored.
+     * The name under which the store MBean is registered.
      */
-    private static final String FILENAME_STATUS = "status.xml";
+    private static final String MBEANNAME = "type=Job,name=JobStatusStore";
 
     /**
-     * Encoding used for file content and names.
+     * The number of threads writing job statuses in background.
      */
-    private static final String DEFAULT_ENCODING = "UTF-8";
+    private static final int WRITE_THREADS = 2;
 
     /**
-     * The encoded version of a <code>null</code> value in the id list.
+     * The maximum number of job statuses waiting to be written.
      */
-    private static final String FOLDER_NULL = "&null";
+    private static final int WRITE_QUEUE_CAPACITY = 1000;
 
-    private static final JobStatus NOSTATUS = new DefaultJobStatus<Request>(null, null, null, false);
+    /**
+     * The maximum time to wait for pending job statuses to be written when disposing the store, in milliseconds.
+     */
+    private static final long DISPOSE_TIMEOUT = 60000L;
 
     /**
      * Used to get the storage directory.
@@ -201,204 +103,200 @@ public Set<java.util.Map.Entry<List<String>, JobStatus>> entrySet()
     @Inject
     private Logger logger;
 
-    private JobStatusSerializer serializer;
+    /**
+     * Used to register the store MBean.
+     */
+    @Inject
+    private JMXBeanRegistration jmxRegistration;
 
-    private ExecutorService executorService;
+    /**
+     * The job statuses stored on the file system.
+     */
+    private JobStatusFiles files;
 
-    private Map<List<String>, JobStatus> cache;
+    /**
+     * The index of the stored job statuses.
+     */
+    private JobStatusIndex index;
 
-    class JobStatusSerializerRunnable implements Runnable
-    {
-        /**
-         * The status to store.
-         */
-        private final JobStatus status;
-
-        public JobStatusSerializerRunnable(JobStatus status)
-        {
-            this.status = status;
-        }
+    /**
+     * The index rebuild running in background, if any.
+     */
+    private JobStatusIndexRebuilder indexRebuilder;
 
-        @Override
-        public void run()
-        {
-            saveJobStatus(this.status);
-        }
-    }
+    /**
+     * The job statuses waiting to be written.
+     */
+    private JobStatusWriteQueue writeQueue;
+
+    /**
+     * The job statuses kept in memory.
+     */
+    private JobStatusCache cache;
+
+    /**
+     * The old job statuses moved out of their folder.
+     */
+    private JobStatusArchive archive;
+
+    /**
+     * Regularly apply the retention limits.
+     */
+    private JobStatusRetentionExecutor retentionExecutor;
 
     @Override
     public void initialize() throws InitializationException
     {
         try {
-            this.serializer = new JobStatusSerializer();
+            this.files =
+                new JobStatusFiles(this.configuration.getStorage(), this.configuration.getStatusFormat(), this.logger);
 
-            repair();
+            this.index = new JobStatusIndex(new File(this.configuration.getStorage(), FILENAME_INDEX));
+
+            this.archive =
+                new JobStatusArchive(new File(this.configuration.getStorage(), FILENAME_ARCHIVE),
+                    this.files.getReader());
+            try {
+                this.archive.load();
+            } catch (IOException e) {
+                this.logger.error("Failed to load the job status archive", e);
+            }
+
+            // Walk the whole storage only when the index is missing or invalid
+            if (!this.index.load()) {
+                this.indexRebuilder = new JobStatusIndexRebuilder(this.files, this.index, this.logger);
+                this.indexRebuilder.start();
+            }
         } catch (Exception e) {
             this.logger.error("Failed to load jobs", e);
         }
 
-        BasicThreadFactory threadFactory =
-            new BasicThreadFactory.Builder().namingPattern("Job status serializer").daemon(true)
-                .priority(Thread.MIN_PRIORITY).build();
-        this.executorService =
-            new ThreadPoolExecutor(0, 10, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), threadFactory);
-
-        this.cache = Collections.synchronizedMap(new Cache(50));
-    }
-
-    /**
-     * @param name the file or directory name to encode
-     * @return the encoding name
-     */
-    private String encode(String name)
-    {
-        String encoded;
+        this.writeQueue =
+            new JobStatusWriteQueue(WRITE_THREADS, WRITE_QUEUE_CAPACITY, "Job status serializer",
+                new JobStatusWriteQueue.Writer()
+                {
+                    @Override
+                    public void write(JobStatus status)
+                    {
+                        saveJobStatus(status);
+                    }
+                });
 
-        if (name != null) {
-            try {
-                encoded = URLEncoder.encode(name, DEFAULT_ENCODING);
-            } catch (UnsupportedEncodingException e) {
-                // Should never happen
+        this.cache = new JobStatusCache(this.configuration.getStatusCacheMaxWeight());
 
-                encoded = name;
-            }
-        } else {
-            encoded = FOLDER_NULL;
+        this.retentionExecutor =
+            new JobStatusRetentionExecutor(this.configuration, this.files, this.index, this.archive, this.cache,
+                this.logger);
+        if (this.index != null) {
+            this.retentionExecutor.start();
         }
 
-        return encoded;
+        this.jmxRegistration.registerMBean(new JMXJobStatusStore(this.writeQueue, this.cache, this.archive,
+            this.retentionExecutor.getRetention()), MBEANNAME);
     }
 
-    /**
-     * Load jobs from directory.
-     */
-    private void repair()
+    @Override
+    public void dispose() throws ComponentLifecycleException
     {
-        File folder = this.configuration.getStorage();
+        this.jmxRegistration.unregisterMBean(MBEANNAME);
 
-        if (folder.exists()) {
-            repairFolder(folder);
-        }
-    }
+        this.retentionExecutor.stop();
 
-    /**
-     * @param folder the folder from where to load the jobs
-     */
-    private void repairFolder(File folder)
-    {
-        for (File file : folder.listFiles()) {
-            if (file.isDirectory()) {
-                repairFolder(file);
-            } else if (file.getName().equals(FILENAME_STATUS)) {
-                try {
-                    JobStatus status = loadStatus(folder);
-
-                    if (status != null) {
-                        File properFolder = getJobFolder(status.getRequest().getId());
-
-                        if (!folder.equals(properFolder)) {
-                            // Move the status in its right place
-                            try {
-                                FileUtils.moveFileToDirectory(file, properFolder, true);
-                            } catch (IOException e) {
-                                this.logger.error("Failed to move job status file", e);
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    this.logger.warn("Failed to load job status in folder [{}]", folder, e);
-                }
+        // Make sure all the pending job statuses are written
+        try {
+            int dropped = this.writeQueue.close(DISPOSE_TIMEOUT);
+            if (dropped > 0) {
+                this.logger.warn("[{}] job statuses could not be written in [{}] ms", dropped, DISPOSE_TIMEOUT);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            this.logger.warn("Interrupted while waiting for job statuses to be written");
         }
-    }
 
-    private JobStatus loadStatus(List<String> id)
-    {
-        return loadStatus(getJobFolder(id));
-    }
+        if (this.index != null) {
+            // Don't close the index while it's being written by the rebuild
+            if (this.indexRebuilder != null) {
+                this.indexRebuilder.waitFor();
+            }
 
-    /**
-     * @param folder the folder from where to load the job status
-     */
-    private JobStatus loadStatus(File folder)
-    {
-        File statusFile = new File(folder, FILENAME_STATUS);
-        if (statusFile.exists()) {
-            return loadJobStatus(statusFile);
+            this.index.close();
         }
 
-        return null;
+        if (this.archive != null) {
+            this.archive.close();
+        }
     }
 
     /**
-     * @param statusFile the file containing job status to load
-     * @return the job status
-     * @throws Exception when failing to load the job status from the file
+     * @param status the job status to save
      */
-    private JobStatus loadJobStatus(File statusFile)
+    private void saveJobStatus(JobStatus status)
     {
-        return this.serializer.read(statusFile);
+        try {
+            // Index the status once it's actually written
+            this.index.put(this.files.write(status));
+        } catch (Exception e) {
+            this.logger.warn("Failed to save job status [{}]", status, e);
+        }
     }
 
-    // JobStatusStorage
-
     /**
      * @param id the id of the job
-     * @return the folder where to store the job related informations
+     * @return the job status, {@link JobStatusCache#NOSTATUS} if none could be found
+     * @throws IOException when failing to load the status from the archive
      */
-    private File getJobFolder(List<String> id)
+    private JobStatus loadJobStatus(List<String> id) throws IOException
     {
-        File folder = this.configuration.getStorage();
+        // Checked first since the rebuild might move the status in its right place in the meantime
+        boolean rebuilding = this.indexRebuilder != null && this.indexRebuilder.isRunning();
 
-        if (id != null) {
-            for (String idElement : id) {
-                folder = new File(folder, encode(idElement));
-            }
+        JobStatus loadedStatus = readJobStatus(id);
+
+        if (loadedStatus == null && rebuilding) {
+            // The status might not be in its right place yet: wait for the rebuild to move it instead of walking the
+            // whole storage for each missing status
+            this.indexRebuilder.waitFor();
+
+            loadedStatus = readJobStatus(id);
         }
 
-        return folder;
+        return loadedStatus != null ? loadedStatus : JobStatusCache.NOSTATUS;
     }
 
-    /**
-     * @param status the job status to save
-     * @throws IOException when falling to store the provided status
-     */
-    private void saveJobStatus(JobStatus status)
+    private JobStatus readJobStatus(List<String> id) throws IOException
     {
-        try {
-            File statusFile = getJobFolder(status.getRequest().getId());
-            statusFile = new File(statusFile, FILENAME_STATUS);
+        JobStatus loadedStatus = this.files.read(id);
 
-            this.serializer.write(status, statusFile);
-        } catch (Exception e) {
-            this.logger.warn("Failed to save job status [{}]", status, e);
+        if (loadedStatus == null && this.archive != null) {
+            loadedStatus = this.archive.get(id);
         }
+
+        return loadedStatus;
     }
 
     @Override
-    public JobStatus getJobStatus(List<String> id)
+    public JobStatus getJobStatus(final List<String> id)
     {
-        JobStatus status = this.cache.get(id);
-
-        if (status == null) {
-            synchronized (this.cache) {
-                status = this.cache.get(id);
-
-                if (status == null) {
-                    try {
-                        status = loadStatus(id);
-
-                        this.cache.put(id, status);
-                    } catch (Exception e) {
-                        this.logger.warn("Failed to load job status for id [{}]", id, e);
+        JobStatus status;
 
-                        this.cache.put(id, null);
-                    }
+        try {
+            status = this.cache.get(id, new Callable<JobStatus>()
+            {
+                @Override
+                public JobStatus call() throws Exception
+                {
+                    return loadJobStatus(id);
                 }
-            }
+            });
+        } catch (Exception e) {
+            this.logger.warn("Failed to load job status for id [{}]", id, e);
+
+            status = JobStatusCache.NOSTATUS;
+            this.cache.put(id, status);
         }
 
-        return status == NOSTATUS ? null : status;
+        return status == JobStatusCache.NOSTATUS ? null : status;
     }
 
     @Override
@@ -416,16 +314,14 @@ public void storeAsync(JobStatus status)
     private void store(JobStatus status, boolean async)
     {
         if (status != null && status.getRequest() != null && status.getRequest().getId() != null) {
-            synchronized (this.cache) {
-                this.cache.put(status.getRequest().getId(), status);
-            }
+            this.cache.put(status.getRequest().getId(), status);
 
             // Only store Serializable job status on file system
             if (status.getClass().isAnnotationPresent(Serializable.class) || status instanceof java.io.Serializable) {
                 if (async) {
-                    this.executorService.execute(new JobStatusSerializerRunnable(status));
+                    this.writeQueue.add(status);
                 } else {
-                    saveJobStatus(status);
+                    this.writeQueue.writeNow(status);
                 }
             }
         }
@@ -434,18 +330,34 @@ private void store(JobStatus status, boolean async)
     @Override
     public void remove(List<String> id)
     {
-        File jobFolder = getJobFolder(id);
+        // Make sure a pending write won't store the status again
+        this.writeQueue.cancel(id);
+
+        this.cache.remove(id);
 
-        if (jobFolder.exists()) {
+        // The files, the index and the archive are not available when the initialization failed
+        if (this.files != null) {
             try {
-                FileUtils.deleteDirectory(jobFolder);
+                this.files.delete(id);
             } catch (IOException e) {
-                this.logger.warn("Failed to delete job folder [{}]", jobFolder, e);
+                this.logger.warn("Failed to delete the folder of job [{}]", id, e);
             }
+        }
 
-            this.cache.remove(id);
+        if (this.index != null) {
+            try {
+                this.index.remove(id);
+            } catch (IOException e) {
+                this.logger.warn(INDEX_UPDATE_FAILED, id, e);
+            }
         }
 
-        this.cache.remove(id);
+        if (this.archive != null) {
+            try {
+                this.archive.remove(id);
+            } catch (IOException e) {
+                this.logger.warn("Failed to remove job status [{}] from the archive", id, e);
+            }
+        }
     }
 }
@@ -19,44 +19,393 @@
  */
 package org.xwiki.job.internal;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.TimeUnit;
 
 import org.xwiki.job.JobGroupPath;
 
 /**
  * Helper for hierarchical locking.
+ * <p>
+ * Locking a job group excludes the jobs of its parent groups and of its children groups, but not the other jobs of
+ * the same group (the number of jobs running at the same time in a given group is controlled by the group executor).
+ * <p>
+ * The locks associated to the paths are created when needed and forgotten as soon as nobody hold or wait for them so
+ * that the tree does not grow with dynamic paths. The time spent waiting for the locks is recorded for each path.
  *
  * @version $Id$
  * @since 6.1M2
  */
 public class JobGroupPathLockTree
 {
-    private final Map<JobGroupPath, ReadWriteLock> tree = new ConcurrentHashMap<JobGroupPath, ReadWriteLock>();
+    /**
+     * The maximum number of paths for which wait statistics are kept.
+     */
+    private static final int MAX_STATISTICS = 1000;
+
+    private static final float LOAD_FACTOR = 0.75F;
 
-    private synchronized ReadWriteLock getLock(JobGroupPath key)
+    /**
+     * Statistics about the time spent waiting for the lock of a path.
+     *
+     * @version $Id$
+     * @since 7.0M1
+     */
+    public static final class WaitStatistics
     {
-        ReadWriteLock lock = this.tree.get(key);
+        private long lockCount;
+
+        private long waitCount;
+
+        private long totalWaitTime;
+
+        private long maxWaitTime;
+
+        private WaitStatistics()
+        {
+        }
+
+        private WaitStatistics(WaitStatistics statistics)
+        {
+            this.lockCount = statistics.lockCount;
+            this.waitCount = statistics.waitCount;
+            this.totalWaitTime = statistics.totalWaitTime;
+            this.maxWaitTime = statistics.maxWaitTime;
+        }
+
+        private void add(long waitTime)
+        {
+            ++this.lockCount;
+
+            if (waitTime > 0) {
+                ++this.waitCount;
+                this.totalWaitTime += waitTime;
+                if (waitTime > this.maxWaitTime) {
+                    this.maxWaitTime = waitTime;
+                }
+            }
+        }
+
+        /**
+         * @return the number of times the lock was acquired
+         */
+        public long getLockCount()
+        {
+            return this.lockCount;
+        }
+
+        /**
+         * @return the number of times the lock was not immediately available
+         */
+        public long getWaitCount()
+        {
+            return this.waitCount;
+        }
+
+        /**
+         * @return the total time spent waiting for the lock, in nanoseconds
+         */
+        public long getTotalWaitTime()
+        {
+            return this.totalWaitTime;
+        }
+
+        /**
+         * @return the longest time spent waiting for the lock, in nanoseconds
+         */
+        public long getMaxWaitTime()
+        {
+            return this.maxWaitTime;
+        }
+    }
+
+    /**
+     * The lock associated to a job group path. It can be shared either by the jobs of this exact group or by the jobs
+     * of its children groups, but not both at the same time. It's not owned by a specific thread.
+     *
+     * @version $Id$
+     */
+    private static final class GroupLock
+    {
+        private final JobGroupPath path;
+
+        private final boolean fair;
+
+        /**
+         * The number of threads holding or waiting for this lock, guarded by the tree.
+         */
+        private int references;
+
+        /**
+         * The number of jobs of this exact group holding the lock.
+         */
+        private int groupCount;
+
+        /**
+         * The number of jobs of children groups holding the lock.
+         */
+        private int childrenCount;
+
+        /**
+         * The threads waiting for the lock, in the order they asked for it (only used when fair).
+         */
+        private final Deque<Thread> waiting;
+
+        GroupLock(JobGroupPath path, boolean fair)
+        {
+            this.path = path;
+            this.fair = fair;
+            this.waiting = fair ? new ArrayDeque<Thread>() : null;
+        }
+
+        private boolean isAvailable(boolean group, Thread thread)
+        {
+            if (this.fair && this.waiting.peekFirst() != thread) {
+                return false;
+            }
+
+            return group ? this.childrenCount == 0 : this.groupCount == 0;
+        }
+
+        /**
+         * @param group true to lock for the jobs of this group, false to lock for the jobs of children groups
+         * @param timeout the maximum time to wait in nanoseconds, negative to wait as long as needed
+         * @return the time spent waiting for the lock in nanoseconds, or -1 if the lock could not be acquired in time
+         */
+        public synchronized long lock(boolean group, long timeout)
+        {
+            Thread thread = Thread.currentThread();
+
+            if (this.fair) {
+                this.waiting.addLast(thread);
+            }
+
+            long waitTime = 0;
+
+            if (!isAvailable(group, thread)) {
+                long begin = System.nanoTime();
+
+                if (!await(group, thread, begin, timeout)) {
+                    if (this.fair) {
+                        this.waiting.remove(thread);
+                        // The next waiting thread might now be first
+                        notifyAll();
+                    }
+
+                    return -1;
+                }
+
+                // Never 0 when we had to wait
+                waitTime = Math.max(System.nanoTime() - begin, 1);
+            }
+
+            if (this.fair) {
+                this.waiting.removeFirst();
+            }
+
+            if (group) {
+                ++this.groupCount;
+            } else {
+                ++this.childrenCount;
+            }
+
+            // The next waiting job might share the lock
+            notifyAll();
+
+            return waitTime;
+        }
+
+        private boolean await(boolean group, Thread thread, long begin, long timeout)
+        {
+            boolean interrupted = false;
+
+            try {
+                while (!isAvailable(group, thread)) {
+                    try {
+                        if (timeout < 0) {
+                            wait();
+                        } else {
+                            long remaining = timeout - (System.nanoTime() - begin);
+                            if (remaining <= 0) {
+                                return false;
+                            }
+
+                            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                        }
+                    } catch (InterruptedException e) {
+                        // Keep waiting like Lock#lock()
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    thread.interrupt();
+                }
+            }
+
+            return true;
+        }
+
+        public synchronized void unlock(boolean group)
+        {
+            if (group) {
+                --this.groupCount;
+            } else {
+                --this.childrenCount;
+            }
+
+            notifyAll();
+        }
+    }
+
+    private final boolean fair;
+
+    /**
+     * The locks currently in use, guarded by this.
+     */
+    private final Map<JobGroupPath, GroupLock> tree = new HashMap<JobGroupPath, GroupLock>();
+
+    /**
+     * The wait statistics of the last locked paths, guarded by itself.
+     */
+    private final Map<JobGroupPath, WaitStatistics> statistics = new LinkedHashMap<JobGroupPath, WaitStatistics>(
+        MAX_STATISTICS, LOAD_FACTOR, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<JobGroupPath, WaitStatistics> eldest)
+        {
+            return size() > MAX_STATISTICS;
+        }
+    };
+
+    /**
+     * Create a fair lock tree.
+     */
+    public JobGroupPathLockTree()
+    {
+        this(true);
+    }
+
+    /**
+     * @param fair true if the jobs should get the lock of a path in the order they asked for it, false to let a job
+     *            get an available lock even if other jobs are waiting for it (better throughput but jobs can starve)
+     * @since 7.0M1
+     */
+    public JobGroupPathLockTree(boolean fair)
+    {
+        this.fair = fair;
+    }
+
+    private synchronized GroupLock acquireLock(JobGroupPath path)
+    {
+        GroupLock lock = this.tree.get(path);
 
         if (lock == null) {
-            lock = new ReentrantReadWriteLock(true);
-            this.tree.put(key, lock);
+            lock = new GroupLock(path, this.fair);
+            this.tree.put(path, lock);
         }
 
+        ++lock.references;
+
         return lock;
     }
 
+    private synchronized GroupLock getLock(JobGroupPath path)
+    {
+        return this.tree.get(path);
+    }
+
+    private synchronized void releaseLock(GroupLock lock)
+    {
+        if (--lock.references == 0) {
+            // Nobody hold or wait for this lock anymore
+            this.tree.remove(lock.path);
+        }
+    }
+
+    /**
+     * @return the paths from the root to the passed path
+     */
+    private List<JobGroupPath> getPaths(JobGroupPath key)
+    {
+        List<JobGroupPath> paths = new ArrayList<JobGroupPath>();
+
+        for (JobGroupPath path = key; path != null; path = path.getParent()) {
+            paths.add(0, path);
+        }
+
+        return paths;
+    }
+
     /**
      * @param key lock provided job group and all its parents
      */
     public void lock(JobGroupPath key)
     {
-        getLock(key).writeLock().lock();
+        tryLock(key, -1);
+    }
 
-        for (JobGroupPath path = key.getParent(); path != null; path = path.getParent()) {
-            getLock(path).readLock().lock();
+    /**
+     * @param key lock provided job group and all its parents
+     * @param time the maximum time to wait for the locks
+     * @param unit the time unit of the {@code time} argument
+     * @return true if the locks were acquired, false if the waiting time elapsed (in which case no lock is held)
+     * @since 7.0M1
+     */
+    public boolean tryLock(JobGroupPath key, long time, TimeUnit unit)
+    {
+        return tryLock(key, Math.max(unit.toNanos(time), 0));
+    }
+
+    private boolean tryLock(JobGroupPath key, long timeout)
+    {
+        long end = System.nanoTime() + timeout;
+
+        // Always lock from the root to avoid dead locks
+        List<JobGroupPath> paths = getPaths(key);
+        for (int i = 0; i < paths.size(); ++i) {
+            JobGroupPath path = paths.get(i);
+            boolean group = i == paths.size() - 1;
+
+            GroupLock lock = acquireLock(path);
+
+            long waitTime = lock.lock(group, timeout < 0 ? -1 : Math.max(end - System.nanoTime(), 0));
+
+            if (waitTime < 0) {
+                releaseLock(lock);
+
+                // Release the parents already locked
+                for (int j = i - 1; j >= 0; --j) {
+                    unlock(paths.get(j), false);
+                }
+
+                return false;
+            }
+
+            addWaitTime(path, waitTime);
+        }
+
+        return true;
+    }
+
+    private void addWaitTime(JobGroupPath path, long waitTime)
+    {
+        synchronized (this.statistics) {
+            WaitStatistics pathStatistics = this.statistics.get(path);
+            if (pathStatistics == null) {
+                pathStatistics = new WaitStatistics();
+                this.statistics.put(path, pathStatistics);
+            }
+
+            pathStatistics.add(waitTime);
         }
     }
 
@@ -65,10 +414,45 @@ public void lock(JobGroupPath key)
      */
     public void unlock(JobGroupPath key)
     {
-        getLock(key).writeLock().unlock();
+        unlock(key, true);
 
         for (JobGroupPath path = key.getParent(); path != null; path = path.getParent()) {
-            getLock(path).readLock().unlock();
+            unlock(path, false);
+        }
+    }
+
+    private void unlock(JobGroupPath path, boolean group)
+    {
+        GroupLock lock = getLock(path);
+
+        lock.unlock(group);
+
+        releaseLock(lock);
+    }
+
+    /**
+     * @return the number of paths for which a lock is currently held or waited for
+     * @since 7.0M1
+     */
+    public synchronized int getSize()
+    {
+        return this.tree.size();
+    }
+
+    /**
+     * @return the wait statistics of the last locked paths
+     * @since 7.0M1
+     */
+    public Map<JobGroupPath, WaitStatistics> getWaitStatistics()
+    {
+        Map<JobGroupPath, WaitStatistics> result = new HashMap<JobGroupPath, WaitStatistics>();
+
+        synchronized (this.statistics) {
+            for (Map.Entry<JobGroupPath, WaitStatistics> entry : this.statistics.entrySet()) {
+                result.put(entry.getKey(), new WaitStatistics(entry.getValue()));
+            }
         }
+
+        return result;
     }
 }
@@ -0,0 +1,314 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.job.Job;
+import org.xwiki.job.event.JobEvent;
+import org.xwiki.job.event.JobFinishedEvent;
+import org.xwiki.job.event.JobStartedEvent;
+import org.xwiki.job.event.status.JobStatus;
+import org.xwiki.job.event.status.JobStatus.State;
+import org.xwiki.job.internal.jmx.JMXJobMetrics;
+import org.xwiki.management.JMXBeanRegistration;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Gather metrics about the execution of the jobs from {@link JobStartedEvent} and {@link JobFinishedEvent}: how long
+ * the jobs of each type wait before being executed, how long they run, how many of them failed, etc.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+@Component
+@Singleton
+@Named(JobMetricsListener.NAME)
+public class JobMetricsListener implements EventListener, Initializable, Disposable
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "JobMetricsListener";
+
+    /**
+     * The name under which the metrics MBean is registered.
+     */
+    private static final String MBEANNAME = "type=Job,name=JobMetrics";
+
+    /**
+     * The list of events observed.
+     */
+    private static final List<Event> EVENTS = Arrays.<Event>asList(new JobStartedEvent(), new JobFinishedEvent());
+
+    /**
+     * The metrics of the jobs of a given type.
+     *
+     * @version $Id$
+     */
+    public static final class TypeMetrics
+    {
+        private final AtomicLong startedCount = new AtomicLong();
+
+        private final AtomicLong finishedCount = new AtomicLong();
+
+        private final AtomicLong failedCount = new AtomicLong();
+
+        private final AtomicLong canceledCount = new AtomicLong();
+
+        private final AtomicLong queuedCount = new AtomicLong();
+
+        private final AtomicLong totalQueueTime = new AtomicLong();
+
+        private final AtomicLong maxQueueTime = new AtomicLong();
+
+        private final AtomicLong totalRunTime = new AtomicLong();
+
+        private final AtomicLong maxRunTime = new AtomicLong();
+
+        private void finished(JobFinishedEvent event, boolean failed, boolean canceled)
+        {
+            this.finishedCount.incrementAndGet();
+
+            if (canceled) {
+                this.canceledCount.incrementAndGet();
+            } else if (failed) {
+                this.failedCount.incrementAndGet();
+            }
+
+            if (event.getQueueTime() >= 0) {
+                this.queuedCount.incrementAndGet();
+                this.totalQueueTime.addAndGet(event.getQueueTime());
+                max(this.maxQueueTime, event.getQueueTime());
+            }
+
+            if (event.getRunTime() >= 0) {
+                this.totalRunTime.addAndGet(event.getRunTime());
+                max(this.maxRunTime, event.getRunTime());
+            }
+        }
+
+        private static void max(AtomicLong max, long value)
+        {
+            for (long current = max.get(); value > current; current = max.get()) {
+                if (max.compareAndSet(current, value)) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * @return the number of started jobs
+         */
+        public long getStartedCount()
+        {
+            return this.startedCount.get();
+        }
+
+        /**
+         * @return the number of finished jobs (including the failed and canceled ones)
+         */
+        public long getFinishedCount()
+        {
+            return this.finishedCount.get();
+        }
+
+        /**
+         * @return the number of jobs which finished with an error
+         */
+        public long getFailedCount()
+        {
+            return this.failedCount.get();
+        }
+
+        /**
+         * @return the number of canceled jobs
+         */
+        public long getCanceledCount()
+        {
+            return this.canceledCount.get();
+        }
+
+        /**
+         * @return the average time the jobs waited in an executor queue, in milliseconds
+         */
+        public double getAverageQueueTime()
+        {
+            long count = this.queuedCount.get();
+
+            return count > 0 ? (double) this.totalQueueTime.get() / count : 0;
+        }
+
+        /**
+         * @return the longest time a job waited in an executor queue, in milliseconds
+         */
+        public long getMaxQueueTime()
+        {
+            return this.maxQueueTime.get();
+        }
+
+        /**
+         * @return the average time the jobs took to execute, in milliseconds
+         */
+        public double getAverageRunTime()
+        {
+            long count = this.finishedCount.get();
+
+            return count > 0 ? (double) this.totalRunTime.get() / count : 0;
+        }
+
+        /**
+         * @return the longest time a job took to execute, in milliseconds
+         */
+        public long getMaxRunTime()
+        {
+            return this.maxRunTime.get();
+        }
+    }
+
+    /**
+     * Used to register the metrics MBean.
+     */
+    @Inject
+    private JMXBeanRegistration jmxRegistration;
+
+    private final ConcurrentMap<String, TypeMetrics> types = new ConcurrentHashMap<String, TypeMetrics>();
+
+    /**
+     * The jobs currently running.
+     */
+    private final Set<Job> runningJobs = Collections.newSetFromMap(new ConcurrentHashMap<Job, Boolean>());
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.jmxRegistration.registerMBean(new JMXJobMetrics(this), MBEANNAME);
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.jmxRegistration.unregisterMBean(MBEANNAME);
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return EVENTS;
+    }
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        TypeMetrics metrics = getTypeMetrics(((JobEvent) event).getJobType());
+
+        if (event instanceof JobStartedEvent) {
+            metrics.startedCount.incrementAndGet();
+
+            if (source instanceof Job) {
+                this.runningJobs.add((Job) source);
+            }
+        } else {
+            boolean canceled = source instanceof AbstractJob && ((AbstractJob<?, ?>) source).isCanceled();
+            metrics.finished((JobFinishedEvent) event, data != null, canceled);
+
+            if (source instanceof Job) {
+                this.runningJobs.remove(source);
+            }
+        }
+    }
+
+    private TypeMetrics getTypeMetrics(String type)
+    {
+        String key = type != null ? type : "";
+
+        TypeMetrics metrics = this.types.get(key);
+        if (metrics == null) {
+            metrics = new TypeMetrics();
+            TypeMetrics currentMetrics = this.types.putIfAbsent(key, metrics);
+            if (currentMetrics != null) {
+                metrics = currentMetrics;
+            }
+        }
+
+        return metrics;
+    }
+
+    /**
+     * @return the metrics of each job type
+     */
+    public Map<String, TypeMetrics> getTypeMetrics()
+    {
+        return Collections.unmodifiableMap(this.types);
+    }
+
+    /**
+     * @return the number of jobs in each state, the running jobs being counted according to their current state
+     */
+    public Map<State, Long> getJobCountByState()
+    {
+        Map<State, Long> counts = new EnumMap<State, Long>(State.class);
+        for (State state : State.values()) {
+            counts.put(state, 0L);
+        }
+
+        for (Job job : this.runningJobs) {
+            JobStatus status = job.getStatus();
+            if (status != null && status.getState() != null) {
+                counts.put(status.getState(), counts.get(status.getState()) + 1);
+            }
+        }
+
+        long finished = 0;
+        long canceled = 0;
+        for (TypeMetrics metrics : this.types.values()) {
+            finished += metrics.getFinishedCount() - metrics.getCanceledCount();
+            canceled += metrics.getCanceledCount();
+        }
+        counts.put(State.FINISHED, counts.get(State.FINISHED) + finished);
+        counts.put(State.CANCELED, counts.get(State.CANCELED) + canceled);
+
+        return counts;
+    }
+}
@@ -0,0 +1,458 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.xwiki.job.event.status.JobStatus;
+
+/**
+ * A single segment file containing old job statuses moved out of their folder to save disk space and file system
+ * entries.
+ * <p>
+ * The segment is a sequence of records appended one after the other: a record either contain a job status (in the
+ * compressed binary format) or indicate that the statuses of a job and of its children have been removed. Each record
+ * is protected by a checksum. The position of the last record of each job is kept in memory so that a single status
+ * can be read without reading the whole segment. The segment is rewritten when more than half of it is made of
+ * outdated records.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class JobStatusArchive
+{
+    /**
+     * Identify a job status archive file.
+     */
+    private static final int MAGIC = 0x584A5341;
+
+    /**
+     * The current version of the format.
+     */
+    private static final int VERSION = 1;
+
+    private static final byte RECORD_PUT = 1;
+
+    private static final byte RECORD_REMOVE = 2;
+
+    /**
+     * The size of the file header (magic and version).
+     */
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * The size of a record in addition to its content (length and checksum).
+     */
+    private static final int RECORD_OVERHEAD = 12;
+
+    /**
+     * The minimum size of the outdated records before trying to compact the segment.
+     */
+    private static final long COMPACT_THRESHOLD = 1024L * 1024L;
+
+    /**
+     * The mode in which the archive files are opened.
+     */
+    private static final String FILE_MODE = "rw";
+
+    private static final class Position
+    {
+        private final long offset;
+
+        private final int length;
+
+        Position(long offset, int length)
+        {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        private long getSize()
+        {
+            return this.length + RECORD_OVERHEAD;
+        }
+    }
+
+    private final File file;
+
+    private final BinaryJobStatusSerializer serializer;
+
+    private final Map<List<String>, Position> positions = new HashMap<List<String>, Position>();
+
+    private RandomAccessFile segment;
+
+    /**
+     * The size of the records containing the current statuses.
+     */
+    private long liveSize;
+
+    /**
+     * @param file the segment file
+     * @param serializer used to serialize and unserialize the statuses
+     */
+    public JobStatusArchive(File file, BinaryJobStatusSerializer serializer)
+    {
+        this.file = file;
+        this.serializer = serializer;
+    }
+
+    /**
+     * @return the segment file
+     */
+    public File getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * Find the statuses stored in the segment file. A damaged end of segment (for example because of a crash while
+     * writing it) is dropped.
+     *
+     * @throws IOException when failing to read the segment file or when it's not a valid archive (in which case it's
+     *             moved aside)
+     */
+    public synchronized void load() throws IOException
+    {
+        close();
+
+        this.positions.clear();
+        this.liveSize = 0;
+
+        if (!this.file.exists()) {
+            return;
+        }
+
+        this.segment = new RandomAccessFile(this.file, FILE_MODE);
+
+        if (this.segment.length() < HEADER_SIZE || this.segment.readInt() != MAGIC
+            || this.segment.readInt() != VERSION) {
+            close();
+
+            // Keep it aside and start a new archive
+            File invalidFile = new File(this.file.getPath() + ".invalid");
+            Files.move(this.file.toPath(), invalidFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+            throw new IOException("Invalid job status archive, moved to [" + invalidFile + "]");
+        }
+
+        long offset = HEADER_SIZE;
+        for (long length = this.segment.length(); offset < length;) {
+            byte[] record = readRecord(offset, length);
+
+            if (record == null) {
+                // Drop the damaged records
+                this.segment.setLength(offset);
+
+                break;
+            }
+
+            DataInputStream recordStream = new DataInputStream(new ByteArrayInputStream(record));
+            byte type = recordStream.readByte();
+            List<String> id = JobStatusIndex.readId(recordStream);
+            if (type == RECORD_PUT) {
+                putPosition(id, new Position(offset, record.length));
+            } else {
+                removePositions(id);
+            }
+
+            offset += record.length + RECORD_OVERHEAD;
+        }
+    }
+
+    /**
+     * @return the record at the passed offset or null if it's invalid
+     */
+    private byte[] readRecord(long offset, long segmentLength) throws IOException
+    {
+        if (offset + RECORD_OVERHEAD > segmentLength) {
+            return null;
+        }
+
+        this.segment.seek(offset);
+
+        int length = this.segment.readInt();
+        if (length <= 0 || offset + length + RECORD_OVERHEAD > segmentLength) {
+            return null;
+        }
+
+        byte[] record = new byte[length];
+        this.segment.readFully(record);
+
+        CRC32 crc = new CRC32();
+        crc.update(record);
+
+        return crc.getValue() == this.segment.readLong() ? record : null;
+    }
+
+    private void putPosition(List<String> id, Position position)
+    {
+        Position previous = this.positions.put(id, position);
+        if (previous != null) {
+            this.liveSize -= previous.getSize();
+        }
+        this.liveSize += position.getSize();
+    }
+
+    private void removePositions(List<String> prefix)
+    {
+        for (Iterator<Map.Entry<List<String>, Position>> it = this.positions.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<List<String>, Position> entry = it.next();
+
+            if (isPrefix(prefix, entry.getKey())) {
+                it.remove();
+                this.liveSize -= entry.getValue().getSize();
+            }
+        }
+    }
+
+    private boolean isPrefix(List<String> prefix, List<String> id)
+    {
+        if (prefix == null || prefix.isEmpty()) {
+            return true;
+        }
+
+        return id != null && id.size() >= prefix.size() && id.subList(0, prefix.size()).equals(prefix);
+    }
+
+    private void openSegment() throws IOException
+    {
+        if (this.segment == null) {
+            this.file.getParentFile().mkdirs();
+
+            this.segment = new RandomAccessFile(this.file, FILE_MODE);
+
+            if (this.segment.length() == 0) {
+                this.segment.writeInt(MAGIC);
+                this.segment.writeInt(VERSION);
+            }
+        }
+    }
+
+    private long appendRecord(byte[] record) throws IOException
+    {
+        openSegment();
+
+        CRC32 crc = new CRC32();
+        crc.update(record);
+
+        long offset = this.segment.length();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(record.length + RECORD_OVERHEAD);
+        DataOutputStream stream = new DataOutputStream(bytes);
+        stream.writeInt(record.length);
+        stream.write(record);
+        stream.writeLong(crc.getValue());
+
+        this.segment.seek(offset);
+        this.segment.write(bytes.toByteArray());
+
+        return offset;
+    }
+
+    private byte[] createRecord(byte type, List<String> id, JobStatus status) throws IOException
+    {
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream recordStream = new DataOutputStream(recordBytes);
+
+        recordStream.writeByte(type);
+        JobStatusIndex.writeId(id, recordStream);
+        if (status != null) {
+            this.serializer.write(status, recordStream);
+        }
+        recordStream.flush();
+
+        return recordBytes.toByteArray();
+    }
+
+    /**
+     * Add a status to the archive, replacing any status already archived for the same job.
+     *
+     * @param status the status to archive
+     * @throws IOException when failing to write the status
+     */
+    public synchronized void add(JobStatus status) throws IOException
+    {
+        List<String> id = status.getRequest().getId();
+
+        byte[] record = createRecord(RECORD_PUT, id, status);
+
+        putPosition(id, new Position(appendRecord(record), record.length));
+
+        compactIfNeeded();
+    }
+
+    /**
+     * @param id the id of the job
+     * @return true if a status is archived for the passed job
+     */
+    public synchronized boolean contains(List<String> id)
+    {
+        return this.positions.containsKey(id);
+    }
+
+    /**
+     * @param id the id of the job
+     * @return the archived status or null if none could be found
+     * @throws IOException when failing to read the status
+     */
+    public synchronized JobStatus get(List<String> id) throws IOException
+    {
+        Position position = this.positions.get(id);
+
+        if (position == null) {
+            return null;
+        }
+
+        byte[] record = readRecord(position.offset, this.segment.length());
+        if (record == null) {
+            throw new IOException("Invalid record for job status [" + id + "] in archive [" + this.file + "]");
+        }
+
+        DataInputStream recordStream = new DataInputStream(new ByteArrayInputStream(record));
+        recordStream.readByte();
+        JobStatusIndex.readId(recordStream);
+
+        return this.serializer.read(recordStream);
+    }
+
+    /**
+     * Remove the status associated to the passed id and the statuses of all the jobs with an id starting with it.
+     *
+     * @param id the id of the job
+     * @throws IOException when failing to update the archive
+     */
+    public synchronized void remove(List<String> id) throws IOException
+    {
+        int size = this.positions.size();
+
+        removePositions(id);
+
+        if (size != this.positions.size()) {
+            appendRecord(createRecord(RECORD_REMOVE, id, null));
+
+            compactIfNeeded();
+        }
+    }
+
+    private void compactIfNeeded() throws IOException
+    {
+        long deadSize = this.segment.length() - HEADER_SIZE - this.liveSize;
+
+        if (deadSize > COMPACT_THRESHOLD && deadSize > this.liveSize) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrite the segment with only the current statuses.
+     *
+     * @throws IOException when failing to write the segment
+     */
+    private void compact() throws IOException
+    {
+        File tempFile = File.createTempFile(this.file.getName(), ".tmp", this.file.getParentFile());
+
+        List<Map.Entry<List<String>, Position>> entries =
+            new ArrayList<Map.Entry<List<String>, Position>>(this.positions.entrySet());
+        Map<List<String>, Position> newPositions = new HashMap<List<String>, Position>(entries.size());
+
+        RandomAccessFile newSegment = new RandomAccessFile(tempFile, FILE_MODE);
+        try {
+            newSegment.writeInt(MAGIC);
+            newSegment.writeInt(VERSION);
+
+            byte[] buffer = new byte[0];
+            for (Map.Entry<List<String>, Position> entry : entries) {
+                Position position = entry.getValue();
+
+                int size = (int) position.getSize();
+                if (buffer.length < size) {
+                    buffer = new byte[size];
+                }
+                this.segment.seek(position.offset);
+                this.segment.readFully(buffer, 0, size);
+
+                newPositions.put(entry.getKey(), new Position(newSegment.getFilePointer(), position.length));
+                newSegment.write(buffer, 0, size);
+            }
+        } finally {
+            newSegment.close();
+        }
+
+        close();
+
+        Files.move(tempFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        this.positions.clear();
+        this.positions.putAll(newPositions);
+
+        this.segment = new RandomAccessFile(this.file, FILE_MODE);
+    }
+
+    /**
+     * @return the number of archived statuses
+     */
+    public synchronized int size()
+    {
+        return this.positions.size();
+    }
+
+    /**
+     * @return the size of the segment file
+     */
+    public synchronized long getFileSize()
+    {
+        try {
+            return this.segment != null ? this.segment.length() : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Release the segment file.
+     */
+    public synchronized void close()
+    {
+        if (this.segment != null) {
+            try {
+                this.segment.close();
+            } catch (IOException e) {
+                // Nothing to do
+            }
+
+            this.segment = null;
+        }
+    }
+}
@@ -0,0 +1,447 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xwiki.job.Request;
+import org.xwiki.job.event.status.JobStatus;
+
+/**
+ * A cache of job statuses bounded by the estimated weight of the statuses instead of their number.
+ * <p>
+ * The weight of a status is mostly the size of its log (see {@link #weigh(JobStatus)}). When the total weight goes
+ * above the maximum the least recently used statuses are evicted to a second tier only holding them through
+ * {@link SoftReference}s so that they are kept as long as the memory allows it. A status heavier than the maximum
+ * weight goes directly to the second tier.
+ * <p>
+ * The {@link #NOSTATUS} entries remembering that a job doesn't have any status are kept apart, bounded by their
+ * number, so that looking up many unknown jobs can't evict the actual statuses.
+ * <p>
+ * Loading a status is done outside of any lock and only once for a given job id: concurrent lookups of the same id
+ * wait for the same load while lookups of other ids are not impacted.
+ * <p>
+ * A {@code null} id is handled as an empty id since both designate the same status.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class JobStatusCache
+{
+    /**
+     * The status cached for a job which doesn't have any stored status.
+     */
+    public static final JobStatus NOSTATUS = new DefaultJobStatus<Request>(null, null, null, false);
+
+    /**
+     * The default maximum number of {@link #NOSTATUS} entries.
+     */
+    public static final int DEFAULT_NOSTATUS_MAX_COUNT = 1000;
+
+    /**
+     * The weight of a status, whatever the size of its log.
+     */
+    private static final int BASE_WEIGHT = 1;
+
+    private static final class SoftNode extends SoftReference<JobStatus>
+    {
+        private final List<String> id;
+
+        SoftNode(List<String> id, JobStatus status, ReferenceQueue<JobStatus> queue)
+        {
+            super(status, queue);
+
+            this.id = id;
+        }
+    }
+
+    /**
+     * The statuses strongly referenced. Its monitor is also used to group the modifications of the different tiers
+     * and is never held while loading a status.
+     */
+    private final WeightedLRUCache<List<String>, JobStatus> strongCache;
+
+    /**
+     * The ids of the jobs without any status.
+     */
+    private final WeightedLRUCache<List<String>, JobStatus> noStatusCache;
+
+    private final ConcurrentMap<List<String>, SoftNode> softCache = new ConcurrentHashMap<List<String>, SoftNode>();
+
+    private final ReferenceQueue<JobStatus> softQueue = new ReferenceQueue<JobStatus>();
+
+    private final ConcurrentMap<List<String>, FutureTask<JobStatus>> loading =
+        new ConcurrentHashMap<List<String>, FutureTask<JobStatus>>();
+
+    /**
+     * Incremented each time some entries are invalidated so that a load started before can't put back an outdated
+     * status.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    // Metrics
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong softHitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param maxWeight the maximum total weight of the strongly referenced statuses
+     */
+    public JobStatusCache(long maxWeight)
+    {
+        this(maxWeight, DEFAULT_NOSTATUS_MAX_COUNT);
+    }
+
+    /**
+     * @param maxWeight the maximum total weight of the strongly referenced statuses
+     * @param noStatusMaxCount the maximum number of remembered jobs without any status
+     */
+    public JobStatusCache(long maxWeight, int noStatusMaxCount)
+    {
+        this.strongCache = new WeightedLRUCache<List<String>, JobStatus>(maxWeight)
+        {
+            @Override
+            protected void evicted(List<String> id, JobStatus status)
+            {
+                putSoft(id, status);
+            }
+        };
+        this.noStatusCache = new WeightedLRUCache<List<String>, JobStatus>(noStatusMaxCount, noStatusMaxCount);
+    }
+
+    /**
+     * @param status the status
+     * @return the estimated weight of the status in the cache
+     */
+    protected long weigh(JobStatus status)
+    {
+        long statusWeight = BASE_WEIGHT;
+
+        if (status.getLog() != null) {
+            statusWeight += status.getLog().size();
+        }
+
+        if (status instanceof AbstractJobStatus) {
+            statusWeight += ((AbstractJobStatus<?>) status).getWeight();
+        }
+
+        return statusWeight;
+    }
+
+    /**
+     * @param id the job id
+     * @return the cached status or null if none could be found
+     */
+    public JobStatus get(List<String> id)
+    {
+        return getInternal(toKey(id));
+    }
+
+    private JobStatus getInternal(List<String> id)
+    {
+        expungeSoftCache();
+
+        synchronized (this.strongCache) {
+            JobStatus status = this.strongCache.get(id);
+
+            if (status == null) {
+                status = this.noStatusCache.get(id);
+            }
+
+            if (status != null) {
+                this.hitCount.incrementAndGet();
+
+                return status;
+            }
+
+            SoftNode softNode = this.softCache.get(id);
+            if (softNode != null) {
+                status = softNode.get();
+
+                // Promote it back to the main cache, unless it has been removed or replaced in the meantime
+                if (status != null && this.softCache.remove(id, softNode)) {
+                    this.softHitCount.incrementAndGet();
+
+                    putNode(id, status, weigh(status));
+
+                    return status;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Get the cached status or load it. The same id is never loaded by several threads at the same time.
+     *
+     * @param id the job id
+     * @param loader used to load the status when it's not in the cache, the status is not cached when null is returned
+     * @return the status, null if the loader returned null
+     * @throws Exception when failing to load the status
+     */
+    public JobStatus get(List<String> id, Callable<JobStatus> loader) throws Exception
+    {
+        List<String> key = toKey(id);
+
+        JobStatus status = getInternal(key);
+
+        if (status != null) {
+            return status;
+        }
+
+        return load(key, loader);
+    }
+
+    private JobStatus load(List<String> id, Callable<JobStatus> loader) throws Exception
+    {
+        JobStatus status;
+
+        this.missCount.incrementAndGet();
+
+        FutureTask<JobStatus> task = new FutureTask<JobStatus>(loader);
+        FutureTask<JobStatus> currentTask = this.loading.putIfAbsent(id, task);
+
+        if (currentTask == null) {
+            long loadGeneration = this.generation.get();
+
+            try {
+                task.run();
+
+                status = getTaskResult(task);
+
+                if (status != null) {
+                    long statusWeight = weigh(status);
+
+                    synchronized (this.strongCache) {
+                        // Don't override a status stored or invalidated during the load
+                        if (loadGeneration == this.generation.get() && !this.strongCache.containsKey(id)) {
+                            putNode(id, status, statusWeight);
+                        }
+                    }
+                }
+            } finally {
+                this.loading.remove(id, task);
+            }
+        } else {
+            status = getTaskResult(currentTask);
+        }
+
+        return status;
+    }
+
+    private JobStatus getTaskResult(FutureTask<JobStatus> task) throws Exception
+    {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * @param id the job id
+     * @param status the status to cache
+     */
+    public void put(List<String> id, JobStatus status)
+    {
+        long statusWeight = weigh(status);
+
+        synchronized (this.strongCache) {
+            this.generation.incrementAndGet();
+
+            putNode(toKey(id), status, statusWeight);
+        }
+    }
+
+    /**
+     * Must be called while holding the strong cache monitor.
+     */
+    private void putNode(List<String> id, JobStatus status, long statusWeight)
+    {
+        this.softCache.remove(id);
+
+        if (status == NOSTATUS) {
+            this.strongCache.remove(id);
+            this.noStatusCache.put(id, status, 1);
+        } else {
+            this.noStatusCache.remove(id);
+
+            if (!this.strongCache.put(id, status, statusWeight)) {
+                // Too heavy to be strongly referenced
+                putSoft(id, status);
+            }
+        }
+    }
+
+    private void putSoft(List<String> id, JobStatus status)
+    {
+        this.softCache.put(id, new SoftNode(id, status, this.softQueue));
+    }
+
+    private void expungeSoftCache()
+    {
+        Reference<? extends JobStatus> reference;
+        while ((reference = this.softQueue.poll()) != null) {
+            SoftNode node = (SoftNode) reference;
+            this.softCache.remove(node.id, node);
+        }
+    }
+
+    /**
+     * Remove from the cache the status associated with the passed id and all the statuses associated with an id
+     * starting with it.
+     *
+     * @param id the job id
+     */
+    public void remove(List<String> id)
+    {
+        synchronized (this.strongCache) {
+            this.generation.incrementAndGet();
+
+            remove(this.strongCache, id);
+            remove(this.noStatusCache, id);
+
+            for (Iterator<List<String>> it = this.softCache.keySet().iterator(); it.hasNext();) {
+                if (startsWith(it.next(), id)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private void remove(WeightedLRUCache<List<String>, JobStatus> cache, List<String> prefix)
+    {
+        for (List<String> id : cache.getAll().keySet()) {
+            if (startsWith(id, prefix)) {
+                cache.remove(id);
+            }
+        }
+    }
+
+    private List<String> toKey(List<String> id)
+    {
+        return id != null ? id : Collections.<String>emptyList();
+    }
+
+    private boolean startsWith(List<String> id, List<String> prefix)
+    {
+        if (prefix == null || prefix.isEmpty()) {
+            return true;
+        }
+
+        return id != null && id.size() >= prefix.size() && id.subList(0, prefix.size()).equals(prefix);
+    }
+
+    // Metrics
+
+    /**
+     * @return the number of strongly referenced statuses
+     */
+    public int getSize()
+    {
+        return this.strongCache.getCount();
+    }
+
+    /**
+     * @return the number of statuses only softly referenced (some of them might already have been garbage collected)
+     */
+    public int getSoftSize()
+    {
+        expungeSoftCache();
+
+        return this.softCache.size();
+    }
+
+    /**
+     * @return the number of remembered jobs without any status
+     */
+    public int getNoStatusSize()
+    {
+        return this.noStatusCache.getCount();
+    }
+
+    /**
+     * @return the total weight of the strongly referenced statuses
+     */
+    public long getWeight()
+    {
+        return this.strongCache.getWeight();
+    }
+
+    /**
+     * @return the maximum total weight of the strongly referenced statuses
+     */
+    public long getMaxWeight()
+    {
+        return this.strongCache.getMaxWeight();
+    }
+
+    /**
+     * @return the number of lookups which found the status (or the absence of status) in the strongly referenced
+     *         entries
+     */
+    public long getHitCount()
+    {
+        return this.hitCount.get();
+    }
+
+    /**
+     * @return the number of lookups which found the status only in the softly referenced statuses
+     */
+    public long getSoftHitCount()
+    {
+        return this.softHitCount.get();
+    }
+
+    /**
+     * @return the number of lookups which had to load the status
+     */
+    public long getMissCount()
+    {
+        return this.missCount.get();
+    }
+
+    /**
+     * @return the number of statuses moved to the softly referenced statuses to make room
+     */
+    public long getEvictionCount()
+    {
+        return this.strongCache.getEvictionCount();
+    }
+}
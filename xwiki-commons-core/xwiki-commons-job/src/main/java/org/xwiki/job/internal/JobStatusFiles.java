@@ -0,0 +1,313 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.xwiki.job.event.status.JobStatus;
+
+/**
+ * The layout of the job statuses on the file system: each status is stored in a folder matching its id, in the
+ * configured format.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class JobStatusFiles
+{
+    /**
+     * The name of the file where the job status is stored in XML format.
+     */
+    private static final String FILENAME_STATUS = "status.xml";
+
+    /**
+     * The name of the file where the job status is stored in binary format.
+     */
+    private static final String FILENAME_STATUS_BINARY = "status.bin";
+
+    /**
+     * The XML job status format.
+     */
+    private static final String FORMAT_XML = "xml";
+
+    /**
+     * Encoding used for file content and names.
+     */
+    private static final String DEFAULT_ENCODING = "UTF-8";
+
+    /**
+     * The encoded version of a <code>null</code> value in the id list.
+     */
+    private static final String FOLDER_NULL = "&null";
+
+    private final File storage;
+
+    private final Logger logger;
+
+    /**
+     * Used to read job statuses whatever their format.
+     */
+    private final BinaryJobStatusSerializer reader;
+
+    /**
+     * Used to write job statuses in the configured format.
+     */
+    private final JobStatusSerializer serializer;
+
+    /**
+     * The name of the file where to write job statuses.
+     */
+    private final String statusFileName;
+
+    /**
+     * The name of the file written in the other format (to cleanup when migrating).
+     */
+    private final String otherStatusFileName;
+
+    /**
+     * @param storage the folder where the job statuses are stored
+     * @param format the format in which to write the job statuses
+     * @param logger the logger to log
+     * @throws ParserConfigurationException when failing to create the serializers
+     */
+    public JobStatusFiles(File storage, String format, Logger logger) throws ParserConfigurationException
+    {
+        this.storage = storage;
+        this.reader = new BinaryJobStatusSerializer();
+        this.logger = logger;
+
+        if (FORMAT_XML.equals(format)) {
+            this.serializer = new JobStatusSerializer();
+            this.statusFileName = FILENAME_STATUS;
+            this.otherStatusFileName = FILENAME_STATUS_BINARY;
+        } else {
+            this.serializer = reader;
+            this.statusFileName = FILENAME_STATUS_BINARY;
+            this.otherStatusFileName = FILENAME_STATUS;
+        }
+    }
+
+    /**
+     * @return used to read job statuses whatever their format
+     */
+    public BinaryJobStatusSerializer getReader()
+    {
+        return this.reader;
+    }
+
+    /**
+     * @param name the file or directory name to encode
+     * @return the encoding name
+     */
+    private String encode(String name)
+    {
+        String encoded;
+
+        if (name != null) {
+            try {
+                encoded = URLEncoder.encode(name, DEFAULT_ENCODING);
+            } catch (UnsupportedEncodingException e) {
+                // Should never happen
+
+                encoded = name;
+            }
+        } else {
+            encoded = FOLDER_NULL;
+        }
+
+        return encoded;
+    }
+
+    private boolean isStatusFileName(String name)
+    {
+        return name.equals(FILENAME_STATUS) || name.equals(FILENAME_STATUS_BINARY);
+    }
+
+    /**
+     * @param id the id of the job
+     * @return the folder where to store the job related informations
+     */
+    public File getJobFolder(List<String> id)
+    {
+        File folder = this.storage;
+
+        if (id != null) {
+            for (String idElement : id) {
+                folder = new File(folder, encode(idElement));
+            }
+        }
+
+        return folder;
+    }
+
+    /**
+     * @param folder the job folder
+     * @return the path of the folder relative to the storage folder
+     */
+    public String getRelativePath(File folder)
+    {
+        return this.storage.toPath().relativize(folder.toPath()).toString();
+    }
+
+    /**
+     * @param id the id of the job
+     * @return the job status, null if none is stored in the folder of the job
+     */
+    public JobStatus read(List<String> id)
+    {
+        return read(getJobFolder(id));
+    }
+
+    /**
+     * @param folder the folder from where to load the job status
+     * @return the job status, null if none is stored in the folder
+     */
+    public JobStatus read(File folder)
+    {
+        File statusFile = new File(folder, this.statusFileName);
+        if (statusFile.exists()) {
+            return this.reader.read(statusFile);
+        }
+
+        // Fallback on the other format (for example a status stored before the format was changed)
+        statusFile = new File(folder, this.otherStatusFileName);
+        if (statusFile.exists()) {
+            return this.reader.read(statusFile);
+        }
+
+        return null;
+    }
+
+    /**
+     * @param status the job status to write
+     * @return the index entry of the written status
+     * @throws IOException when failing to write the status
+     */
+    public JobStatusIndex.Entry write(JobStatus status) throws IOException
+    {
+        File folder = getJobFolder(status.getRequest().getId());
+
+        File statusFile = new File(folder, this.statusFileName);
+
+        this.serializer.write(status, statusFile);
+
+        // Remove any status stored in the other format
+        File otherStatusFile = new File(folder, this.otherStatusFileName);
+        if (otherStatusFile.exists()) {
+            otherStatusFile.delete();
+        }
+
+        return new JobStatusIndex.Entry(status, getRelativePath(folder), statusFile.length());
+    }
+
+    /**
+     * Delete the status stored in the passed folder, but not the statuses of the children jobs.
+     *
+     * @param folder the folder of the job
+     */
+    public void deleteStatus(File folder)
+    {
+        new File(folder, FILENAME_STATUS).delete();
+        new File(folder, FILENAME_STATUS_BINARY).delete();
+
+        File current = folder;
+        while (current != null && !current.equals(this.storage)) {
+            String[] children = current.list();
+
+            if (children == null || children.length > 0 || !current.delete()) {
+                break;
+            }
+
+            current = current.getParentFile();
+        }
+    }
+
+    /**
+     * Delete the status of the job and all the statuses of its children.
+     *
+     * @param id the id of the job
+     * @throws IOException when failing to delete the folder of the job
+     */
+    public void delete(List<String> id) throws IOException
+    {
+        File jobFolder = getJobFolder(id);
+
+        if (jobFolder.exists()) {
+            FileUtils.deleteDirectory(jobFolder);
+        }
+    }
+
+    /**
+     * Walk the whole storage to move the job statuses which are not in their right place and find all the stored job
+     * statuses.
+     *
+     * @param entries the found job statuses
+     */
+    public void repair(List<JobStatusIndex.Entry> entries)
+    {
+        if (this.storage.exists()) {
+            repairFolder(this.storage, entries);
+        }
+    }
+
+    /**
+     * @param folder the folder from where to load the jobs
+     * @param entries the found job statuses
+     */
+    private void repairFolder(File folder, List<JobStatusIndex.Entry> entries)
+    {
+        for (File file : folder.listFiles()) {
+            if (file.isDirectory()) {
+                repairFolder(file, entries);
+            } else if (isStatusFileName(file.getName())) {
+                try {
+                    // No need for the log to know where the status should be
+                    JobStatus status = this.reader.readHeader(file);
+
+                    if (status != null) {
+                        File properFolder = getJobFolder(status.getRequest().getId());
+                        long size = file.length();
+
+                        if (!folder.equals(properFolder)) {
+                            // Move the status in its right place
+                            try {
+                                FileUtils.moveFileToDirectory(file, properFolder, true);
+                            } catch (IOException e) {
+                                this.logger.error("Failed to move job status file", e);
+                            }
+                        }
+
+                        entries.add(new JobStatusIndex.Entry(status, getRelativePath(properFolder), size));
+                    }
+                } catch (Exception e) {
+                    this.logger.warn("Failed to load job status in folder [{}]", folder, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,626 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.xwiki.job.event.status.JobStatus;
+import org.xwiki.job.event.status.JobStatus.State;
+
+/**
+ * A persistent index of the stored job statuses.
+ * <p>
+ * The index is stored in a journal file starting with a snapshot of all the entries and followed by the modifications
+ * (put/remove) done since the snapshot. Each record is protected by a checksum so that a damaged index is detected
+ * when loading it. The journal is compacted into a new snapshot when it becomes too big.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class JobStatusIndex
+{
+    /**
+     * An entry of the index.
+     *
+     * @version $Id$
+     */
+    public static class Entry
+    {
+        private final List<String> id;
+
+        private final String folder;
+
+        private final State state;
+
+        private final Date startDate;
+
+        private final Date endDate;
+
+        private final long size;
+
+        /**
+         * @param id the id of the job
+         * @param folder the folder of the job status, relative to the storage folder
+         * @param state the state of the job
+         * @param startDate the date and time when the job has been started
+         * @param endDate the date and time when the job finished
+         * @param size the size of the stored status
+         */
+        public Entry(List<String> id, String folder, State state, Date startDate, Date endDate, long size)
+        {
+            this.id = id != null ? Collections.unmodifiableList(new ArrayList<String>(id)) : null;
+            this.folder = folder;
+            this.state = state;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.size = size;
+        }
+
+        /**
+         * @param status the status
+         * @param folder the folder of the job status, relative to the storage folder
+         * @param size the size of the stored status
+         */
+        public Entry(JobStatus status, String folder, long size)
+        {
+            this(status.getRequest().getId(), folder, status.getState(), status.getStartDate(), status
+                .getEndDate(), size);
+        }
+
+        /**
+         * @return the id of the job
+         */
+        public List<String> getId()
+        {
+            return this.id;
+        }
+
+        /**
+         * @return the folder of the job status, relative to the storage folder
+         */
+        public String getFolder()
+        {
+            return this.folder;
+        }
+
+        /**
+         * @return the state of the job
+         */
+        public State getState()
+        {
+            return this.state;
+        }
+
+        /**
+         * @return the date and time when the job has been started
+         */
+        public Date getStartDate()
+        {
+            return this.startDate;
+        }
+
+        /**
+         * @return the date and time when the job finished
+         */
+        public Date getEndDate()
+        {
+            return this.endDate;
+        }
+
+        /**
+         * @return the size of the stored status
+         */
+        public long getSize()
+        {
+            return this.size;
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.folder;
+        }
+    }
+
+    /**
+     * Identify a job status index file.
+     */
+    private static final int MAGIC = 0x584A5349;
+
+    /**
+     * The current version of the format.
+     */
+    private static final int VERSION = 1;
+
+    private static final byte RECORD_PUT = 1;
+
+    private static final byte RECORD_REMOVE = 2;
+
+    private static final byte RECORD_REMOVE_ENTRY = 3;
+
+    /**
+     * The minimum number of records in the journal before trying to compact it.
+     */
+    private static final int COMPACT_THRESHOLD = 1000;
+
+    private static final long NODATE = -1;
+
+    /**
+     * The size of the record length and checksum surrounding each record.
+     */
+    private static final int RECORD_OVERHEAD = 12;
+
+    private final File file;
+
+    private final Map<List<String>, Entry> entries = new LinkedHashMap<List<String>, Entry>();
+
+    private DataOutputStream journal;
+
+    private int journalRecords;
+
+    /**
+     * True once the index has been closed, the modifications are then not written anymore.
+     */
+    private boolean closed;
+
+    /**
+     * The ids stored (or removed without their children) while the index is being rebuilt.
+     */
+    private Set<List<String>> rebuildStored;
+
+    /**
+     * The ids removed while the index is being rebuilt.
+     */
+    private Set<List<String>> rebuildRemoved;
+
+    /**
+     * @param file the file where to store the index
+     */
+    public JobStatusIndex(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * @return the file where the index is stored
+     */
+    public File getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * Load the index from the file.
+     *
+     * @return false if the index file does not exist or is invalid
+     */
+    public synchronized boolean load()
+    {
+        this.entries.clear();
+        this.journalRecords = 0;
+        this.closed = false;
+
+        if (!this.file.exists()) {
+            return false;
+        }
+
+        DataInputStream stream = null;
+        try {
+            CountingInputStream counter =
+                new CountingInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+            stream = new DataInputStream(counter);
+
+            if (stream.readInt() != MAGIC || stream.readInt() != VERSION) {
+                return false;
+            }
+
+            while (readRecord(stream, this.file.length() - counter.getByteCount())) {
+                ++this.journalRecords;
+            }
+
+            openJournal();
+        } catch (IOException e) {
+            this.entries.clear();
+
+            return false;
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+
+        return true;
+    }
+
+    private boolean readRecord(DataInputStream stream, long remaining) throws IOException
+    {
+        int length;
+        try {
+            length = stream.readInt();
+        } catch (EOFException e) {
+            // End of the journal
+            return false;
+        }
+
+        // Don't trust the length before allocating the record
+        if (length < 0 || (long) length + RECORD_OVERHEAD > remaining) {
+            throw new IOException("Corrupted index: invalid record length [" + length + "]");
+        }
+
+        byte[] record = new byte[length];
+        stream.readFully(record);
+
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        if (crc.getValue() != stream.readLong()) {
+            throw new IOException("Invalid checksum");
+        }
+
+        DataInputStream recordStream = new DataInputStream(new ByteArrayInputStream(record));
+
+        byte type = recordStream.readByte();
+        List<String> id = readId(recordStream);
+        if (type == RECORD_PUT) {
+            String folder = recordStream.readUTF();
+            String stateName = recordStream.readUTF();
+            Date startDate = readDate(recordStream);
+            Date endDate = readDate(recordStream);
+            long size = recordStream.readLong();
+
+            this.entries.put(id, new Entry(id, folder, stateName.isEmpty() ? null : State.valueOf(stateName),
+                startDate, endDate, size));
+        } else if (type == RECORD_REMOVE) {
+            removeEntries(id);
+        } else if (type == RECORD_REMOVE_ENTRY) {
+            this.entries.remove(id);
+        } else {
+            throw new IOException("Unknown record type [" + type + "]");
+        }
+
+        return true;
+    }
+
+    /**
+     * @param stream the stream to read
+     * @return the job id
+     * @throws IOException when failing to read the stream
+     */
+    static List<String> readId(DataInputStream stream) throws IOException
+    {
+        int size = stream.readInt();
+
+        if (size < 0) {
+            return null;
+        }
+
+        // Each element takes at least one byte
+        if (size > stream.available()) {
+            throw new IOException("Corrupted index: invalid job id size [" + size + "]");
+        }
+
+        List<String> id = new ArrayList<String>(size);
+        for (int i = 0; i < size; ++i) {
+            id.add(stream.readBoolean() ? stream.readUTF() : null);
+        }
+
+        return id;
+    }
+
+    private Date readDate(DataInputStream stream) throws IOException
+    {
+        long time = stream.readLong();
+
+        return time != NODATE ? new Date(time) : null;
+    }
+
+    /**
+     * @param id the job id
+     * @param stream the stream where to write the id
+     * @throws IOException when failing to write the id
+     */
+    static void writeId(List<String> id, DataOutputStream stream) throws IOException
+    {
+        if (id == null) {
+            stream.writeInt(-1);
+        } else {
+            stream.writeInt(id.size());
+            for (String element : id) {
+                stream.writeBoolean(element != null);
+                if (element != null) {
+                    stream.writeUTF(element);
+                }
+            }
+        }
+    }
+
+    private void writeDate(Date date, DataOutputStream stream) throws IOException
+    {
+        stream.writeLong(date != null ? date.getTime() : NODATE);
+    }
+
+    private void writeRecord(byte type, List<String> id, Entry entry, DataOutputStream stream) throws IOException
+    {
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream recordStream = new DataOutputStream(recordBytes);
+
+        recordStream.writeByte(type);
+        writeId(id, recordStream);
+        if (entry != null) {
+            recordStream.writeUTF(entry.getFolder());
+            recordStream.writeUTF(entry.getState() != null ? entry.getState().name() : "");
+            writeDate(entry.getStartDate(), recordStream);
+            writeDate(entry.getEndDate(), recordStream);
+            recordStream.writeLong(entry.getSize());
+        }
+        recordStream.flush();
+
+        byte[] record = recordBytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record);
+
+        stream.writeInt(record.length);
+        stream.write(record);
+        stream.writeLong(crc.getValue());
+    }
+
+    private void appendRecord(byte type, List<String> id, Entry entry) throws IOException
+    {
+        if (this.rebuildStored != null) {
+            // The whole index will be written at the end of the rebuild
+            if (type == RECORD_PUT || type == RECORD_REMOVE_ENTRY) {
+                this.rebuildStored.add(id);
+            } else {
+                this.rebuildRemoved.add(id);
+            }
+
+            return;
+        }
+
+        if (this.closed) {
+            // Don't reopen the file for a late modification
+            return;
+        }
+
+        if (this.journal == null || !this.file.exists()) {
+            compact();
+        } else {
+            writeRecord(type, id, entry, this.journal);
+            this.journal.flush();
+
+            if (++this.journalRecords > COMPACT_THRESHOLD && this.journalRecords > this.entries.size() * 2) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Write a snapshot of the current entries and reopen the journal.
+     *
+     * @throws IOException when failing to write the index
+     */
+    private void compact() throws IOException
+    {
+        closeJournal();
+
+        File folder = this.file.getParentFile();
+        folder.mkdirs();
+        File tempFile = File.createTempFile(this.file.getName(), ".tmp", folder);
+
+        DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            stream.writeInt(MAGIC);
+            stream.writeInt(VERSION);
+
+            for (Entry entry : this.entries.values()) {
+                writeRecord(RECORD_PUT, entry.getId(), entry, stream);
+            }
+        } finally {
+            stream.close();
+        }
+
+        Files.move(tempFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        this.journalRecords = this.entries.size();
+        openJournal();
+    }
+
+    private void openJournal() throws IOException
+    {
+        closeJournal();
+
+        this.journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file, true)));
+    }
+
+    private void closeJournal()
+    {
+        IOUtils.closeQuietly(this.journal);
+        this.journal = null;
+    }
+
+    private void removeEntries(List<String> prefix)
+    {
+        // Removing a job status also remove the statuses of the jobs stored in its sub folders
+        for (Iterator<List<String>> it = this.entries.keySet().iterator(); it.hasNext();) {
+            List<String> id = it.next();
+
+            if (isPrefix(prefix, id)) {
+                it.remove();
+            }
+        }
+    }
+
+    private boolean isPrefix(List<String> prefix, List<String> id)
+    {
+        if (prefix == null || prefix.isEmpty()) {
+            return true;
+        }
+
+        return id != null && id.size() >= prefix.size() && id.subList(0, prefix.size()).equals(prefix);
+    }
+
+    /**
+     * @param entry the entry to add or update
+     * @throws IOException when failing to update the index file
+     */
+    public synchronized void put(Entry entry) throws IOException
+    {
+        this.entries.put(entry.getId(), entry);
+
+        appendRecord(RECORD_PUT, entry.getId(), entry);
+    }
+
+    /**
+     * Remove the entry associated to the passed id and the entries of all the jobs with an id starting with it.
+     *
+     * @param id the id of the job
+     * @throws IOException when failing to update the index file
+     */
+    public synchronized void remove(List<String> id) throws IOException
+    {
+        removeEntries(id);
+
+        appendRecord(RECORD_REMOVE, id, null);
+    }
+
+    /**
+     * Remove the entry associated to the passed id without touching the entries of its children jobs.
+     *
+     * @param id the id of the job
+     * @throws IOException when failing to update the index file
+     */
+    public synchronized void removeEntry(List<String> id) throws IOException
+    {
+        this.entries.remove(id);
+
+        appendRecord(RECORD_REMOVE_ENTRY, id, null);
+    }
+
+    /**
+     * @param id the id of the job
+     * @return the entry associated to the passed id, null if none could be found
+     */
+    public synchronized Entry get(List<String> id)
+    {
+        return this.entries.get(id);
+    }
+
+    /**
+     * @return a copy of all the entries of the index
+     */
+    public synchronized List<Entry> getEntries()
+    {
+        return new ArrayList<Entry>(this.entries.values());
+    }
+
+    /**
+     * @return the number of entries in the index
+     */
+    public synchronized int size()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * Indicate that the index is being rebuilt: modifications are kept in memory until
+     * {@link #endRebuild(Collection)} is called.
+     */
+    public synchronized void startRebuild()
+    {
+        closeJournal();
+
+        this.rebuildStored = new HashSet<List<String>>();
+        this.rebuildRemoved = new HashSet<List<String>>();
+    }
+
+    /**
+     * @return true if the index is being rebuilt
+     */
+    public synchronized boolean isRebuilding()
+    {
+        return this.rebuildStored != null;
+    }
+
+    /**
+     * @param rebuiltEntries the entries found when rebuilding the index
+     * @throws IOException when failing to write the index file
+     */
+    public synchronized void endRebuild(Collection<Entry> rebuiltEntries) throws IOException
+    {
+        for (Entry entry : rebuiltEntries) {
+            // What happened during the rebuild is more up to date
+            if (!isModifiedDuringRebuild(entry.getId())) {
+                this.entries.put(entry.getId(), entry);
+            }
+        }
+
+        this.rebuildStored = null;
+        this.rebuildRemoved = null;
+
+        compact();
+    }
+
+    private boolean isModifiedDuringRebuild(List<String> id)
+    {
+        if (this.rebuildStored.contains(id)) {
+            return true;
+        }
+
+        for (List<String> removedId : this.rebuildRemoved) {
+            if (isPrefix(removedId, id)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Release the index file. The modifications done after that are not written anymore.
+     */
+    public synchronized void close()
+    {
+        this.closed = true;
+
+        closeJournal();
+    }
+}
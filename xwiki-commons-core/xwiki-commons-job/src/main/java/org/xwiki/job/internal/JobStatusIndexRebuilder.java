@@ -0,0 +1,129 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+
+/**
+ * Rebuild the index of the job statuses in background by walking the whole storage.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class JobStatusIndexRebuilder
+{
+    private final JobStatusFiles files;
+
+    private final JobStatusIndex index;
+
+    private final Logger logger;
+
+    /**
+     * The index rebuild running in background, if any.
+     */
+    private FutureTask<Void> task;
+
+    /**
+     * @param files the stored job statuses
+     * @param index the index to rebuild
+     * @param logger the logger to log
+     */
+    public JobStatusIndexRebuilder(JobStatusFiles files, JobStatusIndex index, Logger logger)
+    {
+        this.files = files;
+        this.index = index;
+        this.logger = logger;
+    }
+
+    /**
+     * Rebuild the index in background.
+     */
+    public void start()
+    {
+        // Modifications done while the index is rebuilt are kept aside
+        this.index.startRebuild();
+
+        this.task = new FutureTask<Void>(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                rebuild();
+            }
+        }, null);
+
+        BasicThreadFactory threadFactory =
+            new BasicThreadFactory.Builder().namingPattern("Job status index rebuild").daemon(true)
+                .priority(Thread.MIN_PRIORITY).build();
+
+        threadFactory.newThread(this.task).start();
+    }
+
+    /**
+     * @return true if the index is being rebuilt
+     */
+    public boolean isRunning()
+    {
+        return this.task != null && !this.task.isDone();
+    }
+
+    /**
+     * Wait for the end of the rebuild, if any.
+     */
+    public void waitFor()
+    {
+        if (this.task != null) {
+            try {
+                this.task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                this.logger.error("Failed to rebuild the job status index", e);
+            }
+        }
+    }
+
+    /**
+     * Walk the whole storage to repair it and find all the stored job statuses.
+     */
+    private void rebuild()
+    {
+        this.logger.info("Rebuilding the job status index");
+
+        List<JobStatusIndex.Entry> entries = new ArrayList<JobStatusIndex.Entry>();
+
+        this.files.repair(entries);
+
+        try {
+            this.index.endRebuild(entries);
+        } catch (IOException e) {
+            this.logger.error("Failed to write the job status index", e);
+        }
+
+        this.logger.info("Job status index rebuilt ([{}] statuses)", entries.size());
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xwiki.job.event.status.JobStatus.State;
+
+/**
+ * Decide which stored job statuses are too old to be kept in their own folder.
+ * <p>
+ * Only the statuses of finished (or canceled) jobs are taken into account. A status expires when it ended before the
+ * maximum age, when there is more recent statuses of the same type than the maximum count or when the total size of
+ * the more recent statuses reached the maximum size. The type of a status is the first element of its job id (for
+ * example {@code extension} for the extension jobs).
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class JobStatusRetention
+{
+    /**
+     * Sort the entries from the most recent to the oldest.
+     */
+    private static final Comparator<JobStatusIndex.Entry> NEWEST_FIRST = new Comparator<JobStatusIndex.Entry>()
+    {
+        @Override
+        public int compare(JobStatusIndex.Entry entry1, JobStatusIndex.Entry entry2)
+        {
+            long time1 = getTime(entry1);
+            long time2 = getTime(entry2);
+
+            return time1 > time2 ? -1 : (time1 == time2 ? 0 : 1);
+        }
+    };
+
+    private final long maxAge;
+
+    private final int maxCount;
+
+    private final long maxSize;
+
+    // Metrics
+
+    private final AtomicLong runCount = new AtomicLong();
+
+    private final AtomicLong archivedCount = new AtomicLong();
+
+    private final AtomicLong deletedCount = new AtomicLong();
+
+    /**
+     * @param maxAge the maximum time since a job ended, in milliseconds, 0 for no limit
+     * @param maxCount the maximum number of statuses of each type, 0 for no limit
+     * @param maxSize the maximum total size of the statuses, in bytes, 0 for no limit
+     */
+    public JobStatusRetention(long maxAge, int maxCount, long maxSize)
+    {
+        this.maxAge = maxAge;
+        this.maxCount = maxCount;
+        this.maxSize = maxSize;
+    }
+
+    private static long getTime(JobStatusIndex.Entry entry)
+    {
+        Date date = entry.getEndDate() != null ? entry.getEndDate() : entry.getStartDate();
+
+        return date != null ? date.getTime() : 0;
+    }
+
+    private static String getType(JobStatusIndex.Entry entry)
+    {
+        List<String> id = entry.getId();
+
+        return id != null && !id.isEmpty() && id.get(0) != null ? id.get(0) : "";
+    }
+
+    /**
+     * @return true if at least one limit is set
+     */
+    public boolean isEnabled()
+    {
+        return this.maxAge > 0 || this.maxCount > 0 || this.maxSize > 0;
+    }
+
+    /**
+     * @param entries the stored statuses
+     * @param now the current time in milliseconds
+     * @return the expired statuses, from the oldest to the most recent
+     */
+    public List<JobStatusIndex.Entry> getExpired(Collection<JobStatusIndex.Entry> entries, long now)
+    {
+        List<JobStatusIndex.Entry> candidates = new ArrayList<JobStatusIndex.Entry>(entries.size());
+        long size = 0;
+        for (JobStatusIndex.Entry entry : entries) {
+            if (isEnded(entry)) {
+                candidates.add(entry);
+            } else {
+                // Statuses of running jobs are always kept but they still take some room
+                size += entry.getSize();
+            }
+        }
+
+        Collections.sort(candidates, NEWEST_FIRST);
+
+        List<JobStatusIndex.Entry> expired = new ArrayList<JobStatusIndex.Entry>();
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        boolean full = false;
+        for (JobStatusIndex.Entry entry : candidates) {
+            boolean keep = isRecent(entry, now) && isCounted(entry, counts);
+
+            if (keep && this.maxSize > 0) {
+                // Once the maximum size is reached all the older statuses expire
+                full = full || size + entry.getSize() > this.maxSize;
+                keep = !full;
+            }
+
+            if (keep) {
+                size += entry.getSize();
+            } else {
+                expired.add(entry);
+            }
+        }
+
+        Collections.reverse(expired);
+
+        return expired;
+    }
+
+    private boolean isEnded(JobStatusIndex.Entry entry)
+    {
+        return entry.getState() == State.FINISHED || entry.getState() == State.CANCELED;
+    }
+
+    private boolean isRecent(JobStatusIndex.Entry entry, long now)
+    {
+        return this.maxAge <= 0 || getTime(entry) >= now - this.maxAge;
+    }
+
+    /**
+     * @return true if there is less more recent statuses of the same type than the maximum count
+     */
+    private boolean isCounted(JobStatusIndex.Entry entry, Map<String, Integer> counts)
+    {
+        if (this.maxCount <= 0) {
+            return true;
+        }
+
+        String type = getType(entry);
+        Integer count = counts.get(type);
+        count = count != null ? count + 1 : 1;
+        counts.put(type, count);
+
+        return count <= this.maxCount;
+    }
+
+    /**
+     * Indicate that the retention has been applied.
+     */
+    public void ran()
+    {
+        this.runCount.incrementAndGet();
+    }
+
+    /**
+     * Indicate that an expired status has been removed from its folder.
+     *
+     * @param archived true if the status has been archived, false if it has been deleted
+     */
+    public void expired(boolean archived)
+    {
+        if (archived) {
+            this.archivedCount.incrementAndGet();
+        } else {
+            this.deletedCount.incrementAndGet();
+        }
+    }
+
+    // Metrics
+
+    /**
+     * @return the number of times the retention has been applied
+     */
+    public long getRunCount()
+    {
+        return this.runCount.get();
+    }
+
+    /**
+     * @return the number of expired statuses which have been archived
+     */
+    public long getArchivedCount()
+    {
+        return this.archivedCount.get();
+    }
+
+    /**
+     * @return the number of expired statuses which have been deleted
+     */
+    public long getDeletedCount()
+    {
+        return this.deletedCount.get();
+    }
+}
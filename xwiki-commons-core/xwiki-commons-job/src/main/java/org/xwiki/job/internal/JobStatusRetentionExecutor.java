@@ -0,0 +1,201 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.xwiki.job.JobManagerConfiguration;
+import org.xwiki.job.event.status.JobStatus;
+
+/**
+ * Regularly move the statuses of finished jobs exceeding the retention limits to the archive, or delete them if the
+ * archive is disabled.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class JobStatusRetentionExecutor
+{
+    /**
+     * The time to wait after the initialization before applying the retention limits for the first time, in minutes.
+     */
+    private static final long RETENTION_DELAY = 5L;
+
+    /**
+     * The time between two checks of the retention limits, in minutes.
+     */
+    private static final long RETENTION_PERIOD = 60L;
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    private final JobStatusRetention retention;
+
+    private final JobManagerConfiguration configuration;
+
+    private final JobStatusFiles files;
+
+    private final JobStatusIndex index;
+
+    private final JobStatusArchive archive;
+
+    private final JobStatusCache cache;
+
+    private final Logger logger;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param configuration the retention limits and the archive configuration
+     * @param files the stored job statuses
+     * @param index the index of the stored job statuses
+     * @param archive where to move the expired job statuses
+     * @param cache the job statuses kept in memory
+     * @param logger the logger to log
+     */
+    public JobStatusRetentionExecutor(JobManagerConfiguration configuration, JobStatusFiles files,
+        JobStatusIndex index, JobStatusArchive archive, JobStatusCache cache, Logger logger)
+    {
+        this.retention =
+            new JobStatusRetention(configuration.getStatusMaxAge() * DAY, configuration.getStatusMaxCount(),
+                configuration.getStatusMaxSize() * MEGABYTE);
+        this.configuration = configuration;
+        this.files = files;
+        this.index = index;
+        this.archive = archive;
+        this.cache = cache;
+        this.logger = logger;
+    }
+
+    /**
+     * @return the retention limits
+     */
+    public JobStatusRetention getRetention()
+    {
+        return this.retention;
+    }
+
+    /**
+     * Apply the retention limits in background, if any.
+     */
+    public void start()
+    {
+        if (!this.retention.isEnabled()) {
+            return;
+        }
+
+        BasicThreadFactory threadFactory =
+            new BasicThreadFactory.Builder().namingPattern("Job status retention").daemon(true)
+                .priority(Thread.MIN_PRIORITY).build();
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        this.executor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    applyRetention();
+                } catch (Exception e) {
+                    logger.error("Failed to apply the job status retention limits", e);
+                }
+            }
+        }, RETENTION_DELAY, RETENTION_PERIOD, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stop applying the retention limits.
+     */
+    public void stop()
+    {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Archive or delete the job statuses exceeding the retention limits.
+     */
+    public void applyRetention()
+    {
+        if (this.index.isRebuilding()) {
+            // Try again next time
+            return;
+        }
+
+        boolean archiveEnabled = this.configuration.isStatusArchiveEnabled() && this.archive != null;
+
+        List<JobStatusIndex.Entry> expired =
+            this.retention.getExpired(this.index.getEntries(), System.currentTimeMillis());
+
+        for (JobStatusIndex.Entry entry : expired) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+
+            // Skip statuses modified since the expired ones were selected
+            if (this.index.get(entry.getId()) == entry) {
+                try {
+                    expire(entry, archiveEnabled);
+                } catch (Exception e) {
+                    this.logger.warn("Failed to expire job status [{}]", entry.getId(), e);
+                }
+            }
+        }
+
+        this.retention.ran();
+
+        if (!expired.isEmpty()) {
+            this.logger.info("[{}] expired job statuses have been {}", expired.size(), archiveEnabled ? "archived"
+                : "deleted");
+        }
+    }
+
+    private void expire(JobStatusIndex.Entry entry, boolean archiveEnabled) throws IOException
+    {
+        File folder = new File(this.configuration.getStorage(), entry.getFolder());
+
+        if (archiveEnabled) {
+            JobStatus status = this.files.read(folder);
+            if (status != null) {
+                this.archive.add(status);
+            }
+        }
+
+        // Only delete the status, the folder might also contain the statuses of children jobs
+        this.files.deleteStatus(folder);
+
+        this.index.removeEntry(entry.getId());
+
+        if (!archiveEnabled) {
+            this.cache.remove(entry.getId());
+        }
+
+        this.retention.expired(archiveEnabled);
+    }
+}
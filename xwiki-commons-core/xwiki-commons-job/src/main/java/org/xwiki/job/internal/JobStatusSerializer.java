@@ -65,6 +65,15 @@ public JobStatusSerializer() throws ParserConfigurationException
         this.xstream = new SafeXStream();
     }
 
+    /**
+     * @return the {@link XStream} instance used to serialize and unserialize status
+     * @since 7.0M1
+     */
+    protected XStream getXStream()
+    {
+        return this.xstream;
+    }
+
     /**
      * @param status the status to serialize
      * @param file the file to serialize the status to
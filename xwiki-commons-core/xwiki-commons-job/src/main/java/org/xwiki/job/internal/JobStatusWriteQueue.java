@@ -0,0 +1,473 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.xwiki.job.event.status.JobStatus;
+
+/**
+ * A write-behind queue of job statuses to store.
+ * <p>
+ * Pending writes are indexed by job id: storing again a status which is still waiting to be written only replace the
+ * pending status with the new one (the same job is never written twice for nothing). The same job id is never written
+ * by two threads at the same time so the last stored status is always the one which ends up on the file system.
+ * <p>
+ * The queue is bounded: when it's full, the threads asking for a new write wait for some room.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class JobStatusWriteQueue
+{
+    /**
+     * Actually write the statuses.
+     *
+     * @version $Id$
+     */
+    public interface Writer
+    {
+        /**
+         * @param status the status to write
+         */
+        void write(JobStatus status);
+    }
+
+    private final int capacity;
+
+    private final Writer writer;
+
+    private final Map<List<String>, JobStatus> pending = new LinkedHashMap<List<String>, JobStatus>();
+
+    private final Set<List<String>> inProgress = new HashSet<List<String>>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = this.lock.newCondition();
+
+    private final Condition notFull = this.lock.newCondition();
+
+    private final Condition written = this.lock.newCondition();
+
+    private final List<Thread> threads;
+
+    private boolean closed;
+
+    // Metrics
+
+    private final AtomicLong writeCount = new AtomicLong();
+
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    private final AtomicLong waitCount = new AtomicLong();
+
+    private final AtomicLong totalWriteTime = new AtomicLong();
+
+    private volatile long maxWriteTime;
+
+    private volatile long lastWriteTime;
+
+    private class Worker implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            try {
+                for (JobStatus status = take(); status != null; status = take()) {
+                    writeInternal(status);
+                }
+            } catch (InterruptedException e) {
+                // Stop writing
+            }
+        }
+    }
+
+    /**
+     * @param threadCount the number of threads writing the statuses
+     * @param capacity the maximum number of pending writes
+     * @param threadFactory used to create writing threads
+     * @param writer used to actually write the statuses
+     */
+    public JobStatusWriteQueue(int threadCount, int capacity, ThreadFactory threadFactory, Writer writer)
+    {
+        this.capacity = capacity;
+        this.writer = writer;
+
+        this.threads = new ArrayList<Thread>(threadCount);
+        for (int i = 0; i < threadCount; ++i) {
+            Thread thread = threadFactory.newThread(new Worker());
+            this.threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Create a queue written by low priority daemon threads.
+     *
+     * @param threadCount the number of threads writing the statuses
+     * @param capacity the maximum number of pending writes
+     * @param threadName the name of the writing threads
+     * @param writer used to actually write the statuses
+     */
+    public JobStatusWriteQueue(int threadCount, int capacity, String threadName, Writer writer)
+    {
+        this(threadCount, capacity, new BasicThreadFactory.Builder().namingPattern(threadName).daemon(true)
+            .priority(Thread.MIN_PRIORITY).build(), writer);
+    }
+
+    private void writeInternal(JobStatus status)
+    {
+        long begin = System.nanoTime();
+
+        try {
+            this.writer.write(status);
+        } finally {
+            long time = System.nanoTime() - begin;
+
+            this.writeCount.incrementAndGet();
+            this.totalWriteTime.addAndGet(time);
+            this.lastWriteTime = time;
+            if (time > this.maxWriteTime) {
+                this.maxWriteTime = time;
+            }
+
+            this.lock.lock();
+            try {
+                this.inProgress.remove(status.getRequest().getId());
+                this.written.signalAll();
+                // A status waiting for the end of this write might now be available
+                this.notEmpty.signal();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the next status to write or null if the queue is closed and there is nothing left to write
+     * @throws InterruptedException when the thread is interrupted
+     */
+    private JobStatus take() throws InterruptedException
+    {
+        this.lock.lock();
+
+        try {
+            while (true) {
+                // Find the first status which is not already being written by another thread
+                for (Iterator<Map.Entry<List<String>, JobStatus>> it = this.pending.entrySet().iterator(); it
+                    .hasNext();) {
+                    Map.Entry<List<String>, JobStatus> entry = it.next();
+
+                    if (!this.inProgress.contains(entry.getKey())) {
+                        it.remove();
+                        this.inProgress.add(entry.getKey());
+                        this.notFull.signal();
+
+                        return entry.getValue();
+                    }
+                }
+
+                if (this.closed && this.pending.isEmpty()) {
+                    return null;
+                }
+
+                this.notEmpty.await();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Add a status to write asynchronously.
+     *
+     * @param status the status to write
+     */
+    public void add(JobStatus status)
+    {
+        List<String> id = status.getRequest().getId();
+
+        this.lock.lock();
+
+        try {
+            if (this.pending.containsKey(id)) {
+                // Replace the pending status with the more recent one
+                this.pending.put(id, status);
+                this.coalescedCount.incrementAndGet();
+
+                return;
+            }
+
+            if (!this.closed && this.pending.size() >= this.capacity) {
+                this.waitCount.incrementAndGet();
+
+                while (!this.closed && this.pending.size() >= this.capacity) {
+                    this.notFull.await();
+                }
+            }
+
+            if (this.closed) {
+                // Nobody is going to write it
+                writeNowLocked(status);
+            } else {
+                this.pending.put(id, status);
+                this.notEmpty.signal();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            writeNowLocked(status);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Write the status synchronously (and cancel any pending write for the same job).
+     *
+     * @param status the status to write
+     */
+    public void writeNow(JobStatus status)
+    {
+        this.lock.lock();
+
+        try {
+            writeNowLocked(status);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void writeNowLocked(JobStatus status)
+    {
+        List<String> id = status.getRequest().getId();
+
+        this.pending.remove(id);
+
+        // Wait for the end of the write of a previous version of the status
+        while (this.inProgress.contains(id)) {
+            this.written.awaitUninterruptibly();
+        }
+
+        this.inProgress.add(id);
+
+        this.lock.unlock();
+        try {
+            writeInternal(status);
+        } finally {
+            this.lock.lock();
+        }
+    }
+
+    /**
+     * Cancel the pending writes of the passed job and of all the jobs with an id starting with it, and wait for the
+     * end of the corresponding writes already in progress.
+     *
+     * @param id the id of the job
+     */
+    public void cancel(List<String> id)
+    {
+        this.lock.lock();
+
+        try {
+            for (Iterator<List<String>> it = this.pending.keySet().iterator(); it.hasNext();) {
+                if (startsWith(it.next(), id)) {
+                    it.remove();
+                }
+            }
+
+            while (isInProgress(id)) {
+                this.written.awaitUninterruptibly();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private boolean isInProgress(List<String> prefix)
+    {
+        for (List<String> id : this.inProgress) {
+            if (startsWith(id, prefix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean startsWith(List<String> id, List<String> prefix)
+    {
+        if (prefix == null || prefix.isEmpty()) {
+            return true;
+        }
+
+        return id != null && id.size() >= prefix.size() && id.subList(0, prefix.size()).equals(prefix);
+    }
+
+    /**
+     * Wait until all the pending statuses are written.
+     *
+     * @throws InterruptedException when the thread is interrupted
+     */
+    public void flush() throws InterruptedException
+    {
+        this.lock.lock();
+
+        try {
+            while (!this.pending.isEmpty() || !this.inProgress.isEmpty()) {
+                this.written.await();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Write all pending statuses and stop the writing threads. The statuses which could not be written before the
+     * timeout are dropped and the writing threads still running are interrupted.
+     *
+     * @param timeout the maximum time to wait for the pending statuses to be written, in milliseconds
+     * @return the number of dropped statuses
+     * @throws InterruptedException when the thread is interrupted
+     */
+    public int close(long timeout) throws InterruptedException
+    {
+        this.lock.lock();
+
+        try {
+            this.closed = true;
+
+            this.notEmpty.signalAll();
+            this.notFull.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+
+        long end = System.currentTimeMillis() + timeout;
+        for (Thread thread : this.threads) {
+            thread.join(Math.max(1, end - System.currentTimeMillis()));
+        }
+
+        int dropped;
+
+        this.lock.lock();
+
+        try {
+            dropped = this.pending.size();
+            this.pending.clear();
+        } finally {
+            this.lock.unlock();
+        }
+
+        for (Thread thread : this.threads) {
+            if (thread.isAlive()) {
+                thread.interrupt();
+            }
+        }
+
+        return dropped;
+    }
+
+    // Metrics
+
+    /**
+     * @return the number of statuses waiting to be written
+     */
+    public int getSize()
+    {
+        this.lock.lock();
+
+        try {
+            return this.pending.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the maximum number of statuses waiting to be written
+     */
+    public int getCapacity()
+    {
+        return this.capacity;
+    }
+
+    /**
+     * @return the number of written statuses
+     */
+    public long getWriteCount()
+    {
+        return this.writeCount.get();
+    }
+
+    /**
+     * @return the number of writes which have been merged with a pending write
+     */
+    public long getCoalescedCount()
+    {
+        return this.coalescedCount.get();
+    }
+
+    /**
+     * @return the number of times a thread had to wait for the queue to have some room
+     */
+    public long getWaitCount()
+    {
+        return this.waitCount.get();
+    }
+
+    /**
+     * @return the average time spent writing a status, in milliseconds
+     */
+    public double getAverageWriteTime()
+    {
+        long count = this.writeCount.get();
+
+        return count > 0 ? (double) TimeUnit.NANOSECONDS.toMicros(this.totalWriteTime.get()) / count / 1000 : 0;
+    }
+
+    /**
+     * @return the longest time spent writing a status, in milliseconds
+     */
+    public long getMaxWriteTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(this.maxWriteTime);
+    }
+
+    /**
+     * @return the time spent writing the last status, in milliseconds
+     */
+    public long getLastWriteTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(this.lastWriteTime);
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache bounded by the total weight of its values (and optionally by their number) which evicts the least recently
+ * used values first and counts the lookups and evictions so that they can be exposed as metrics (for example through
+ * JMX).
+ * <p>
+ * The weight of a value is provided by the caller and can be any unit (number of characters, of elements, etc.) as
+ * long as it's always the same for a given cache. A value heavier than the maximum weight is never cached, instead of
+ * evicting everything else for it. A maximum weight of 0 disables the cache.
+ * <p>
+ * All the methods are synchronized on the cache instance so that callers can group several operations atomically by
+ * synchronizing on it. Nothing expensive should be done while holding this lock.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @version $Id$
+ * @since 7.0M1
+ */
+class WeightedLRUCache<K, V>
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final float LOAD_FACTOR = 0.75F;
+
+    private static final class Entry<V>
+    {
+        private final V value;
+
+        private final long weight;
+
+        Entry(V value, long weight)
+        {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private final long maxWeight;
+
+    private final int maxCount;
+
+    /**
+     * The values in access order.
+     */
+    private final Map<K, Entry<V>> entries = new LinkedHashMap<K, Entry<V>>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+    private long weight;
+
+    // Metrics
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long evictionCount;
+
+    /**
+     * @param maxWeight the maximum total weight of the values, 0 to disable the cache
+     */
+    public WeightedLRUCache(long maxWeight)
+    {
+        this(maxWeight, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxWeight the maximum total weight of the values, 0 to disable the cache
+     * @param maxCount the maximum number of values
+     */
+    public WeightedLRUCache(long maxWeight, int maxCount)
+    {
+        this.maxWeight = maxWeight;
+        this.maxCount = maxCount;
+    }
+
+    /**
+     * @return true if values can be cached
+     */
+    public boolean isEnabled()
+    {
+        return this.maxWeight > 0 && this.maxCount > 0;
+    }
+
+    /**
+     * @param key the key associated with the value
+     * @return the cached value or null if none could be found
+     */
+    public synchronized V get(K key)
+    {
+        Entry<V> entry = this.entries.get(key);
+
+        if (entry != null) {
+            ++this.hitCount;
+
+            return entry.value;
+        }
+
+        ++this.missCount;
+
+        return null;
+    }
+
+    /**
+     * @param key the key associated with the value
+     * @return true if a value is cached for the passed key, without impacting the metrics or the access order
+     */
+    public synchronized boolean containsKey(K key)
+    {
+        return this.entries.containsKey(key);
+    }
+
+    /**
+     * Cache a value, unless it's heavier than the maximum weight. The least recently used values are evicted to make
+     * room for it if needed.
+     *
+     * @param key the key associated with the value
+     * @param value the value to cache
+     * @param valueWeight the weight of the value
+     * @return true if the value has been cached, false if it's too heavy (any value previously associated with the key
+     *         is removed anyway)
+     */
+    public synchronized boolean put(K key, V value, long valueWeight)
+    {
+        if (valueWeight > this.maxWeight || !isEnabled()) {
+            remove(key);
+
+            return false;
+        }
+
+        Entry<V> previous = this.entries.put(key, new Entry<V>(value, valueWeight));
+        if (previous != null) {
+            this.weight -= previous.weight;
+        }
+        this.weight += valueWeight;
+
+        Iterator<Map.Entry<K, Entry<V>>> it = this.entries.entrySet().iterator();
+        while (this.weight > this.maxWeight || this.entries.size() > this.maxCount) {
+            Map.Entry<K, Entry<V>> eldest = it.next();
+
+            it.remove();
+            this.weight -= eldest.getValue().weight;
+            ++this.evictionCount;
+
+            evicted(eldest.getKey(), eldest.getValue().value);
+        }
+
+        return true;
+    }
+
+    /**
+     * Called (while holding the cache lock) each time a value is evicted to make room for another one.
+     *
+     * @param key the key associated with the evicted value
+     * @param value the evicted value
+     */
+    protected void evicted(K key, V value)
+    {
+        // Nothing to do by default
+    }
+
+    /**
+     * @param key the key associated with the value
+     * @return the removed value, null if none was cached for the passed key
+     */
+    public synchronized V remove(K key)
+    {
+        Entry<V> entry = this.entries.remove(key);
+
+        if (entry != null) {
+            this.weight -= entry.weight;
+
+            return entry.value;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return a copy of the cached values, from the least recently used to the most recently used
+     */
+    public synchronized Map<K, V> getAll()
+    {
+        Map<K, V> values = new LinkedHashMap<K, V>(this.entries.size());
+
+        for (Map.Entry<K, Entry<V>> entry : this.entries.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().value);
+        }
+
+        return values;
+    }
+
+    /**
+     * Remove all the cached values.
+     */
+    public synchronized void clear()
+    {
+        this.entries.clear();
+        this.weight = 0;
+    }
+
+    // Metrics
+
+    /**
+     * @return the number of cached values
+     */
+    public synchronized int getCount()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the maximum number of cached values
+     */
+    public int getMaxCount()
+    {
+        return this.maxCount;
+    }
+
+    /**
+     * @return the total weight of the cached values
+     */
+    public synchronized long getWeight()
+    {
+        return this.weight;
+    }
+
+    /**
+     * @return the maximum total weight of the cached values
+     */
+    public long getMaxWeight()
+    {
+        return this.maxWeight;
+    }
+
+    /**
+     * @return the number of lookups which found the value in the cache
+     */
+    public synchronized long getHitCount()
+    {
+        return this.hitCount;
+    }
+
+    /**
+     * @return the number of lookups which did not find the value in the cache
+     */
+    public synchronized long getMissCount()
+    {
+        return this.missCount;
+    }
+
+    /**
+     * @return the proportion of lookups which found the value in the cache, between 0 and 1
+     */
+    public synchronized double getHitRate()
+    {
+        long lookups = this.hitCount + this.missCount;
+
+        return lookups > 0 ? (double) this.hitCount / lookups : 0;
+    }
+
+    /**
+     * @return the number of values removed to make room for others
+     */
+    public synchronized long getEvictionCount()
+    {
+        return this.evictionCount;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal.jmx;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.xwiki.job.JobGroupPath;
+import org.xwiki.job.internal.DefaultJobExecutor;
+import org.xwiki.job.internal.JobGroupPathLockTree.WaitStatistics;
+
+/**
+ * Expose job executor metrics.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class JMXJobExecutor implements JMXJobExecutorMBean
+{
+    private static final String PATH = "path";
+
+    private static final String PATH_DESCRIPTION = "The job group path";
+
+    /**
+     * The executor to monitor.
+     */
+    private final DefaultJobExecutor executor;
+
+    /**
+     * @param executor the executor to monitor
+     */
+    public JMXJobExecutor(DefaultJobExecutor executor)
+    {
+        this.executor = executor;
+    }
+
+    @Override
+    public int getMaxThreads()
+    {
+        return this.executor.getMaxThreads();
+    }
+
+    @Override
+    public int getQueuedJobCount()
+    {
+        return this.executor.getQueuedJobCount();
+    }
+
+    @Override
+    public int getRunningJobCount()
+    {
+        return this.executor.getRunningJobCount();
+    }
+
+    @Override
+    public TabularData getGroups()
+    {
+        TabularData data;
+
+        try {
+            String[] columnNames = new String[] { PATH, "concurrency", "runningJobCount", "queuedJobCount" };
+            String[] descriptions =
+                new String[] { PATH_DESCRIPTION, "The maximum number of jobs running at the same time",
+                    "The number of jobs currently running", "The number of jobs waiting to be executed" };
+            OpenType<?>[] columnTypes =
+                new OpenType<?>[] { SimpleType.STRING, SimpleType.INTEGER, SimpleType.INTEGER, SimpleType.INTEGER };
+            CompositeType rowType =
+                new CompositeType("group", "The jobs of a job group", columnNames, descriptions, columnTypes);
+
+            TabularType type =
+                new TabularType("groups", "The jobs of the job groups", rowType, new String[] { PATH });
+            data = new TabularDataSupport(type);
+
+            for (JobGroupPath path : this.executor.getGroupPaths()) {
+                data.put(new CompositeDataSupport(rowType, columnNames, new Object[] { path.toString(),
+                    this.executor.getGroupConcurrency(path), this.executor.getRunningJobCount(path),
+                    this.executor.getQueuedJobCount(path) }));
+            }
+        } catch (OpenDataException e) {
+            throw new RuntimeException("Failed to gather job groups statistics", e);
+        }
+
+        return data;
+    }
+
+    @Override
+    public int getGroupLockCount()
+    {
+        return this.executor.getLockTree().getSize();
+    }
+
+    @Override
+    public TabularData getGroupLockWaits()
+    {
+        TabularData data;
+
+        try {
+            String[] columnNames = new String[] { PATH, "lockCount", "waitCount", "totalWaitTime", "maxWaitTime" };
+            String[] descriptions =
+                new String[] { PATH_DESCRIPTION, "The number of times the lock was acquired",
+                    "The number of times the lock was not immediately available",
+                    "The total time spent waiting for the lock in milliseconds",
+                    "The longest time spent waiting for the lock in milliseconds" };
+            OpenType<?>[] columnTypes =
+                new OpenType<?>[] { SimpleType.STRING, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+                    SimpleType.LONG };
+            CompositeType rowType =
+                new CompositeType("groupLock", "Wait statistics of a job group lock", columnNames, descriptions,
+                    columnTypes);
+
+            TabularType type =
+                new TabularType("groupLocks", "Wait statistics of the job group locks", rowType,
+                    new String[] { PATH });
+            data = new TabularDataSupport(type);
+
+            for (Map.Entry<JobGroupPath, WaitStatistics> entry : this.executor.getLockTree().getWaitStatistics()
+                .entrySet()) {
+                WaitStatistics statistics = entry.getValue();
+
+                data.put(new CompositeDataSupport(rowType, columnNames, new Object[] { entry.getKey().toString(),
+                    statistics.getLockCount(), statistics.getWaitCount(),
+                    TimeUnit.NANOSECONDS.toMillis(statistics.getTotalWaitTime()),
+                    TimeUnit.NANOSECONDS.toMillis(statistics.getMaxWaitTime()) }));
+            }
+        } catch (OpenDataException e) {
+            throw new RuntimeException("Failed to gather job group locks statistics", e);
+        }
+
+        return data;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal.jmx;
+
+import javax.management.openmbean.TabularData;
+
+/**
+ * MBean API related to the job executor. Supports the following features:
+ * <ul>
+ * <li>Monitor the number of jobs waiting for a thread and the number of running jobs</li>
+ * <li>Monitor the jobs waiting and running in each job group</li>
+ * <li>Monitor the contention on job group locks</li>
+ * </ul>
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public interface JMXJobExecutorMBean
+{
+    /**
+     * @return the maximum number of threads executing the jobs which are not part of a group
+     */
+    int getMaxThreads();
+
+    /**
+     * @return the number of jobs waiting to be executed
+     */
+    int getQueuedJobCount();
+
+    /**
+     * @return the number of jobs currently running
+     */
+    int getRunningJobCount();
+
+    /**
+     * @return the jobs of each job group (path, maximum number of jobs running at the same time, number of running
+     *         jobs, number of waiting jobs)
+     */
+    TabularData getGroups();
+
+    /**
+     * @return the number of job group paths for which a lock is currently held or waited for
+     */
+    int getGroupLockCount();
+
+    /**
+     * @return the time spent waiting for the lock of each job group path (path, number of locks, number of waits,
+     *         total and maximum wait time in milliseconds)
+     */
+    TabularData getGroupLockWaits();
+}
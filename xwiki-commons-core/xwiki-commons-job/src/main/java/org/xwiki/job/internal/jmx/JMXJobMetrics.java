@@ -0,0 +1,130 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal.jmx;
+
+import java.util.Map;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.xwiki.job.event.status.JobStatus.State;
+import org.xwiki.job.internal.JobMetricsListener;
+import org.xwiki.job.internal.JobMetricsListener.TypeMetrics;
+
+/**
+ * Expose jobs execution metrics.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class JMXJobMetrics implements JMXJobMetricsMBean
+{
+    private static final String TYPE = "type";
+
+    private static final String STATE = "state";
+
+    /**
+     * The metrics to expose.
+     */
+    private final JobMetricsListener metrics;
+
+    /**
+     * @param metrics the metrics to expose
+     */
+    public JMXJobMetrics(JobMetricsListener metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public TabularData getJobTypes()
+    {
+        TabularData data;
+
+        try {
+            String[] columnNames =
+                new String[] { TYPE, "startedCount", "finishedCount", "failedCount", "canceledCount",
+                    "averageQueueTime", "maxQueueTime", "averageRunTime", "maxRunTime" };
+            String[] descriptions =
+                new String[] { "The job type", "The number of started jobs", "The number of finished jobs",
+                    "The number of jobs which finished with an error", "The number of canceled jobs",
+                    "The average time the jobs waited before being executed in milliseconds",
+                    "The longest time a job waited before being executed in milliseconds",
+                    "The average time the jobs took to execute in milliseconds",
+                    "The longest time a job took to execute in milliseconds" };
+            OpenType<?>[] columnTypes =
+                new OpenType<?>[] { SimpleType.STRING, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+                    SimpleType.LONG, SimpleType.DOUBLE, SimpleType.LONG, SimpleType.DOUBLE, SimpleType.LONG };
+            CompositeType rowType =
+                new CompositeType("jobType", "Execution metrics of a job type", columnNames, descriptions,
+                    columnTypes);
+
+            TabularType type =
+                new TabularType("jobTypes", "Execution metrics of the job types", rowType, new String[] { TYPE });
+            data = new TabularDataSupport(type);
+
+            for (Map.Entry<String, TypeMetrics> entry : this.metrics.getTypeMetrics().entrySet()) {
+                TypeMetrics typeMetrics = entry.getValue();
+
+                data.put(new CompositeDataSupport(rowType, columnNames, new Object[] { entry.getKey(),
+                    typeMetrics.getStartedCount(), typeMetrics.getFinishedCount(), typeMetrics.getFailedCount(),
+                    typeMetrics.getCanceledCount(), typeMetrics.getAverageQueueTime(), typeMetrics.getMaxQueueTime(),
+                    typeMetrics.getAverageRunTime(), typeMetrics.getMaxRunTime() }));
+            }
+        } catch (OpenDataException e) {
+            throw new RuntimeException("Failed to gather job types metrics", e);
+        }
+
+        return data;
+    }
+
+    @Override
+    public TabularData getJobStates()
+    {
+        TabularData data;
+
+        try {
+            String[] columnNames = new String[] { STATE, "count" };
+            String[] descriptions = new String[] { "The job state", "The number of jobs in this state" };
+            CompositeType rowType =
+                new CompositeType("jobState", "The number of jobs in a state", columnNames, descriptions,
+                    new OpenType<?>[] { SimpleType.STRING, SimpleType.LONG });
+
+            TabularType type =
+                new TabularType("jobStates", "The number of jobs in each state", rowType, new String[] { STATE });
+            data = new TabularDataSupport(type);
+
+            for (Map.Entry<State, Long> entry : this.metrics.getJobCountByState().entrySet()) {
+                data.put(new CompositeDataSupport(rowType, columnNames, new Object[] { entry.getKey().name(),
+                    entry.getValue() }));
+            }
+        } catch (OpenDataException e) {
+            throw new RuntimeException("Failed to gather job states metrics", e);
+        }
+
+        return data;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal.jmx;
+
+import javax.management.openmbean.TabularData;
+
+/**
+ * MBean API related to the execution of the jobs. Supports the following features:
+ * <ul>
+ * <li>Monitor how long the jobs of each type wait before being executed and how long they run</li>
+ * <li>Monitor the number of jobs in each state</li>
+ * </ul>
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public interface JMXJobMetricsMBean
+{
+    /**
+     * @return the metrics of each job type (type, number of started, finished, failed and canceled jobs, average and
+     *         maximum queue time in milliseconds, average and maximum run time in milliseconds)
+     */
+    TabularData getJobTypes();
+
+    /**
+     * @return the number of jobs in each state (state, count)
+     */
+    TabularData getJobStates();
+}
@@ -0,0 +1,201 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal.jmx;
+
+import org.xwiki.job.internal.JobStatusArchive;
+import org.xwiki.job.internal.JobStatusCache;
+import org.xwiki.job.internal.JobStatusRetention;
+import org.xwiki.job.internal.JobStatusWriteQueue;
+
+/**
+ * Expose job status store metrics.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class JMXJobStatusStore implements JMXJobStatusStoreMBean
+{
+    /**
+     * The queue of asynchronous writes.
+     */
+    private final JobStatusWriteQueue writeQueue;
+
+    /**
+     * The job statuses kept in memory.
+     */
+    private final JobStatusCache cache;
+
+    /**
+     * The old job statuses moved out of their folder.
+     */
+    private final JobStatusArchive archive;
+
+    /**
+     * Decide which job statuses should be archived or deleted.
+     */
+    private final JobStatusRetention retention;
+
+    /**
+     * @param writeQueue the queue of asynchronous writes
+     * @param cache the job statuses kept in memory
+     * @param archive the old job statuses moved out of their folder
+     * @param retention decide which job statuses should be archived or deleted
+     */
+    public JMXJobStatusStore(JobStatusWriteQueue writeQueue, JobStatusCache cache, JobStatusArchive archive,
+        JobStatusRetention retention)
+    {
+        this.writeQueue = writeQueue;
+        this.cache = cache;
+        this.archive = archive;
+        this.retention = retention;
+    }
+
+    @Override
+    public int getWriteQueueSize()
+    {
+        return this.writeQueue.getSize();
+    }
+
+    @Override
+    public int getWriteQueueCapacity()
+    {
+        return this.writeQueue.getCapacity();
+    }
+
+    @Override
+    public long getWriteCount()
+    {
+        return this.writeQueue.getWriteCount();
+    }
+
+    @Override
+    public long getCoalescedWriteCount()
+    {
+        return this.writeQueue.getCoalescedCount();
+    }
+
+    @Override
+    public long getWriteQueueFullCount()
+    {
+        return this.writeQueue.getWaitCount();
+    }
+
+    @Override
+    public double getAverageWriteTime()
+    {
+        return this.writeQueue.getAverageWriteTime();
+    }
+
+    @Override
+    public long getMaxWriteTime()
+    {
+        return this.writeQueue.getMaxWriteTime();
+    }
+
+    @Override
+    public long getLastWriteTime()
+    {
+        return this.writeQueue.getLastWriteTime();
+    }
+
+    @Override
+    public int getCacheSize()
+    {
+        return this.cache.getSize();
+    }
+
+    @Override
+    public int getCacheSoftSize()
+    {
+        return this.cache.getSoftSize();
+    }
+
+    @Override
+    public int getCacheNoStatusSize()
+    {
+        return this.cache.getNoStatusSize();
+    }
+
+    @Override
+    public long getCacheWeight()
+    {
+        return this.cache.getWeight();
+    }
+
+    @Override
+    public long getCacheMaxWeight()
+    {
+        return this.cache.getMaxWeight();
+    }
+
+    @Override
+    public long getCacheHitCount()
+    {
+        return this.cache.getHitCount();
+    }
+
+    @Override
+    public long getCacheSoftHitCount()
+    {
+        return this.cache.getSoftHitCount();
+    }
+
+    @Override
+    public long getCacheMissCount()
+    {
+        return this.cache.getMissCount();
+    }
+
+    @Override
+    public long getCacheEvictionCount()
+    {
+        return this.cache.getEvictionCount();
+    }
+
+    @Override
+    public int getArchivedStatusCount()
+    {
+        return this.archive.size();
+    }
+
+    @Override
+    public long getArchiveFileSize()
+    {
+        return this.archive.getFileSize();
+    }
+
+    @Override
+    public long getRetentionRunCount()
+    {
+        return this.retention.getRunCount();
+    }
+
+    @Override
+    public long getExpiredArchivedCount()
+    {
+        return this.retention.getArchivedCount();
+    }
+
+    @Override
+    public long getExpiredDeletedCount()
+    {
+        return this.retention.getDeletedCount();
+    }
+}
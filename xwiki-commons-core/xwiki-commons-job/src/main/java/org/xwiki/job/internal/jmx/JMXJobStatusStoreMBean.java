@@ -0,0 +1,145 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal.jmx;
+
+/**
+ * MBean API related to the job status store. Supports the following features:
+ * <ul>
+ * <li>Monitor the asynchronous writes of job statuses (queue depth, write latency, etc.)</li>
+ * <li>Monitor the cache of job statuses (weight, hits, misses, evictions, etc.)</li>
+ * <li>Monitor the archive and retention of old job statuses</li>
+ * </ul>
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public interface JMXJobStatusStoreMBean
+{
+    /**
+     * @return the number of job statuses waiting to be written
+     */
+    int getWriteQueueSize();
+
+    /**
+     * @return the maximum number of job statuses waiting to be written
+     */
+    int getWriteQueueCapacity();
+
+    /**
+     * @return the number of written job statuses
+     */
+    long getWriteCount();
+
+    /**
+     * @return the number of asynchronous writes which have been merged with a pending write of the same job
+     */
+    long getCoalescedWriteCount();
+
+    /**
+     * @return the number of times a job had to wait for the write queue to have some room
+     */
+    long getWriteQueueFullCount();
+
+    /**
+     * @return the average time spent writing a job status, in milliseconds
+     */
+    double getAverageWriteTime();
+
+    /**
+     * @return the longest time spent writing a job status, in milliseconds
+     */
+    long getMaxWriteTime();
+
+    /**
+     * @return the time spent writing the last job status, in milliseconds
+     */
+    long getLastWriteTime();
+
+    /**
+     * @return the number of job statuses kept in memory
+     */
+    int getCacheSize();
+
+    /**
+     * @return the number of evicted job statuses still softly referenced
+     */
+    int getCacheSoftSize();
+
+    /**
+     * @return the number of jobs remembered as not having any status
+     */
+    int getCacheNoStatusSize();
+
+    /**
+     * @return the estimated weight of the job statuses kept in memory
+     */
+    long getCacheWeight();
+
+    /**
+     * @return the maximum weight of the job statuses kept in memory
+     */
+    long getCacheMaxWeight();
+
+    /**
+     * @return the number of job status lookups which found the status in memory
+     */
+    long getCacheHitCount();
+
+    /**
+     * @return the number of job status lookups which found the status among the evicted but still softly referenced
+     *         statuses
+     */
+    long getCacheSoftHitCount();
+
+    /**
+     * @return the number of job status lookups which had to load the status from the file system
+     */
+    long getCacheMissCount();
+
+    /**
+     * @return the number of job statuses evicted from memory to make room for others
+     */
+    long getCacheEvictionCount();
+
+    /**
+     * @return the number of job statuses in the archive
+     */
+    int getArchivedStatusCount();
+
+    /**
+     * @return the size of the archive file, in bytes
+     */
+    long getArchiveFileSize();
+
+    /**
+     * @return the number of times the retention limits have been checked
+     */
+    long getRetentionRunCount();
+
+    /**
+     * @return the number of job statuses moved to the archive because they exceeded the retention limits
+     */
+    long getExpiredArchivedCount();
+
+    /**
+     * @return the number of job statuses deleted because they exceeded the retention limits
+     */
+    long getExpiredDeletedCount();
+}
@@ -0,0 +1,224 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.util.Arrays;
+import java.util.Stack;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.xwiki.job.DefaultRequest;
+import org.xwiki.job.Job;
+import org.xwiki.job.JobContext;
+import org.xwiki.job.JobStatusStore;
+import org.xwiki.job.Request;
+import org.xwiki.job.event.status.JobProgressManager;
+import org.xwiki.job.event.status.JobStatus.State;
+import org.xwiki.logging.LoggerManager;
+import org.xwiki.observation.ObservationManager;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Validate the cancellation of {@link AbstractJob}.
+ *
+ * @version $Id$
+ */
+public class AbstractJobTest
+{
+    private JobContext jobContext;
+
+    private class TestJob extends AbstractJob<Request, DefaultJobStatus<Request>>
+    {
+        private boolean executed;
+
+        private boolean cleaned;
+
+        private Runnable runnable;
+
+        TestJob(String id)
+        {
+            this.observationManager = mock(ObservationManager.class);
+            this.loggerManager = mock(LoggerManager.class);
+            this.store = mock(JobStatusStore.class);
+            this.logger = mock(Logger.class);
+            this.progressManager = mock(JobProgressManager.class);
+            this.jobContext = AbstractJobTest.this.jobContext;
+            this.initExecutionContext = false;
+
+            DefaultRequest request = new DefaultRequest();
+            request.setId(Arrays.asList(id));
+            initialize(request);
+        }
+
+        @Override
+        public String getType()
+        {
+            return "test";
+        }
+
+        @Override
+        protected void runInternal() throws Exception
+        {
+            this.executed = true;
+
+            if (this.runnable != null) {
+                this.runnable.run();
+            }
+        }
+
+        @Override
+        protected void jobCanceled()
+        {
+            this.cleaned = true;
+        }
+    }
+
+    @Before
+    public void before()
+    {
+        final Stack<Job> jobs = new Stack<Job>();
+
+        this.jobContext = new JobContext()
+        {
+            @Override
+            public Job getCurrentJob()
+            {
+                return jobs.isEmpty() ? null : jobs.peek();
+            }
+
+            @Override
+            public void pushCurrentJob(Job job)
+            {
+                jobs.push(job);
+            }
+
+            @Override
+            public void popCurrentJob()
+            {
+                jobs.pop();
+            }
+        };
+    }
+
+    // Tests
+
+    @Test
+    public void testFinished() throws InterruptedException
+    {
+        TestJob job = new TestJob("id");
+
+        job.run();
+        job.join();
+
+        Assert.assertTrue(job.executed);
+        Assert.assertFalse(job.cleaned);
+        Assert.assertEquals(State.FINISHED, job.getStatus().getState());
+    }
+
+    @Test
+    public void testCanceledBeforeStart() throws InterruptedException
+    {
+        TestJob job = new TestJob("id");
+
+        job.cancel();
+        job.run();
+        job.join();
+
+        Assert.assertFalse(job.executed);
+        Assert.assertTrue(job.cleaned);
+        Assert.assertEquals(State.CANCELED, job.getStatus().getState());
+    }
+
+    @Test
+    public void testCancelSubJob()
+    {
+        final TestJob job = new TestJob("id");
+        final TestJob subJob = new TestJob("subid");
+
+        job.runnable = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                subJob.run();
+
+                // Checkpoint
+                job.checkCanceled();
+            }
+        };
+        subJob.runnable = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                job.cancel();
+
+                subJob.checkCanceled();
+            }
+        };
+
+        job.run();
+
+        Assert.assertTrue(subJob.cleaned);
+        Assert.assertEquals(State.CANCELED, subJob.getStatus().getState());
+        Assert.assertTrue(job.cleaned);
+        Assert.assertEquals(State.CANCELED, job.getStatus().getState());
+    }
+
+    @Test
+    public void testCancelWaitingJob() throws InterruptedException
+    {
+        final CountDownLatch asking = new CountDownLatch(1);
+
+        final TestJob job = new TestJob("id");
+        job.runnable = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                asking.countDown();
+
+                try {
+                    job.getStatus().ask(new Object());
+                } catch (InterruptedException e) {
+                    throw new CancellationException();
+                }
+            }
+        };
+
+        Thread thread = new Thread(job);
+        thread.start();
+
+        asking.await();
+        while (job.getStatus().getState() != State.WAITING) {
+            Thread.sleep(1);
+        }
+
+        job.cancel();
+        job.join();
+
+        Assert.assertEquals(State.CANCELED, job.getStatus().getState());
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.job.DefaultRequest;
+import org.xwiki.job.Request;
+import org.xwiki.job.event.status.JobStatus;
+
+/**
+ * Validate {@link BinaryJobStatusSerializer}.
+ *
+ * @version $Id$
+ */
+public class BinaryJobStatusSerializerTest
+{
+    private BinaryJobStatusSerializer serializer;
+
+    private File testFile = new File("target/test/status.bin");
+
+    @Before
+    public void before() throws ParserConfigurationException
+    {
+        this.serializer = new BinaryJobStatusSerializer();
+    }
+
+    private DefaultJobStatus<Request> createStatus(int logSize)
+    {
+        DefaultRequest request = new DefaultRequest();
+        request.setId(Arrays.asList("id1", "id2"));
+        request.setProperty("property", "value");
+
+        DefaultJobStatus<Request> status = new DefaultJobStatus<Request>(request, null, null, false);
+        status.setState(JobStatus.State.FINISHED);
+        status.setStartDate(new Date(0));
+        status.setEndDate(new Date(1));
+
+        for (int i = 0; i < logSize; ++i) {
+            status.getLog().error("error message {}", "argument" + i, new Exception("exception message"));
+        }
+
+        return status;
+    }
+
+    private void assertHeader(JobStatus status)
+    {
+        Assert.assertEquals(Arrays.asList("id1", "id2"), status.getRequest().getId());
+        Assert.assertEquals("value", status.getRequest().getProperty("property"));
+        Assert.assertEquals(JobStatus.State.FINISHED, status.getState());
+        Assert.assertEquals(new Date(0), status.getStartDate());
+        Assert.assertEquals(new Date(1), status.getEndDate());
+    }
+
+    // Tests
+
+    @Test
+    public void testWriteRead() throws IOException
+    {
+        this.serializer.write(createStatus(2), this.testFile);
+
+        Assert.assertTrue(BinaryJobStatusSerializer.isBinary(this.testFile));
+
+        JobStatus status = this.serializer.read(this.testFile);
+
+        assertHeader(status);
+        Assert.assertEquals(2, status.getLog().size());
+        Assert.assertEquals("error message {}", status.getLog().peek().getMessage());
+        Assert.assertEquals("argument0", status.getLog().peek().getArgumentArray()[0]);
+        Assert.assertEquals("exception message", status.getLog().peek().getThrowable().getMessage());
+    }
+
+    @Test
+    public void testWriteReadUncompressed() throws IOException, ParserConfigurationException
+    {
+        BinaryJobStatusSerializer uncompressedSerializer = new BinaryJobStatusSerializer(false);
+
+        uncompressedSerializer.write(createStatus(2), this.testFile);
+
+        // Compression is part of the format
+        JobStatus status = this.serializer.read(this.testFile);
+
+        assertHeader(status);
+        Assert.assertEquals(2, status.getLog().size());
+    }
+
+    @Test
+    public void testReadHeader() throws IOException
+    {
+        this.serializer.write(createStatus(2), this.testFile);
+
+        JobStatus status = this.serializer.readHeader(this.testFile);
+
+        assertHeader(status);
+        Assert.assertTrue(status.getLog().isEmpty());
+    }
+
+    @Test
+    public void testReadXML() throws IOException, ParserConfigurationException
+    {
+        File xmlFile = new File("target/test/status.xml");
+
+        new JobStatusSerializer().write(createStatus(2), xmlFile);
+
+        Assert.assertFalse(BinaryJobStatusSerializer.isBinary(xmlFile));
+
+        JobStatus status = this.serializer.read(xmlFile);
+
+        assertHeader(status);
+        Assert.assertEquals(2, status.getLog().size());
+
+        // There is no separated header in XML format
+        Assert.assertEquals(2, this.serializer.readHeader(xmlFile).getLog().size());
+    }
+
+    @Test
+    public void testSizeComparedToXML() throws IOException, ParserConfigurationException
+    {
+        File xmlFile = new File("target/test/status.xml");
+
+        JobStatus status = createStatus(1000);
+
+        new JobStatusSerializer().write(status, xmlFile);
+        this.serializer.write(status, this.testFile);
+
+        Assert.assertTrue(this.testFile.length() * 10 < xmlFile.length());
+    }
+}
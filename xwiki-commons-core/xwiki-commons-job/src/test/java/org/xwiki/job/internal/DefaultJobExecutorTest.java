@@ -0,0 +1,149 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.job.DefaultRequest;
+import org.xwiki.job.Job;
+import org.xwiki.job.Request;
+import org.xwiki.job.event.status.JobStatus;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+/**
+ * Unit tests for {@link DefaultJobExecutor}.
+ *
+ * @version $Id$
+ */
+public class DefaultJobExecutorTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<DefaultJobExecutor> mocker =
+        new MockitoComponentMockingRule<DefaultJobExecutor>(DefaultJobExecutor.class);
+
+    private static class TestJob implements Job
+    {
+        private final Request request = new DefaultRequest();
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private final Runnable runnable;
+
+        TestJob(Runnable runnable)
+        {
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                if (this.runnable != null) {
+                    this.runnable.run();
+                }
+            } finally {
+                this.done.countDown();
+            }
+        }
+
+        @Override
+        public String getType()
+        {
+            return "test";
+        }
+
+        @Override
+        public JobStatus getStatus()
+        {
+            return null;
+        }
+
+        @Override
+        public Request getRequest()
+        {
+            return this.request;
+        }
+
+        @Override
+        public void start(Request request)
+        {
+            run();
+        }
+
+        @Override
+        public void initialize(Request request)
+        {
+        }
+
+        @Override
+        public void join() throws InterruptedException
+        {
+            this.done.await();
+        }
+
+        @Override
+        public boolean join(long time, TimeUnit unit) throws InterruptedException
+        {
+            return this.done.await(time, unit);
+        }
+    }
+
+    @Test
+    public void testJobsWaitingForNestedJobs() throws Exception
+    {
+        final DefaultJobExecutor executor = this.mocker.getComponentUnderTest();
+
+        final CountDownLatch started = new CountDownLatch(executor.getMaxThreads());
+
+        // Occupy all the threads with jobs waiting for the jobs they start
+        List<TestJob> jobs = new ArrayList<TestJob>();
+        for (int i = 0; i < executor.getMaxThreads(); ++i) {
+            TestJob job = new TestJob(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try {
+                        started.countDown();
+                        started.await();
+
+                        TestJob nestedJob = new TestJob(null);
+                        executor.execute(nestedJob);
+                        nestedJob.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            executor.execute(job);
+            jobs.add(job);
+        }
+
+        for (TestJob job : jobs) {
+            Assert.assertTrue(job.join(10, TimeUnit.SECONDS));
+        }
+    }
+}
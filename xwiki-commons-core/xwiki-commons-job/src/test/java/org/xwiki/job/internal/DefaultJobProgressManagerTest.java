@@ -0,0 +1,183 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.util.concurrent.CancellationException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.job.Job;
+import org.xwiki.job.JobContext;
+import org.xwiki.job.JobManagerConfiguration;
+import org.xwiki.job.Request;
+import org.xwiki.job.event.status.JobProgressManager;
+import org.xwiki.job.event.status.JobStatus;
+import org.xwiki.job.event.status.PopLevelProgressEvent;
+import org.xwiki.job.event.status.PushLevelProgressEvent;
+import org.xwiki.job.event.status.StepProgressEvent;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link DefaultJobProgressManager}.
+ *
+ * @version $Id$
+ */
+public class DefaultJobProgressManagerTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<JobProgressManager> mocker =
+        new MockitoComponentMockingRule<JobProgressManager>(DefaultJobProgressManager.class);
+
+    private DefaultJobProgress progress;
+
+    private ObservationManager observationManager;
+
+    @Before
+    public void before() throws Exception
+    {
+        this.progress = new DefaultJobProgress();
+
+        JobStatus status = mock(JobStatus.class);
+        when(status.getProgress()).thenReturn(this.progress);
+        Job job = mock(Job.class);
+        when(job.getStatus()).thenReturn(status);
+
+        JobContext jobContext = this.mocker.getInstance(JobContext.class);
+        when(jobContext.getCurrentJob()).thenReturn(job);
+
+        this.observationManager = this.mocker.getInstance(ObservationManager.class);
+    }
+
+    private void setProgressEventRate(int rate) throws Exception
+    {
+        JobManagerConfiguration configuration = this.mocker.getInstance(JobManagerConfiguration.class);
+        when(configuration.getProgressEventRate()).thenReturn(rate);
+    }
+
+    @Test
+    public void testUpdateCurrentJobProgressWithoutEvents() throws Exception
+    {
+        setProgressEventRate(0);
+
+        this.mocker.getComponentUnderTest().pushLevelProgress(2, this);
+        this.mocker.getComponentUnderTest().stepPropress(this);
+
+        Assert.assertEquals(0, Double.compare(0.5D, this.progress.getOffset()));
+
+        this.mocker.getComponentUnderTest().popLevelProgress(this);
+
+        Assert.assertEquals(0, Double.compare(1D, this.progress.getOffset()));
+
+        verify(this.observationManager, never()).notify(any(Event.class), any(), any());
+        verify(this.observationManager, never()).notify(any(Event.class), any());
+    }
+
+    @Test
+    public void testUpdateParentJobProgress() throws Exception
+    {
+        DefaultJobProgress parentProgress = new DefaultJobProgress();
+        parentProgress.pushLevel(2);
+        this.progress.setParent(parentProgress);
+
+        this.mocker.getComponentUnderTest().pushLevelProgress(2, this);
+        this.mocker.getComponentUnderTest().stepPropress(this);
+
+        Assert.assertEquals(0, Double.compare(0.5D, this.progress.getOffset()));
+        Assert.assertEquals(0, Double.compare(0.25D, parentProgress.getOffset()));
+    }
+
+    @Test
+    public void testSendAllEvents() throws Exception
+    {
+        setProgressEventRate(-1);
+
+        this.mocker.getComponentUnderTest().pushLevelProgress(2, this);
+        this.mocker.getComponentUnderTest().stepPropress(this);
+        this.mocker.getComponentUnderTest().popLevelProgress(this);
+
+        // The progress is passed with the events so that it's not updated twice
+        verify(this.observationManager).notify(isA(PushLevelProgressEvent.class), same(this), same(this.progress));
+        verify(this.observationManager).notify(isA(StepProgressEvent.class), same(this), same(this.progress));
+        verify(this.observationManager).notify(isA(PopLevelProgressEvent.class), same(this), same(this.progress));
+
+        Assert.assertEquals(0, Double.compare(1D, this.progress.getOffset()));
+    }
+
+    @Test
+    public void testSendEventsWithoutCurrentJob() throws Exception
+    {
+        JobContext jobContext = this.mocker.getInstance(JobContext.class);
+        when(jobContext.getCurrentJob()).thenReturn(null);
+
+        this.mocker.getComponentUnderTest().pushLevelProgress(2, this);
+        this.mocker.getComponentUnderTest().stepPropress(this);
+        this.mocker.getComponentUnderTest().popLevelProgress(this);
+
+        verify(this.observationManager).notify(isA(PushLevelProgressEvent.class), same(this));
+        verify(this.observationManager).notify(isA(StepProgressEvent.class), same(this));
+        verify(this.observationManager).notify(isA(PopLevelProgressEvent.class), same(this));
+
+        Assert.assertEquals(0, Double.compare(0D, this.progress.getOffset()));
+    }
+
+    @Test
+    public void testStepCanceledJob() throws Exception
+    {
+        AbstractJob<Request, DefaultJobStatus<Request>> job = new AbstractJob<Request, DefaultJobStatus<Request>>()
+        {
+            @Override
+            public String getType()
+            {
+                return "test";
+            }
+
+            @Override
+            protected void runInternal() throws Exception
+            {
+            }
+        };
+        job.cancel();
+
+        JobContext jobContext = this.mocker.getInstance(JobContext.class);
+        when(jobContext.getCurrentJob()).thenReturn(job);
+
+        try {
+            this.mocker.getComponentUnderTest().stepPropress(this);
+            Assert.fail("The canceled job should have been stopped");
+        } catch (CancellationException e) {
+            // Expected
+        }
+
+        // Finishing the current level is still possible
+        this.mocker.getComponentUnderTest().popLevelProgress(this);
+    }
+}
@@ -124,4 +124,38 @@ public void testIgnoreNextStepAfterPopLevel()
         Assert.assertEquals(0, Double.compare(1D, this.progress.getOffset()));
         Assert.assertEquals(0, Double.compare(1D, this.progress.getCurrentLevelOffset()));
     }
+
+    @Test
+    public void testDirectUpdate()
+    {
+        this.progress.pushLevel(4);
+        this.progress.stepLevel();
+
+        Assert.assertEquals(0, Double.compare(0.25D, this.progress.getOffset()));
+
+        this.progress.pushLevel(1);
+        this.progress.popLevel();
+        // Already taken into account by the pop
+        this.progress.stepLevel();
+
+        Assert.assertEquals(0, Double.compare(0.5D, this.progress.getOffset()));
+        Assert.assertEquals(0, Double.compare(0.5D, this.progress.getCurrentLevelOffset()));
+    }
+
+    /**
+     * Tests that events sent after directly updating the progress are ignored.
+     */
+    @Test
+    public void testIgnoreEventsAlreadyApplied()
+    {
+        DefaultJobProgress childProgress = new DefaultJobProgress();
+        childProgress.setParent(this.progress);
+
+        this.progress.pushLevel(4);
+        this.observation.notify(new PushLevelProgressEvent(4), null, childProgress);
+        this.progress.stepLevel();
+        this.observation.notify(new StepProgressEvent(), null, childProgress);
+
+        Assert.assertEquals(0, Double.compare(0.25D, this.progress.getOffset()));
+    }
 }
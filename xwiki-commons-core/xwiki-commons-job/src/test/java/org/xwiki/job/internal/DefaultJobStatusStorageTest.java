@@ -58,6 +58,8 @@ public void before() throws Exception
         FileUtils.copyDirectory(new File("src/test/resources/jobs/"), new File("target/test/jobs/"));
 
         when(jobManagerConfiguration.getStorage()).thenReturn(new File("target/test/jobs/status"));
+        when(jobManagerConfiguration.getStatusCacheMaxWeight())
+            .thenReturn(DefaultJobManagerConfiguration.DEFAULT_STATUS_CACHE_MAX_WEIGHT);
     }
 
     @Test
@@ -136,4 +138,33 @@ public void testStoreJobStatus() throws ComponentLookupException
 
         Assert.assertSame(jobStatus, this.componentManager.getComponentUnderTest().getJobStatus(id));
     }
+
+    @Test
+    public void testStoreJobStatusReplaceXMLFormat() throws Exception
+    {
+        List<String> id = Arrays.asList("xml", "status");
+
+        DefaultRequest request = new DefaultRequest();
+        request.setId(id);
+
+        File xmlFile = new File("target/test/jobs/status/xml/status/status.xml");
+        File binaryFile = new File("target/test/jobs/status/xml/status/status.bin");
+
+        // Status stored before the format was changed
+        new JobStatusSerializer().write(new DefaultJobStatus<Request>(request, null, null, false), xmlFile);
+        Assert.assertTrue(xmlFile.exists());
+
+        JobStatus jobStatus = new DefaultJobStatus<Request>(request, null, null, false);
+        jobStatus.getLog().error("new status");
+
+        this.componentManager.getComponentUnderTest().store(jobStatus);
+
+        Assert.assertFalse(xmlFile.exists());
+        Assert.assertTrue(binaryFile.exists());
+        Assert.assertTrue(BinaryJobStatusSerializer.isBinary(binaryFile));
+
+        JobStatus loadedStatus = new BinaryJobStatusSerializer().read(binaryFile);
+        Assert.assertEquals(id, loadedStatus.getRequest().getId());
+        Assert.assertEquals("new status", loadedStatus.getLog().peek().getMessage());
+    }
 }
@@ -0,0 +1,207 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.job.JobGroupPath;
+
+/**
+ * Validate {@link JobGroupPathLockTree}.
+ *
+ * @version $Id$
+ */
+public class JobGroupPathLockTreeTest
+{
+    private static final JobGroupPath PARENT = new JobGroupPath(Arrays.asList("parent"));
+
+    private static final JobGroupPath CHILD = new JobGroupPath("child", PARENT);
+
+    private static final JobGroupPath CHILD2 = new JobGroupPath("child2", PARENT);
+
+    private JobGroupPathLockTree tree;
+
+    @Before
+    public void before()
+    {
+        this.tree = new JobGroupPathLockTree();
+    }
+
+    /**
+     * @return the latch released when the lock is acquired
+     */
+    private CountDownLatch lockInThread(final JobGroupPath path)
+    {
+        final CountDownLatch locked = new CountDownLatch(1);
+
+        Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                tree.lock(path);
+                locked.countDown();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+
+        return locked;
+    }
+
+    // Tests
+
+    @Test
+    public void testSameGroupShared() throws InterruptedException
+    {
+        this.tree.lock(CHILD);
+
+        Assert.assertTrue(lockInThread(CHILD).await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSiblingGroups() throws InterruptedException
+    {
+        this.tree.lock(CHILD);
+
+        Assert.assertTrue(lockInThread(CHILD2).await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testParentExcludesChild() throws InterruptedException
+    {
+        this.tree.lock(PARENT);
+
+        CountDownLatch locked = lockInThread(CHILD);
+
+        Assert.assertFalse(locked.await(100, TimeUnit.MILLISECONDS));
+
+        this.tree.unlock(PARENT);
+
+        Assert.assertTrue(locked.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testChildExcludesParent() throws InterruptedException
+    {
+        this.tree.lock(CHILD);
+
+        CountDownLatch locked = lockInThread(PARENT);
+
+        Assert.assertFalse(locked.await(100, TimeUnit.MILLISECONDS));
+
+        this.tree.unlock(CHILD);
+
+        Assert.assertTrue(locked.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFair() throws InterruptedException
+    {
+        this.tree.lock(CHILD);
+
+        // A job of the parent group is waiting so children jobs coming after it have to wait too
+        CountDownLatch parentLocked = lockInThread(PARENT);
+        Assert.assertFalse(parentLocked.await(100, TimeUnit.MILLISECONDS));
+        CountDownLatch childLocked = lockInThread(CHILD2);
+        Assert.assertFalse(childLocked.await(100, TimeUnit.MILLISECONDS));
+
+        this.tree.unlock(CHILD);
+
+        Assert.assertTrue(parentLocked.await(10, TimeUnit.SECONDS));
+        Assert.assertFalse(childLocked.await(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testReclaimIdleLocks()
+    {
+        this.tree.lock(CHILD);
+
+        Assert.assertEquals(2, this.tree.getSize());
+
+        this.tree.unlock(CHILD);
+
+        Assert.assertEquals(0, this.tree.getSize());
+    }
+
+    @Test
+    public void testTryLockTimeout() throws InterruptedException
+    {
+        this.tree.lock(PARENT);
+
+        final boolean[] result = new boolean[1];
+        Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                result[0] = tree.tryLock(CHILD, 50, TimeUnit.MILLISECONDS);
+            }
+        });
+        thread.start();
+        thread.join();
+
+        Assert.assertFalse(result[0]);
+
+        this.tree.unlock(PARENT);
+
+        // Nothing left locked by the failed attempt
+        Assert.assertEquals(0, this.tree.getSize());
+        Assert.assertTrue(this.tree.tryLock(CHILD, 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testNotFair() throws InterruptedException
+    {
+        this.tree = new JobGroupPathLockTree(false);
+
+        this.tree.lock(CHILD);
+
+        CountDownLatch parentLocked = lockInThread(PARENT);
+        Assert.assertFalse(parentLocked.await(100, TimeUnit.MILLISECONDS));
+
+        // Children jobs don't have to wait for the parent job
+        Assert.assertTrue(lockInThread(CHILD2).await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWaitStatistics() throws InterruptedException
+    {
+        this.tree.lock(PARENT);
+
+        CountDownLatch locked = lockInThread(CHILD);
+        Thread.sleep(50);
+        this.tree.unlock(PARENT);
+        Assert.assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+        JobGroupPathLockTree.WaitStatistics statistics = this.tree.getWaitStatistics().get(PARENT);
+
+        Assert.assertEquals(2, statistics.getLockCount());
+        Assert.assertEquals(1, statistics.getWaitCount());
+        Assert.assertTrue(statistics.getMaxWaitTime() >= TimeUnit.MILLISECONDS.toNanos(40));
+        Assert.assertEquals(1, this.tree.getWaitStatistics().get(CHILD).getLockCount());
+        Assert.assertEquals(0, this.tree.getWaitStatistics().get(CHILD).getWaitCount());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.job.DefaultRequest;
+import org.xwiki.job.Job;
+import org.xwiki.job.Request;
+import org.xwiki.job.event.JobFinishedEvent;
+import org.xwiki.job.event.JobStartedEvent;
+import org.xwiki.job.event.status.JobStatus.State;
+import org.xwiki.job.internal.JobMetricsListener.TypeMetrics;
+
+/**
+ * Validate {@link JobMetricsListener}.
+ *
+ * @version $Id$
+ */
+public class JobMetricsListenerTest
+{
+    private JobMetricsListener listener;
+
+    private static class TestJob extends AbstractJob<Request, DefaultJobStatus<Request>>
+    {
+        TestJob(String... id)
+        {
+            DefaultRequest request = new DefaultRequest();
+            request.setId(Arrays.asList(id));
+
+            this.request = request;
+            this.status = new DefaultJobStatus<Request>(request, null, null, false);
+        }
+
+        @Override
+        public String getType()
+        {
+            return "test";
+        }
+
+        @Override
+        protected void runInternal() throws Exception
+        {
+        }
+    }
+
+    @Before
+    public void before()
+    {
+        this.listener = new JobMetricsListener();
+    }
+
+    private void start(Job job)
+    {
+        ((DefaultJobStatus<?>) job.getStatus()).setState(State.RUNNING);
+
+        this.listener.onEvent(new JobStartedEvent(job.getRequest().getId(), job.getType(), job.getRequest()), job,
+            null);
+    }
+
+    private void finish(Job job, long queueTime, long runTime, Throwable error)
+    {
+        List<String> id = job.getRequest().getId();
+
+        this.listener.onEvent(new JobFinishedEvent(id, job.getType(), job.getRequest(), queueTime, runTime), job,
+            error);
+    }
+
+    // Tests
+
+    @Test
+    public void testTypeMetrics()
+    {
+        Job job1 = new TestJob("id1");
+        Job job2 = new TestJob("id2");
+
+        start(job1);
+        start(job2);
+        finish(job1, 10, 100, null);
+        finish(job2, -1, 300, new Exception());
+
+        TypeMetrics metrics = this.listener.getTypeMetrics().get("test");
+
+        Assert.assertEquals(2, metrics.getStartedCount());
+        Assert.assertEquals(2, metrics.getFinishedCount());
+        Assert.assertEquals(1, metrics.getFailedCount());
+        Assert.assertEquals(10, metrics.getAverageQueueTime(), 0);
+        Assert.assertEquals(10, metrics.getMaxQueueTime());
+        Assert.assertEquals(200, metrics.getAverageRunTime(), 0);
+        Assert.assertEquals(300, metrics.getMaxRunTime());
+    }
+
+    @Test
+    public void testJobCountByState()
+    {
+        Job job1 = new TestJob("id1");
+        Job job2 = new TestJob("id2");
+        Job job3 = new TestJob("id3");
+
+        start(job1);
+        start(job2);
+        start(job3);
+        ((DefaultJobStatus<?>) job2.getStatus()).setState(State.WAITING);
+        finish(job3, 0, 0, null);
+
+        Assert.assertEquals(Long.valueOf(1), this.listener.getJobCountByState().get(State.RUNNING));
+        Assert.assertEquals(Long.valueOf(1), this.listener.getJobCountByState().get(State.WAITING));
+        Assert.assertEquals(Long.valueOf(1), this.listener.getJobCountByState().get(State.FINISHED));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.job.DefaultRequest;
+import org.xwiki.job.Request;
+import org.xwiki.job.event.status.JobStatus;
+
+/**
+ * Validate {@link JobStatusArchive}.
+ *
+ * @version $Id$
+ */
+public class JobStatusArchiveTest
+{
+    private File archiveFile = new File("target/test/archive/archive");
+
+    private BinaryJobStatusSerializer serializer;
+
+    private JobStatusArchive archive;
+
+    @Before
+    public void before() throws Exception
+    {
+        FileUtils.deleteDirectory(this.archiveFile.getParentFile());
+
+        this.serializer = new BinaryJobStatusSerializer();
+        this.archive = new JobStatusArchive(this.archiveFile, this.serializer);
+        this.archive.load();
+    }
+
+    @After
+    public void after()
+    {
+        this.archive.close();
+    }
+
+    private JobStatus status(String message, String... id)
+    {
+        DefaultRequest request = new DefaultRequest();
+        request.setId(Arrays.asList(id));
+
+        JobStatus status = new DefaultJobStatus<Request>(request, null, null, false);
+        status.getLog().info(message);
+
+        return status;
+    }
+
+    private JobStatusArchive reload() throws IOException
+    {
+        this.archive.close();
+
+        this.archive = new JobStatusArchive(this.archiveFile, this.serializer);
+        this.archive.load();
+
+        return this.archive;
+    }
+
+    // Tests
+
+    @Test
+    public void testAddAndGet() throws IOException
+    {
+        this.archive.add(status("message1", "id1"));
+        this.archive.add(status("message2", "id2"));
+        this.archive.add(status("message3", "id1"));
+
+        Assert.assertEquals(2, reload().size());
+
+        JobStatus status = this.archive.get(Arrays.asList("id1"));
+
+        Assert.assertEquals(Arrays.asList("id1"), status.getRequest().getId());
+        Assert.assertEquals("message3", status.getLog().peek().getMessage());
+        Assert.assertNull(this.archive.get(Arrays.asList("id3")));
+    }
+
+    @Test
+    public void testRemoveChildren() throws IOException
+    {
+        this.archive.add(status("message", "id1"));
+        this.archive.add(status("message", "id1", "id2"));
+        this.archive.add(status("message", "id3"));
+
+        this.archive.remove(Arrays.asList("id1"));
+
+        Assert.assertEquals(1, reload().size());
+        Assert.assertTrue(this.archive.contains(Arrays.asList("id3")));
+        Assert.assertNull(this.archive.get(Arrays.asList("id1", "id2")));
+    }
+
+    @Test
+    public void testDropDamagedEnd() throws IOException
+    {
+        this.archive.add(status("message", "id1"));
+        this.archive.add(status("message", "id2"));
+        this.archive.close();
+
+        // Truncate the last record
+        RandomAccessFile file = new RandomAccessFile(this.archiveFile, "rw");
+        file.setLength(file.length() - 1);
+        file.close();
+
+        Assert.assertEquals(1, reload().size());
+        Assert.assertNotNull(this.archive.get(Arrays.asList("id1")));
+
+        // New records are appended after the last valid one
+        this.archive.add(status("message", "id2"));
+
+        Assert.assertEquals(2, reload().size());
+    }
+
+    @Test
+    public void testCompact() throws IOException
+    {
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+            message.append(i);
+        }
+
+        long recordSize = 0;
+        for (int i = 0; i < 2000; ++i) {
+            this.archive.add(status(message.toString() + i, "id", String.valueOf(i % 10)));
+
+            if (i == 0) {
+                recordSize = this.archive.getFileSize();
+            }
+        }
+
+        Assert.assertEquals(10, reload().size());
+        // Without compaction the archive would contain 2000 records
+        Assert.assertTrue(this.archiveFile.length() < recordSize * 1000);
+        Assert.assertEquals(message.toString() + "1999", this.archive.get(Arrays.asList("id", "9")).getLog()
+            .peek().getMessage());
+    }
+}
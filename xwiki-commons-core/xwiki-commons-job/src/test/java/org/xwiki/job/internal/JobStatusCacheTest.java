@@ -0,0 +1,291 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.job.DefaultRequest;
+import org.xwiki.job.Request;
+import org.xwiki.job.event.status.JobStatus;
+
+/**
+ * Validate {@link JobStatusCache}.
+ *
+ * @version $Id$
+ */
+public class JobStatusCacheTest
+{
+    private JobStatusCache cache;
+
+    @Before
+    public void before()
+    {
+        this.cache = new JobStatusCache(10);
+    }
+
+    private JobStatus status(int logSize, String... id)
+    {
+        DefaultRequest request = new DefaultRequest();
+        request.setId(Arrays.asList(id));
+
+        JobStatus status = new DefaultJobStatus<Request>(request, null, null, false);
+        for (int i = 0; i < logSize; ++i) {
+            status.getLog().info("message");
+        }
+
+        return status;
+    }
+
+    private Callable<JobStatus> loader(final JobStatus status)
+    {
+        return new Callable<JobStatus>()
+        {
+            @Override
+            public JobStatus call() throws Exception
+            {
+                return status;
+            }
+        };
+    }
+
+    // Tests
+
+    @Test
+    public void testEvictByWeight()
+    {
+        JobStatus status1 = status(4, "id1");
+        JobStatus status2 = status(4, "id2");
+
+        this.cache.put(status1.getRequest().getId(), status1);
+        this.cache.put(status2.getRequest().getId(), status2);
+
+        Assert.assertEquals(2, this.cache.getSize());
+        Assert.assertEquals(10, this.cache.getWeight());
+        Assert.assertEquals(0, this.cache.getEvictionCount());
+
+        JobStatus status3 = status(0, "id3");
+        this.cache.put(status3.getRequest().getId(), status3);
+
+        Assert.assertEquals(2, this.cache.getSize());
+        Assert.assertEquals(6, this.cache.getWeight());
+        Assert.assertEquals(1, this.cache.getEvictionCount());
+
+        // The evicted status is still softly referenced
+        Assert.assertSame(status1, this.cache.get(status1.getRequest().getId()));
+        Assert.assertEquals(1, this.cache.getSoftHitCount());
+        Assert.assertEquals(0, this.cache.getHitCount());
+    }
+
+    @Test
+    public void testTooHeavyOnlySoftlyReferenced()
+    {
+        JobStatus status1 = status(0, "id1");
+        JobStatus status2 = status(100, "id2");
+
+        this.cache.put(status1.getRequest().getId(), status1);
+        this.cache.put(status2.getRequest().getId(), status2);
+
+        // The other statuses are not evicted for it
+        Assert.assertEquals(1, this.cache.getSize());
+        Assert.assertEquals(0, this.cache.getEvictionCount());
+        Assert.assertEquals(1, this.cache.getSoftSize());
+
+        Assert.assertSame(status2, this.cache.get(status2.getRequest().getId()));
+    }
+
+    @Test
+    public void testWeighStatusContent()
+    {
+        JobStatus status = new DefaultJobStatus<Request>(new DefaultRequest(), null, null, false)
+        {
+            @Override
+            protected long getWeight()
+            {
+                return 3;
+            }
+        };
+        status.getLog().info("message");
+
+        Assert.assertEquals(5, this.cache.weigh(status));
+    }
+
+    @Test
+    public void testNoStatusBoundedSeparately() throws Exception
+    {
+        this.cache = new JobStatusCache(10, 2);
+
+        JobStatus status = status(8, "id");
+        this.cache.put(status.getRequest().getId(), status);
+
+        for (int i = 0; i < 3; ++i) {
+            Assert.assertSame(JobStatusCache.NOSTATUS,
+                this.cache.get(Arrays.asList("unknown" + i), loader(JobStatusCache.NOSTATUS)));
+        }
+
+        Assert.assertEquals(2, this.cache.getNoStatusSize());
+        Assert.assertNull(this.cache.get(Arrays.asList("unknown0")));
+        Assert.assertSame(JobStatusCache.NOSTATUS, this.cache.get(Arrays.asList("unknown2")));
+
+        // The actual statuses are not impacted
+        Assert.assertSame(status, this.cache.get(status.getRequest().getId()));
+        Assert.assertEquals(9, this.cache.getWeight());
+        Assert.assertEquals(0, this.cache.getEvictionCount());
+
+        // Storing a status replaces the absence of status
+        JobStatus status2 = status(0, "unknown2");
+        this.cache.put(status2.getRequest().getId(), status2);
+
+        Assert.assertEquals(1, this.cache.getNoStatusSize());
+        Assert.assertSame(status2, this.cache.get(Arrays.asList("unknown2")));
+    }
+
+    @Test
+    public void testGetWithLoader() throws Exception
+    {
+        JobStatus status = status(0, "id");
+
+        Assert.assertSame(status, this.cache.get(status.getRequest().getId(), loader(status)));
+        Assert.assertSame(status, this.cache.get(status.getRequest().getId(), loader(null)));
+
+        Assert.assertEquals(1, this.cache.getMissCount());
+        Assert.assertEquals(1, this.cache.getHitCount());
+    }
+
+    @Test
+    public void testNullNotCached() throws Exception
+    {
+        List<String> id = Arrays.asList("id");
+
+        Assert.assertNull(this.cache.get(id, loader(null)));
+        Assert.assertNull(this.cache.get(id));
+        Assert.assertEquals(0, this.cache.getSize());
+    }
+
+    @Test
+    public void testNullId() throws Exception
+    {
+        JobStatus status = status(0);
+
+        Assert.assertSame(status, this.cache.get(null, loader(status)));
+        Assert.assertSame(status, this.cache.get(null));
+
+        this.cache.remove(null);
+
+        Assert.assertNull(this.cache.get(null));
+    }
+
+    @Test
+    public void testRemoveChildren()
+    {
+        JobStatus status1 = status(0, "id1");
+        JobStatus status2 = status(0, "id1", "id2");
+        JobStatus status3 = status(0, "id3");
+
+        this.cache.put(status1.getRequest().getId(), status1);
+        this.cache.put(status2.getRequest().getId(), status2);
+        this.cache.put(status3.getRequest().getId(), status3);
+
+        this.cache.remove(Arrays.asList("id1"));
+
+        Assert.assertNull(this.cache.get(status1.getRequest().getId()));
+        Assert.assertNull(this.cache.get(status2.getRequest().getId()));
+        Assert.assertSame(status3, this.cache.get(status3.getRequest().getId()));
+        Assert.assertEquals(1, this.cache.getWeight());
+    }
+
+    @Test
+    public void testConcurrentLoad() throws Exception
+    {
+        final List<String> id = Arrays.asList("id");
+        final JobStatus status = status(0, "id");
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final Callable<JobStatus> slowLoader = new Callable<JobStatus>()
+        {
+            @Override
+            public JobStatus call() throws Exception
+            {
+                loads.incrementAndGet();
+                loading.countDown();
+                release.await();
+
+                return status;
+            }
+        };
+
+        Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    cache.get(id, slowLoader);
+                } catch (Exception e) {
+                    // Should never happen
+                }
+            }
+        });
+        thread.start();
+
+        loading.await();
+
+        // Another id is not blocked by the load
+        Assert.assertNull(this.cache.get(Arrays.asList("other"), loader(null)));
+
+        release.countDown();
+
+        Assert.assertSame(status, this.cache.get(id, slowLoader));
+
+        thread.join();
+
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testLoadDoesNotOverrideStore() throws Exception
+    {
+        final List<String> id = Arrays.asList("id");
+        final JobStatus storedStatus = status(0, "id");
+
+        JobStatus loadedStatus = this.cache.get(id, new Callable<JobStatus>()
+        {
+            @Override
+            public JobStatus call() throws Exception
+            {
+                // Stored while loading
+                cache.put(id, storedStatus);
+
+                return status(0, "id");
+            }
+        });
+
+        Assert.assertNotSame(storedStatus, loadedStatus);
+        Assert.assertSame(storedStatus, this.cache.get(id));
+    }
+}
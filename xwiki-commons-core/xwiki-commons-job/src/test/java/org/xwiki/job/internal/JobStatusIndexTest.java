@@ -0,0 +1,212 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.job.event.status.JobStatus.State;
+
+/**
+ * Validate {@link JobStatusIndex}.
+ *
+ * @version $Id$
+ */
+public class JobStatusIndexTest
+{
+    private File indexFile = new File("target/test/index/index");
+
+    private JobStatusIndex index;
+
+    @Before
+    public void before() throws IOException
+    {
+        FileUtils.deleteDirectory(this.indexFile.getParentFile());
+
+        this.index = new JobStatusIndex(this.indexFile);
+    }
+
+    @After
+    public void after()
+    {
+        this.index.close();
+    }
+
+    private JobStatusIndex.Entry entry(String... id)
+    {
+        return new JobStatusIndex.Entry(Arrays.asList(id), id[id.length - 1], State.FINISHED, new Date(0), new Date(
+            1), 42);
+    }
+
+    private JobStatusIndex reload()
+    {
+        this.index.close();
+
+        this.index = new JobStatusIndex(this.indexFile);
+
+        Assert.assertTrue(this.index.load());
+
+        return this.index;
+    }
+
+    // Tests
+
+    @Test
+    public void testLoadMissing()
+    {
+        Assert.assertFalse(this.index.load());
+    }
+
+    @Test
+    public void testLoadInvalid() throws IOException
+    {
+        this.index.put(entry("id1"));
+        this.index.close();
+
+        // Truncate the last record
+        byte[] content = FileUtils.readFileToByteArray(this.indexFile);
+        FileUtils.writeByteArrayToFile(this.indexFile, Arrays.copyOf(content, content.length - 1));
+
+        Assert.assertFalse(new JobStatusIndex(this.indexFile).load());
+    }
+
+    @Test
+    public void testLoadInvalidRecordLength() throws IOException
+    {
+        this.index.put(entry("id1"));
+        this.index.close();
+
+        byte[] content = FileUtils.readFileToByteArray(this.indexFile);
+
+        // Replace the length of the first record (right after the magic number and the version)
+        for (int length : new int[] {-1, Integer.MAX_VALUE}) {
+            ByteBuffer.wrap(content).putInt(8, length);
+            FileUtils.writeByteArrayToFile(this.indexFile, content);
+
+            Assert.assertFalse(new JobStatusIndex(this.indexFile).load());
+        }
+    }
+
+    @Test
+    public void testPutAfterClose() throws IOException
+    {
+        this.index.put(entry("id1"));
+        this.index.close();
+
+        this.index.put(entry("id2"));
+
+        Assert.assertNull(reload().get(Arrays.asList("id2")));
+        Assert.assertEquals(1, this.index.size());
+    }
+
+    @Test
+    public void testPutAndReload() throws IOException
+    {
+        this.index.put(entry("id1"));
+        this.index.put(entry("id1", "id2"));
+
+        JobStatusIndex.Entry entry = reload().get(Arrays.asList("id1", "id2"));
+
+        Assert.assertEquals(2, this.index.size());
+        Assert.assertEquals("id2", entry.getFolder());
+        Assert.assertEquals(State.FINISHED, entry.getState());
+        Assert.assertEquals(new Date(0), entry.getStartDate());
+        Assert.assertEquals(new Date(1), entry.getEndDate());
+        Assert.assertEquals(42, entry.getSize());
+    }
+
+    @Test
+    public void testRemoveChildren() throws IOException
+    {
+        this.index.put(entry("id1"));
+        this.index.put(entry("id1", "id2"));
+        this.index.put(entry("id3"));
+
+        this.index.remove(Arrays.asList("id1"));
+
+        List<JobStatusIndex.Entry> entries = reload().getEntries();
+
+        Assert.assertEquals(1, entries.size());
+        Assert.assertEquals(Arrays.asList("id3"), entries.get(0).getId());
+    }
+
+    @Test
+    public void testRemoveEntryKeepChildren() throws IOException
+    {
+        this.index.put(entry("id1"));
+        this.index.put(entry("id1", "id2"));
+
+        this.index.removeEntry(Arrays.asList("id1"));
+
+        List<JobStatusIndex.Entry> entries = reload().getEntries();
+
+        Assert.assertEquals(1, entries.size());
+        Assert.assertEquals(Arrays.asList("id1", "id2"), entries.get(0).getId());
+    }
+
+    @Test
+    public void testCompact() throws IOException
+    {
+        for (int i = 0; i < 5000; ++i) {
+            this.index.put(entry("id", String.valueOf(i % 10)));
+        }
+
+        Assert.assertEquals(10, reload().size());
+        Assert.assertTrue(this.indexFile.length() < 100000);
+    }
+
+    @Test
+    public void testRebuild() throws IOException
+    {
+        this.index.startRebuild();
+
+        // Modifications done during the rebuild win
+        this.index.put(entry("stored"));
+        this.index.remove(Arrays.asList("removed"));
+
+        this.index.endRebuild(Arrays.asList(entry("stored"), entry("removed", "child"), entry("found")));
+
+        Assert.assertEquals(2, reload().size());
+        Assert.assertNotNull(this.index.get(Arrays.asList("stored")));
+        Assert.assertNotNull(this.index.get(Arrays.asList("found")));
+        Assert.assertNull(this.index.get(Arrays.asList("removed", "child")));
+    }
+
+    @Test
+    public void testRemoveAll() throws IOException
+    {
+        this.index.put(entry("id1"));
+        this.index.put(entry("id2"));
+
+        this.index.remove(Collections.<String>emptyList());
+
+        Assert.assertEquals(0, reload().size());
+    }
+}
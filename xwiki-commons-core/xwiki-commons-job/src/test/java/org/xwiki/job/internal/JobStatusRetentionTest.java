@@ -0,0 +1,107 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.job.event.status.JobStatus.State;
+
+/**
+ * Validate {@link JobStatusRetention}.
+ *
+ * @version $Id$
+ */
+public class JobStatusRetentionTest
+{
+    private JobStatusIndex.Entry entry(State state, long endTime, long size, String... id)
+    {
+        return new JobStatusIndex.Entry(Arrays.asList(id), id[id.length - 1], state, new Date(0),
+            new Date(endTime), size);
+    }
+
+    private JobStatusIndex.Entry entry(long endTime, String... id)
+    {
+        return entry(State.FINISHED, endTime, 10, id);
+    }
+
+    // Tests
+
+    @Test
+    public void testDisabled()
+    {
+        JobStatusRetention retention = new JobStatusRetention(0, 0, 0);
+
+        Assert.assertFalse(retention.isEnabled());
+        Assert.assertTrue(retention.getExpired(Arrays.asList(entry(0, "id")), 1000).isEmpty());
+    }
+
+    @Test
+    public void testMaxAge()
+    {
+        JobStatusRetention retention = new JobStatusRetention(100, 0, 0);
+
+        JobStatusIndex.Entry oldEntry = entry(800, "type", "old");
+        JobStatusIndex.Entry recentEntry = entry(950, "type", "recent");
+        JobStatusIndex.Entry runningEntry = entry(State.RUNNING, 0, 10, "type", "running");
+
+        List<JobStatusIndex.Entry> expired =
+            retention.getExpired(Arrays.asList(oldEntry, recentEntry, runningEntry), 1000);
+
+        Assert.assertEquals(Arrays.asList(oldEntry), expired);
+    }
+
+    @Test
+    public void testMaxCountPerType()
+    {
+        JobStatusRetention retention = new JobStatusRetention(0, 2, 0);
+
+        JobStatusIndex.Entry entry1 = entry(1, "type1", "1");
+        JobStatusIndex.Entry entry2 = entry(2, "type1", "2");
+        JobStatusIndex.Entry entry3 = entry(3, "type1", "3");
+        JobStatusIndex.Entry entry4 = entry(4, "type1", "4");
+        JobStatusIndex.Entry other = entry(0, "type2", "1");
+
+        List<JobStatusIndex.Entry> expired =
+            retention.getExpired(Arrays.asList(entry3, entry1, other, entry4, entry2), 1000);
+
+        Assert.assertEquals(Arrays.asList(entry1, entry2), expired);
+    }
+
+    @Test
+    public void testMaxSize()
+    {
+        JobStatusRetention retention = new JobStatusRetention(0, 0, 25);
+
+        JobStatusIndex.Entry entry1 = entry(State.FINISHED, 1, 5, "1");
+        JobStatusIndex.Entry entry2 = entry(State.FINISHED, 2, 10, "2");
+        JobStatusIndex.Entry entry3 = entry(State.FINISHED, 3, 10, "3");
+        JobStatusIndex.Entry runningEntry = entry(State.RUNNING, 0, 10, "running");
+
+        List<JobStatusIndex.Entry> expired =
+            retention.getExpired(Arrays.asList(entry1, entry2, entry3, runningEntry), 1000);
+
+        // The smaller oldest status expires too even if it would fit
+        Assert.assertEquals(Arrays.asList(entry1, entry2), expired);
+    }
+}
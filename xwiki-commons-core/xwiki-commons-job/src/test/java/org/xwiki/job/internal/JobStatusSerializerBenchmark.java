@@ -0,0 +1,118 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.job.DefaultRequest;
+import org.xwiki.job.Request;
+import org.xwiki.job.event.status.JobStatus;
+
+/**
+ * Compare the size and the load time of the XML and binary job status formats. Not executed with the other tests (the
+ * name does not end with "Test"), use {@code mvn test -Pbenchmark} to run it.
+ *
+ * @version $Id$
+ */
+public class JobStatusSerializerBenchmark
+{
+    /**
+     * The number of executions not measured, to let the JIT compile the code.
+     */
+    private static final int WARMUP = 5;
+
+    private static final int ITERATIONS = 10;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobStatusSerializerBenchmark.class);
+
+    private final File xmlFile = new File("target/benchmark/status.xml");
+
+    private final File binaryFile = new File("target/benchmark/status.bin");
+
+    private JobStatus createStatus(int logSize)
+    {
+        DefaultRequest request = new DefaultRequest();
+        request.setId(Arrays.asList("benchmark", String.valueOf(logSize)));
+
+        DefaultJobStatus<Request> status = new DefaultJobStatus<Request>(request, null, null, false);
+        status.setState(JobStatus.State.FINISHED);
+
+        for (int i = 0; i < logSize; ++i) {
+            if (i % 100 == 0) {
+                status.getLog().error("Failed to install extension [{}]", "extension" + i, new Exception("error"));
+            } else {
+                status.getLog().info("Resolving extension [{}] on namespace [{}]", "extension" + i, "wiki:xwiki");
+            }
+        }
+
+        return status;
+    }
+
+    private long measureRead(BinaryJobStatusSerializer reader, File file, boolean headerOnly, int expectedLogSize)
+    {
+        long time = 0;
+        for (int i = 0; i < WARMUP + ITERATIONS; ++i) {
+            long start = System.nanoTime();
+            JobStatus status = headerOnly ? reader.readHeader(file) : reader.read(file);
+            if (i >= WARMUP) {
+                time += System.nanoTime() - start;
+            }
+
+            Assert.assertEquals(expectedLogSize, status.getLog().size());
+        }
+
+        return time / ITERATIONS / 1000;
+    }
+
+    private void benchmark(int logSize) throws IOException, ParserConfigurationException
+    {
+        JobStatus status = createStatus(logSize);
+
+        BinaryJobStatusSerializer binarySerializer = new BinaryJobStatusSerializer();
+        new JobStatusSerializer().write(status, this.xmlFile);
+        binarySerializer.write(status, this.binaryFile);
+
+        long xmlTime = measureRead(binarySerializer, this.xmlFile, false, logSize);
+        long binaryTime = measureRead(binarySerializer, this.binaryFile, false, logSize);
+        long headerTime = measureRead(binarySerializer, this.binaryFile, true, 0);
+
+        LOGGER.info(String.format("%,7d log events: xml %,11d bytes %,9d us | binary %,9d bytes %,9d us"
+            + " (header only %,6d us)", logSize, this.xmlFile.length(), xmlTime, this.binaryFile.length(), binaryTime,
+            headerTime));
+
+        Assert.assertTrue(this.binaryFile.length() < this.xmlFile.length());
+    }
+
+    @Test
+    public void benchmark() throws IOException, ParserConfigurationException
+    {
+        benchmark(10);
+        benchmark(1000);
+        benchmark(10000);
+    }
+}
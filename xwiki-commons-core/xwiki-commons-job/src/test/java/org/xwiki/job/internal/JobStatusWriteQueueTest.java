@@ -0,0 +1,186 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.job.DefaultRequest;
+import org.xwiki.job.Request;
+import org.xwiki.job.event.status.JobStatus;
+
+/**
+ * Validate {@link JobStatusWriteQueue}.
+ *
+ * @version $Id$
+ */
+public class JobStatusWriteQueueTest
+{
+    private final List<JobStatus> written = new CopyOnWriteArrayList<JobStatus>();
+
+    private final CountDownLatch blocked = new CountDownLatch(1);
+
+    private final CountDownLatch unblock = new CountDownLatch(1);
+
+    private JobStatusWriteQueue queue;
+
+    @Before
+    public void before()
+    {
+        this.queue = new JobStatusWriteQueue(1, 2, Executors.defaultThreadFactory(), new JobStatusWriteQueue.Writer()
+        {
+            @Override
+            public void write(JobStatus status)
+            {
+                if (status.getRequest().getId().contains("blocking")) {
+                    blocked.countDown();
+                    try {
+                        unblock.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                written.add(status);
+            }
+        });
+    }
+
+    @After
+    public void after() throws InterruptedException
+    {
+        this.unblock.countDown();
+        this.queue.close(1000);
+    }
+
+    private JobStatus status(String... id)
+    {
+        DefaultRequest request = new DefaultRequest();
+        request.setId(Arrays.asList(id));
+
+        return new DefaultJobStatus<Request>(request, null, null, false);
+    }
+
+    private void block() throws InterruptedException
+    {
+        this.queue.add(status("blocking"));
+        this.blocked.await();
+    }
+
+    // Tests
+
+    @Test
+    public void testCoalesce() throws InterruptedException
+    {
+        block();
+
+        JobStatus status1 = status("id");
+        JobStatus status2 = status("id");
+        this.queue.add(status1);
+        this.queue.add(status2);
+
+        Assert.assertEquals(1, this.queue.getSize());
+        Assert.assertEquals(1, this.queue.getCoalescedCount());
+
+        this.unblock.countDown();
+        this.queue.flush();
+
+        Assert.assertEquals(2, this.written.size());
+        Assert.assertSame(status2, this.written.get(1));
+        Assert.assertEquals(2, this.queue.getWriteCount());
+    }
+
+    @Test
+    public void testWriteNowCancelPending() throws InterruptedException
+    {
+        block();
+
+        this.queue.add(status("id"));
+
+        JobStatus status = status("id");
+
+        this.queue.writeNow(status);
+
+        Assert.assertEquals(0, this.queue.getSize());
+        Assert.assertEquals(1, this.written.size());
+        Assert.assertSame(status, this.written.get(0));
+
+        this.unblock.countDown();
+        this.queue.flush();
+
+        Assert.assertEquals(2, this.written.size());
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException
+    {
+        block();
+
+        this.queue.add(status("id", "child"));
+        this.queue.add(status("other"));
+
+        this.queue.cancel(Arrays.asList("id"));
+
+        this.unblock.countDown();
+        this.queue.flush();
+
+        Assert.assertEquals(2, this.written.size());
+        Assert.assertEquals(Arrays.asList("other"), this.written.get(1).getRequest().getId());
+    }
+
+    @Test
+    public void testCloseWritePending() throws InterruptedException
+    {
+        block();
+
+        this.queue.add(status("id1"));
+        this.queue.add(status("id2"));
+
+        this.unblock.countDown();
+        this.queue.close(10000);
+
+        Assert.assertEquals(3, this.written.size());
+        Assert.assertEquals(0, this.queue.getSize());
+
+        // Written synchronously once closed
+        this.queue.add(status("id3"));
+
+        Assert.assertEquals(4, this.written.size());
+    }
+
+    @Test
+    public void testCloseTimeout() throws InterruptedException
+    {
+        block();
+
+        this.queue.add(status("id"));
+
+        // The blocked write is interrupted and the pending one is dropped
+        Assert.assertEquals(1, this.queue.close(100));
+        Assert.assertEquals(0, this.queue.getSize());
+    }
+}
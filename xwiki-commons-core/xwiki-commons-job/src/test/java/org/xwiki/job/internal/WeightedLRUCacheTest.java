@@ -0,0 +1,152 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Validate {@link WeightedLRUCache}.
+ *
+ * @version $Id$
+ */
+public class WeightedLRUCacheTest
+{
+    private final List<String> evicted = new ArrayList<String>();
+
+    private final WeightedLRUCache<String, String> cache = new WeightedLRUCache<String, String>(10)
+    {
+        @Override
+        protected void evicted(String key, String value)
+        {
+            WeightedLRUCacheTest.this.evicted.add(key);
+        }
+    };
+
+    @Test
+    public void testEvictLeastRecentlyUsedByWeight()
+    {
+        Assert.assertTrue(this.cache.put("a", "A", 4));
+        Assert.assertTrue(this.cache.put("b", "B", 4));
+
+        // Access "a" so that "b" becomes the least recently used
+        Assert.assertEquals("A", this.cache.get("a"));
+
+        Assert.assertTrue(this.cache.put("c", "C", 4));
+
+        Assert.assertEquals(Arrays.asList("b"), this.evicted);
+        Assert.assertNull(this.cache.get("b"));
+        Assert.assertEquals(2, this.cache.getCount());
+        Assert.assertEquals(8, this.cache.getWeight());
+        Assert.assertEquals(1, this.cache.getEvictionCount());
+    }
+
+    @Test
+    public void testReplaceUpdatesWeight()
+    {
+        this.cache.put("a", "A", 4);
+        this.cache.put("a", "AA", 6);
+
+        Assert.assertEquals(1, this.cache.getCount());
+        Assert.assertEquals(6, this.cache.getWeight());
+        Assert.assertEquals("AA", this.cache.get("a"));
+    }
+
+    @Test
+    public void testSkipHeavierThanMaxWeight()
+    {
+        this.cache.put("a", "A", 4);
+
+        Assert.assertFalse(this.cache.put("big", "BIG", 11));
+
+        // Nothing has been evicted for it
+        Assert.assertEquals("A", this.cache.get("a"));
+        Assert.assertNull(this.cache.get("big"));
+        Assert.assertEquals(0, this.cache.getEvictionCount());
+
+        // A value which became too heavy is not kept
+        Assert.assertFalse(this.cache.put("a", "AAA", 20));
+        Assert.assertNull(this.cache.get("a"));
+        Assert.assertEquals(0, this.cache.getWeight());
+    }
+
+    @Test
+    public void testMaxCount()
+    {
+        WeightedLRUCache<String, String> countCache = new WeightedLRUCache<String, String>(100, 2);
+
+        countCache.put("a", "A", 1);
+        countCache.put("b", "B", 1);
+        countCache.put("c", "C", 1);
+
+        Assert.assertEquals(2, countCache.getCount());
+        Assert.assertFalse(countCache.containsKey("a"));
+        Assert.assertEquals(Arrays.asList("b", "c"), new ArrayList<String>(countCache.getAll().keySet()));
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        WeightedLRUCache<String, String> disabledCache = new WeightedLRUCache<String, String>(0);
+
+        Assert.assertFalse(disabledCache.isEnabled());
+        Assert.assertFalse(disabledCache.put("a", "A", 0));
+        Assert.assertNull(disabledCache.get("a"));
+        Assert.assertEquals(0, disabledCache.getCount());
+    }
+
+    @Test
+    public void testMetrics()
+    {
+        this.cache.put("a", "A", 1);
+
+        this.cache.get("a");
+        this.cache.get("a");
+        this.cache.get("b");
+
+        // Not a lookup
+        this.cache.containsKey("b");
+
+        Assert.assertEquals(2, this.cache.getHitCount());
+        Assert.assertEquals(1, this.cache.getMissCount());
+        Assert.assertEquals(2.0 / 3, this.cache.getHitRate(), 0.0001);
+    }
+
+    @Test
+    public void testRemoveAndClear()
+    {
+        this.cache.put("a", "A", 3);
+        this.cache.put("b", "B", 3);
+
+        Assert.assertEquals("A", this.cache.remove("a"));
+        Assert.assertNull(this.cache.remove("a"));
+        Assert.assertEquals(3, this.cache.getWeight());
+
+        this.cache.clear();
+
+        Assert.assertEquals(0, this.cache.getCount());
+        Assert.assertEquals(0, this.cache.getWeight());
+        Assert.assertTrue(this.evicted.isEmpty());
+    }
+}
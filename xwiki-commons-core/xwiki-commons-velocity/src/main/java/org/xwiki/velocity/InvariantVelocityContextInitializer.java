@@ -0,0 +1,36 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * A {@link VelocityContextInitializer} which always puts the same entries in the Velocity contexts, whatever the
+ * request. Such initializers are called only once, to prepare a prototype whose entries are copied in all the contexts
+ * created by the {@link VelocityContextFactory}, instead of being called for each new context. The entries must
+ * therefore be safe to share between contexts.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+@Unstable
+public interface InvariantVelocityContextInitializer extends VelocityContextInitializer
+{
+}
@@ -19,7 +19,12 @@
  */
 package org.xwiki.velocity.internal;
 
+import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import javax.inject.Inject;
@@ -29,10 +34,13 @@
 import org.apache.velocity.context.Context;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.descriptor.ComponentDescriptor;
+import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.velocity.InvariantVelocityContextInitializer;
 import org.xwiki.velocity.VelocityConfiguration;
 import org.xwiki.velocity.VelocityContextFactory;
 import org.xwiki.velocity.VelocityContextInitializer;
@@ -40,6 +48,11 @@
 
 /**
  * Default implementation for {@link VelocityContextFactory}.
+ * <p>
+ * The entries of the {@link InvariantVelocityContextInitializer}s are computed once in a prototype and copied in each
+ * new context, only the other initializers being called for each new context. The Velocity tools are shared through
+ * the read-only internal context of each new context. The prototype is rebuilt when a
+ * {@link VelocityContextInitializer} is registered or unregistered (see {@link VelocityContextInitializerListener}).
  *
  * @version $Id$
  */
@@ -72,6 +85,41 @@ public class DefaultVelocityContextFactory implements VelocityContextFactory, In
      */
     private Context toolsContext;
 
+    /**
+     * The prototype of the contexts, {@code null} when it needs to be (re)built.
+     */
+    private volatile ContextPrototype prototype;
+
+    /**
+     * The shared part of the new contexts.
+     *
+     * @version $Id$
+     */
+    private static final class ContextPrototype
+    {
+        /**
+         * The entries of the invariant initializers.
+         */
+        private final Map<String, Object> entries;
+
+        /**
+         * The initializers to call for each new context, {@code null} if they have to be looked up for each new
+         * context.
+         */
+        private final List<VelocityContextInitializer> initializers;
+
+        /**
+         * @param entries the entries of the invariant initializers
+         * @param initializers the initializers to call for each new context, {@code null} if they have to be looked
+         *            up for each new context
+         */
+        ContextPrototype(Map<String, Object> entries, List<VelocityContextInitializer> initializers)
+        {
+            this.entries = entries;
+            this.initializers = initializers;
+        }
+    }
+
     @Override
     public void initialize() throws InitializationException
     {
@@ -98,18 +146,103 @@ public void initialize() throws InitializationException
     @Override
     public VelocityContext createContext() throws XWikiVelocityException
     {
+        ContextPrototype currentPrototype = getPrototype();
+
+        // Copy the entries of the invariant initializers so that they can be listed and removed like the other entries.
         // Note: This constructor uses the passed context as an internal read-only context.
-        VelocityContext context = new VelocityContext(this.toolsContext);
+        VelocityContext context =
+            new VelocityContext(new HashMap<String, Object>(currentPrototype.entries), this.toolsContext);
 
-        // Call all components implementing the VelocityContextInitializer's role.
-        try {
-            for (Object interceptor : this.componentManager.getInstanceList(VelocityContextInitializer.class)) {
-                ((VelocityContextInitializer) interceptor).initialize(context);
+        // Call the components implementing the VelocityContextInitializer's role which depend on the request.
+        List<VelocityContextInitializer> initializers = currentPrototype.initializers;
+        if (initializers == null) {
+            initializers = getRequestInitializers(lookupInitializers());
+        }
+        for (VelocityContextInitializer initializer : initializers) {
+            initializer.initialize(context);
+        }
+
+        return context;
+    }
+
+    /**
+     * Forget the current prototype of the contexts so that it's rebuilt when the next context is created.
+     *
+     * @since 7.0M1
+     */
+    public synchronized void reset()
+    {
+        this.prototype = null;
+    }
+
+    private ContextPrototype getPrototype() throws XWikiVelocityException
+    {
+        ContextPrototype currentPrototype = this.prototype;
+
+        if (currentPrototype == null) {
+            synchronized (this) {
+                currentPrototype = this.prototype;
+                if (currentPrototype == null) {
+                    currentPrototype = createPrototype();
+                    this.prototype = currentPrototype;
+                }
             }
+        }
+
+        return currentPrototype;
+    }
+
+    private ContextPrototype createPrototype() throws XWikiVelocityException
+    {
+        List<VelocityContextInitializer> initializers = lookupInitializers();
+
+        Map<String, Object> entries = new HashMap<String, Object>();
+        VelocityContext context = new VelocityContext(entries, this.toolsContext);
+        for (VelocityContextInitializer initializer : initializers) {
+            if (initializer instanceof InvariantVelocityContextInitializer) {
+                initializer.initialize(context);
+            }
+        }
+
+        return new ContextPrototype(entries, isPerLookup() ? null : getRequestInitializers(initializers));
+    }
+
+    private List<VelocityContextInitializer> lookupInitializers() throws XWikiVelocityException
+    {
+        try {
+            return this.componentManager.getInstanceList(VelocityContextInitializer.class);
         } catch (ComponentLookupException e) {
             throw new XWikiVelocityException("Failed to locate some Velocity Context initializers", e);
         }
+    }
 
-        return context;
+    private List<VelocityContextInitializer> getRequestInitializers(List<VelocityContextInitializer> initializers)
+    {
+        List<VelocityContextInitializer> requestInitializers =
+            new ArrayList<VelocityContextInitializer>(initializers.size());
+        for (VelocityContextInitializer initializer : initializers) {
+            if (!(initializer instanceof InvariantVelocityContextInitializer)) {
+                requestInitializers.add(initializer);
+            }
+        }
+
+        return requestInitializers;
+    }
+
+    /**
+     * @return {@code true} if some initializers are created each time they are looked up, in which case they can't be
+     *         kept between contexts
+     */
+    private boolean isPerLookup()
+    {
+        List<ComponentDescriptor<VelocityContextInitializer>> descriptors =
+            this.componentManager.getComponentDescriptorList((Type) VelocityContextInitializer.class);
+        for (ComponentDescriptor<VelocityContextInitializer> descriptor : descriptors) {
+            if (descriptor.getInstantiationStrategy() == ComponentInstantiationStrategy.PER_LOOKUP) {
+                return true;
+            }
+        }
+
+        return false;
     }
 }
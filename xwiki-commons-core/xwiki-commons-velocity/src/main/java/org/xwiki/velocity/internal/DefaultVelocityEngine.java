@@ -23,9 +23,7 @@
 import java.io.StringReader;
 import java.io.Writer;
 import java.util.Enumeration;
-import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 
@@ -68,6 +66,41 @@ public class DefaultVelocityEngine extends AbstractSLF4JLogChute implements Velo
      */
     private static final String TEMPLATE_SCOPE_NAME = "template";
 
+    /**
+     * The Velocity property holding the maximum number of parsed templates to keep in cache, 0 to disable the cache.
+     * Since each thread gets its own macro namespace, a template rendered by several threads is cached once per thread:
+     * the value should be about the number of distinct templates times the number of threads rendering them.
+     */
+    private static final String TEMPLATE_CACHE_MAXCOUNT = "xwiki.template.cache.maxcount";
+
+    /**
+     * The Velocity property holding the maximum total length of the sources of the parsed templates to keep in cache,
+     * 0 to disable the cache.
+     */
+    private static final String TEMPLATE_CACHE_MAXSIZE = "xwiki.template.cache.maxsize";
+
+    /**
+     * The Velocity property holding the time in milliseconds after which a macro namespace which is not used by any
+     * evaluation is evicted, 0 to never evict them.
+     */
+    private static final String MACRO_NAMESPACE_MAXIDLETIME = "xwiki.macro.namespace.maxidletime";
+
+    /**
+     * The Velocity property holding the maximum number of templates for which to collect evaluation statistics, 0 to
+     * disable the statistics.
+     */
+    private static final String TEMPLATE_METRICS_MAXCOUNT = "xwiki.template.metrics.maxcount";
+
+    private static final int DEFAULT_TEMPLATE_CACHE_MAXCOUNT = 1000;
+
+    private static final int DEFAULT_TEMPLATE_CACHE_MAXSIZE = 10000000;
+
+    private static final long DEFAULT_MACRO_NAMESPACE_MAXIDLETIME = 3600000L;
+
+    private static final int DEFAULT_TEMPLATE_METRICS_MAXCOUNT = 1000;
+
+    private static final int READ_BUFFER_SIZE = 4096;
+
     /**
      * Used to set it as a Velocity Application Attribute so that Velocity extensions done by XWiki can use it to lookup
      * other components.
@@ -104,8 +137,20 @@ public class DefaultVelocityEngine extends AbstractSLF4JLogChute implements Velo
      */
     private RuntimeServices rsvc;
 
-    /** Counter for the number of active rendering processes using each namespace. */
-    private final Map<String, Integer> namespaceUsageCount = new ConcurrentHashMap<String, Integer>();
+    /**
+     * The macro namespaces currently used.
+     */
+    private MacroNamespaces macroNamespaces;
+
+    /**
+     * The parsed templates, null if the cache is disabled.
+     */
+    private ParsedTemplateCache templateCache;
+
+    /**
+     * The statistics about the evaluated templates, null if they are disabled.
+     */
+    private TemplateMetrics templateMetrics;
 
     @Override
     public void initialize(Properties overridingProperties) throws XWikiVelocityException
@@ -128,6 +173,48 @@ public void initialize(Properties overridingProperties) throws XWikiVelocityExce
         }
 
         this.engine = velocityEngine;
+
+        long macroNamespaceMaxIdleTime =
+            this.rsvc.getConfiguration().getLong(MACRO_NAMESPACE_MAXIDLETIME, DEFAULT_MACRO_NAMESPACE_MAXIDLETIME);
+        this.macroNamespaces = new MacroNamespaces(this.rsvc, macroNamespaceMaxIdleTime);
+
+        int templateCacheMaxCount = this.rsvc.getInt(TEMPLATE_CACHE_MAXCOUNT, DEFAULT_TEMPLATE_CACHE_MAXCOUNT);
+        int templateCacheMaxSize = this.rsvc.getInt(TEMPLATE_CACHE_MAXSIZE, DEFAULT_TEMPLATE_CACHE_MAXSIZE);
+        if (templateCacheMaxCount > 0 && templateCacheMaxSize > 0) {
+            this.templateCache = new ParsedTemplateCache(templateCacheMaxCount, templateCacheMaxSize);
+        }
+
+        int templateMetricsMaxCount = this.rsvc.getInt(TEMPLATE_METRICS_MAXCOUNT, DEFAULT_TEMPLATE_METRICS_MAXCOUNT);
+        if (templateMetricsMaxCount > 0) {
+            this.templateMetrics = new TemplateMetrics(templateMetricsMaxCount);
+        }
+    }
+
+    /**
+     * @return the cache of the parsed templates, null if it's disabled
+     * @since 7.0M1
+     */
+    public ParsedTemplateCache getParsedTemplateCache()
+    {
+        return this.templateCache;
+    }
+
+    /**
+     * @return the macro namespaces currently used
+     * @since 7.0M1
+     */
+    public MacroNamespaces getMacroNamespaces()
+    {
+        return this.macroNamespaces;
+    }
+
+    /**
+     * @return the statistics about the evaluated templates, null if they are disabled
+     * @since 7.0M1
+     */
+    public TemplateMetrics getTemplateMetrics()
+    {
+        return this.templateMetrics;
     }
 
     /**
@@ -186,11 +273,6 @@ private void restoreTemplateScope(InternalContextAdapterImpl ica, Scope currentT
         }
     }
 
-    private String toThreadSafeNamespace(String namespace)
-    {
-        return StringUtils.isNotEmpty(namespace) ? Thread.currentThread().getId() + ":" + namespace : namespace;
-    }
-
     @Override
     public boolean evaluate(Context context, Writer out, String templateName, String source)
         throws XWikiVelocityException
@@ -210,35 +292,42 @@ public boolean evaluate(Context context, Writer out, String templateName, Reader
 
         // Velocity macros handling is all but thread safe. We try to make sure that the same namespace is not going to
         // be manipulated by several threads at the same time
-        String namespace = toThreadSafeNamespace(templateName);
+        String namespace = this.macroNamespaces.getNamespace(templateName);
+
+        Writer writer = this.templateMetrics != null ? this.templateMetrics.start(out) : out;
+        boolean failed = true;
 
         // We override the default implementation here. See #init(RuntimeServices)
         // for explanations.
         try {
             if (StringUtils.isNotEmpty(namespace)) {
-                startedUsingMacroNamespaceInternal(namespace);
+                this.macroNamespaces.startedUsing(namespace, true);
             }
 
-            return evaluateInternal(context, out, namespace, source);
+            this.macroNamespaces.evictIdle();
+
+            boolean result = evaluateInternal(context, writer, namespace, source);
+
+            failed = false;
+
+            return result;
         } catch (Exception e) {
             throw new XWikiVelocityException("Failed to evaluate content with id [" + templateName + "]", e);
         } finally {
+            if (this.templateMetrics != null) {
+                this.templateMetrics.stop(templateName, failed);
+            }
             if (StringUtils.isNotEmpty(namespace)) {
-                stoppedUsingMacroNamespaceInternal(namespace);
+                this.macroNamespaces.stoppedUsing(namespace, true);
             }
         }
     }
 
     private boolean evaluateInternal(Context context, Writer out, String namespace, Reader source) throws Exception
     {
-        // The trick is done here: We use the signature that allows
-        // passing a boolean and we pass false, thus preventing Velocity
-        // from cleaning the namespace of its velocimacros even though the
-        // config property velocimacro.permissions.allow.inline.local.scope
-        // is set to true.
-        SimpleNode nodeTree = this.rsvc.parse(source, namespace, false);
+        ParsedTemplate template = getTemplate(namespace, source);
 
-        if (nodeTree != null) {
+        if (template != null) {
             InternalContextAdapterImpl ica =
                 new InternalContextAdapterImpl(context != null ? context : this.velocityContextFactory.createContext());
             ica.pushCurrentTemplateName(namespace);
@@ -252,8 +341,8 @@ private boolean evaluateInternal(Context context, Writer out, String namespace,
                 ica.put(TEMPLATE_SCOPE_NAME, templateScope);
             }
             try {
-                nodeTree.init(ica, this.rsvc);
-                nodeTree.render(ica, out);
+                initialize(template, ica);
+                template.getNodeTree().render(ica, out);
             } catch (StopCommand stop) {
                 // Check if we're supposed to stop here or not:
                 // - stop if the template is breaking explicitly on the provided $template
@@ -273,49 +362,94 @@ private boolean evaluateInternal(Context context, Writer out, String namespace,
         return false;
     }
 
-    @Override
-    public void clearMacroNamespace(String templateName)
+    /**
+     * @param namespace the macro namespace
+     * @param source the source of the template
+     * @return the cached template or the parsed source, null if Velocity failed to provide a parser
+     */
+    private ParsedTemplate getTemplate(String namespace, Reader source) throws Exception
     {
-        this.rsvc.dumpVMNamespace(toThreadSafeNamespace(templateName));
+        if (this.templateCache == null) {
+            SimpleNode nodeTree = parse(source, namespace);
+
+            return nodeTree != null ? new ParsedTemplate(null, namespace, nodeTree, 0) : null;
+        }
+
+        String content = read(source);
+        String key = this.templateCache.getKey(namespace, content);
+
+        ParsedTemplate template = this.templateCache.get(key);
+        if (template == null) {
+            SimpleNode nodeTree = parse(new StringReader(content), namespace);
+            if (nodeTree != null) {
+                template = new ParsedTemplate(key, namespace, nodeTree, content.length());
+            }
+        }
+
+        return template;
     }
 
-    @Override
-    public void startedUsingMacroNamespace(String namespace)
+    private SimpleNode parse(Reader source, String namespace) throws Exception
     {
-        startedUsingMacroNamespaceInternal(toThreadSafeNamespace(namespace));
+        // The trick is done here: We use the signature that allows
+        // passing a boolean and we pass false, thus preventing Velocity
+        // from cleaning the namespace of its velocimacros even though the
+        // config property velocimacro.permissions.allow.inline.local.scope
+        // is set to true.
+        return this.rsvc.parse(source, namespace, false);
+    }
+
+    private void initialize(ParsedTemplate template, InternalContextAdapterImpl ica) throws Exception
+    {
+        // Only cache the templates which could be initialized
+        if (template.init(ica, this.rsvc) && template.getKey() != null) {
+            this.templateCache.put(template.getKey(), template);
+        }
     }
 
-    private void startedUsingMacroNamespaceInternal(String namespace)
+    private String read(Reader source) throws Exception
     {
-        Integer count = this.namespaceUsageCount.get(namespace);
-        if (count == null) {
-            count = Integer.valueOf(0);
+        StringBuilder builder = new StringBuilder();
+
+        char[] buffer = new char[READ_BUFFER_SIZE];
+        for (int length = source.read(buffer); length != -1; length = source.read(buffer)) {
+            builder.append(buffer, 0, length);
         }
-        count = count + 1;
-        this.namespaceUsageCount.put(namespace, count);
+
+        return builder.toString();
     }
 
     @Override
-    public void stoppedUsingMacroNamespace(String namespace)
+    public void clearMacroNamespace(String templateName)
+    {
+        String namespace = this.macroNamespaces.getNamespace(templateName);
+
+        this.rsvc.dumpVMNamespace(namespace);
+
+        if (this.templateCache != null) {
+            // Make sure the next evaluations are parsed against the new state of the namespace
+            this.templateCache.remove(namespace);
+        }
+    }
+
+    @Override
+    public void startedUsingMacroNamespace(String namespace)
     {
-        stoppedUsingMacroNamespaceInternal(toThreadSafeNamespace(namespace));
+        this.macroNamespaces.startedUsing(this.macroNamespaces.getNamespace(namespace), false);
     }
 
-    private void stoppedUsingMacroNamespaceInternal(String namespace)
+    @Override
+    public void stoppedUsingMacroNamespace(String namespace)
     {
-        Integer count = this.namespaceUsageCount.get(namespace);
-        if (count == null) {
-            // This shouldn't happen
-            this.logger.warn("Wrong usage count for namespace [{}]", namespace);
+        String threadSafeNamespace = this.macroNamespaces.getNamespace(namespace);
+
+        if (!this.macroNamespaces.isUsed(threadSafeNamespace)) {
+            // This shouldn't happen, unless the namespace has been evicted after being idle for too long
+            this.logger.warn("Wrong usage count for namespace [{}]", threadSafeNamespace);
             return;
         }
-        count = count - 1;
-        if (count <= 0) {
-            this.namespaceUsageCount.remove(namespace);
-            this.rsvc.dumpVMNamespace(namespace);
-        } else {
-            this.namespaceUsageCount.put(namespace, count);
-        }
+
+        this.macroNamespaces.stoppedUsing(threadSafeNamespace, false);
     }
 
     @Override
@@ -0,0 +1,232 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.velocity.runtime.RuntimeServices;
+
+/**
+ * Manage the life cycle of the macro namespaces used by a Velocity engine.
+ * <p>
+ * Velocity macros handling is all but thread safe so each thread gets its own macro namespace for a given template
+ * name (see {@link #getNamespace(String)}): the macros registered while rendering a template in a thread are an overlay
+ * only visible from that thread, on top of the global macros. A namespace is dumped as soon as nobody uses it anymore.
+ * The namespaces which are still marked as used but which have not been touched for a while (usually because
+ * {@link org.xwiki.velocity.VelocityEngine#stoppedUsingMacroNamespace(String)} was never called) are evicted so that
+ * the macro tables of Velocity don't grow forever.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class MacroNamespaces
+{
+    private static final char THREAD_SEPARATOR = ':';
+
+    private final RuntimeServices runtimeServices;
+
+    /**
+     * The time in milliseconds after which a namespace which is not used by any evaluation is evicted, 0 to never
+     * evict them.
+     */
+    private final long maxIdleTime;
+
+    private final ConcurrentMap<String, Usage> usages = new ConcurrentHashMap<String, Usage>();
+
+    private final AtomicLong lastEviction = new AtomicLong(System.currentTimeMillis());
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * The usage of a namespace. Only manipulated while holding its monitor.
+     *
+     * @version $Id$
+     */
+    private static final class Usage
+    {
+        /**
+         * The number of active users of the namespace (evaluations and callers of
+         * {@link org.xwiki.velocity.VelocityEngine#startedUsingMacroNamespace(String)}).
+         */
+        private int count;
+
+        /**
+         * The number of evaluations currently rendering with the namespace.
+         */
+        private int evaluations;
+
+        private long lastAccess;
+
+        /**
+         * True when the namespace has been dumped, a new usage has to be created to use it again.
+         */
+        private boolean released;
+    }
+
+    /**
+     * @param runtimeServices the Velocity runtime holding the macros
+     * @param maxIdleTime the time in milliseconds after which a namespace which is not used by any evaluation is
+     *            evicted, 0 to never evict them
+     */
+    public MacroNamespaces(RuntimeServices runtimeServices, long maxIdleTime)
+    {
+        this.runtimeServices = runtimeServices;
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    /**
+     * @param templateName the name of the template
+     * @return the macro namespace to use for the passed template in the current thread
+     */
+    public String getNamespace(String templateName)
+    {
+        return StringUtils.isNotEmpty(templateName)
+            ? Thread.currentThread().getId() + String.valueOf(THREAD_SEPARATOR) + templateName : templateName;
+    }
+
+    /**
+     * @param namespace the macro namespace
+     * @param evaluation true if the namespace is used to render a template, false if it's only kept alive between
+     *            evaluations
+     */
+    public void startedUsing(String namespace, boolean evaluation)
+    {
+        long now = System.currentTimeMillis();
+
+        boolean used;
+        do {
+            Usage usage = this.usages.get(namespace);
+            if (usage == null) {
+                Usage newUsage = new Usage();
+                usage = this.usages.putIfAbsent(namespace, newUsage);
+                if (usage == null) {
+                    usage = newUsage;
+                }
+            }
+
+            synchronized (usage) {
+                // The namespace might have been evicted in the meantime
+                used = !usage.released;
+                if (used) {
+                    ++usage.count;
+                    if (evaluation) {
+                        ++usage.evaluations;
+                    }
+                    usage.lastAccess = now;
+                }
+            }
+        } while (!used);
+    }
+
+    /**
+     * @param namespace the macro namespace
+     * @return true if the namespace is currently used
+     */
+    public boolean isUsed(String namespace)
+    {
+        return this.usages.containsKey(namespace);
+    }
+
+    /**
+     * Dump the macros of the namespace when nobody uses it anymore.
+     *
+     * @param namespace the macro namespace
+     * @param evaluation true if the namespace was used to render a template
+     */
+    public void stoppedUsing(String namespace, boolean evaluation)
+    {
+        Usage usage = this.usages.get(namespace);
+
+        if (usage != null) {
+            synchronized (usage) {
+                --usage.count;
+                if (evaluation) {
+                    --usage.evaluations;
+                }
+                usage.lastAccess = System.currentTimeMillis();
+
+                if (usage.count <= 0) {
+                    release(namespace, usage);
+                }
+            }
+        }
+    }
+
+    /**
+     * Evict the namespaces which are not used by any evaluation and which have not been touched since more than the
+     * maximum idle time. Does nothing if the last eviction was done less than half the maximum idle time ago.
+     */
+    public void evictIdle()
+    {
+        if (this.maxIdleTime <= 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long previousEviction = this.lastEviction.get();
+        if (now - previousEviction < this.maxIdleTime / 2 || !this.lastEviction.compareAndSet(previousEviction, now)) {
+            return;
+        }
+
+        for (Map.Entry<String, Usage> entry : this.usages.entrySet()) {
+            Usage usage = entry.getValue();
+
+            synchronized (usage) {
+                if (!usage.released && usage.evaluations <= 0 && now - usage.lastAccess > this.maxIdleTime) {
+                    release(entry.getKey(), usage);
+                    this.evictionCount.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Dump the macros of the namespace. The usage monitor is held so that the namespace cannot be used again before
+     * it's actually dumped.
+     */
+    private void release(String namespace, Usage usage)
+    {
+        usage.released = true;
+        this.runtimeServices.dumpVMNamespace(namespace);
+        this.usages.remove(namespace, usage);
+    }
+
+    // Metrics
+
+    /**
+     * @return the number of namespaces currently used
+     */
+    public int getCount()
+    {
+        return this.usages.size();
+    }
+
+    /**
+     * @return the number of namespaces evicted because they were idle for too long
+     */
+    public long getEvictionCount()
+    {
+        return this.evictionCount.get();
+    }
+}
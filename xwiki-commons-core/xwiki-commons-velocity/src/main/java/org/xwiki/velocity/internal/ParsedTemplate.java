@@ -0,0 +1,202 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.exception.TemplateInitException;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.parser.node.ASTDirective;
+import org.apache.velocity.runtime.parser.node.Node;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+
+/**
+ * A parsed Velocity template which can be rendered several times while being parsed and initialized only once.
+ * <p>
+ * Velocity registers the macros defined in a template when initializing its nodes, which is only done once for a
+ * given tree. Since the macro namespace of the template can be cleared between two evaluations, the macro definitions
+ * are remembered so that they can be registered again each time the template is rendered (see
+ * {@link #init(InternalContextAdapter, RuntimeServices)}). The definitions are extracted only once from the tree and
+ * never modified afterwards so registering them again is cheap.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class ParsedTemplate
+{
+    private static final String MACRO_DIRECTIVE = "macro";
+
+    private static final String ARGUMENT_PREFIX = "$";
+
+    private final String key;
+
+    private final String namespace;
+
+    private final SimpleNode nodeTree;
+
+    private final int weight;
+
+    /**
+     * The macro definitions, null until the tree is initialized. Only manipulated while holding the template monitor.
+     */
+    private List<MacroDefinition> macros;
+
+    /**
+     * A macro defined in the template.
+     *
+     * @version $Id$
+     */
+    private static final class MacroDefinition
+    {
+        /**
+         * The name of the macro followed by the names of its arguments, as expected by Velocity.
+         */
+        private final String[] argArray;
+
+        private final Node body;
+
+        private final String templateName;
+
+        /**
+         * @param node the macro directive node
+         */
+        MacroDefinition(ASTDirective node)
+        {
+            // The last child is the body of the macro
+            int argumentCount = node.jjtGetNumChildren() - 1;
+
+            this.argArray = new String[argumentCount];
+            for (int i = 0; i < argumentCount; ++i) {
+                String argument = node.jjtGetChild(i).getFirstToken().image;
+                if (i > 0 && argument.startsWith(ARGUMENT_PREFIX)) {
+                    argument = argument.substring(ARGUMENT_PREFIX.length());
+                }
+                this.argArray[i] = argument.intern();
+            }
+
+            this.body = node.jjtGetChild(argumentCount);
+            this.templateName = node.getTemplateName();
+        }
+
+        /**
+         * Register the macro the same way the macro directive does it when initialized.
+         *
+         * @param runtimeServices the Velocity runtime
+         */
+        void register(RuntimeServices runtimeServices)
+        {
+            runtimeServices.addVelocimacro(this.argArray[0], this.body, this.argArray, this.templateName);
+        }
+    }
+
+    /**
+     * @param key the key of the template in the cache, null if it should not be cached
+     * @param namespace the macro namespace the template has been parsed with
+     * @param nodeTree the parsed tree
+     * @param weight the estimated weight of the template in a cache, usually the length of its source
+     */
+    public ParsedTemplate(String key, String namespace, SimpleNode nodeTree, int weight)
+    {
+        this.key = key;
+        this.namespace = namespace;
+        this.nodeTree = nodeTree;
+        this.weight = weight;
+    }
+
+    /**
+     * Collect the macro definitions in the order Velocity registers them when initializing the tree: the children of a
+     * node are initialized before the node itself.
+     */
+    private static void collectMacros(Node node, List<MacroDefinition> macroDefinitions)
+    {
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i) {
+            collectMacros(node.jjtGetChild(i), macroDefinitions);
+        }
+
+        if (node instanceof ASTDirective && MACRO_DIRECTIVE.equals(((ASTDirective) node).getDirectiveName())) {
+            macroDefinitions.add(new MacroDefinition((ASTDirective) node));
+        }
+    }
+
+    /**
+     * @return the key of the template in the cache, null if it should not be cached
+     */
+    public String getKey()
+    {
+        return this.key;
+    }
+
+    /**
+     * @return the macro namespace the template has been parsed with
+     */
+    public String getNamespace()
+    {
+        return this.namespace;
+    }
+
+    /**
+     * @return the parsed tree
+     */
+    public SimpleNode getNodeTree()
+    {
+        return this.nodeTree;
+    }
+
+    /**
+     * @return the estimated weight of the template in a cache
+     */
+    public int getWeight()
+    {
+        return this.weight;
+    }
+
+    /**
+     * Initialize the tree the first time and register again the macros defined in the template the next times, so
+     * that they are always available when rendering it.
+     *
+     * @param context the context used to render the template
+     * @param runtimeServices the Velocity runtime
+     * @return true if the tree has been initialized by this call, false if it was already initialized
+     * @throws TemplateInitException when failing to initialize the tree or to register a macro
+     */
+    public synchronized boolean init(InternalContextAdapter context, RuntimeServices runtimeServices)
+        throws TemplateInitException
+    {
+        if (this.macros == null) {
+            this.nodeTree.init(context, runtimeServices);
+
+            List<MacroDefinition> macroDefinitions = new ArrayList<MacroDefinition>();
+            collectMacros(this.nodeTree, macroDefinitions);
+            this.macros =
+                macroDefinitions.isEmpty() ? Collections.<MacroDefinition>emptyList() : macroDefinitions;
+
+            return true;
+        }
+
+        for (MacroDefinition macro : this.macros) {
+            macro.register(runtimeServices);
+        }
+
+        return false;
+    }
+}
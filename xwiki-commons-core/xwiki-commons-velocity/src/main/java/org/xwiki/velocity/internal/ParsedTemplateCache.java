@@ -0,0 +1,167 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.internal;
+
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A cache of parsed Velocity templates, bounded both by the number of templates and by their total size (the length
+ * of their source).
+ * <p>
+ * A template is identified by the macro namespace it's parsed with and by a hash of its source: the same content
+ * evaluated in another namespace has to be parsed again since the nodes remember the namespace in which they register
+ * their macros and look for the macros they call. Since each thread gets its own macro namespace for a given template
+ * name (see {@link MacroNamespaces#getNamespace(String)}), a template is parsed and cached once per thread rendering
+ * it: the maximum number of templates should take into account the number of threads.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class ParsedTemplateCache
+{
+    private static final char KEY_SEPARATOR = '#';
+
+    private final WeightedLRUCache<String, ParsedTemplate> templates;
+
+    /**
+     * @param maxCount the maximum number of templates
+     * @param maxSize the maximum total size of the templates
+     */
+    public ParsedTemplateCache(int maxCount, long maxSize)
+    {
+        this.templates = new WeightedLRUCache<String, ParsedTemplate>(maxSize, maxCount);
+    }
+
+    /**
+     * @param namespace the macro namespace used to parse the template
+     * @param source the source of the template
+     * @return the key identifying the template in the cache
+     */
+    public String getKey(String namespace, String source)
+    {
+        // The hash having a fixed length, there's no ambiguity whatever the namespace contains
+        return StringUtils.defaultString(namespace) + KEY_SEPARATOR + DigestUtils.sha256Hex(source);
+    }
+
+    /**
+     * @param key the key of the template (see {@link #getKey(String, String)})
+     * @return the cached template or null if none could be found
+     */
+    public ParsedTemplate get(String key)
+    {
+        return this.templates.get(key);
+    }
+
+    /**
+     * Cache a template, unless it's bigger than the maximum size.
+     *
+     * @param key the key of the template (see {@link #getKey(String, String)})
+     * @param template the template to cache
+     */
+    public void put(String key, ParsedTemplate template)
+    {
+        this.templates.put(key, template, template.getWeight());
+    }
+
+    /**
+     * Remove the templates parsed with the passed macro namespace, for example because the macros it contains changed.
+     *
+     * @param namespace the macro namespace
+     */
+    public void remove(String namespace)
+    {
+        synchronized (this.templates) {
+            for (Map.Entry<String, ParsedTemplate> entry : this.templates.getAll().entrySet()) {
+                if (StringUtils.equals(entry.getValue().getNamespace(), namespace)) {
+                    this.templates.remove(entry.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all the templates.
+     */
+    public void clear()
+    {
+        this.templates.clear();
+    }
+
+    // Metrics
+
+    /**
+     * @return the number of cached templates
+     */
+    public int getCount()
+    {
+        return this.templates.getCount();
+    }
+
+    /**
+     * @return the total size of the cached templates
+     */
+    public long getSize()
+    {
+        return this.templates.getWeight();
+    }
+
+    /**
+     * @return the maximum number of cached templates
+     */
+    public int getMaxCount()
+    {
+        return this.templates.getMaxCount();
+    }
+
+    /**
+     * @return the maximum total size of the cached templates
+     */
+    public long getMaxSize()
+    {
+        return this.templates.getMaxWeight();
+    }
+
+    /**
+     * @return the number of lookups which found the template in the cache
+     */
+    public long getHitCount()
+    {
+        return this.templates.getHitCount();
+    }
+
+    /**
+     * @return the number of lookups which had to parse the template
+     */
+    public long getMissCount()
+    {
+        return this.templates.getMissCount();
+    }
+
+    /**
+     * @return the number of templates removed to make room
+     */
+    public long getEvictionCount()
+    {
+        return this.templates.getEvictionCount();
+    }
+}
@@ -26,7 +26,7 @@
 import org.apache.velocity.VelocityContext;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.script.service.ScriptServiceManager;
-import org.xwiki.velocity.VelocityContextInitializer;
+import org.xwiki.velocity.InvariantVelocityContextInitializer;
 
 /**
  * Registers the Script Service Manager in the Velocity Context so that it's available from Velocity.
@@ -38,7 +38,7 @@
 @Component
 @Named("scriptservices")
 @Singleton
-public class ServicesVelocityContextInitializer implements VelocityContextInitializer
+public class ServicesVelocityContextInitializer implements InvariantVelocityContextInitializer
 {
     /**
      * The Script Service Manager to bind in the Script Context.
@@ -0,0 +1,478 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.internal;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Collect statistics about the evaluations of the templates of a Velocity engine: number of evaluations, cumulative
+ * and maximum evaluation time, size of the output and number of failed evaluations.
+ * <p>
+ * The times and sizes are exclusive: the time spent and the characters written by a nested evaluation (a template
+ * evaluating another one) are only counted for the nested template, so that a layout template including all the
+ * others does not appear as the most expensive one.
+ * <p>
+ * The statistics of each template are split in stripes, the stripe updated by an evaluation depending on the current
+ * thread, so that concurrent evaluations of the same template rarely contend. The stripes are only aggregated when
+ * reading the statistics. The number of templates is bounded: once the maximum is reached the evaluations of the new
+ * templates are counted in the {@value #OTHER} entry.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class TemplateMetrics
+{
+    /**
+     * The name of the entry holding the statistics of the templates which could not be tracked individually.
+     */
+    public static final String OTHER = "<other>";
+
+    private static final int MAX_STRIPES = 16;
+
+    private static final int STRIPES = Math.min(MAX_STRIPES,
+        Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final int maxCount;
+
+    private final ConcurrentMap<String, TemplateStripes> templates = new ConcurrentHashMap<String, TemplateStripes>();
+
+    /**
+     * The order of the statistics returned by {@link TemplateMetrics#getTop(Order, int)}, from the highest value.
+     *
+     * @version $Id$
+     */
+    public enum Order implements Comparator<Statistics>
+    {
+        /**
+         * The templates evaluated the most often first.
+         */
+        COUNT
+        {
+            @Override
+            long getValue(Statistics statistics)
+            {
+                return statistics.getCount();
+            }
+        },
+
+        /**
+         * The templates with the highest cumulative evaluation time first.
+         */
+        TOTAL_TIME
+        {
+            @Override
+            long getValue(Statistics statistics)
+            {
+                return statistics.getTotalTime();
+            }
+        },
+
+        /**
+         * The templates with the longest evaluation first.
+         */
+        MAX_TIME
+        {
+            @Override
+            long getValue(Statistics statistics)
+            {
+                return statistics.getMaxTime();
+            }
+        },
+
+        /**
+         * The templates producing the biggest cumulative output first.
+         */
+        OUTPUT_SIZE
+        {
+            @Override
+            long getValue(Statistics statistics)
+            {
+                return statistics.getOutputSize();
+            }
+        },
+
+        /**
+         * The templates with the most failed evaluations first.
+         */
+        ERROR_COUNT
+        {
+            @Override
+            long getValue(Statistics statistics)
+            {
+                return statistics.getErrorCount();
+            }
+        };
+
+        abstract long getValue(Statistics statistics);
+
+        @Override
+        public int compare(Statistics statistics1, Statistics statistics2)
+        {
+            long value1 = getValue(statistics1);
+            long value2 = getValue(statistics2);
+
+            return value1 < value2 ? 1 : (value1 == value2 ? 0 : -1);
+        }
+    }
+
+    /**
+     * The statistics of a template at a given time.
+     *
+     * @version $Id$
+     */
+    public static final class Statistics
+    {
+        private final String templateName;
+
+        private long count;
+
+        private long totalTime;
+
+        private long maxTime;
+
+        private long outputSize;
+
+        private long errorCount;
+
+        private Statistics(String templateName)
+        {
+            this.templateName = templateName;
+        }
+
+        /**
+         * @return the name of the template
+         */
+        public String getTemplateName()
+        {
+            return this.templateName;
+        }
+
+        /**
+         * @return the number of evaluations
+         */
+        public long getCount()
+        {
+            return this.count;
+        }
+
+        /**
+         * @return the cumulative evaluation time in nanoseconds
+         */
+        public long getTotalTime()
+        {
+            return this.totalTime;
+        }
+
+        /**
+         * @return the longest evaluation time in nanoseconds
+         */
+        public long getMaxTime()
+        {
+            return this.maxTime;
+        }
+
+        /**
+         * @return the cumulative number of characters written by the evaluations
+         */
+        public long getOutputSize()
+        {
+            return this.outputSize;
+        }
+
+        /**
+         * @return the number of failed evaluations
+         */
+        public long getErrorCount()
+        {
+            return this.errorCount;
+        }
+    }
+
+    /**
+     * The statistics of a template, split in stripes. Each stripe is only manipulated while holding its monitor.
+     *
+     * @version $Id$
+     */
+    private static final class TemplateStripes
+    {
+        private final Statistics[] stripes = new Statistics[STRIPES];
+
+        TemplateStripes(String templateName)
+        {
+            for (int i = 0; i < this.stripes.length; ++i) {
+                this.stripes[i] = new Statistics(templateName);
+            }
+        }
+
+        void record(long time, long outputSize, boolean failed)
+        {
+            Statistics stripe = this.stripes[(int) Thread.currentThread().getId() & (STRIPES - 1)];
+
+            synchronized (stripe) {
+                ++stripe.count;
+                stripe.totalTime += time;
+                if (time > stripe.maxTime) {
+                    stripe.maxTime = time;
+                }
+                stripe.outputSize += outputSize;
+                if (failed) {
+                    ++stripe.errorCount;
+                }
+            }
+        }
+
+        Statistics aggregate(String templateName)
+        {
+            Statistics statistics = new Statistics(templateName);
+
+            for (Statistics stripe : this.stripes) {
+                synchronized (stripe) {
+                    statistics.count += stripe.count;
+                    statistics.totalTime += stripe.totalTime;
+                    statistics.maxTime = Math.max(statistics.maxTime, stripe.maxTime);
+                    statistics.outputSize += stripe.outputSize;
+                    statistics.errorCount += stripe.errorCount;
+                }
+            }
+
+            return statistics;
+        }
+    }
+
+    /**
+     * An evaluation in progress in the current thread.
+     *
+     * @version $Id$
+     */
+    private static final class Evaluation
+    {
+        private final Evaluation parent;
+
+        private final long startTime = System.nanoTime();
+
+        /**
+         * The time spent in nested evaluations.
+         */
+        private long nestedTime;
+
+        /**
+         * The number of characters written by this evaluation, excluding the ones written by nested evaluations.
+         */
+        private long count;
+
+        /**
+         * True while a nested evaluation is in progress.
+         */
+        private boolean suspended;
+
+        Evaluation(Evaluation parent)
+        {
+            this.parent = parent;
+        }
+
+        void write(long length)
+        {
+            if (!this.suspended) {
+                this.count += length;
+            }
+        }
+    }
+
+    /**
+     * A writer counting the characters written to the wrapped writer by an evaluation. Nested evaluations usually write
+     * to this writer (through their own writer) but these characters are counted by the nested evaluation.
+     *
+     * @version $Id$
+     */
+    private static final class CountingWriter extends Writer
+    {
+        private final Writer writer;
+
+        private final Evaluation evaluation;
+
+        CountingWriter(Writer writer, Evaluation evaluation)
+        {
+            this.writer = writer;
+            this.evaluation = evaluation;
+        }
+
+        @Override
+        public void write(int c) throws IOException
+        {
+            this.writer.write(c);
+            this.evaluation.write(1);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException
+        {
+            this.writer.write(cbuf, off, len);
+            this.evaluation.write(len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException
+        {
+            this.writer.write(str, off, len);
+            this.evaluation.write(len);
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            this.writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            this.writer.close();
+        }
+    }
+
+    /**
+     * The evaluation in progress in the current thread.
+     */
+    private final ThreadLocal<Evaluation> current = new ThreadLocal<Evaluation>();
+
+    /**
+     * @param maxCount the maximum number of templates tracked individually
+     */
+    public TemplateMetrics(int maxCount)
+    {
+        this.maxCount = maxCount;
+    }
+
+    /**
+     * Start measuring an evaluation. Must always be followed by a call to {@link #stop(String, boolean)} in the same
+     * thread, once the evaluation is finished.
+     *
+     * @param out the writer the template is evaluated to
+     * @return the writer to evaluate the template to, in order to measure the size of the output
+     */
+    public Writer start(Writer out)
+    {
+        Evaluation parent = this.current.get();
+        if (parent != null) {
+            parent.suspended = true;
+        }
+
+        Evaluation evaluation = new Evaluation(parent);
+        this.current.set(evaluation);
+
+        return out != null ? new CountingWriter(out, evaluation) : null;
+    }
+
+    /**
+     * Stop measuring the last evaluation started in the current thread and record its statistics, excluding the ones
+     * of the nested evaluations.
+     *
+     * @param templateName the name of the evaluated template
+     * @param failed true if the evaluation failed
+     */
+    public void stop(String templateName, boolean failed)
+    {
+        Evaluation evaluation = this.current.get();
+        if (evaluation == null) {
+            return;
+        }
+
+        long time = System.nanoTime() - evaluation.startTime;
+
+        Evaluation parent = evaluation.parent;
+        if (parent != null) {
+            parent.suspended = false;
+            parent.nestedTime += time;
+            this.current.set(parent);
+        } else {
+            this.current.remove();
+        }
+
+        record(templateName, time - evaluation.nestedTime, evaluation.count, failed);
+    }
+
+    /**
+     * @param templateName the name of the evaluated template
+     * @param time the evaluation time in nanoseconds
+     * @param outputSize the number of written characters
+     * @param failed true if the evaluation failed
+     */
+    public void record(String templateName, long time, long outputSize, boolean failed)
+    {
+        String name = StringUtils.defaultString(templateName);
+
+        TemplateStripes template = this.templates.get(name);
+        if (template == null) {
+            if (this.templates.size() >= this.maxCount) {
+                name = OTHER;
+            }
+            TemplateStripes newTemplate = new TemplateStripes(name);
+            template = this.templates.putIfAbsent(name, newTemplate);
+            if (template == null) {
+                template = newTemplate;
+            }
+        }
+
+        template.record(time, outputSize, failed);
+    }
+
+    /**
+     * @param order the order of the statistics
+     * @param count the maximum number of statistics to return
+     * @return the statistics of the first templates in the passed order
+     */
+    public List<Statistics> getTop(Order order, int count)
+    {
+        List<Statistics> statistics = new ArrayList<Statistics>(this.templates.size());
+        for (Map.Entry<String, TemplateStripes> entry : this.templates.entrySet()) {
+            statistics.add(entry.getValue().aggregate(entry.getKey()));
+        }
+
+        Collections.sort(statistics, order);
+
+        return statistics.size() > count ? statistics.subList(0, Math.max(count, 0)) : statistics;
+    }
+
+    /**
+     * @return the number of tracked templates
+     */
+    public int getCount()
+    {
+        return this.templates.size();
+    }
+
+    /**
+     * Forget all the statistics.
+     */
+    public void reset()
+    {
+        this.templates.clear();
+    }
+}
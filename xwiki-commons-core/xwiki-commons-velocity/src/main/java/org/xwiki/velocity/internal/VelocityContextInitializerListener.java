@@ -0,0 +1,92 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.internal;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.event.ComponentDescriptorAddedEvent;
+import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+import org.xwiki.velocity.VelocityContextFactory;
+import org.xwiki.velocity.VelocityContextInitializer;
+
+/**
+ * Reset the prototype of the Velocity contexts when a {@link VelocityContextInitializer} is registered or
+ * unregistered.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+@Component
+@Singleton
+@Named(VelocityContextInitializerListener.NAME)
+public class VelocityContextInitializerListener implements EventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "VelocityContextInitializerListener";
+
+    /**
+     * The list of events observed.
+     */
+    private static final List<Event> EVENTS = Arrays.<Event>asList(
+        new ComponentDescriptorAddedEvent((Type) VelocityContextInitializer.class),
+        new ComponentDescriptorRemovedEvent((Type) VelocityContextInitializer.class));
+
+    /**
+     * The factory holding the prototype of the Velocity contexts.
+     * <p>
+     * Lazily loaded to not instantiate the factory when listeners are loaded.
+     */
+    @Inject
+    private Provider<VelocityContextFactory> velocityContextFactory;
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return EVENTS;
+    }
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        VelocityContextFactory factory = this.velocityContextFactory.get();
+
+        if (factory instanceof DefaultVelocityContextFactory) {
+            ((DefaultVelocityContextFactory) factory).reset();
+        }
+    }
+}
@@ -20,7 +20,9 @@
 package org.xwiki.velocity.internal.jmx;
 
 import java.lang.reflect.Field;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.management.openmbean.ArrayType;
@@ -34,6 +36,10 @@
 import javax.management.openmbean.TabularType;
 
 import org.xwiki.velocity.VelocityEngine;
+import org.xwiki.velocity.internal.DefaultVelocityEngine;
+import org.xwiki.velocity.internal.MacroNamespaces;
+import org.xwiki.velocity.internal.ParsedTemplateCache;
+import org.xwiki.velocity.internal.TemplateMetrics;
 
 /**
  * Uses non-stable (ie might need to be modified when we upgrade the Velocity JAR) introspection to access private
@@ -45,6 +51,16 @@
  */
 public class JMXVelocityEngine implements JMXVelocityEngineMBean
 {
+    /**
+     * The name of the column holding the template name.
+     */
+    private static final String TEMPLATE_NAME = "templateName";
+
+    /**
+     * The number of nanoseconds in a millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1000000D;
+
     /**
      * The Velocity Engine for which to return management data.
      */
@@ -73,7 +89,7 @@ public TabularData getTemplates()
             ArrayType macroNameType = new ArrayType(1, SimpleType.STRING);
 
             // Represents one row (template name, macro names) in the returned table data
-            String[] columnNames = new String[] { "templateName", "macroNames" };
+            String[] columnNames = new String[] { TEMPLATE_NAME, "macroNames" };
             String[] descriptions = new String[] { "The Template Name (namespace)", "The names of registered Macros" };
             CompositeType rowType = new CompositeType("template",
                 "Template management data (namespaces, macros) for a row", columnNames, descriptions,
@@ -100,6 +116,189 @@ public TabularData getTemplates()
         return data;
     }
 
+    /**
+     * @return the cache of parsed templates of the engine, null if it does not have any
+     */
+    private ParsedTemplateCache getParsedTemplateCache()
+    {
+        return this.engine instanceof DefaultVelocityEngine
+            ? ((DefaultVelocityEngine) this.engine).getParsedTemplateCache() : null;
+    }
+
+    @Override
+    public int getParsedTemplateCount()
+    {
+        ParsedTemplateCache cache = getParsedTemplateCache();
+
+        return cache != null ? cache.getCount() : 0;
+    }
+
+    @Override
+    public long getParsedTemplateSize()
+    {
+        ParsedTemplateCache cache = getParsedTemplateCache();
+
+        return cache != null ? cache.getSize() : 0;
+    }
+
+    @Override
+    public long getParsedTemplateHitCount()
+    {
+        ParsedTemplateCache cache = getParsedTemplateCache();
+
+        return cache != null ? cache.getHitCount() : 0;
+    }
+
+    @Override
+    public long getParsedTemplateMissCount()
+    {
+        ParsedTemplateCache cache = getParsedTemplateCache();
+
+        return cache != null ? cache.getMissCount() : 0;
+    }
+
+    @Override
+    public long getParsedTemplateEvictionCount()
+    {
+        ParsedTemplateCache cache = getParsedTemplateCache();
+
+        return cache != null ? cache.getEvictionCount() : 0;
+    }
+
+    @Override
+    public void clearParsedTemplates()
+    {
+        ParsedTemplateCache cache = getParsedTemplateCache();
+
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    @Override
+    public int getMacroCount()
+    {
+        int count = 0;
+
+        try {
+            for (String[] macroNames : getInternalTemplates().values()) {
+                count += macroNames.length;
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to gather information on Velocity Macros", e);
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the macro namespaces of the engine, null if it does not manage them
+     */
+    private MacroNamespaces getMacroNamespaces()
+    {
+        return this.engine instanceof DefaultVelocityEngine
+            ? ((DefaultVelocityEngine) this.engine).getMacroNamespaces() : null;
+    }
+
+    @Override
+    public int getUsedMacroNamespaceCount()
+    {
+        MacroNamespaces namespaces = getMacroNamespaces();
+
+        return namespaces != null ? namespaces.getCount() : 0;
+    }
+
+    @Override
+    public long getMacroNamespaceEvictionCount()
+    {
+        MacroNamespaces namespaces = getMacroNamespaces();
+
+        return namespaces != null ? namespaces.getEvictionCount() : 0;
+    }
+
+    /**
+     * @return the statistics about the evaluated templates of the engine, null if it does not collect them
+     */
+    private TemplateMetrics getInternalTemplateMetrics()
+    {
+        return this.engine instanceof DefaultVelocityEngine
+            ? ((DefaultVelocityEngine) this.engine).getTemplateMetrics() : null;
+    }
+
+    @Override
+    public TabularData getTemplateMetrics(String order, int count)
+    {
+        TemplateMetrics metrics = getInternalTemplateMetrics();
+
+        List<TemplateMetrics.Statistics> statistics;
+        if (metrics != null) {
+            statistics = metrics.getTop(TemplateMetrics.Order.valueOf(order), count);
+        } else {
+            statistics = Collections.emptyList();
+        }
+
+        TabularData data;
+
+        try {
+            // Represents one row (the statistics of a template) in the returned table data
+            String[] columnNames = new String[] { TEMPLATE_NAME, "count", "totalTime", "maxTime", "averageTime",
+                "outputSize", "errorCount" };
+            // The times and sizes exclude the nested evaluations
+            String[] descriptions = new String[] { "The Template Name", "The number of evaluations",
+                "The cumulative exclusive evaluation time in milliseconds",
+                "The longest exclusive evaluation time in milliseconds",
+                "The average exclusive evaluation time in milliseconds",
+                "The cumulative number of characters written by the template itself",
+                "The number of failed evaluations" };
+            OpenType<?>[] columnTypes = new OpenType<?>[] { SimpleType.STRING, SimpleType.LONG, SimpleType.DOUBLE,
+                SimpleType.DOUBLE, SimpleType.DOUBLE, SimpleType.LONG, SimpleType.LONG };
+            CompositeType rowType = new CompositeType("templateMetrics", "Template evaluation statistics for a row",
+                columnNames, descriptions, columnTypes);
+
+            TabularType type = new TabularType("templatesMetrics", "Template evaluation statistics", rowType,
+                new String[] { TEMPLATE_NAME });
+            data = new TabularDataSupport(type);
+
+            for (TemplateMetrics.Statistics template : statistics) {
+                double totalTime = template.getTotalTime() / NANOS_PER_MILLI;
+                double averageTime = template.getCount() > 0 ? totalTime / template.getCount() : 0D;
+                CompositeData rowData = new CompositeDataSupport(rowType, columnNames, new Object[] {
+                    template.getTemplateName(), template.getCount(), totalTime,
+                    template.getMaxTime() / NANOS_PER_MILLI, averageTime, template.getOutputSize(),
+                    template.getErrorCount() });
+                data.put(rowData);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to gather information on Velocity Templates evaluations", e);
+        }
+
+        return data;
+    }
+
+    @Override
+    public TabularData getSlowestTemplates(int count)
+    {
+        return getTemplateMetrics(TemplateMetrics.Order.TOTAL_TIME.name(), count);
+    }
+
+    @Override
+    public int getTemplateMetricsCount()
+    {
+        TemplateMetrics metrics = getInternalTemplateMetrics();
+
+        return metrics != null ? metrics.getCount() : 0;
+    }
+
+    @Override
+    public void resetTemplateMetrics()
+    {
+        TemplateMetrics metrics = getInternalTemplateMetrics();
+
+        if (metrics != null) {
+            metrics.reset();
+        }
+    }
+
     /**
      * @return the data using standard Java classes, {@link #getTemplates()} wraps it in generic Open types to make the
      *         returned data portable and accessible remotely from a JMX management console
@@ -25,6 +25,9 @@
  * MBean API related to Velocity Engines. Supports the following features:
  * <ul>
  *   <li>Retrieve list of template namespaces along with the name of macros registered in each template namespace</li>
+ *   <li>Monitor the cache of parsed templates</li>
+ *   <li>Monitor the size of the macro tables and the life cycle of the macro namespaces</li>
+ *   <li>Find the templates which are the most expensive to evaluate</li>
  * </ul>
  *
  * @version $Id$
@@ -36,4 +39,92 @@
      * @return the list of template namespaces along with the name of macros registered in each template namespace
      */
     TabularData getTemplates();
+
+    /**
+     * @return the number of cached parsed templates
+     * @since 7.0M1
+     */
+    int getParsedTemplateCount();
+
+    /**
+     * @return the total length of the sources of the cached parsed templates
+     * @since 7.0M1
+     */
+    long getParsedTemplateSize();
+
+    /**
+     * @return the number of evaluations which found the parsed template in the cache
+     * @since 7.0M1
+     */
+    long getParsedTemplateHitCount();
+
+    /**
+     * @return the number of evaluations which had to parse the template
+     * @since 7.0M1
+     */
+    long getParsedTemplateMissCount();
+
+    /**
+     * @return the number of parsed templates removed from the cache to make room
+     * @since 7.0M1
+     */
+    long getParsedTemplateEvictionCount();
+
+    /**
+     * Remove all the cached parsed templates.
+     *
+     * @since 7.0M1
+     */
+    void clearParsedTemplates();
+
+    /**
+     * @return the total number of registered macros, in all the template namespaces
+     * @since 7.0M1
+     */
+    int getMacroCount();
+
+    /**
+     * @return the number of macro namespaces currently used by evaluations or kept alive between evaluations
+     * @since 7.0M1
+     */
+    int getUsedMacroNamespaceCount();
+
+    /**
+     * @return the number of macro namespaces evicted because they were not used for too long
+     * @since 7.0M1
+     */
+    long getMacroNamespaceEvictionCount();
+
+    /**
+     * The times and output sizes are exclusive: the time spent and the characters written by the templates evaluated
+     * by a template are not counted for the latter.
+     *
+     * @param order the order of the templates, from the highest value: {@code COUNT}, {@code TOTAL_TIME},
+     *            {@code MAX_TIME}, {@code OUTPUT_SIZE} or {@code ERROR_COUNT}
+     * @param count the maximum number of templates to return
+     * @return the evaluation statistics of the first templates in the passed order
+     * @since 7.0M1
+     */
+    TabularData getTemplateMetrics(String order, int count);
+
+    /**
+     * @param count the maximum number of templates to return
+     * @return the evaluation statistics of the templates with the highest cumulative evaluation time, excluding the
+     *         time spent in the templates they evaluate
+     * @since 7.0M1
+     */
+    TabularData getSlowestTemplates(int count);
+
+    /**
+     * @return the number of templates for which evaluation statistics are collected
+     * @since 7.0M1
+     */
+    int getTemplateMetricsCount();
+
+    /**
+     * Forget the evaluation statistics of all the templates.
+     *
+     * @since 7.0M1
+     */
+    void resetTemplateMetrics();
 }
@@ -0,0 +1,166 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.internal.json;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.ResolvableSerializer;
+import com.fasterxml.jackson.databind.util.NameTransformer;
+
+/**
+ * Wraps the serializer of a structured value (bean, collection, map or array) to write {@code null} instead of the
+ * values which are already being serialized, instead of recursing until the stack overflows.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class CycleDetectingSerializer extends JsonSerializer<Object> implements ContextualSerializer,
+    ResolvableSerializer
+{
+    /**
+     * The key of the serialization attribute holding the values currently being serialized.
+     */
+    private static final Object SERIALIZING = CycleDetectingSerializer.class;
+
+    private final JsonSerializer<Object> serializer;
+
+    /**
+     * @param serializer the serializer to wrap
+     */
+    @SuppressWarnings("unchecked")
+    public CycleDetectingSerializer(JsonSerializer<?> serializer)
+    {
+        this.serializer = (JsonSerializer<Object>) serializer;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<Object> getSerializing(SerializerProvider provider)
+    {
+        Set<Object> serializing = (Set<Object>) provider.getAttribute(SERIALIZING);
+        if (serializing == null) {
+            serializing = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+            provider.setAttribute(SERIALIZING, serializing);
+        }
+
+        return serializing;
+    }
+
+    @Override
+    public void serialize(Object value, JsonGenerator jgen, SerializerProvider provider) throws IOException
+    {
+        Set<Object> serializing = getSerializing(provider);
+
+        if (serializing.add(value)) {
+            try {
+                this.serializer.serialize(value, jgen, provider);
+            } finally {
+                serializing.remove(value);
+            }
+        } else {
+            jgen.writeNull();
+        }
+    }
+
+    @Override
+    public void serializeWithType(Object value, JsonGenerator jgen, SerializerProvider provider,
+        TypeSerializer typeSer) throws IOException
+    {
+        Set<Object> serializing = getSerializing(provider);
+
+        if (serializing.add(value)) {
+            try {
+                this.serializer.serializeWithType(value, jgen, provider, typeSer);
+            } finally {
+                serializing.remove(value);
+            }
+        } else {
+            jgen.writeNull();
+        }
+    }
+
+    @Override
+    public JsonSerializer<?> createContextual(SerializerProvider prov, BeanProperty property)
+        throws JsonMappingException
+    {
+        if (this.serializer instanceof ContextualSerializer) {
+            JsonSerializer<?> contextualSerializer =
+                ((ContextualSerializer) this.serializer).createContextual(prov, property);
+            if (contextualSerializer != this.serializer) {
+                return new CycleDetectingSerializer(contextualSerializer);
+            }
+        }
+
+        return this;
+    }
+
+    @Override
+    public void resolve(SerializerProvider provider) throws JsonMappingException
+    {
+        if (this.serializer instanceof ResolvableSerializer) {
+            ((ResolvableSerializer) this.serializer).resolve(provider);
+        }
+    }
+
+    @Override
+    public JsonSerializer<Object> unwrappingSerializer(NameTransformer unwrapper)
+    {
+        JsonSerializer<Object> unwrappingSerializer = this.serializer.unwrappingSerializer(unwrapper);
+
+        return unwrappingSerializer != this.serializer ? new CycleDetectingSerializer(unwrappingSerializer) : this;
+    }
+
+    @Override
+    public boolean isUnwrappingSerializer()
+    {
+        return this.serializer.isUnwrappingSerializer();
+    }
+
+    @Override
+    public boolean isEmpty(Object value)
+    {
+        return this.serializer.isEmpty(value);
+    }
+
+    @Override
+    public boolean usesObjectId()
+    {
+        // In Jackson 2.3, BeanPropertyWriter#serializeAsField and #serializeAsElement call _handleSelfReference when
+        // a property value is the bean itself, which throws a JsonMappingException ("Direct self-reference leading to
+        // cycle") unless the serializer of the value returns true here. That's the only place where Jackson 2.3 calls
+        // this method on a serializer and this serializer writes null for such a reference.
+        return true;
+    }
+
+    @Override
+    public Class<Object> handledType()
+    {
+        return this.serializer.handledType();
+    }
+}
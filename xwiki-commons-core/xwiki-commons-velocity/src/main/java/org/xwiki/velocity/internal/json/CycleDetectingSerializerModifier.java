@@ -0,0 +1,67 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.internal.json;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.ser.std.BeanSerializerBase;
+import com.fasterxml.jackson.databind.type.ArrayType;
+import com.fasterxml.jackson.databind.type.CollectionType;
+import com.fasterxml.jackson.databind.type.MapType;
+
+/**
+ * Wraps the serializers of the values which can contain references to other values (beans, collections, maps and
+ * arrays) in a {@link CycleDetectingSerializer}.
+ *
+ * @version $Id$
+ * @since 7.0M1
+ */
+public class CycleDetectingSerializerModifier extends BeanSerializerModifier
+{
+    @Override
+    public JsonSerializer<?> modifySerializer(SerializationConfig config, BeanDescription beanDesc,
+        JsonSerializer<?> serializer)
+    {
+        return serializer instanceof BeanSerializerBase ? new CycleDetectingSerializer(serializer) : serializer;
+    }
+
+    @Override
+    public JsonSerializer<?> modifyArraySerializer(SerializationConfig config, ArrayType valueType,
+        BeanDescription beanDesc, JsonSerializer<?> serializer)
+    {
+        return valueType.getContentType().isPrimitive() ? serializer : new CycleDetectingSerializer(serializer);
+    }
+
+    @Override
+    public JsonSerializer<?> modifyCollectionSerializer(SerializationConfig config, CollectionType valueType,
+        BeanDescription beanDesc, JsonSerializer<?> serializer)
+    {
+        return new CycleDetectingSerializer(serializer);
+    }
+
+    @Override
+    public JsonSerializer<?> modifyMapSerializer(SerializationConfig config, MapType valueType,
+        BeanDescription beanDesc, JsonSerializer<?> serializer)
+    {
+        return new CycleDetectingSerializer(serializer);
+    }
+}
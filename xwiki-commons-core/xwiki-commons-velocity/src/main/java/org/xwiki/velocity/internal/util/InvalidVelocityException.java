@@ -26,5 +26,16 @@
  */
 public class InvalidVelocityException extends Exception
 {
-
+    /**
+     * The exception is used to tell the parser that the current characters are not Velocity, which happens a lot, so
+     * the stack trace is not filled to keep it cheap.
+     *
+     * @return this exception
+     * @since 7.0M1
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace()
+    {
+        return this;
+    }
 }
@@ -27,6 +27,10 @@
 
 /**
  * Provide helpers to parse velocity scripts.
+ * <p>
+ * The helpers work on offsets in the source array and only copy characters when a buffer is passed to collect the
+ * matched block. {@link #scan(char[], int, int, VelocityParserContext)} goes through a whole source, or a part of it,
+ * and can resume from a {@link VelocityParserContext.Checkpoint} taken during a previous scan.
  *
  * @version $Id$
  */
@@ -62,6 +66,12 @@
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(VelocityParser.class);
 
+    /**
+     * The reserved directives, indexed by their first character and length. Rebuilt when the public directive sets are
+     * modified.
+     */
+    private static volatile DirectiveTable directives;
+
     static {
         VELOCITYDIRECTIVE_BEGIN.add("if");
         VELOCITYDIRECTIVE_BEGIN.add("foreach");
@@ -84,6 +94,154 @@
 
         VELOCITYDIRECTIVE_ALL.addAll(VELOCITYDIRECTIVE_PARAM);
         VELOCITYDIRECTIVE_ALL.addAll(VELOCITYDIRECTIVE_NOPARAM);
+
+        directives = new DirectiveTable(VELOCITYDIRECTIVE_ALL);
+    }
+
+    /**
+     * A reserved directive in a {@link DirectiveTable}.
+     *
+     * @version $Id$
+     */
+    private static final class Directive
+    {
+        private final String name;
+
+        /**
+         * The next directive with the same first character and length modulo the table size.
+         */
+        private final Directive next;
+
+        /**
+         * @param name the name of the directive
+         * @param next the next directive with the same index in the table
+         */
+        Directive(String name, Directive next)
+        {
+            this.name = name;
+            this.next = next;
+        }
+
+        /**
+         * @return true if the name of the directive is the passed part of the array
+         */
+        boolean matches(char[] array, int start, int length)
+        {
+            if (this.name.length() != length) {
+                return false;
+            }
+
+            for (int i = 0; i < length; ++i) {
+                if (this.name.charAt(i) != array[start + i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Find a directive from its name in the source array without creating a String. The directives are indexed by a
+     * hash of their first character and length, the names with the same index are compared one after the other.
+     *
+     * @version $Id$
+     */
+    private static final class DirectiveTable
+    {
+        private static final int HASH_MULTIPLIER = 31;
+
+        private final Directive[] table;
+
+        private final int mask;
+
+        /**
+         * The number of names the table has been built from.
+         */
+        private final int namesSize;
+
+        /**
+         * The hash code of the set of names the table has been built from.
+         */
+        private final int namesHashCode;
+
+        /**
+         * @param names the names of the directives
+         */
+        DirectiveTable(Set<String> names)
+        {
+            this.namesSize = names.size();
+            this.namesHashCode = names.hashCode();
+
+            // At least twice the number of names to keep the collisions rare
+            this.table = new Directive[Integer.highestOneBit(Math.max(this.namesSize, 1)) << 2];
+            this.mask = this.table.length - 1;
+
+            for (String name : names) {
+                if (!name.isEmpty()) {
+                    int index = hash(name.charAt(0), name.length()) & this.mask;
+                    this.table[index] = new Directive(name, this.table[index]);
+                }
+            }
+        }
+
+        private static int hash(char firstChar, int length)
+        {
+            return firstChar * HASH_MULTIPLIER + length;
+        }
+
+        /**
+         * @param names the names of the directives
+         * @return false if the passed names are not the ones the table has been built from
+         */
+        boolean isUpToDate(Set<String> names)
+        {
+            return names.size() == this.namesSize && names.hashCode() == this.namesHashCode;
+        }
+
+        /**
+         * @param array the source
+         * @param start the index of the first character of the name
+         * @param end the index after the last character of the name
+         * @return the directive with the passed name, null if it's not in the table
+         */
+        Directive get(char[] array, int start, int end)
+        {
+            int length = end - start;
+            if (length <= 0) {
+                return null;
+            }
+
+            for (Directive directive = this.table[hash(array[start], length) & this.mask]; directive != null;
+                directive = directive.next) {
+                if (directive.matches(array, start, length)) {
+                    return directive;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * @param array the source
+     * @param start the index of the first character of the name
+     * @param end the index after the last character of the name
+     * @return the name of the reserved directive, null if it's not a reserved directive
+     */
+    private static String getReservedDirective(char[] array, int start, int end)
+    {
+        DirectiveTable table = directives;
+        Directive directive = table.get(array, start, end);
+
+        // Take into account the directives added to or removed from the public sets after the table was built
+        if (directive == null && !table.isUpToDate(VELOCITYDIRECTIVE_ALL)) {
+            table = new DirectiveTable(VELOCITYDIRECTIVE_ALL);
+            directives = table;
+            directive = table.get(array, start, end);
+        }
+
+        return directive != null && VELOCITYDIRECTIVE_ALL.contains(directive.name) ? directive.name : null;
     }
 
     /**
@@ -96,7 +254,7 @@
      * @return the index in the <code>array</code> after the matched block
      * @throws InvalidVelocityException not a valid velocity block
      */
-    public int getKeyWord(char[] array, int currentIndex, StringBuffer velocityBlock, VelocityParserContext context)
+    public int getKeyWord(char[] array, int currentIndex, StringBuilder velocityBlock, VelocityParserContext context)
         throws InvalidVelocityException
     {
         int i = currentIndex;
@@ -121,6 +279,46 @@ public int getKeyWord(char[] array, int currentIndex, StringBuffer velocityBlock
         return i;
     }
 
+    /**
+     * Go through the source and match the Velocity elements (directives, macros, comments and variables) it
+     * contains, updating the context with the blocks opened and closed by the directives.
+     * <p>
+     * The scan stops on the first element boundary after the end index so that it can be resumed later from there:
+     * take a checkpoint of the context with the returned index (see {@link VelocityParserContext#checkpoint(int)}) and
+     * restore it in a context (see {@link VelocityParserContext#restore(VelocityParserContext.Checkpoint)}) to scan
+     * the rest of the source.
+     *
+     * @param array the source to parse
+     * @param currentIndex the index in the <code>array</code> where to start
+     * @param endIndex the index in the <code>array</code> where to stop
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the last matched element or text
+     * @since 7.0M1
+     */
+    public int scan(char[] array, int currentIndex, int endIndex, VelocityParserContext context)
+    {
+        int end = Math.min(endIndex, array.length);
+
+        int i = currentIndex;
+        while (i < end) {
+            int next = i + 1;
+
+            try {
+                if (array[i] == '#') {
+                    next = getKeyWord(array, i, (StringBuilder) null, context);
+                } else if (array[i] == '$') {
+                    next = getVar(array, i, (StringBuilder) null, context);
+                }
+            } catch (InvalidVelocityException e) {
+                // Not Velocity, just text
+            }
+
+            i = next;
+        }
+
+        return i;
+    }
+
     /**
      * Get any valid Velocity block starting with a sharp character except comments.
      *
@@ -131,40 +329,32 @@ public int getKeyWord(char[] array, int currentIndex, StringBuffer velocityBlock
      * @return the index in the <code>array</code> after the matched block
      * @throws InvalidVelocityException not a valid velocity block
      */
-    public int getDirective(char[] array, int currentIndex, StringBuffer velocityBlock, VelocityParserContext context)
+    public int getDirective(char[] array, int currentIndex, StringBuilder velocityBlock, VelocityParserContext context)
         throws InvalidVelocityException
     {
         int i = currentIndex + 1;
 
         // Get macro name
-        StringBuffer directiveNameBuffer = new StringBuffer();
-        i = getDirectiveName(array, i, directiveNameBuffer, null, context);
+        i = getDirectiveName(array, i, (StringBuilder) null, null, context);
 
-        String directiveName = directiveNameBuffer.toString();
+        // Locate the name without the optional { and }
+        int nameStart = array[currentIndex + 1] == '{' ? currentIndex + 2 : currentIndex + 1;
+        int nameEnd = array[i - 1] == '}' ? i - 1 : i;
+        String directive = getReservedDirective(array, nameStart, nameEnd);
 
-        if (!VELOCITYDIRECTIVE_NOPARAM.contains(directiveName)) {
-            // Skip spaces
-            while (i < array.length && array[i] == ' ') {
-                ++i;
-            }
-
-            if (i < array.length && array[i] == '(') {
-                // Skip condition
-                i = getMethodParameters(array, i, null, context);
-            } else {
-                throw new InvalidVelocityException();
-            }
+        if (directive == null || !VELOCITYDIRECTIVE_NOPARAM.contains(directive)) {
+            i = getDirectiveParameters(array, i, context);
         }
 
-        if (VELOCITYDIRECTIVE_ALL.contains(directiveName)) {
-            if (VELOCITYDIRECTIVE_BEGIN.contains(directiveName)) {
-                context.pushVelocityElement(new VelocityBlock(directiveName, VelocityBlock.VelocityType.DIRECTIVE));
-            } else if (VELOCITYDIRECTIVE_END.contains(directiveName)) {
+        if (directive != null) {
+            if (VELOCITYDIRECTIVE_BEGIN.contains(directive)) {
+                context.pushVelocityElement(new VelocityBlock(directive, VelocityBlock.VelocityType.DIRECTIVE));
+            } else if (VELOCITYDIRECTIVE_END.contains(directive)) {
                 context.popVelocityElement();
             }
 
             // consume the end of the line
-            i = getDirectiveEndOfLine(array, i, null, context);
+            i = getDirectiveEndOfLine(array, i, (StringBuilder) null, context);
 
             context.setType(VelocityBlock.VelocityType.DIRECTIVE);
         } else {
@@ -178,6 +368,27 @@ public int getDirective(char[] array, int currentIndex, StringBuffer velocityBlo
         return i;
     }
 
+    /**
+     * Get the parameters of a directive or a macro, including the spaces before the <code>(</code>.
+     */
+    private int getDirectiveParameters(char[] array, int currentIndex, VelocityParserContext context)
+        throws InvalidVelocityException
+    {
+        int i = currentIndex;
+
+        // Skip spaces
+        while (i < array.length && array[i] == ' ') {
+            ++i;
+        }
+
+        if (i < array.length && array[i] == '(') {
+            // Skip condition
+            return getMethodParameters(array, i, (StringBuilder) null, context);
+        }
+
+        throw new InvalidVelocityException();
+    }
+
     /**
      * Get a valid Velocity identifier used for variable of macro.
      *
@@ -188,7 +399,7 @@ public int getDirective(char[] array, int currentIndex, StringBuffer velocityBlo
      * @return the index in the <code>array</code> after the matched block
      * @throws InvalidVelocityException not a valid velocity block
      */
-    public int getVelocityIdentifier(char[] array, int currentIndex, StringBuffer velocityBlock,
+    public int getVelocityIdentifier(char[] array, int currentIndex, StringBuilder velocityBlock,
         VelocityParserContext context) throws InvalidVelocityException
     {
         // The first character of an identifier must be a [a-zA-Z]
@@ -222,7 +433,7 @@ public boolean isValidVelocityIdentifierChar(char c)
 
     /**
      * Get a Velocity directive name block. It's different from
-     * {@link #getVelocityIdentifier(char[], int, StringBuffer, VelocityParserContext)} because is include the optional
+     * {@link #getVelocityIdentifier(char[], int, StringBuilder, VelocityParserContext)} because is include the optional
      * <code>{</code> and <code>}</code>.
      *
      * @param array the source to parse
@@ -233,8 +444,8 @@ public boolean isValidVelocityIdentifierChar(char c)
      * @return the index in the <code>array</code> after the matched block
      * @throws InvalidVelocityException not a valid velocity block
      */
-    public int getDirectiveName(char[] array, int currentIndex, StringBuffer directiveName, StringBuffer velocityBlock,
-        VelocityParserContext context) throws InvalidVelocityException
+    public int getDirectiveName(char[] array, int currentIndex, StringBuilder directiveName,
+        StringBuilder velocityBlock, VelocityParserContext context) throws InvalidVelocityException
     {
         int i = currentIndex;
 
@@ -268,7 +479,7 @@ public int getDirectiveName(char[] array, int currentIndex, StringBuffer directi
      * @param context the parser context to put some informations
      * @return the index in the <code>array</code> after the matched block
      */
-    public int getDirectiveEndOfLine(char[] array, int currentIndex, StringBuffer velocityBlock,
+    public int getDirectiveEndOfLine(char[] array, int currentIndex, StringBuilder velocityBlock,
         VelocityParserContext context)
     {
         int i = currentIndex;
@@ -298,7 +509,7 @@ public int getDirectiveEndOfLine(char[] array, int currentIndex, StringBuffer ve
      * @param context the parser context to put some informations
      * @return the index in the <code>array</code> after the matched block
      */
-    public int getSimpleComment(char[] array, int currentIndex, StringBuffer velocityBlock,
+    public int getSimpleComment(char[] array, int currentIndex, StringBuilder velocityBlock,
         VelocityParserContext context)
     {
         int i = currentIndex + 2;
@@ -325,7 +536,7 @@ public int getSimpleComment(char[] array, int currentIndex, StringBuffer velocit
      * @param context the parser context to put some informations
      * @return the index in the <code>array</code> after the matched block
      */
-    public int getMultilinesComment(char[] array, int currentIndex, StringBuffer velocityBlock,
+    public int getMultilinesComment(char[] array, int currentIndex, StringBuilder velocityBlock,
         VelocityParserContext context)
     {
         int i = currentIndex + 2;
@@ -353,7 +564,7 @@ public int getMultilinesComment(char[] array, int currentIndex, StringBuffer vel
      * @return the index in the <code>array</code> after the matched block
      * @throws InvalidVelocityException not a valid velocity block
      */
-    public int getVar(char[] array, int currentIndex, StringBuffer velocityBlock, VelocityParserContext context)
+    public int getVar(char[] array, int currentIndex, StringBuilder velocityBlock, VelocityParserContext context)
         throws InvalidVelocityException
     {
         return getVar(array, currentIndex, null, velocityBlock, context);
@@ -370,7 +581,7 @@ public int getVar(char[] array, int currentIndex, StringBuffer velocityBlock, Ve
      * @return the index in the <code>array</code> after the matched block
      * @throws InvalidVelocityException not a valid velocity block
      */
-    public int getVar(char[] array, int currentIndex, StringBuffer varName, StringBuffer velocityBlock,
+    public int getVar(char[] array, int currentIndex, StringBuilder varName, StringBuilder velocityBlock,
         VelocityParserContext context) throws InvalidVelocityException
     {
         if (isVarEscaped(array, currentIndex)) {
@@ -453,13 +664,13 @@ private int followVar(char[] array, int currentIndex, boolean fullSyntax, Veloci
                 break;
             } else if (array[i] == '.') {
                 try {
-                    i = getMethodOrProperty(array, i, null, context);
+                    i = getMethodOrProperty(array, i, (StringBuilder) null, context);
                 } catch (InvalidVelocityException e) {
                     LOGGER.debug("Not a valid method at char [{}]", i, e);
                     break;
                 }
             } else if (array[i] == '[') {
-                i = getTableElement(array, i, null, context);
+                i = getTableElement(array, i, (StringBuilder) null, context);
                 break;
             } else {
                 break;
@@ -479,7 +690,7 @@ private int followVar(char[] array, int currentIndex, boolean fullSyntax, Veloci
      * @return the index in the <code>array</code> after the matched block
      * @throws InvalidVelocityException not a valid velocity block
      */
-    public int getMethodOrProperty(char[] array, int currentIndex, StringBuffer velocityBlock,
+    public int getMethodOrProperty(char[] array, int currentIndex, StringBuilder velocityBlock,
         VelocityParserContext context) throws InvalidVelocityException
     {
         int i = currentIndex + 1;
@@ -488,7 +699,7 @@ public int getMethodOrProperty(char[] array, int currentIndex, StringBuffer velo
         if (i < array.length && Character.isLetter(array[i])) {
             for (; i < array.length; ++i) {
                 if (array[i] == '(') {
-                    i = getMethodParameters(array, i, null, context);
+                    i = getMethodParameters(array, i, (StringBuilder) null, context);
                     break;
                 } else if (!Character.isLetterOrDigit(array[i])) {
                     break;
@@ -514,7 +725,7 @@ public int getMethodOrProperty(char[] array, int currentIndex, StringBuffer velo
      * @param context the parser context to put some informations
      * @return the index in the <code>array</code> after the matched block
      */
-    public int getTableElement(char[] array, int currentIndex, StringBuffer velocityBlock,
+    public int getTableElement(char[] array, int currentIndex, StringBuilder velocityBlock,
         VelocityParserContext context)
     {
         return getParameters(array, currentIndex, velocityBlock, ']', context);
@@ -529,7 +740,7 @@ public int getTableElement(char[] array, int currentIndex, StringBuffer velocity
      * @param context the parser context to put some informations
      * @return the index in the <code>array</code> after the matched block
      */
-    public int getMethodParameters(char[] array, int currentIndex, StringBuffer velocityBlock,
+    public int getMethodParameters(char[] array, int currentIndex, StringBuilder velocityBlock,
         VelocityParserContext context)
     {
         return getParameters(array, currentIndex, velocityBlock, ')', context);
@@ -537,8 +748,8 @@ public int getMethodParameters(char[] array, int currentIndex, StringBuffer velo
 
     /**
      * Get a group of parameters between two characters. Generic version of
-     * {@link #getTableElement(char[], int, StringBuffer, VelocityParserContext)} and
-     * {@link #getMethodParameters(char[], int, StringBuffer, VelocityParserContext)}.
+     * {@link #getTableElement(char[], int, StringBuilder, VelocityParserContext)} and
+     * {@link #getMethodParameters(char[], int, StringBuilder, VelocityParserContext)}.
      *
      * @param array the source to parse
      * @param currentIndex the current index in the <code>array</code>
@@ -547,7 +758,7 @@ public int getMethodParameters(char[] array, int currentIndex, StringBuffer velo
      * @param context the parser context to put some informations
      * @return the index in the <code>array</code> after the matched block
      */
-    public int getParameters(char[] array, int currentIndex, StringBuffer velocityBlock, char endingChar,
+    public int getParameters(char[] array, int currentIndex, StringBuilder velocityBlock, char endingChar,
         VelocityParserContext context)
     {
         char beginChar = array[currentIndex];
@@ -566,7 +777,7 @@ public int getParameters(char[] array, int currentIndex, StringBuffer velocityBl
             } else if (array[i] == beginChar) {
                 ++depth;
             } else if (array[i] == '"' || array[i] == '\'') {
-                i = getEscape(array, i, null, context);
+                i = getEscape(array, i, (StringBuilder) null, context);
                 continue;
             }
 
@@ -587,7 +798,7 @@ public int getParameters(char[] array, int currentIndex, StringBuffer velocityBl
      * @param context the parser context to put some informations
      * @return the index in the <code>array</code> after the matched block
      */
-    public int getEscape(char[] array, int currentIndex, StringBuffer velocityBlock, VelocityParserContext context)
+    public int getEscape(char[] array, int currentIndex, StringBuilder velocityBlock, VelocityParserContext context)
     {
         char escapeChar = array[currentIndex];
 
@@ -601,7 +812,7 @@ public int getEscape(char[] array, int currentIndex, StringBuffer velocityBlock,
                     escaped = true;
                 } else if (array[i] == '$') {
                     try {
-                        i = getVar(array, i, null, context);
+                        i = getVar(array, i, (StringBuilder) null, context);
                         continue;
                     } catch (InvalidVelocityException e) {
                         LOGGER.debug("Not a valid variable at char [{}]", i, e);
@@ -633,7 +844,8 @@ public int getEscape(char[] array, int currentIndex, StringBuffer velocityBlock,
      * @param context the parser context to put some informations
      * @return the index in the <code>array</code> after the matched block
      */
-    public int getWhiteSpaces(char[] array, int currentIndex, StringBuffer velocityBlock, VelocityParserContext context)
+    public int getWhiteSpaces(char[] array, int currentIndex, StringBuilder velocityBlock,
+        VelocityParserContext context)
     {
         int i = currentIndex;
 
@@ -657,7 +869,7 @@ public int getWhiteSpaces(char[] array, int currentIndex, StringBuffer velocityB
      * @param context the parser context to put some informations
      * @return the index in the <code>array</code> after the matched block
      */
-    public int getSpaces(char[] array, int currentIndex, StringBuffer velocityBlock,
+    public int getSpaces(char[] array, int currentIndex, StringBuilder velocityBlock,
         VelocityParserContext context)
     {
         int i = currentIndex;
@@ -680,16 +892,16 @@ public int getSpaces(char[] array, int currentIndex, StringBuffer velocityBlock,
      * @param context the parser context to put some informations
      * @return the index in the <code>array</code> after the matched block
      */
-    public int getMacroParametersSeparator(char[] array, int currentIndex, StringBuffer velocityBlock,
+    public int getMacroParametersSeparator(char[] array, int currentIndex, StringBuilder velocityBlock,
         VelocityParserContext context)
     {
         int i = currentIndex;
 
-        i = getWhiteSpaces(array, i, null, context);
+        i = getWhiteSpaces(array, i, (StringBuilder) null, context);
         if (array[i] == ',') {
             i++;
         }
-        i = getWhiteSpaces(array, i, null, context);
+        i = getWhiteSpaces(array, i, (StringBuilder) null, context);
 
         if (velocityBlock != null) {
             velocityBlock.append(array, currentIndex, i - currentIndex);
@@ -705,7 +917,7 @@ public int getMacroParametersSeparator(char[] array, int currentIndex, StringBuf
      * @param context the parser context to put some informations
      * @return the index in the <code>array</code> after the matched block
      */
-    public int getMacroParameter(char[] array, int currentIndex, StringBuffer velocityBlock,
+    public int getMacroParameter(char[] array, int currentIndex, StringBuilder velocityBlock,
         VelocityParserContext context)
     {
         int i = currentIndex;
@@ -713,13 +925,13 @@ public int getMacroParameter(char[] array, int currentIndex, StringBuffer veloci
         for (; i < array.length; ++i) {
             if (array[i] == '$') {
                 try {
-                    i = getVar(array, i, null, context);
+                    i = getVar(array, i, (StringBuilder) null, context);
                     break;
                 } catch (InvalidVelocityException e) {
                     LOGGER.debug("Not a valid velocity variable at char [{}]", i, e);
                 }
             } else if (array[i] == '"' || array[i] == '\'') {
-                i = getEscape(array, i, null, context);
+                i = getEscape(array, i, (StringBuilder) null, context);
                 break;
             } else if (Character.isWhitespace(array[i]) || array[i] == ',') {
                 break;
@@ -734,4 +946,439 @@ public int getMacroParameter(char[] array, int currentIndex, StringBuffer veloci
 
         return i;
     }
+
+    /**
+     * Same as {@link #getKeyWord(char[], int, StringBuilder, VelocityParserContext)} but appends to
+     * {@link StringBuffer}s.
+     *
+     * @param array the source to parse
+     * @param currentIndex the current index in the <code>array</code>
+     * @param velocityBlock the buffer where to append matched velocity block
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the matched block
+     * @throws InvalidVelocityException not a valid velocity block
+     * @deprecated since 7.0M1 use {@link #getKeyWord(char[], int, StringBuilder, VelocityParserContext)} instead
+     */
+    @Deprecated
+    public int getKeyWord(char[] array, int currentIndex, StringBuffer velocityBlock, VelocityParserContext context)
+        throws InvalidVelocityException
+    {
+        StringBuilder block = toBuilder(velocityBlock);
+        int index = getKeyWord(array, currentIndex, block, context);
+        append(velocityBlock, block);
+
+        return index;
+    }
+
+    /**
+     * Same as {@link #getDirective(char[], int, StringBuilder, VelocityParserContext)} but appends to
+     * {@link StringBuffer}s.
+     *
+     * @param array the source to parse
+     * @param currentIndex the current index in the <code>array</code>
+     * @param velocityBlock the buffer where to append matched velocity block
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the matched block
+     * @throws InvalidVelocityException not a valid velocity block
+     * @deprecated since 7.0M1 use {@link #getDirective(char[], int, StringBuilder, VelocityParserContext)} instead
+     */
+    @Deprecated
+    public int getDirective(char[] array, int currentIndex, StringBuffer velocityBlock, VelocityParserContext context)
+        throws InvalidVelocityException
+    {
+        StringBuilder block = toBuilder(velocityBlock);
+        int index = getDirective(array, currentIndex, block, context);
+        append(velocityBlock, block);
+
+        return index;
+    }
+
+    /**
+     * Same as {@link #getVelocityIdentifier(char[], int, StringBuilder, VelocityParserContext)} but appends to
+     * {@link StringBuffer}s.
+     *
+     * @param array the source to parse
+     * @param currentIndex the current index in the <code>array</code>
+     * @param velocityBlock the buffer where to append matched velocity block
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the matched block
+     * @throws InvalidVelocityException not a valid velocity block
+     * @deprecated since 7.0M1 use {@link #getVelocityIdentifier(char[], int, StringBuilder, VelocityParserContext)}
+     *             instead
+     */
+    @Deprecated
+    public int getVelocityIdentifier(char[] array, int currentIndex, StringBuffer velocityBlock,
+        VelocityParserContext context) throws InvalidVelocityException
+    {
+        StringBuilder block = toBuilder(velocityBlock);
+        int index = getVelocityIdentifier(array, currentIndex, block, context);
+        append(velocityBlock, block);
+
+        return index;
+    }
+
+    /**
+     * Same as {@link #getDirectiveName(char[], int, StringBuilder, StringBuilder, VelocityParserContext)} but appends
+     * to {@link StringBuffer}s.
+     *
+     * @param array the source to parse
+     * @param currentIndex the current index in the <code>array</code>
+     * @param directiveName the buffer where to append the name of the directive
+     * @param velocityBlock the buffer where to append matched velocity block
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the matched block
+     * @throws InvalidVelocityException not a valid velocity block
+     * @deprecated since 7.0M1 use
+     *             {@link #getDirectiveName(char[], int, StringBuilder, StringBuilder, VelocityParserContext)} instead
+     */
+    @Deprecated
+    public int getDirectiveName(char[] array, int currentIndex, StringBuffer directiveName, StringBuffer velocityBlock,
+        VelocityParserContext context) throws InvalidVelocityException
+    {
+        StringBuilder name = toBuilder(directiveName);
+        StringBuilder block = toBuilder(velocityBlock);
+        int index = getDirectiveName(array, currentIndex, name, block, context);
+        append(directiveName, name);
+        append(velocityBlock, block);
+
+        return index;
+    }
+
+    /**
+     * Same as {@link #getDirectiveEndOfLine(char[], int, StringBuilder, VelocityParserContext)} but appends to
+     * {@link StringBuffer}s.
+     *
+     * @param array the source to parse
+     * @param currentIndex the current index in the <code>array</code>
+     * @param velocityBlock the buffer where to append matched velocity block
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the matched block
+     * @deprecated since 7.0M1 use {@link #getDirectiveEndOfLine(char[], int, StringBuilder, VelocityParserContext)}
+     *             instead
+     */
+    @Deprecated
+    public int getDirectiveEndOfLine(char[] array, int currentIndex, StringBuffer velocityBlock,
+        VelocityParserContext context)
+    {
+        StringBuilder block = toBuilder(velocityBlock);
+        int index = getDirectiveEndOfLine(array, currentIndex, block, context);
+        append(velocityBlock, block);
+
+        return index;
+    }
+
+    /**
+     * Same as {@link #getSimpleComment(char[], int, StringBuilder, VelocityParserContext)} but appends to
+     * {@link StringBuffer}s.
+     *
+     * @param array the source to parse
+     * @param currentIndex the current index in the <code>array</code>
+     * @param velocityBlock the buffer where to append matched velocity block
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the matched block
+     * @deprecated since 7.0M1 use {@link #getSimpleComment(char[], int, StringBuilder, VelocityParserContext)} instead
+     */
+    @Deprecated
+    public int getSimpleComment(char[] array, int currentIndex, StringBuffer velocityBlock,
+        VelocityParserContext context)
+    {
+        StringBuilder block = toBuilder(velocityBlock);
+        int index = getSimpleComment(array, currentIndex, block, context);
+        append(velocityBlock, block);
+
+        return index;
+    }
+
+    /**
+     * Same as {@link #getMultilinesComment(char[], int, StringBuilder, VelocityParserContext)} but appends to
+     * {@link StringBuffer}s.
+     *
+     * @param array the source to parse
+     * @param currentIndex the current index in the <code>array</code>
+     * @param velocityBlock the buffer where to append matched velocity block
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the matched block
+     * @deprecated since 7.0M1 use {@link #getMultilinesComment(char[], int, StringBuilder, VelocityParserContext)}
+     *             instead
+     */
+    @Deprecated
+    public int getMultilinesComment(char[] array, int currentIndex, StringBuffer velocityBlock,
+        VelocityParserContext context)
+    {
+        StringBuilder block = toBuilder(velocityBlock);
+        int index = getMultilinesComment(array, currentIndex, block, context);
+        append(velocityBlock, block);
+
+        return index;
+    }
+
+    /**
+     * Same as {@link #getVar(char[], int, StringBuilder, VelocityParserContext)} but appends to {@link StringBuffer}s.
+     *
+     * @param array the source to parse
+     * @param currentIndex the current index in the <code>array</code>
+     * @param velocityBlock the buffer where to append matched velocity block
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the matched block
+     * @throws InvalidVelocityException not a valid velocity block
+     * @deprecated since 7.0M1 use {@link #getVar(char[], int, StringBuilder, VelocityParserContext)} instead
+     */
+    @Deprecated
+    public int getVar(char[] array, int currentIndex, StringBuffer velocityBlock, VelocityParserContext context)
+        throws InvalidVelocityException
+    {
+        StringBuilder block = toBuilder(velocityBlock);
+        int index = getVar(array, currentIndex, block, context);
+        append(velocityBlock, block);
+
+        return index;
+    }
+
+    /**
+     * Same as {@link #getVar(char[], int, StringBuilder, StringBuilder, VelocityParserContext)} but appends to
+     * {@link StringBuffer}s.
+     *
+     * @param array the source to parse
+     * @param currentIndex the current index in the <code>array</code>
+     * @param varName the buffer where to append the name of the variable
+     * @param velocityBlock the buffer where to append matched velocity block
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the matched block
+     * @throws InvalidVelocityException not a valid velocity block
+     * @deprecated since 7.0M1 use {@link #getVar(char[], int, StringBuilder, StringBuilder, VelocityParserContext)}
+     *             instead
+     */
+    @Deprecated
+    public int getVar(char[] array, int currentIndex, StringBuffer varName, StringBuffer velocityBlock,
+        VelocityParserContext context) throws InvalidVelocityException
+    {
+        StringBuilder name = toBuilder(varName);
+        StringBuilder block = toBuilder(velocityBlock);
+        int index = getVar(array, currentIndex, name, block, context);
+        append(varName, name);
+        append(velocityBlock, block);
+
+        return index;
+    }
+
+    /**
+     * Same as {@link #getMethodOrProperty(char[], int, StringBuilder, VelocityParserContext)} but appends to
+     * {@link StringBuffer}s.
+     *
+     * @param array the source to parse
+     * @param currentIndex the current index in the <code>array</code>
+     * @param velocityBlock the buffer where to append matched velocity block
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the matched block
+     * @throws InvalidVelocityException not a valid velocity block
+     * @deprecated since 7.0M1 use {@link #getMethodOrProperty(char[], int, StringBuilder, VelocityParserContext)}
+     *             instead
+     */
+    @Deprecated
+    public int getMethodOrProperty(char[] array, int currentIndex, StringBuffer velocityBlock,
+        VelocityParserContext context) throws InvalidVelocityException
+    {
+        StringBuilder block = toBuilder(velocityBlock);
+        int index = getMethodOrProperty(array, currentIndex, block, context);
+        append(velocityBlock, block);
+
+        return index;
+    }
+
+    /**
+     * Same as {@link #getTableElement(char[], int, StringBuilder, VelocityParserContext)} but appends to
+     * {@link StringBuffer}s.
+     *
+     * @param array the source to parse
+     * @param currentIndex the current index in the <code>array</code>
+     * @param velocityBlock the buffer where to append matched velocity block
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the matched block
+     * @deprecated since 7.0M1 use {@link #getTableElement(char[], int, StringBuilder, VelocityParserContext)} instead
+     */
+    @Deprecated
+    public int getTableElement(char[] array, int currentIndex, StringBuffer velocityBlock,
+        VelocityParserContext context)
+    {
+        StringBuilder block = toBuilder(velocityBlock);
+        int index = getTableElement(array, currentIndex, block, context);
+        append(velocityBlock, block);
+
+        return index;
+    }
+
+    /**
+     * Same as {@link #getMethodParameters(char[], int, StringBuilder, VelocityParserContext)} but appends to
+     * {@link StringBuffer}s.
+     *
+     * @param array the source to parse
+     * @param currentIndex the current index in the <code>array</code>
+     * @param velocityBlock the buffer where to append matched velocity block
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the matched block
+     * @deprecated since 7.0M1 use {@link #getMethodParameters(char[], int, StringBuilder, VelocityParserContext)}
+     *             instead
+     */
+    @Deprecated
+    public int getMethodParameters(char[] array, int currentIndex, StringBuffer velocityBlock,
+        VelocityParserContext context)
+    {
+        StringBuilder block = toBuilder(velocityBlock);
+        int index = getMethodParameters(array, currentIndex, block, context);
+        append(velocityBlock, block);
+
+        return index;
+    }
+
+    /**
+     * Same as {@link #getParameters(char[], int, StringBuilder, char, VelocityParserContext)} but appends to
+     * {@link StringBuffer}s.
+     *
+     * @param array the source to parse
+     * @param currentIndex the current index in the <code>array</code>
+     * @param velocityBlock the buffer where to append matched velocity block
+     * @param endingChar the char to end to
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the matched block
+     * @deprecated since 7.0M1 use {@link #getParameters(char[], int, StringBuilder, char, VelocityParserContext)}
+     *             instead
+     */
+    @Deprecated
+    public int getParameters(char[] array, int currentIndex, StringBuffer velocityBlock, char endingChar,
+        VelocityParserContext context)
+    {
+        StringBuilder block = toBuilder(velocityBlock);
+        int index = getParameters(array, currentIndex, block, endingChar, context);
+        append(velocityBlock, block);
+
+        return index;
+    }
+
+    /**
+     * Same as {@link #getEscape(char[], int, StringBuilder, VelocityParserContext)} but appends to
+     * {@link StringBuffer}s.
+     *
+     * @param array the source to parse
+     * @param currentIndex the current index in the <code>array</code>
+     * @param velocityBlock the buffer where to append matched velocity block
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the matched block
+     * @deprecated since 7.0M1 use {@link #getEscape(char[], int, StringBuilder, VelocityParserContext)} instead
+     */
+    @Deprecated
+    public int getEscape(char[] array, int currentIndex, StringBuffer velocityBlock, VelocityParserContext context)
+    {
+        StringBuilder block = toBuilder(velocityBlock);
+        int index = getEscape(array, currentIndex, block, context);
+        append(velocityBlock, block);
+
+        return index;
+    }
+
+    /**
+     * Same as {@link #getWhiteSpaces(char[], int, StringBuilder, VelocityParserContext)} but appends to
+     * {@link StringBuffer}s.
+     *
+     * @param array the source to parse
+     * @param currentIndex the current index in the <code>array</code>
+     * @param velocityBlock the buffer where to append matched velocity block
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the matched block
+     * @deprecated since 7.0M1 use {@link #getWhiteSpaces(char[], int, StringBuilder, VelocityParserContext)} instead
+     */
+    @Deprecated
+    public int getWhiteSpaces(char[] array, int currentIndex, StringBuffer velocityBlock, VelocityParserContext context)
+    {
+        StringBuilder block = toBuilder(velocityBlock);
+        int index = getWhiteSpaces(array, currentIndex, block, context);
+        append(velocityBlock, block);
+
+        return index;
+    }
+
+    /**
+     * Same as {@link #getSpaces(char[], int, StringBuilder, VelocityParserContext)} but appends to
+     * {@link StringBuffer}s.
+     *
+     * @param array the source to parse
+     * @param currentIndex the current index in the <code>array</code>
+     * @param velocityBlock the buffer where to append matched velocity block
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the matched block
+     * @deprecated since 7.0M1 use {@link #getSpaces(char[], int, StringBuilder, VelocityParserContext)} instead
+     */
+    @Deprecated
+    public int getSpaces(char[] array, int currentIndex, StringBuffer velocityBlock, VelocityParserContext context)
+    {
+        StringBuilder block = toBuilder(velocityBlock);
+        int index = getSpaces(array, currentIndex, block, context);
+        append(velocityBlock, block);
+
+        return index;
+    }
+
+    /**
+     * Same as {@link #getMacroParametersSeparator(char[], int, StringBuilder, VelocityParserContext)} but appends to
+     * {@link StringBuffer}s.
+     *
+     * @param array the source to parse
+     * @param currentIndex the current index in the <code>array</code>
+     * @param velocityBlock the buffer where to append matched velocity block
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the matched block
+     * @deprecated since 7.0M1 use
+     *             {@link #getMacroParametersSeparator(char[], int, StringBuilder, VelocityParserContext)} instead
+     */
+    @Deprecated
+    public int getMacroParametersSeparator(char[] array, int currentIndex, StringBuffer velocityBlock,
+        VelocityParserContext context)
+    {
+        StringBuilder block = toBuilder(velocityBlock);
+        int index = getMacroParametersSeparator(array, currentIndex, block, context);
+        append(velocityBlock, block);
+
+        return index;
+    }
+
+    /**
+     * Same as {@link #getMacroParameter(char[], int, StringBuilder, VelocityParserContext)} but appends to
+     * {@link StringBuffer}s.
+     *
+     * @param array the source to parse
+     * @param currentIndex the current index in the <code>array</code>
+     * @param velocityBlock the buffer where to append matched velocity block
+     * @param context the parser context to put some informations
+     * @return the index in the <code>array</code> after the matched block
+     * @deprecated since 7.0M1 use {@link #getMacroParameter(char[], int, StringBuilder, VelocityParserContext)} instead
+     */
+    @Deprecated
+    public int getMacroParameter(char[] array, int currentIndex, StringBuffer velocityBlock,
+        VelocityParserContext context)
+    {
+        StringBuilder block = toBuilder(velocityBlock);
+        int index = getMacroParameter(array, currentIndex, block, context);
+        append(velocityBlock, block);
+
+        return index;
+    }
+
+    /**
+     * @param buffer the buffer passed to a deprecated method
+     * @return the builder to pass to the actual method, null if the buffer is null
+     */
+    private static StringBuilder toBuilder(StringBuffer buffer)
+    {
+        return buffer != null ? new StringBuilder() : null;
+    }
+
+    /**
+     * @param buffer the buffer passed to a deprecated method
+     * @param builder the builder passed to the actual method
+     */
+    private static void append(StringBuffer buffer, StringBuilder builder)
+    {
+        if (buffer != null) {
+            buffer.append(builder);
+        }
+    }
 }
@@ -40,6 +40,36 @@
      */
     private Stack<VelocityBlock> blocks = new Stack<VelocityBlock>();
 
+    /**
+     * The state of a context at a given index of the parsed source, used to resume the parsing from there.
+     *
+     * @version $Id$
+     * @since 7.0M1
+     */
+    public static final class Checkpoint
+    {
+        private final int index;
+
+        private final VelocityType type;
+
+        private final VelocityBlock[] blocks;
+
+        private Checkpoint(int index, VelocityType type, VelocityBlock[] blocks)
+        {
+            this.index = index;
+            this.type = type;
+            this.blocks = blocks;
+        }
+
+        /**
+         * @return the index in the parsed source where the parsing can be resumed
+         */
+        public int getIndex()
+        {
+            return this.index;
+        }
+    }
+
     /**
      * @param type the type of found velocity block.
      */
@@ -92,4 +122,43 @@ public boolean isInVelocityBlock()
     {
         return !this.blocks.isEmpty();
     }
+
+    /**
+     * @param index the index in the parsed source where the parsing can be resumed
+     * @return the current state of the context
+     * @since 7.0M1
+     */
+    public Checkpoint checkpoint(int index)
+    {
+        return new Checkpoint(index, this.type, copy(this.blocks.toArray(new VelocityBlock[this.blocks.size()])));
+    }
+
+    /**
+     * Put back the context in the state it had when the checkpoint was taken.
+     *
+     * @param checkpoint the state to restore
+     * @since 7.0M1
+     */
+    public void restore(Checkpoint checkpoint)
+    {
+        this.type = checkpoint.type;
+
+        this.blocks.clear();
+        for (VelocityBlock block : copy(checkpoint.blocks)) {
+            this.blocks.push(block);
+        }
+    }
+
+    /**
+     * The blocks are mutable so the checkpoints keep their own copies.
+     */
+    private static VelocityBlock[] copy(VelocityBlock[] blocks)
+    {
+        VelocityBlock[] copy = new VelocityBlock[blocks.length];
+        for (int i = 0; i < blocks.length; ++i) {
+            copy[i] = new VelocityBlock(blocks[i].getName(), blocks[i].getType());
+        }
+
+        return copy;
+    }
 }
@@ -19,12 +19,22 @@
  */
 package org.xwiki.velocity.introspection;
 
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.collections4.map.LRUMap;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.velocity.runtime.RuntimeServices;
 import org.apache.velocity.util.ClassUtils;
 import org.apache.velocity.util.RuntimeServicesAware;
+import org.apache.velocity.util.introspection.Info;
 import org.apache.velocity.util.introspection.Uberspect;
 import org.apache.velocity.util.introspection.UberspectLoggable;
+import org.apache.velocity.util.introspection.VelMethod;
 
 /**
  * <p>
@@ -51,6 +61,17 @@
  * to forward calls). If a uberspector in the middle of the chain is not chainable, then it will break the chain at that
  * point (all previos uberspectors will be discarded from the chain).
  * </p>
+ * <p>
+ * The methods resolved by the chain are cached by receiver class, method name and argument classes so that calling
+ * again the same method with the same kind of arguments, from any template, does not go through the chain again. Only
+ * the methods declared cacheable (see {@link VelMethod#isCacheable()}) are cached, the same way Velocity caches them
+ * for a single rendering. As a consequence the uberspectors of the chain which only observe the resolution (like
+ * {@link DeprecatedCheckUberspector}) are only called the first time a method is resolved. The maximum number of
+ * cached methods is defined using the configuration parameter
+ * <code>runtime.introspector.uberspect.methodCacheSize</code> (0 disables the cache), the least recently used methods
+ * are evicted first. The cache only keeps weak references to the classes and soft references to the methods so that
+ * it does not prevent the classes of an uninstalled extension from being unloaded.
+ * </p>
  *
  * @since 1.5M1
  * @see ChainableUberspector
@@ -62,9 +83,133 @@ public class ChainingUberspector extends AbstractChainableUberspector implements
     /** The key of the parameter that allows defining the list of chained uberspectors. */
     public static final String UBERSPECT_CHAIN_CLASSNAMES = "runtime.introspector.uberspect.chainClasses";
 
+    /**
+     * The key of the parameter that allows defining the maximum number of cached methods.
+     *
+     * @since 7.0M1
+     */
+    public static final String UBERSPECT_METHOD_CACHE_SIZE = "runtime.introspector.uberspect.methodCacheSize";
+
+    /** The default maximum number of cached methods. */
+    private static final int DEFAULT_METHOD_CACHE_SIZE = 10000;
+
     /** The runtime is needed for accessing the configuration. */
     private RuntimeServices runtime;
 
+    /** The methods resolved by the chain, null when the cache is disabled. */
+    private Map<MethodKey, Reference<VelMethod>> methodCache;
+
+    /**
+     * Identify a method call: the class of the object the method is called on, the name of the method and the classes
+     * of the arguments. When the method is called on a {@link Class} the class itself is used since Velocity also
+     * resolves the static methods of that class.
+     *
+     * @version $Id$
+     */
+    private static final class MethodKey
+    {
+        private final String methodName;
+
+        /**
+         * True when the method is called on a {@link Class} object, in which case the first class is that class.
+         */
+        private final boolean classReceiver;
+
+        /**
+         * The class of the object the method is called on followed by the classes of the arguments (null for a null
+         * argument), either directly or through a {@link WeakReference} when the key is stored in the cache.
+         */
+        private final Object[] classes;
+
+        private final int hashCode;
+
+        MethodKey(Object receiver, String methodName, Object[] args)
+        {
+            this.methodName = methodName;
+            this.classReceiver = receiver instanceof Class;
+
+            this.classes = new Object[args != null ? args.length + 1 : 1];
+            this.classes[0] = this.classReceiver ? receiver : receiver.getClass();
+            for (int i = 1; i < this.classes.length; ++i) {
+                this.classes[i] = args[i - 1] != null ? args[i - 1].getClass() : null;
+            }
+
+            this.hashCode = 31 * (31 * methodName.hashCode() + Arrays.hashCode(this.classes))
+                + Boolean.valueOf(this.classReceiver).hashCode();
+        }
+
+        private MethodKey(MethodKey key)
+        {
+            this.methodName = key.methodName;
+            this.classReceiver = key.classReceiver;
+            this.hashCode = key.hashCode;
+
+            this.classes = new Object[key.classes.length];
+            for (int i = 0; i < this.classes.length; ++i) {
+                if (key.classes[i] != null) {
+                    this.classes[i] = new WeakReference<Object>(key.classAt(i));
+                }
+            }
+        }
+
+        /**
+         * @return a copy of this key which does not prevent the classes from being garbage collected
+         */
+        MethodKey weak()
+        {
+            return new MethodKey(this);
+        }
+
+        private Object classAt(int index)
+        {
+            Object clazz = this.classes[index];
+
+            return clazz instanceof Reference ? ((Reference<?>) clazz).get() : clazz;
+        }
+
+        private boolean isSameClass(MethodKey other, int index)
+        {
+            Object clazz = classAt(index);
+
+            // A garbage collected class does not match anything, not even a null argument
+            return clazz == other.classAt(index)
+                && (clazz != null || this.classes[index] == null && other.classes[index] == null);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof MethodKey)) {
+                return false;
+            }
+
+            MethodKey other = (MethodKey) obj;
+
+            if (this.hashCode != other.hashCode || this.classReceiver != other.classReceiver
+                || this.classes.length != other.classes.length || !this.methodName.equals(other.methodName)) {
+                return false;
+            }
+
+            for (int i = 0; i < this.classes.length; ++i) {
+                if (!isSameClass(other, i)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
     @Override
     public void setRuntimeServices(RuntimeServices rs)
     {
@@ -102,6 +247,45 @@ public void init()
         } catch (Exception e) {
             this.log.warn(e.getMessage());
         }
+
+        int methodCacheSize =
+            this.runtime.getConfiguration().getInt(UBERSPECT_METHOD_CACHE_SIZE, DEFAULT_METHOD_CACHE_SIZE);
+        if (methodCacheSize > 0) {
+            this.methodCache =
+                Collections.synchronizedMap(new LRUMap<MethodKey, Reference<VelMethod>>(methodCacheSize));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation only forwards the call to the chain when the method is not already cached.
+     * </p>
+     *
+     * @see org.apache.velocity.util.introspection.Uberspect#getMethod(Object, String, Object[], Info)
+     */
+    @Override
+    public VelMethod getMethod(Object obj, String methodName, Object[] args, Info i) throws Exception
+    {
+        if (this.methodCache == null || obj == null || methodName == null) {
+            return super.getMethod(obj, methodName, args, i);
+        }
+
+        MethodKey key = new MethodKey(obj, methodName, args);
+
+        Reference<VelMethod> reference = this.methodCache.get(key);
+        VelMethod method = reference != null ? reference.get() : null;
+
+        if (method == null) {
+            method = super.getMethod(obj, methodName, args, i);
+
+            if (method != null && method.isCacheable()) {
+                // The least recently used methods are evicted when the cache is full
+                this.methodCache.put(key.weak(), new SoftReference<VelMethod>(method));
+            }
+        }
+
+        return method;
     }
 
     /**
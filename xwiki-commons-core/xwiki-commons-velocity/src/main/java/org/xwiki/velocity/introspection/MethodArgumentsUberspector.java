@@ -100,20 +100,47 @@ public VelMethod getMethod(Object obj, String methodName, Object[] args, Info i)
 
         if (shouldConvert) {
             // Try to convert method arguments to formal parameter types.
-            Object[] convertedArguments = this.convertArguments(obj, methodName, args);
-            if (convertedArguments != null) {
-                velMethod = super.getMethod(obj, methodName, convertedArguments, i);
-                if (velMethod != null) {
-                    velMethod = new ConvertingVelMethod(velMethod);
-                } else {
-                    velMethod = initialVelMethod;
-                }
+            velMethod = getConvertingMethod(obj, methodName, args, i);
+            if (velMethod == null) {
+                velMethod = initialVelMethod;
             }
         }
 
         return velMethod;
     }
 
+    /**
+     * Look for a method with the specified name and the same number of formal parameters as the number of arguments
+     * for which the arguments can be converted.
+     *
+     * @param obj the object the method is invoked on, used to retrieve the list of available methods
+     * @param methodName the method we're looking for
+     * @param args the method arguments
+     * @param i the template info
+     * @return the method converting the arguments before calling the real method, {@code null} if no such method is
+     *         found
+     */
+    private VelMethod getConvertingMethod(Object obj, String methodName, Object[] args, Info i) throws Exception
+    {
+        for (Method method : obj.getClass().getMethods()) {
+            if (method.getName().equalsIgnoreCase(methodName) && method.getParameterTypes().length == args.length) {
+                Object[] convertedArguments;
+                try {
+                    convertedArguments = convertArguments(args, method.getParameterTypes());
+                } catch (Exception e) {
+                    // Ignore and try the next method.
+                    continue;
+                }
+
+                VelMethod velMethod = super.getMethod(obj, methodName, convertedArguments, i);
+
+                return velMethod != null ? new ConvertingVelMethod(velMethod, method.getParameterTypes()) : null;
+            }
+        }
+
+        return null;
+    }
+
     /**
      * This is hackish but there's no way in Velocity to get access to the underlying Method from a VelMethod instance.
      */
@@ -176,6 +203,9 @@ private Object[] convertArguments(Object[] arguments, Class<?>[] parameterTypes)
 
     /**
      * Wrapper for a real VelMethod that converts the passed arguments to the real arguments expected by the method.
+     * <p>
+     * The formal parameter types to convert to are resolved once when the method is looked up so that calling the
+     * method does not require looking again at all the methods of the object.
      *
      * @version $Id$
      */
@@ -184,20 +214,33 @@ private class ConvertingVelMethod implements VelMethod
         /** The real method that performs the actual call. */
         private VelMethod innerMethod;
 
+        /** The formal parameter types the arguments are converted to. */
+        private Class<?>[] parameterTypes;
+
         /**
          * Constructor.
          *
          * @param realMethod the real method to wrap
+         * @param parameterTypes the formal parameter types the arguments are converted to
          */
-        public ConvertingVelMethod(VelMethod realMethod)
+        public ConvertingVelMethod(VelMethod realMethod, Class<?>[] parameterTypes)
         {
             this.innerMethod = realMethod;
+            this.parameterTypes = parameterTypes;
         }
 
         @Override
         public Object invoke(Object o, Object[] params) throws Exception
         {
-            return this.innerMethod.invoke(o, convertArguments(o, this.innerMethod.getMethodName(), params));
+            Object[] convertedArguments;
+            try {
+                convertedArguments = convertArguments(params, this.parameterTypes);
+            } catch (Exception e) {
+                // The passed arguments don't convert like the ones the method was resolved with, look again.
+                convertedArguments = convertArguments(o, this.innerMethod.getMethodName(), params);
+            }
+
+            return this.innerMethod.invoke(o, convertedArguments);
         }
 
         @Override
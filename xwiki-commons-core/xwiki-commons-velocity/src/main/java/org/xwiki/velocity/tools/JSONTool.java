@@ -21,14 +21,20 @@
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.io.Writer;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.runtime.Renderable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xwiki.velocity.internal.json.CycleDetectingSerializerModifier;
 
-import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.module.SimpleModule;
 
 import net.sf.json.JSON;
 import net.sf.json.JSONException;
@@ -42,9 +48,82 @@
  */
 public class JSONTool
 {
+    /** The message logged when failing to serialize an object. */
+    private static final String SERIALIZE_ERROR = "Failed to serialize object to JSON";
+
     /** Logging helper object. */
     private Logger logger = LoggerFactory.getLogger(JSONTool.class);
 
+    /**
+     * Writes the compact JSON representation of the objects. Keeping the same mapper means the serializers it builds
+     * by introspecting the classes of the serialized objects are reused.
+     */
+    private final ObjectWriter writer;
+
+    /**
+     * Writes the indented JSON representation of the objects.
+     */
+    private final ObjectWriter prettyWriter;
+
+    /**
+     * A JSON representation written directly to the Velocity output when rendered.
+     *
+     * @version $Id$
+     */
+    private final class JSONRenderable implements Renderable
+    {
+        private final Object object;
+
+        private final boolean prettyPrint;
+
+        JSONRenderable(Object object, boolean prettyPrint)
+        {
+            this.object = object;
+            this.prettyPrint = prettyPrint;
+        }
+
+        @Override
+        public boolean render(InternalContextAdapter context, Writer out) throws IOException
+        {
+            serialize(this.object, out, this.prettyPrint);
+
+            return true;
+        }
+
+        @Override
+        public String toString()
+        {
+            StringWriter out = new StringWriter();
+
+            try {
+                serialize(this.object, out, this.prettyPrint);
+            } catch (IOException e) {
+                // There is no reason this ever happen with a StringWriter
+                JSONTool.this.logger.error(SERIALIZE_ERROR, e);
+            }
+
+            return out.toString();
+        }
+    }
+
+    /**
+     * Default constructor.
+     */
+    public JSONTool()
+    {
+        SimpleModule module = new SimpleModule();
+        module.setSerializerModifier(new CycleDetectingSerializerModifier());
+
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(module);
+        // The writers are not owned by this tool
+        mapper.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        mapper.getFactory().disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+
+        this.writer = mapper.writer();
+        this.prettyWriter = mapper.writerWithDefaultPrettyPrinter();
+    }
+
     /**
      * Serialize a Java object to the JSON format.
      * <p>
@@ -56,28 +135,51 @@
      * <li>maps: {"number": 23, "boolean": false, "string": "value"}</li>
      * <li>beans: {"enabled": true, "name": "XWiki"} for a bean that has #isEnabled() and #getName() getters</li>
      * </ul>
+     * A reference to an object which is already being serialized (i.e. a cycle) is serialized as {@code null}.
      *
      * @param object the object to be serialized to the JSON format
      * @return the JSON-verified string representation of the given object
      */
     public String serialize(Object object)
     {
-        StringWriter writer = new StringWriter();
+        return new JSONRenderable(object, false).toString();
+    }
 
-        try {
-            JsonFactory jsonFactory = new JsonFactory();
-            JsonGenerator generator = jsonFactory.createGenerator(writer);
-            generator.setCodec(new ObjectMapper());
+    /**
+     * Serialize a Java object to the JSON format directly in the output of the template instead of building the
+     * complete JSON representation first, which is better suited to big objects. The JSON representation is the same
+     * as the one produced by {@link #serialize(Object)}. For example {@code $jsontool.stream($results)}.
+     *
+     * @param object the object to be serialized to the JSON format
+     * @return an object writing the JSON representation of the given object when rendered by Velocity
+     * @since 7.0M1
+     */
+    public Object stream(Object object)
+    {
+        return stream(object, false);
+    }
 
-            generator.writeObject(object);
+    /**
+     * Serialize a Java object to the JSON format directly in the output of the template, see {@link #stream(Object)}.
+     *
+     * @param object the object to be serialized to the JSON format
+     * @param prettyPrint true to indent the JSON representation
+     * @return an object writing the JSON representation of the given object when rendered by Velocity
+     * @since 7.0M1
+     */
+    public Object stream(Object object, boolean prettyPrint)
+    {
+        return new JSONRenderable(object, prettyPrint);
+    }
 
-            generator.flush();
-        } catch (IOException e) {
-            // There is no reason this ever happen with a StringWriter
-            this.logger.error("Failed to serialize object to JSON", e);
+    private void serialize(Object object, Writer out, boolean prettyPrint) throws IOException
+    {
+        try {
+            (prettyPrint ? this.prettyWriter : this.writer).writeValue(out, object);
+        } catch (JsonProcessingException e) {
+            // Failing to serialize the object should not fail the whole rendering
+            this.logger.error(SERIALIZE_ERROR, e);
         }
-
-        return writer.toString();
     }
 
     /**
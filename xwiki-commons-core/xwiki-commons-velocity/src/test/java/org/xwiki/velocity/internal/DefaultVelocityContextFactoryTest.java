@@ -31,12 +31,14 @@
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.test.annotation.AfterComponent;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.velocity.InvariantVelocityContextInitializer;
 import org.xwiki.velocity.VelocityConfiguration;
 import org.xwiki.velocity.VelocityContextFactory;
 import org.xwiki.velocity.VelocityContextInitializer;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -90,11 +92,54 @@ public void createDifferentContext() throws Exception
         VelocityContext context2 = this.factory.createContext();
 
         verify(mockInitializer, times(2)).initialize(any(VelocityContext.class));
-        verify(mockComponentManager, times(2)).getInstanceList(VelocityContextInitializer.class);
+        verify(mockComponentManager, times(1)).getInstanceList(VelocityContextInitializer.class);
 
         Assert.assertNotSame(context1, context2);
         Assert.assertNotNull(context1.get("listtool"));
         Assert.assertSame(context2.get("listtool"), context1.get("listtool"));
         Assert.assertNull(context2.get("param"));
     }
+
+    /**
+     * Verify that the invariant Velocity Context Initializers are called only once, until the factory is reset.
+     */
+    @Test
+    public void createContextWithInvariantInitializer() throws Exception
+    {
+        VelocityContextInitializer mockInitializer = mock(VelocityContextInitializer.class);
+        InvariantVelocityContextInitializer invariantInitializer = new InvariantVelocityContextInitializer()
+        {
+            @Override
+            public void initialize(VelocityContext context)
+            {
+                context.put("invariant", "value");
+            }
+        };
+        InvariantVelocityContextInitializer spyInitializer = spy(invariantInitializer);
+        ComponentManager mockComponentManager = this.mocker.getInstance(ComponentManager.class);
+        when(mockComponentManager.getInstanceList(VelocityContextInitializer.class)).thenReturn(
+            Arrays.<Object>asList(mockInitializer, spyInitializer));
+
+        VelocityContext context1 = this.factory.createContext();
+        VelocityContext context2 = this.factory.createContext();
+
+        verify(spyInitializer, times(1)).initialize(any(VelocityContext.class));
+        verify(mockInitializer, times(2)).initialize(any(VelocityContext.class));
+        Assert.assertEquals("value", context1.get("invariant"));
+        Assert.assertEquals("value", context2.get("invariant"));
+        Assert.assertNotNull(context2.get("listtool"));
+
+        // The invariant entries are copied in each context.
+        Assert.assertTrue(Arrays.asList(context1.getKeys()).contains("invariant"));
+        Assert.assertEquals("value", context1.remove("invariant"));
+        Assert.assertNull(context1.get("invariant"));
+        Assert.assertEquals("value", context2.get("invariant"));
+
+        ((DefaultVelocityContextFactory) this.factory).reset();
+
+        this.factory.createContext();
+
+        verify(spyInitializer, times(2)).initialize(any(VelocityContext.class));
+        verify(mockComponentManager, times(2)).getInstanceList(VelocityContextInitializer.class);
+    }
 }
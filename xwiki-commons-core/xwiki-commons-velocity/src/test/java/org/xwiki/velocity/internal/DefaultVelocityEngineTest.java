@@ -72,6 +72,14 @@ public void setUp() throws Exception
         this.engine = this.mocker.getComponentUnderTest();
     }
 
+    private Context nameContext(String name)
+    {
+        Context context = new org.apache.velocity.VelocityContext();
+        context.put("name", name);
+
+        return context;
+    }
+
     private void assertEvaluate(String expected, String content, String template) throws XWikiVelocityException
     {
         assertEvaluate(expected, content, template, new org.apache.velocity.VelocityContext());
@@ -254,4 +262,107 @@ public Void call() throws Exception
         // Mark namespace "namespace" as not used anymore
         this.engine.stoppedUsingMacroNamespace("namespace");
     }
+
+    @Test
+    public void testParsedTemplateCache() throws Exception
+    {
+        this.engine.initialize(new Properties());
+
+        String content = "#macro(mymacro)test#end#mymacro";
+
+        assertEvaluate("test", content, "namespace");
+        // The namespace has been cleared so the cached template must register its macro again
+        assertEvaluate("test", content, "namespace");
+
+        ParsedTemplateCache cache = this.engine.getParsedTemplateCache();
+        Assert.assertEquals(1, cache.getCount());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+
+        // The same content in another namespace is parsed again
+        assertEvaluate("test", content, "othernamespace");
+
+        Assert.assertEquals(2, cache.getCount());
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testCachedTemplateDefiningAndCallingMacro() throws Exception
+    {
+        this.engine.initialize(new Properties());
+
+        String content = "#macro(hello $name)Hello $name#end#hello($name)";
+
+        // Keep the macros registered between the evaluations
+        this.engine.startedUsingMacroNamespace("namespace");
+
+        assertEvaluate("Hello World", content, "namespace", nameContext("World"));
+
+        // The cached template registers the macro again and calls it with the new context
+        assertEvaluate("Hello Velocity", content, "namespace", nameContext("Velocity"));
+
+        // The macro registered by the cached template is visible from the other templates of the namespace
+        assertEvaluate("Hello you", "#hello('you')", "namespace");
+
+        this.engine.stoppedUsingMacroNamespace("namespace");
+
+        // Once the namespace is dumped the cached template still defines and calls its macro
+        assertEvaluate("Hello World", content, "namespace", nameContext("World"));
+        assertEvaluate("#hello('you')", "#hello('you')", "othernamespace");
+
+        ParsedTemplateCache cache = this.engine.getParsedTemplateCache();
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(3, cache.getCount());
+    }
+
+    @Test
+    public void testClearMacroNamespaceInvalidateParsedTemplates() throws Exception
+    {
+        this.engine.initialize(new Properties());
+
+        assertEvaluate("content", "content", "namespace");
+        assertEvaluate("content", "content", "othernamespace");
+
+        this.engine.clearMacroNamespace("namespace");
+
+        Assert.assertEquals(1, this.engine.getParsedTemplateCache().getCount());
+    }
+
+    @Test
+    public void testDisableParsedTemplateCache() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty("xwiki.template.cache.maxcount", "0");
+        this.engine.initialize(properties);
+
+        Assert.assertNull(this.engine.getParsedTemplateCache());
+
+        assertEvaluate("test", "#macro(mymacro)test#end#mymacro", "namespace");
+    }
+
+    @Test
+    public void testIdleMacroNamespaceEviction() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty("xwiki.macro.namespace.maxidletime", "1");
+        this.engine.initialize(properties);
+
+        // Start using namespace "namespace" and never stop using it
+        this.engine.startedUsingMacroNamespace("namespace");
+        this.engine.evaluate(new org.apache.velocity.VelocityContext(), new StringWriter(), "namespace",
+            "#macro(mymacro)test#end");
+        assertEvaluate("test", "#mymacro", "namespace");
+
+        Thread.sleep(10);
+
+        // Any evaluation evicts the idle namespaces
+        assertEvaluate("content", "content", "othernamespace");
+
+        Assert.assertEquals(0, this.engine.getMacroNamespaces().getCount());
+        Assert.assertEquals(1, this.engine.getMacroNamespaces().getEvictionCount());
+        assertEvaluate("#mymacro", "#mymacro", "namespace");
+
+        // Stopping to use an evicted namespace has no effect
+        this.engine.stoppedUsingMacroNamespace("namespace");
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.internal;
+
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Validate {@link ParsedTemplateCache}.
+ *
+ * @version $Id$
+ */
+public class ParsedTemplateCacheTest
+{
+    private ParsedTemplateCache cache;
+
+    @Before
+    public void before()
+    {
+        this.cache = new ParsedTemplateCache(3, 10);
+    }
+
+    private ParsedTemplate put(String namespace, String source)
+    {
+        String key = this.cache.getKey(namespace, source);
+        ParsedTemplate template = new ParsedTemplate(key, namespace, new SimpleNode(0), source.length());
+
+        this.cache.put(key, template);
+
+        return template;
+    }
+
+    // Tests
+
+    @Test
+    public void testGet()
+    {
+        ParsedTemplate template = put("namespace", "source");
+
+        Assert.assertSame(template, this.cache.get(this.cache.getKey("namespace", "source")));
+        Assert.assertNull(this.cache.get(this.cache.getKey("namespace", "other source")));
+        Assert.assertNull(this.cache.get(this.cache.getKey("other namespace", "source")));
+        Assert.assertNull(this.cache.get(this.cache.getKey(null, "source")));
+
+        Assert.assertEquals(1, this.cache.getHitCount());
+        Assert.assertEquals(3, this.cache.getMissCount());
+    }
+
+    @Test
+    public void testEvictByCount()
+    {
+        put("namespace", "1");
+        put("namespace", "2");
+        put("namespace", "3");
+
+        // Mark the first one as recently used
+        Assert.assertNotNull(this.cache.get(this.cache.getKey("namespace", "1")));
+
+        put("namespace", "4");
+
+        Assert.assertEquals(3, this.cache.getCount());
+        Assert.assertEquals(1, this.cache.getEvictionCount());
+        Assert.assertNotNull(this.cache.get(this.cache.getKey("namespace", "1")));
+        Assert.assertNull(this.cache.get(this.cache.getKey("namespace", "2")));
+    }
+
+    @Test
+    public void testEvictBySize()
+    {
+        put("namespace", "1234");
+        put("namespace", "5678");
+        put("namespace", "901");
+
+        Assert.assertEquals(2, this.cache.getCount());
+        Assert.assertEquals(7, this.cache.getSize());
+        Assert.assertNull(this.cache.get(this.cache.getKey("namespace", "1234")));
+    }
+
+    @Test
+    public void testTooBigNotCached()
+    {
+        put("namespace", "12345678901");
+
+        Assert.assertEquals(0, this.cache.getCount());
+        Assert.assertEquals(0, this.cache.getSize());
+    }
+
+    @Test
+    public void testRemoveNamespace()
+    {
+        put("namespace", "1");
+        put("namespace", "2");
+        put("other", "1");
+
+        this.cache.remove("namespace");
+
+        Assert.assertEquals(1, this.cache.getCount());
+        Assert.assertEquals(1, this.cache.getSize());
+        Assert.assertNotNull(this.cache.get(this.cache.getKey("other", "1")));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.internal;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TemplateMetrics}.
+ *
+ * @version $Id$
+ */
+public class TemplateMetricsTest
+{
+    private TemplateMetrics metrics = new TemplateMetrics(10);
+
+    private TemplateMetrics.Statistics get(String templateName)
+    {
+        for (TemplateMetrics.Statistics statistics : this.metrics.getTop(TemplateMetrics.Order.COUNT, 10)) {
+            if (statistics.getTemplateName().equals(templateName)) {
+                return statistics;
+            }
+        }
+
+        return null;
+    }
+
+    @Test
+    public void testNestedEvaluationsAreExclusive() throws Exception
+    {
+        StringWriter out = new StringWriter();
+
+        Writer layoutWriter = this.metrics.start(out);
+        layoutWriter.write("<html>");
+
+        Writer contentWriter = this.metrics.start(layoutWriter);
+        contentWriter.write("content");
+        Thread.sleep(200);
+        this.metrics.stop("content", false);
+
+        layoutWriter.write("</html>");
+        this.metrics.stop("layout", false);
+
+        Assert.assertEquals("<html>content</html>", out.toString());
+
+        TemplateMetrics.Statistics layout = get("layout");
+        Assert.assertEquals(1, layout.getCount());
+        Assert.assertEquals("<html></html>".length(), layout.getOutputSize());
+
+        TemplateMetrics.Statistics content = get("content");
+        Assert.assertEquals(1, content.getCount());
+        Assert.assertEquals("content".length(), content.getOutputSize());
+
+        Assert.assertTrue(content.getTotalTime() >= 200000000L);
+        Assert.assertTrue(layout.getTotalTime() < content.getTotalTime());
+
+        List<TemplateMetrics.Statistics> slowest = this.metrics.getTop(TemplateMetrics.Order.TOTAL_TIME, 1);
+        Assert.assertEquals("content", slowest.get(0).getTemplateName());
+    }
+
+    @Test
+    public void testMaxCount()
+    {
+        TemplateMetrics smallMetrics = new TemplateMetrics(1);
+
+        smallMetrics.record("template1", 10, 1, false);
+        smallMetrics.record("template2", 20, 2, true);
+        smallMetrics.record("template3", 30, 3, false);
+
+        Assert.assertEquals(2, smallMetrics.getCount());
+
+        TemplateMetrics.Statistics other = smallMetrics.getTop(TemplateMetrics.Order.COUNT, 1).get(0);
+        Assert.assertEquals(TemplateMetrics.OTHER, other.getTemplateName());
+        Assert.assertEquals(2, other.getCount());
+        Assert.assertEquals(50, other.getTotalTime());
+        Assert.assertEquals(30, other.getMaxTime());
+        Assert.assertEquals(5, other.getOutputSize());
+        Assert.assertEquals(1, other.getErrorCount());
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.internal;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.apache.velocity.VelocityContext;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.test.annotation.ComponentList;
+import org.xwiki.test.mockito.MockitoComponentManagerRule;
+import org.xwiki.velocity.VelocityConfiguration;
+import org.xwiki.velocity.VelocityEngine;
+import org.xwiki.velocity.XWikiVelocityException;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Measure the throughput of {@link DefaultVelocityEngine#evaluate} with and without the cache of parsed templates.
+ * Not executed with the other tests (the name does not end with "Test"), use
+ * {@code mvn test -Pbenchmark} to run it.
+ *
+ * @version $Id$
+ */
+@ComponentList({DefaultVelocityEngine.class, DefaultVelocityContextFactory.class})
+public class VelocityEngineBenchmark
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(VelocityEngineBenchmark.class);
+
+    /**
+     * The number of executions not measured, to let the JIT compile the code.
+     */
+    private static final int WARMUP = 1000;
+
+    private static final int ITERATIONS = 5000;
+
+    @Rule
+    public MockitoComponentManagerRule componentManager = new MockitoComponentManagerRule();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.put("velocimacro.permissions.allow.inline.local.scope", Boolean.TRUE.toString());
+
+        VelocityConfiguration configuration = this.componentManager.registerMockComponent(VelocityConfiguration.class);
+        when(configuration.getProperties()).thenReturn(properties);
+        when(configuration.getTools()).thenReturn(new Properties());
+    }
+
+    /**
+     * @param size the number of blocks in the template
+     * @return a template mixing macros, loops, conditions and text
+     */
+    private String template(int size)
+    {
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("#macro(displayItem $item)<li class=\"item\">$item.toUpperCase()</li>#end\n");
+        for (int i = 0; i < size; ++i) {
+            builder.append("## Block ").append(i).append('\n');
+            builder.append("#set($title = \"Block ").append(i).append("\")\n");
+            builder.append("<h2>$title</h2>\n");
+            builder.append("#if($items.size() > ").append(i % 5).append(")\n<ul>\n");
+            builder.append("#foreach($item in $items)#displayItem($item)#end\n");
+            builder.append("</ul>\n#else\n<p>Not enough items.</p>\n#end\n");
+        }
+
+        return builder.toString();
+    }
+
+    private void benchmark(int size, boolean cache) throws Exception
+    {
+        Properties properties = new Properties();
+        if (!cache) {
+            properties.setProperty("xwiki.template.cache.maxcount", "0");
+        }
+
+        VelocityEngine engine = this.componentManager.getInstance(VelocityEngine.class);
+        engine.initialize(properties);
+
+        String content = template(size);
+
+        long time = 0;
+        for (int i = 0; i < WARMUP + ITERATIONS; ++i) {
+            long start = System.nanoTime();
+            String result = evaluate(engine, content);
+            if (i >= WARMUP) {
+                time += System.nanoTime() - start;
+            }
+
+            Assert.assertTrue(result.contains("<li class=\"item\">ONE</li>"));
+        }
+
+        LOGGER.info(String.format("%,7d chars cache %-5s %,10.0f evaluations/s", content.length(), cache,
+            ITERATIONS / (time / 1000000000D)));
+    }
+
+    private String evaluate(VelocityEngine engine, String content) throws XWikiVelocityException
+    {
+        VelocityContext context = new VelocityContext();
+        context.put("items", Arrays.asList("one", "two", "three"));
+
+        StringWriter writer = new StringWriter();
+        engine.evaluate(context, writer, "benchmark", content);
+
+        return writer.toString();
+    }
+
+    @Test
+    public void benchmarkSmall() throws Exception
+    {
+        benchmark(1, false);
+        benchmark(1, true);
+    }
+
+    @Test
+    public void benchmarkMedium() throws Exception
+    {
+        benchmark(20, false);
+        benchmark(20, true);
+    }
+
+    @Test
+    public void benchmarkLarge() throws Exception
+    {
+        benchmark(200, false);
+        benchmark(200, true);
+    }
+}
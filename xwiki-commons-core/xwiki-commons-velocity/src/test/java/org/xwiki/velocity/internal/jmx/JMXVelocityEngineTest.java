@@ -37,6 +37,7 @@
 import org.xwiki.test.mockito.MockitoComponentManagerRule;
 import org.xwiki.velocity.VelocityConfiguration;
 import org.xwiki.velocity.VelocityEngine;
+import org.xwiki.velocity.XWikiVelocityException;
 import org.xwiki.velocity.internal.DefaultVelocityContextFactory;
 import org.xwiki.velocity.internal.DefaultVelocityEngine;
 
@@ -100,4 +101,93 @@ public void testGetTemplates() throws Exception
             engine.stoppedUsingMacroNamespace("testmacronamespace");
         }
     }
+
+    @Test
+    public void testParsedTemplates() throws Exception
+    {
+        VelocityEngine engine = this.componentManager.getInstance(VelocityEngine.class);
+        engine.initialize(new Properties());
+        JMXVelocityEngine jmxBean = new JMXVelocityEngine(engine);
+
+        engine.evaluate(new VelocityContext(), new StringWriter(), "template", "content");
+        engine.evaluate(new VelocityContext(), new StringWriter(), "template", "content");
+
+        Assert.assertEquals(1, jmxBean.getParsedTemplateCount());
+        Assert.assertEquals("content".length(), jmxBean.getParsedTemplateSize());
+        Assert.assertEquals(1, jmxBean.getParsedTemplateHitCount());
+        Assert.assertEquals(1, jmxBean.getParsedTemplateMissCount());
+        Assert.assertEquals(0, jmxBean.getParsedTemplateEvictionCount());
+
+        jmxBean.clearParsedTemplates();
+
+        Assert.assertEquals(0, jmxBean.getParsedTemplateCount());
+        Assert.assertEquals(0, jmxBean.getParsedTemplateSize());
+    }
+
+    @Test
+    public void testMacroNamespaces() throws Exception
+    {
+        VelocityEngine engine = this.componentManager.getInstance(VelocityEngine.class);
+        engine.initialize(new Properties());
+        JMXVelocityEngine jmxBean = new JMXVelocityEngine(engine);
+
+        Assert.assertEquals(0, jmxBean.getMacroCount());
+        Assert.assertEquals(0, jmxBean.getUsedMacroNamespaceCount());
+
+        engine.startedUsingMacroNamespace("testmacronamespace");
+
+        try {
+            engine.evaluate(new VelocityContext(), new StringWriter(), "testmacronamespace",
+                "#macro(testmacro1)#end#macro(testmacro2)#end");
+
+            Assert.assertEquals(2, jmxBean.getMacroCount());
+            Assert.assertEquals(1, jmxBean.getUsedMacroNamespaceCount());
+        } finally {
+            engine.stoppedUsingMacroNamespace("testmacronamespace");
+        }
+
+        Assert.assertEquals(0, jmxBean.getMacroCount());
+        Assert.assertEquals(0, jmxBean.getUsedMacroNamespaceCount());
+        Assert.assertEquals(0, jmxBean.getMacroNamespaceEvictionCount());
+    }
+
+    @Test
+    public void testTemplateMetrics() throws Exception
+    {
+        VelocityEngine engine = this.componentManager.getInstance(VelocityEngine.class);
+        engine.initialize(new Properties());
+        JMXVelocityEngine jmxBean = new JMXVelocityEngine(engine);
+
+        engine.evaluate(new VelocityContext(), new StringWriter(), "template1", "content");
+        engine.evaluate(new VelocityContext(), new StringWriter(), "template1", "content");
+        engine.evaluate(new VelocityContext(), new StringWriter(), "template1", "content");
+        engine.evaluate(new VelocityContext(), new StringWriter(), "template2", "other content");
+        try {
+            engine.evaluate(new VelocityContext(), new StringWriter(), "template2", "#set(");
+            Assert.fail("Should have failed to evaluate an invalid template");
+        } catch (XWikiVelocityException expected) {
+            // Expected
+        }
+
+        Assert.assertEquals(2, jmxBean.getTemplateMetricsCount());
+        Assert.assertEquals(2, jmxBean.getSlowestTemplates(10).size());
+
+        TabularData data = jmxBean.getTemplateMetrics("COUNT", 1);
+        Assert.assertEquals(1, data.size());
+        CompositeData template1 = data.get(new Object[] { "template1" });
+        Assert.assertEquals(3L, template1.get("count"));
+        Assert.assertEquals(Long.valueOf("content".length() * 3), template1.get("outputSize"));
+        Assert.assertEquals(0L, template1.get("errorCount"));
+
+        data = jmxBean.getTemplateMetrics("ERROR_COUNT", 1);
+        CompositeData template2 = data.get(new Object[] { "template2" });
+        Assert.assertEquals(2L, template2.get("count"));
+        Assert.assertEquals(Long.valueOf("other content".length()), template2.get("outputSize"));
+        Assert.assertEquals(1L, template2.get("errorCount"));
+
+        jmxBean.resetTemplateMetrics();
+
+        Assert.assertEquals(0, jmxBean.getTemplateMetricsCount());
+        Assert.assertTrue(jmxBean.getSlowestTemplates(10).isEmpty());
+    }
 }
@@ -0,0 +1,123 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.internal.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measure the throughput of {@link VelocityParser#scan(char[], int, int, VelocityParserContext)} on a whole template
+ * and when resuming from a checkpoint. Not executed with the other tests (the name does not end with "Test"), use
+ * {@code mvn test -Pbenchmark} to run it.
+ *
+ * @version $Id$
+ */
+public class VelocityParserBenchmark
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(VelocityParserBenchmark.class);
+
+    /**
+     * The number of executions not measured, to let the JIT compile the code.
+     */
+    private static final int WARMUP = 200;
+
+    private static final int ITERATIONS = 1000;
+
+    private final VelocityParser parser = new VelocityParser();
+
+    /**
+     * @param size the number of blocks in the template
+     * @return a template mixing macros, loops, conditions, comments, HTML and text
+     */
+    private char[] template(int size)
+    {
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("#macro(displayItem $item)<li class=\"item\" style=\"color: #333\">$item.toUpperCase()</li>#end\n");
+        for (int i = 0; i < size; ++i) {
+            builder.append("## Block ").append(i).append('\n');
+            builder.append("#set($title = \"Block ${i}: $services.localization.render('title', [$i])\")\n");
+            builder.append("<h2 id=\"H").append(i).append("\">$escapetool.xml($title)</h2>\n");
+            builder.append("#if($items.size() > ").append(i % 5).append(")\n<ul>\n");
+            builder.append("#foreach($item in $items)#displayItem($item)#end\n");
+            builder.append("</ul>\n#elseif($items.isEmpty())\n<p>No items, costs \\$0.</p>\n#else\n");
+            builder.append("#* Not enough items *#\n<p>Not enough items.</p>\n#end\n");
+        }
+
+        return builder.toString().toCharArray();
+    }
+
+    private void benchmark(int size)
+    {
+        char[] source = template(size);
+
+        // Resume from a checkpoint taken at 90% of the source, like when only the end of a template changed
+        VelocityParserContext context = new VelocityParserContext();
+        int index = this.parser.scan(source, 0, source.length * 9 / 10, context);
+        VelocityParserContext.Checkpoint checkpoint = context.checkpoint(index);
+
+        long fullTime = 0;
+        long resumedTime = 0;
+        for (int i = 0; i < WARMUP + ITERATIONS; ++i) {
+            long start = System.nanoTime();
+            context = new VelocityParserContext();
+            Assert.assertEquals(source.length, this.parser.scan(source, 0, source.length, context));
+            long full = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            context = new VelocityParserContext();
+            context.restore(checkpoint);
+            Assert.assertEquals(source.length,
+                this.parser.scan(source, checkpoint.getIndex(), source.length, context));
+            long resumed = System.nanoTime() - start;
+
+            Assert.assertFalse(context.isInVelocityBlock());
+
+            if (i >= WARMUP) {
+                fullTime += full;
+                resumedTime += resumed;
+            }
+        }
+
+        LOGGER.info(String.format("%,9d chars full %,8.0f scans/s (%,6.0f MB/s) resumed %,8.0f scans/s",
+            source.length, ITERATIONS / (fullTime / 1000000000D),
+            (double) source.length * ITERATIONS * 2 / (fullTime / 1000D), ITERATIONS / (resumedTime / 1000000000D)));
+    }
+
+    @Test
+    public void benchmarkSmall()
+    {
+        benchmark(10);
+    }
+
+    @Test
+    public void benchmarkMedium()
+    {
+        benchmark(200);
+    }
+
+    @Test
+    public void benchmarkLarge()
+    {
+        benchmark(5000);
+    }
+}
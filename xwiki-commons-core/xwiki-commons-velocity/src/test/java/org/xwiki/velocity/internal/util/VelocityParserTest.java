@@ -50,7 +50,7 @@ public void isValidVelocityIdentifierChar()
     public void getKeyWordComment() throws InvalidVelocityException
     {
         VelocityParserContext context = new VelocityParserContext();
-        StringBuffer buffer = new StringBuffer();
+        StringBuilder buffer = new StringBuilder();
 
         int index = this.parser.getKeyWord("## some comment\n  ".toCharArray(), 0, buffer, context);
 
@@ -64,7 +64,7 @@ public void getKeyWordComment() throws InvalidVelocityException
     public void getKeyWordMultiLinesComment() throws InvalidVelocityException
     {
         VelocityParserContext context = new VelocityParserContext();
-        StringBuffer buffer = new StringBuffer();
+        StringBuilder buffer = new StringBuilder();
 
         int index = this.parser.getKeyWord("#*\n some comment\n*#  ".toCharArray(), 0, buffer, context);
 
@@ -78,7 +78,7 @@ public void getKeyWordMultiLinesComment() throws InvalidVelocityException
     public void getKeyWordDirective() throws InvalidVelocityException
     {
         VelocityParserContext context = new VelocityParserContext();
-        StringBuffer buffer = new StringBuffer();
+        StringBuilder buffer = new StringBuilder();
 
         int index = this.parser.getKeyWord("#directive(param1 param2, param2)  ".toCharArray(), 0, buffer, context);
 
@@ -87,4 +87,99 @@ public void getKeyWordDirective() throws InvalidVelocityException
         Assert.assertFalse(context.isInVelocityBlock());
         Assert.assertEquals(VelocityType.MACRO, context.getType());
     }
+
+    @Test
+    public void getKeyWordReservedDirective() throws InvalidVelocityException
+    {
+        VelocityParserContext context = new VelocityParserContext();
+        StringBuilder buffer = new StringBuilder();
+
+        int index = this.parser.getKeyWord("#{foreach}($item in $items)\n  ".toCharArray(), 0, buffer, context);
+
+        Assert.assertEquals("#{foreach}($item in $items)\n".length(), index);
+        Assert.assertEquals("#{foreach}($item in $items)\n", buffer.toString());
+        Assert.assertTrue(context.isInVelocityBlock());
+        Assert.assertEquals("foreach", context.getCurrentElement().getName());
+        Assert.assertEquals(VelocityType.DIRECTIVE, context.getType());
+
+        index = this.parser.getKeyWord("#end".toCharArray(), 0, (StringBuilder) null, context);
+
+        Assert.assertEquals("#end".length(), index);
+        Assert.assertFalse(context.isInVelocityBlock());
+    }
+
+    @Test
+    public void getKeyWordAddedReservedDirective() throws InvalidVelocityException
+    {
+        // Same first character and length as "stop"
+        VelocityParser.VELOCITYDIRECTIVE_NOPARAM.add("skip");
+        VelocityParser.VELOCITYDIRECTIVE_ALL.add("skip");
+
+        try {
+            VelocityParserContext context = new VelocityParserContext();
+
+            int index = this.parser.getKeyWord("#skip\ntext".toCharArray(), 0, (StringBuilder) null, context);
+
+            Assert.assertEquals("#skip\n".length(), index);
+            Assert.assertEquals(VelocityType.DIRECTIVE, context.getType());
+
+            index = this.parser.getKeyWord("#stop\ntext".toCharArray(), 0, (StringBuilder) null, context);
+
+            Assert.assertEquals("#stop\n".length(), index);
+            Assert.assertEquals(VelocityType.DIRECTIVE, context.getType());
+        } finally {
+            VelocityParser.VELOCITYDIRECTIVE_NOPARAM.remove("skip");
+            VelocityParser.VELOCITYDIRECTIVE_ALL.remove("skip");
+        }
+    }
+
+    @Test
+    public void getKeyWordWithStringBuffer() throws InvalidVelocityException
+    {
+        VelocityParserContext context = new VelocityParserContext();
+        StringBuffer buffer = new StringBuffer("text");
+
+        int index = this.parser.getKeyWord("#set($a = 1)\ntext".toCharArray(), 0, buffer, context);
+
+        Assert.assertEquals("#set($a = 1)\n".length(), index);
+        Assert.assertEquals("text#set($a = 1)\n", buffer.toString());
+    }
+
+    @Test
+    public void scan()
+    {
+        VelocityParserContext context = new VelocityParserContext();
+        char[] source = "#if($a)#foreach($b in $c)text ## comment\n$b.d()#end".toCharArray();
+
+        Assert.assertEquals(source.length, this.parser.scan(source, 0, source.length, context));
+        Assert.assertTrue(context.isInVelocityBlock());
+        Assert.assertEquals("if", context.getCurrentElement().getName());
+    }
+
+    @Test
+    public void scanFromCheckpoint()
+    {
+        VelocityParserContext context = new VelocityParserContext();
+        char[] source = "#if($a)#foreach($b in $c)$b#end#end".toCharArray();
+
+        // Stop in the middle of the foreach directive
+        int index = this.parser.scan(source, 0, 10, context);
+
+        Assert.assertEquals("#if($a)#foreach($b in $c)".length(), index);
+        Assert.assertEquals("foreach", context.getCurrentElement().getName());
+
+        VelocityParserContext.Checkpoint checkpoint = context.checkpoint(index);
+
+        // Scanning the rest does not modify the checkpoint
+        this.parser.scan(source, index, source.length, context);
+        Assert.assertFalse(context.isInVelocityBlock());
+
+        VelocityParserContext resumedContext = new VelocityParserContext();
+        resumedContext.restore(checkpoint);
+
+        Assert.assertEquals("foreach", resumedContext.getCurrentElement().getName());
+        Assert.assertEquals(source.length - "#end".length(),
+            this.parser.scan(source, checkpoint.getIndex(), source.length - "#end".length(), resumedContext));
+        Assert.assertEquals("if", resumedContext.getCurrentElement().getName());
+    }
 }
@@ -53,6 +53,22 @@
 })
 public class ChainingUberspectorTest
 {
+    public static class StaticA
+    {
+        public static String name()
+        {
+            return "A";
+        }
+    }
+
+    public static class StaticB
+    {
+        public static String name()
+        {
+            return "B";
+        }
+    }
+
     @Rule
     public final ComponentManagerRule componentManager = new ComponentManagerRule();
 
@@ -278,4 +294,102 @@ public void testDeprecatedUberspector() throws Exception
         Assert.assertEquals(3, TestingUberspector.methodCalls);
         Assert.assertEquals(1, TestingUberspector.getterCalls);
     }
+
+    /*
+     * Tests that the methods resolved by the chain are cached between evaluations.
+     */
+    @Test
+    public void testMethodCache() throws Exception
+    {
+        Properties prop = new Properties();
+        prop.setProperty(RuntimeConstants.UBERSPECT_CLASSNAME, ChainingUberspector.class
+            .getCanonicalName());
+        prop.setProperty(ChainingUberspector.UBERSPECT_CHAIN_CLASSNAMES, UberspectImpl.class
+            .getCanonicalName()
+            + "," + TestingUberspector.class.getCanonicalName());
+        TestingUberspector.methodCalls = 0;
+        this.engine.initialize(prop);
+        for (int i = 0; i < 2; ++i) {
+            StringWriter writer = new StringWriter();
+            this.engine.evaluate(new org.apache.velocity.VelocityContext(), writer, "mytemplate" + i,
+                new StringReader("#set($foo = 'hello')#set($bar = $foo.toString())$bar"));
+            Assert.assertEquals("hello", writer.toString());
+        }
+        Assert.assertEquals(1, TestingUberspector.methodCalls);
+    }
+
+    /*
+     * Tests that only the least recently used method is evicted when the method cache is full.
+     */
+    @Test
+    public void testMethodCacheEvictsLeastRecentlyUsed() throws Exception
+    {
+        Properties prop = new Properties();
+        prop.setProperty(RuntimeConstants.UBERSPECT_CLASSNAME, ChainingUberspector.class
+            .getCanonicalName());
+        prop.setProperty(ChainingUberspector.UBERSPECT_CHAIN_CLASSNAMES, UberspectImpl.class
+            .getCanonicalName()
+            + "," + TestingUberspector.class.getCanonicalName());
+        prop.setProperty(ChainingUberspector.UBERSPECT_METHOD_CACHE_SIZE, "2");
+        TestingUberspector.methodCalls = 0;
+        this.engine.initialize(prop);
+        StringWriter writer = new StringWriter();
+        this.engine.evaluate(new org.apache.velocity.VelocityContext(), writer, "mytemplate",
+            new StringReader("#set($foo = 'hello')#set($a = $foo.toString())#set($b = $foo.length())"
+                + "#set($a = $foo.toString())#set($c = $foo.isEmpty())#set($a = $foo.toString())$a"));
+        Assert.assertEquals("hello", writer.toString());
+        // length() is evicted to make room for isEmpty() but toString() is kept
+        Assert.assertEquals(3, TestingUberspector.methodCalls);
+    }
+
+    /*
+     * Tests that the static methods called on different classes are not mixed up by the method cache.
+     */
+    @Test
+    public void testMethodCacheWithStaticMethods() throws Exception
+    {
+        Properties prop = new Properties();
+        prop.setProperty(RuntimeConstants.UBERSPECT_CLASSNAME, ChainingUberspector.class
+            .getCanonicalName());
+        prop.setProperty(ChainingUberspector.UBERSPECT_CHAIN_CLASSNAMES, UberspectImpl.class
+            .getCanonicalName()
+            + "," + TestingUberspector.class.getCanonicalName());
+        TestingUberspector.methodCalls = 0;
+        this.engine.initialize(prop);
+        StringBuilder result = new StringBuilder();
+        for (Class<?> clazz : new Class<?>[] {StaticA.class, StaticB.class, StaticA.class}) {
+            // Use a new context for each evaluation to not rely on the Velocity context introspection cache
+            VelocityContext context = new VelocityContext();
+            context.put("class", clazz);
+            StringWriter writer = new StringWriter();
+            this.engine.evaluate(context, writer, "mytemplate", new StringReader("$class.name()"));
+            result.append(writer);
+        }
+        Assert.assertEquals("ABA", result.toString());
+        Assert.assertEquals(2, TestingUberspector.methodCalls);
+    }
+
+    /*
+     * Tests that the chain is called for each evaluation when the method cache is disabled.
+     */
+    @Test
+    public void testMethodCacheDisabled() throws Exception
+    {
+        Properties prop = new Properties();
+        prop.setProperty(RuntimeConstants.UBERSPECT_CLASSNAME, ChainingUberspector.class
+            .getCanonicalName());
+        prop.setProperty(ChainingUberspector.UBERSPECT_CHAIN_CLASSNAMES, UberspectImpl.class
+            .getCanonicalName()
+            + "," + TestingUberspector.class.getCanonicalName());
+        prop.setProperty(ChainingUberspector.UBERSPECT_METHOD_CACHE_SIZE, "0");
+        TestingUberspector.methodCalls = 0;
+        this.engine.initialize(prop);
+        for (int i = 0; i < 2; ++i) {
+            StringWriter writer = new StringWriter();
+            this.engine.evaluate(new org.apache.velocity.VelocityContext(), writer, "mytemplate" + i,
+                new StringReader("#set($foo = 'hello')#set($bar = $foo.toString())$bar"));
+            Assert.assertEquals("hello", writer.toString());
+        }
+        Assert.assertEquals(2, TestingUberspector.methodCalls);
+    }
 }
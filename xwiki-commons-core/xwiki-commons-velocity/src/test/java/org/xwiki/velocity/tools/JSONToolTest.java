@@ -19,12 +19,15 @@
  */
 package org.xwiki.velocity.tools;
 
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.velocity.runtime.Renderable;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -73,6 +76,39 @@ public Map<String, String> getParameters()
         }
     }
 
+    public static class MockNode
+    {
+        private final String name;
+
+        private final MockNode parent;
+
+        private final List<MockNode> children = new ArrayList<MockNode>();
+
+        public MockNode(String name, MockNode parent)
+        {
+            this.name = name;
+            this.parent = parent;
+            if (parent != null) {
+                parent.children.add(this);
+            }
+        }
+
+        public String getName()
+        {
+            return this.name;
+        }
+
+        public MockNode getParent()
+        {
+            return this.parent;
+        }
+
+        public List<MockNode> getChildren()
+        {
+            return this.children;
+        }
+    }
+
     /**
      * The object being tested.
      */
@@ -149,6 +185,51 @@ public void testSerializeBean()
         Assert.assertTrue(json.contains("\"parameters\":{\"foo\":\"bar\"}"));
     }
 
+    @Test
+    public void testSerializeCycle()
+    {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("self", map);
+        Assert.assertEquals("{\"self\":null}", this.tool.serialize(map));
+
+        MockNode root = new MockNode("root", null);
+        new MockNode("child", root);
+        String json = this.tool.serialize(root);
+        // We can't predict the order of the properties.
+        Assert.assertTrue(json.startsWith("{"));
+        Assert.assertTrue(json.contains("\"name\":\"root\""));
+        Assert.assertTrue(json.contains("\"parent\":null"));
+        Assert.assertTrue(json.contains("\"children\":[{"));
+        Assert.assertTrue(json.contains("\"name\":\"child\""));
+        Assert.assertTrue(json.contains("\"children\":[]"));
+        // The parent of the child is the root, which is being serialized
+        Assert.assertFalse(json.contains("\"parent\":{"));
+
+        // Shared values are not cycles
+        List<String> list = Arrays.asList("one");
+        Assert.assertEquals("[[\"one\"],[\"one\"]]", this.tool.serialize(Arrays.asList(list, list)));
+    }
+
+    @Test
+    public void testStream() throws Exception
+    {
+        Map<String, Object> map = Collections.<String, Object>singletonMap("list", Arrays.asList(1, 2));
+
+        StringWriter writer = new StringWriter();
+        Assert.assertTrue(((Renderable) this.tool.stream(map)).render(null, writer));
+        Assert.assertEquals(this.tool.serialize(map), writer.toString());
+        Assert.assertEquals(this.tool.serialize(map), this.tool.stream(map).toString());
+    }
+
+    @Test
+    public void testStreamPrettyPrint() throws Exception
+    {
+        StringWriter writer = new StringWriter();
+        ((Renderable) this.tool.stream(Collections.singletonMap("key", "value"), true)).render(null, writer);
+
+        Assert.assertEquals("{\n  \"key\" : \"value\"\n}", writer.toString().replace("\r\n", "\n"));
+    }
+
     @Test
     public void testParseArray()
     {